@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.flowfile;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.FlowFileFilter;
+
+import java.util.function.Predicate;
+
+/**
+ * Selection of the FlowFiles to be accepted from upstream queue(s) in one <code>onTrigger()</code> invocation.
+ * <p>
+ * FlowFiles are selected in queue order, up to a maximum count, and up to a maximum total content size (the capture
+ * budget remaining to the processor).  Selection stops at the first FlowFile which would exceed the byte budget, so
+ * that it remains at the head of its queue.  FlowFiles not matching the (optional) attribute condition are skipped,
+ * and remain queued.
+ */
+public final class AcceptFlowFileFilter implements FlowFileFilter {
+
+    /**
+     * Maximum number of FlowFiles to select.
+     */
+    private final int maxCount;
+
+    /**
+     * Maximum total content size of the FlowFiles to select.
+     */
+    private final long maxBytes;
+
+    /**
+     * Condition on the attributes of a queued FlowFile (null to select all).
+     */
+    private final Predicate<FlowFile> condition;
+
+    /**
+     * The number of FlowFiles selected.
+     */
+    private int count;
+
+    /**
+     * The total content size of the FlowFiles selected.
+     */
+    private long bytes;
+
+    /**
+     * True, if selection was stopped by a FlowFile exceeding the byte budget.
+     */
+    private boolean budgetExceeded;
+
+    /**
+     * Constructor.
+     *
+     * @param maxCount  maximum number of FlowFiles to select
+     * @param maxBytes  maximum total content size of the FlowFiles to select
+     * @param condition condition on the attributes of a queued FlowFile (null to select all)
+     */
+    public AcceptFlowFileFilter(final int maxCount, final long maxBytes, final Predicate<FlowFile> condition) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.condition = condition;
+        this.count = 0;
+        this.bytes = 0L;
+        this.budgetExceeded = false;
+    }
+
+    @Override
+    public FlowFileFilterResult filter(final FlowFile flowFile) {
+        final FlowFileFilterResult result;
+        if (count >= maxCount) {
+            result = FlowFileFilterResult.REJECT_AND_TERMINATE;
+        } else if ((condition != null) && !condition.test(flowFile)) {
+            result = FlowFileFilterResult.REJECT_AND_CONTINUE;
+        } else if (flowFile.getSize() > (maxBytes - bytes)) {
+            budgetExceeded = true;
+            result = FlowFileFilterResult.REJECT_AND_TERMINATE;
+        } else {
+            ++count;
+            bytes += flowFile.getSize();
+            result = (count < maxCount)
+                    ? FlowFileFilterResult.ACCEPT_AND_CONTINUE : FlowFileFilterResult.ACCEPT_AND_TERMINATE;
+        }
+        return result;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true, if selection was stopped by a FlowFile exceeding the byte budget
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+}
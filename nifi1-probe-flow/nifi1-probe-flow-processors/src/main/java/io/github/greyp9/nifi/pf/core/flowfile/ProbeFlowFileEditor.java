@@ -12,28 +12,67 @@
  */
 package io.github.greyp9.nifi.pf.core.flowfile;
 
-import java.io.ByteArrayOutputStream;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.memory.Footprint;
+import io.github.greyp9.nifi.pf.core.memory.MemoryBudget;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 public final class ProbeFlowFileEditor {
 
     private final Map<String, String> attributes;
-    private final ByteArrayOutputStream content;
+
+    /**
+     * The content being edited (held on heap).
+     */
+    private Content content;
+
+    /**
+     * The memory budget charged with the estimated footprint of the FlowFile being edited (null if not counted).
+     */
+    private final MemoryBudget memoryBudget;
+
+    /**
+     * The number of bytes currently charged to the memory budget.
+     */
+    private long charged;
 
     public ProbeFlowFileEditor() {
+        this(null);
+    }
+
+    public ProbeFlowFileEditor(final MemoryBudget memoryBudget) {
         this.attributes = new HashMap<>();
-        this.content = new ByteArrayOutputStream();
+        this.content = EMPTY;
+        this.memoryBudget = memoryBudget;
+        this.charged = 0L;
+        account();
     }
 
     public Map<String, String> getAttributes() {
         return attributes;
     }
 
-    public ByteArrayOutputStream getContent() {
+    public Content getContent() {
         return content;
     }
 
+    /**
+     * @return the content being edited, decoded as UTF-8 text; or the empty string, if the content is too large to be
+     * edited as text
+     */
+    public String getText() {
+        try {
+            return (content.getSize() > MAX_TEXT_SIZE) ? "" : new String(content.toBytes(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            return "";
+        }
+    }
+
     public void setAttribute(final String name, final String value) {
         if (name != null) {
             if (value == null) {
@@ -41,22 +80,82 @@ public final class ProbeFlowFileEditor {
             } else {
                 attributes.put(name, value);
             }
+            account();
         }
     }
 
     public void setContent(final byte[] data) {
-        content.reset();
-        content.write(data, 0, data.length);
+        setContent(new HeapContent(data));
+    }
+
+    public void setContent(final Content content) {
+        this.content = content;
+        account();
     }
 
     public void reset() {
         attributes.clear();
-        content.reset();
+        content = EMPTY;
+        account();
     }
 
-    public void set(final ProbeFlowFile flowFile) {
+    /**
+     * @return the estimated footprint of the FlowFile being edited (its attributes, and its content bytes; nothing, if
+     * the editor is empty); content sharing chunks with a held FlowFile is counted again here, so the estimate errs
+     * high
+     */
+    public long getRetainedSize() {
+        return (attributes.isEmpty() ? 0L : Footprint.ofAttributes(attributes)) + content.getSize();
+    }
+
+    /**
+     * Bring the charge to the memory budget in line with the current footprint.  The editor is driven by the user, so
+     * the charge is forced: it may take the budget over its limit, which then refuses further FlowFiles until memory is
+     * released.
+     */
+    private void account() {
+        if (memoryBudget != null) {
+            final long retained = getRetainedSize();
+            if (retained > charged) {
+                memoryBudget.reserve(retained - charged);
+            } else {
+                memoryBudget.release(charged - retained);
+            }
+            charged = retained;
+        }
+    }
+
+    /**
+     * Copy a held FlowFile into the editor.  The content is copied to heap (sharing its chunks, if already on heap), as
+     * the held FlowFile may be released while it is being edited.
+     *
+     * @param flowFile the held FlowFile
+     * @throws IOException on failure to read stored content
+     */
+    public void set(final ProbeFlowFile flowFile) throws IOException {
+        final Content contentCopy = HeapContent.copyOf(flowFile.getContent());
         reset();
         attributes.putAll(flowFile.getAttributes());
-        setContent(flowFile.getData());
+        setContent(contentCopy);
     }
+
+    /**
+     * Take over the FlowFile being edited in another editor (of an earlier run of the processor), which is then reset.
+     * The content is on heap, so it is taken as is.
+     *
+     * @param editor the other editor
+     */
+    public void take(final ProbeFlowFileEditor editor) {
+        reset();
+        attributes.putAll(editor.getAttributes());
+        setContent(editor.getContent());
+        editor.reset();
+    }
+
+    private static final Content EMPTY = new HeapContent(new byte[0]);
+
+    /**
+     * Content larger than this is not shown in (or edited through) the text form.
+     */
+    private static final long MAX_TEXT_SIZE = 64L * 1024L * 1024L;
 }
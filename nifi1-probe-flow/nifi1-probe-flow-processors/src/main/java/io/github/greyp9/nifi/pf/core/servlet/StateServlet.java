@@ -14,8 +14,11 @@ package io.github.greyp9.nifi.pf.core.servlet;
 
 import io.github.greyp9.nifi.pf.core.common.Probe;
 import io.github.greyp9.nifi.pf.core.http.HttpResponse;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
 import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
 import io.github.greyp9.nifi.pf.core.state.ProbeServiceState;
+import io.github.greyp9.nifi.pf.core.state.StateFilter;
+import io.github.greyp9.nifi.pf.core.state.StateSelection;
 import io.github.greyp9.nifi.pf.core.view.ServiceUpdate;
 import io.github.greyp9.nifi.pf.core.view.StateView;
 import org.slf4j.LoggerFactory;
@@ -41,23 +44,30 @@ public final class StateServlet extends HttpServlet {
     }
 
     private static final Pattern PATTERN_STATE = Pattern.compile("/state/(.+?)");
-    private static final Pattern PATTERN_STATE_XML = Pattern.compile("/state/xml/(.+?)");
+    private static final Pattern PATTERN_STATE_EXPORT = Pattern.compile("/state/(xml|ffv3|ffv3gz)/(.+?)");
 
     @Override
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
         String requestURI = request.getRequestURI();
         final HttpResponse httpResponse;
         final Matcher matcherState = PATTERN_STATE.matcher(requestURI);
-        final Matcher matcherStateXml = PATTERN_STATE_XML.matcher(requestURI);
-        if (matcherStateXml.matches()) {
-            httpResponse = toStateXml(matcherStateXml.group(1));
+        final Matcher matcherStateExport = PATTERN_STATE_EXPORT.matcher(requestURI);
+        final ProbeProcessorState processorStateExport = matcherStateExport.matches()
+                ? serviceState.getProcessorState(matcherStateExport.group(2)) : null;
+        if (processorStateExport != null) {
+            httpResponse = writeState(processorStateExport, StateFormat.fromPath(matcherStateExport.group(1)),
+                    request, response);
+        } else if (matcherStateExport.matches()) {
+            httpResponse = ServletUtils.toError(HttpURLConnection.HTTP_NOT_FOUND);
         } else if (matcherState.matches()) {
             final StateView view = new StateView(serviceState);
             httpResponse = view.render(matcherState.group(1));
         } else {
             httpResponse = ServletUtils.toError(HttpURLConnection.HTTP_NOT_FOUND);
         }
-        ServletUtils.write(response, httpResponse);
+        if (httpResponse != null) {
+            ServletUtils.write(response, httpResponse);
+        }
     }
 
     @Override
@@ -74,11 +84,50 @@ public final class StateServlet extends HttpServlet {
         ServletUtils.write(response, ServletUtils.toRedirect(request.getRequestURI()));
     }
 
-    private HttpResponse toStateXml(final String processorId) {
-        final ProbeProcessorState processorState = serviceState.getProcessorState(processorId);
-        final byte[] xml = (processorState == null) ? null : processorState.toXml();
-        return (xml == null)
-                ? ServletUtils.toError(HttpURLConnection.HTTP_NOT_FOUND)
-                : ServletUtils.toResponseOk(Probe.Mime.TEXT_XML_UTF8, xml);
+    /**
+     * Write the held FlowFiles of a processor to the response, as they are read.  The length of the response is not
+     * known in advance, so the response is chunked; a failure part way through truncates it.  FlowFile packages are
+     * offered as a file download.
+     * <p>
+     * The FlowFiles written may be limited by request parameters (see {@link StateFilter}).  The response carries the
+     * cursor from which to resume the export, and whether FlowFiles were left out by the byte budget.
+     *
+     * @return the error response for malformed request parameters (null, if the FlowFiles were written)
+     */
+    private static HttpResponse writeState(final ProbeProcessorState processorState, final StateFormat format,
+                                           final HttpServletRequest request,
+                                           final HttpServletResponse response) throws IOException {
+        final StateFilter filter = toFilter(request);
+        final HttpResponse httpResponse;
+        if (filter == null) {
+            httpResponse = ServletUtils.toError(HttpURLConnection.HTTP_BAD_REQUEST);
+        } else {
+            final StateSelection selection = processorState.selectState(filter);
+            response.setStatus(HttpURLConnection.HTTP_OK);
+            response.setHeader(Probe.Http.CONTENT_TYPE, format.getMimeType());
+            response.setHeader(Probe.Http.X_PROBE_CURSOR, Long.toString(selection.getCursor()));
+            response.setHeader(Probe.Http.X_PROBE_MORE, Boolean.toString(selection.isMore()));
+            if (format != StateFormat.XML) {
+                response.setHeader(Probe.Http.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s%s\"",
+                        processorState.getId(), format.getExtension()));
+            }
+            processorState.writeState(response.getOutputStream(), format, selection);
+            httpResponse = null;
+        }
+        return httpResponse;
+    }
+
+    /**
+     * @return the conditions on the FlowFiles to export (null, for malformed request parameters)
+     */
+    private static StateFilter toFilter(final HttpServletRequest request) {
+        StateFilter filter;
+        try {
+            filter = StateFilter.parse(request::getParameter);
+        } catch (final IllegalArgumentException e) {
+            LoggerFactory.getLogger(StateServlet.class).debug("malformed export parameter: {}", e.getMessage());
+            filter = null;
+        }
+        return filter;
     }
 }
@@ -12,26 +12,50 @@
  */
 package io.github.greyp9.nifi.pf.core.state;
 
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
 import io.github.greyp9.nifi.pf.core.alert.Alert;
 import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.CaptureStore;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.capture.ImportMode;
+import io.github.greyp9.nifi.pf.core.capture.ImportResult;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
 import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
 import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFileEditor;
+import io.github.greyp9.nifi.pf.core.io.ByteSource;
+import io.github.greyp9.nifi.pf.core.io.FlowFileReader;
+import io.github.greyp9.nifi.pf.core.io.OrderedPipeline;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
+import io.github.greyp9.nifi.pf.core.journal.Journal;
+import io.github.greyp9.nifi.pf.core.memory.Footprint;
+import io.github.greyp9.nifi.pf.core.memory.MemoryBudget;
+import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.Relationship;
-import org.apache.nifi.processor.exception.ProcessException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -53,6 +77,11 @@ public final class ProbeProcessorState {
      */
     private final Date start;
 
+    /**
+     * Stop time of processor (null while it is running); the state of a stopped processor is retained for its next run.
+     */
+    private volatile Date stopped;
+
     /**
      * Timestamp of last processor <code>onTrigger()</code> call.
      */
@@ -63,15 +92,25 @@ public final class ProbeProcessorState {
      */
     private final AtomicLong nextFlowFileId;
 
+    /**
+     * The last sequence given to a held FlowFile (see {@link #sequence(ProbeFlowFile)}); guarded by the processor lock.
+     */
+    private long lastSequence;
+
     /**
      * The number of upstream FlowFiles that should be consumed on subsequent invocations of "onTrigger()".
      */
     private final AtomicInteger countToConsume;
 
     /**
-     * Maximum size of FlowFile content held.
+     * Running total of FlowFile content held, bounded by the configured maximum.
      */
-    private final long maxMemorySize;
+    private final MemoryBudget memoryBudget;
+
+    /**
+     * The number of held FlowFiles marked to be routed to outgoing relationships.
+     */
+    private final AtomicInteger countRouted;
 
     /**
      * Messages to present to user.
@@ -79,20 +118,52 @@ public final class ProbeProcessorState {
     private final Alerts alerts;
 
     /**
-     * Processor-internal storage for held FlowFiles.
+     * Processor-internal storage for held FlowFiles, indexed by id (in order of arrival).
+     */
+    private final CaptureStore<ProbeFlowFile> flowFiles;
+
+    /**
+     * Tiered storage (heap, spill files) for the content of held FlowFiles.
      */
-    private final LinkedBlockingQueue<ProbeFlowFile> flowFiles;
+    private final ContentStore contentStore;
 
     /**
      * Set of {@link Relationship} configured for processor.
      */
     private final Set<Relationship> relationships;
 
+    /**
+     * Held FlowFiles marked (by web server threads) to be routed, keyed by relationship name; drained by
+     * <code>onTrigger()</code>.
+     */
+    private final Map<String, Queue<ProbeFlowFile>> flowFilesRouted;
+
+    /**
+     * Ids of held FlowFiles dropped or evicted (by web server threads or by <code>onTrigger()</code>), so that any
+     * NiFi resources bound to them may be released; drained by <code>onTrigger()</code>.
+     */
+    private final Queue<Long> flowFilesReleased;
+
     /**
      * Holder of state for freeform editing of one {@link org.apache.nifi.flowfile.FlowFile}.
      */
     private final ProbeFlowFileEditor flowFileEditor;
 
+    /**
+     * Journal of held FlowFiles, so that they survive a restart (null, if not enabled).
+     */
+    private volatile Journal journal;
+
+    /**
+     * State of processor in tap mode (null in hold mode).
+     */
+    private volatile ProbeTapState tapState;
+
+    /**
+     * State of processor in breakpoint mode (null in hold mode).
+     */
+    private volatile ProbeBreakpointState breakpointState;
+
     /**
      * Constructor.
      *
@@ -104,16 +175,67 @@ public final class ProbeProcessorState {
      */
     public ProbeProcessorState(final String id, final String name, final long maxMemorySize,
                                final Set<Relationship> relationships, final Alerts alerts) {
+        this(id, name, maxMemorySize, 0, EvictionPolicy.REJECT, relationships, alerts);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id               NiFi processor identifier
+     * @param name             NiFi processor name
+     * @param maxMemorySize    Maximum size of FlowFile content held
+     * @param maxFlowFileCount Maximum number of FlowFiles held (zero for no limit)
+     * @param evictionPolicy   Action taken when a FlowFile does not fit within the limits
+     * @param relationships    Set of {@link Relationship} configured for processor
+     * @param alerts           messages to present to user
+     */
+    public ProbeProcessorState(final String id, final String name,
+                               final long maxMemorySize, final int maxFlowFileCount,
+                               final EvictionPolicy evictionPolicy,
+                               final Set<Relationship> relationships, final Alerts alerts) {
+        this(id, name, maxMemorySize, maxFlowFileCount, evictionPolicy, new ContentStore(), relationships, alerts);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id               NiFi processor identifier
+     * @param name             NiFi processor name
+     * @param maxMemorySize    Maximum size of FlowFile content held (on heap and spilled)
+     * @param maxFlowFileCount Maximum number of FlowFiles held (zero for no limit)
+     * @param evictionPolicy   Action taken when a FlowFile does not fit within the limits
+     * @param contentStore     Tiered storage for the content of held FlowFiles
+     * @param relationships    Set of {@link Relationship} configured for processor
+     * @param alerts           messages to present to user
+     */
+    public ProbeProcessorState(final String id, final String name,
+                               final long maxMemorySize, final int maxFlowFileCount,
+                               final EvictionPolicy evictionPolicy, final ContentStore contentStore,
+                               final Set<Relationship> relationships, final Alerts alerts) {
         this.processorId = id;
         this.processorName = name;
-        this.maxMemorySize = maxMemorySize;
+        this.memoryBudget = new MemoryBudget(maxMemorySize);
+        this.countRouted = new AtomicInteger(0);
         this.start = new Date();
+        this.stopped = null;
         this.nextFlowFileId = new AtomicLong(0);
+        this.lastSequence = 0L;
         this.countToConsume = new AtomicInteger(0);
-        this.flowFiles = new LinkedBlockingQueue<>();
+        this.flowFiles = new CaptureStore<>(maxFlowFileCount, memoryBudget, evictionPolicy,
+                ProbeFlowFile::getId, ProbeFlowFile::getSize, ProbeFlowFile::getContentKey,
+                ProbeFlowFile::getOverheadSize);
+        this.contentStore = contentStore;
         this.relationships = new HashSet<>(relationships);
-        this.flowFileEditor = new ProbeFlowFileEditor();
+        this.flowFilesRouted = new HashMap<>();
+        for (final Relationship relationship : relationships) {
+            flowFilesRouted.put(relationship.getName(), new ConcurrentLinkedQueue<>());
+        }
+        this.flowFilesReleased = new ConcurrentLinkedQueue<>();
+        this.flowFileEditor = new ProbeFlowFileEditor(memoryBudget);
         this.alerts = alerts;
+        this.journal = null;
+        this.tapState = null;
+        this.breakpointState = null;
     }
 
     public String getId() {
@@ -128,6 +250,24 @@ public final class ProbeProcessorState {
         return start.toInstant().toString();
     }
 
+    public String getStopped() {
+        final Date stoppedAt = stopped;
+        return (stoppedAt == null) ? "-" : stoppedAt.toInstant().toString();
+    }
+
+    public boolean isStopped() {
+        return (stopped != null);
+    }
+
+    /**
+     * @param time a timestamp (milliseconds since the epoch)
+     * @return true, if the processor is stopped, and was stopped before the timestamp
+     */
+    public boolean isStoppedBefore(final long time) {
+        final Date stoppedAt = stopped;
+        return (stoppedAt != null) && (stoppedAt.getTime() < time);
+    }
+
     public String getLastOnTrigger() {
         return (lastOnTrigger == null) ? "-" : lastOnTrigger.toInstant().toString();
     }
@@ -136,6 +276,22 @@ public final class ProbeProcessorState {
         return relationships.stream().map(Relationship::getName).collect(Collectors.toSet());
     }
 
+    public ProbeTapState getTapState() {
+        return tapState;
+    }
+
+    public void setTapState(final ProbeTapState tapState) {
+        this.tapState = tapState;
+    }
+
+    public ProbeBreakpointState getBreakpointState() {
+        return breakpointState;
+    }
+
+    public void setBreakpointState(final ProbeBreakpointState breakpointState) {
+        this.breakpointState = breakpointState;
+    }
+
     /**
      * @return number of FlowFiles that should be pulled from upstream queue(s) (based on cached manual instruction)
      */
@@ -156,14 +312,14 @@ public final class ProbeProcessorState {
      * @return FlowFiles held in state of processor
      */
     public List<ProbeFlowFile> getFlowFiles() {
-        return new ArrayList<>(flowFiles);
+        return flowFiles.values();
     }
 
     /**
      * @return the count of FlowFiles marked to be routed to outgoing relationships
      */
     public long getFlowFilesRouted() {
-        return flowFiles.stream().filter(ff -> (ff.getRelationship() != null)).count();
+        return countRouted.get();
     }
 
     /**
@@ -184,36 +340,802 @@ public final class ProbeProcessorState {
      * @return the count of FlowFiles marked to be routed to outgoing relationships
      */
     public int flowFileRoutedCount() {
-        return (int) flowFiles.stream().filter(f -> (f.getRelationship() != null)).count();
+        return countRouted.get();
+    }
+
+    /**
+     * @return the estimated heap footprint of FlowFiles held in state of processor (content, attributes, and object
+     * overhead; including the FlowFile being edited, and content captured by a tap)
+     */
+    public long getMemorySize() {
+        return memoryBudget.getUsed();
+    }
+
+    public long getMaxMemorySize() {
+        return memoryBudget.getLimit();
+    }
+
+    public int getMaxFlowFileCount() {
+        return flowFiles.getMaxCount();
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return flowFiles.getPolicy();
+    }
+
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
+    /**
+     * @return the count of held FlowFiles evicted to make room for new FlowFiles
+     */
+    public long getCountEvicted() {
+        return flowFiles.getCountEvicted();
+    }
+
+    /**
+     * @return the count of new FlowFiles refused, as they did not fit within the processor limits
+     */
+    public long getCountRejected() {
+        return flowFiles.getCountRejected();
     }
 
     public ProbeFlowFile create(final long entryDate, final Map<String, String> attributes, final byte[] data) {
         return new ProbeFlowFile(nextFlowFileId.incrementAndGet(), entryDate, attributes, data);
     }
 
+    public ProbeFlowFile create(final long entryDate, final Map<String, String> attributes, final Content content) {
+        return new ProbeFlowFile(nextFlowFileId.incrementAndGet(), entryDate, attributes, content);
+    }
+
     public String addFlowFile(final ProbeFlowFile flowFile) {
-        final long memorySizeCurrent = flowFiles.stream().mapToLong(ff -> ff.getData().length).sum();
-        final boolean memorySizeExceeded = ((memorySizeCurrent + flowFile.getData().length) > maxMemorySize);
-        final String errorMessage = (memorySizeExceeded ? "processor memory limit exceeded" : null);
-        if (memorySizeExceeded) {
+        return addFlowFile(flowFile, null);
+    }
+
+    /**
+     * @param flowFile a FlowFile added by the user (created, cloned, or imported)
+     * @param original the FlowFile cloned (null, if the FlowFile is not a clone)
+     */
+    private String addFlowFile(final ProbeFlowFile flowFile, final ProbeFlowFile original) {
+        keyContent(flowFile);
+        final boolean limitExceeded = !storeAdded(flowFile, original);
+        final String errorMessage = (limitExceeded ? "processor capture limit exceeded" : null);
+        if (limitExceeded) {
             alerts.add(new Alert(Alert.Severity.ERR, new Date(), errorMessage));
-        } else {
-            flowFiles.add(flowFile);
         }
         return errorMessage;
     }
 
-    public void addFlowFileProcessSession(final ProbeFlowFile flowFile) {
+    /**
+     * @param size the content size of a FlowFile available upstream
+     * @return false, if a FlowFile of this size would be rejected (so its content need not be read)
+     */
+    public boolean isAdmissible(final long size) {
+        return flowFiles.isAdmissible(size);
+    }
+
+    /**
+     * @param size       the content size of a FlowFile available upstream
+     * @param attributes the attributes of the FlowFile
+     * @return false, if the FlowFile would be rejected (the estimate of its footprint errs high, as its attributes are
+     * not yet held in compact form)
+     */
+    public boolean isAdmissible(final long size, final Map<String, String> attributes) {
+        return flowFiles.isAdmissible(size + Footprint.ofAttributes(attributes));
+    }
+
+    /**
+     * @return the total content size of FlowFiles which may be accepted from upstream queue(s) without rejection
+     */
+    public long getAcceptBytes() {
+        return flowFiles.getAdmissibleBytes();
+    }
+
+    /**
+     * @return the number of FlowFiles which may be accepted from upstream queue(s) without rejection
+     */
+    public int getAcceptCount() {
+        return flowFiles.getAdmissibleCount();
+    }
+
+    /**
+     * Cancel the pending request to accept FlowFiles from upstream queue(s), notifying the user.
+     *
+     * @param reason the reason the request cannot be satisfied
+     */
+    public void cancelConsume(final String reason) {
+        final int count = countToConsume.getAndSet(0);
+        if (count > 0) {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "%s; request to accept %d FlowFile(s) cancelled", reason, count)));
+        }
+    }
+
+    /**
+     * @param flowFile a FlowFile consumed from upstream queue(s)
+     * @return true, if the FlowFile was added; false, if it was rejected (and should be returned upstream)
+     */
+    public boolean addFlowFileProcessSession(final ProbeFlowFile flowFile) {
+        return addFlowFileProcessSession(flowFile, null);
+    }
+
+    /**
+     * @param flowFile    a FlowFile consumed from upstream queue(s)
+     * @param transaction record of the changes made in the current session (null if not needed)
+     * @return true, if the FlowFile was added; false, if it was rejected (and should be returned upstream)
+     */
+    public boolean addFlowFileProcessSession(final ProbeFlowFile flowFile, final ProbeTransaction transaction) {
+        countToConsume.decrementAndGet();
+        if (transaction != null) {
+            transaction.consume();
+        }
+        keyContent(flowFile);
+        return storeFlowFile(flowFile, transaction);
+    }
+
+    /**
+     * @param flowFile    a FlowFile matching the breakpoint condition (in breakpoint mode)
+     * @param transaction record of the changes made in the current session (null if not needed)
+     * @return true, if the FlowFile was added; false, if it was rejected (and should be returned upstream)
+     */
+    public boolean holdFlowFile(final ProbeFlowFile flowFile, final ProbeTransaction transaction) {
+        keyContent(flowFile);
+        return storeFlowFile(flowFile, transaction);
+    }
+
+    /**
+     * Refuse a FlowFile consumed from upstream queue(s), without reading its content.
+     *
+     * @param transaction record of the changes made in the current session (null if not needed)
+     * @return false (the FlowFile should be returned upstream)
+     */
+    public boolean rejectFlowFileProcessSession(final ProbeTransaction transaction) {
         countToConsume.decrementAndGet();
-        final String errorMessage = addFlowFile(flowFile);
-        if (errorMessage != null) {
-            throw new ProcessException(errorMessage);
+        if (transaction != null) {
+            transaction.consume();
+        }
+        flowFiles.reject();
+        return false;
+    }
+
+    /**
+     * Notify the user (once per batch) of FlowFiles consumed from upstream queue(s) and returned.
+     *
+     * @param count the number of FlowFiles rejected
+     */
+    public void alertRejected(final int count) {
+        if (count > 0) {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "processor capture limit exceeded; %d FlowFile(s) returned to upstream queue", count)));
+        }
+    }
+
+    private boolean storeAdded(final ProbeFlowFile flowFile, final ProbeFlowFile original) {
+        return storeAdded(flowFile, original, NOT_RESERVED);
+    }
+
+    /**
+     * @param reserved the memory reserved for the FlowFile with {@link #reserveState(long[], ImportMode)}, or
+     *                 {@link #NOT_RESERVED}
+     */
+    private boolean storeAdded(final ProbeFlowFile flowFile, final ProbeFlowFile original, final long reserved) {
+        placeContent(flowFile);
+        // content is written to the journal outside the lock; only the record of the FlowFile is written under it
+        final Content written = journalContent(flowFile, original);
+        final boolean added;
+        synchronized (this) {
+            added = indexFlowFile(flowFile, null, reserved);
+            if (added) {
+                journalAdd(flowFile, original, written);
+            }
+        }
+        return releaseRejected(flowFile, added);
+    }
+
+    private boolean storeFlowFile(final ProbeFlowFile flowFile, final ProbeTransaction transaction) {
+        placeContent(flowFile);
+        return releaseRejected(flowFile, indexFlowFile(flowFile, transaction, NOT_RESERVED));
+    }
+
+    /**
+     * Add a FlowFile (its content already placed in the content store) to the held FlowFiles.  The new content is
+     * placed before evicted content is released, as it may be shared with (or read from) evicted content.
+     */
+    private synchronized boolean indexFlowFile(final ProbeFlowFile flowFile, final ProbeTransaction transaction,
+                                               final long reserved) {
+        final List<ProbeFlowFile> evicted = new ArrayList<>();
+        final boolean added = (reserved == NOT_RESERVED) ? flowFiles.add(sequence(flowFile), evicted)
+                : flowFiles.addReserved(sequence(flowFile), reserved, evicted);
+        if (added) {
+            compressContent(flowFile);
+        }
+        releaseEvicted(evicted, transaction);
+        if (transaction != null) {
+            if (added) {
+                transaction.getAdded().add(flowFile);
+            }
+            transaction.getEvicted().addAll(evicted);
+        }
+        return added;
+    }
+
+    /**
+     * Give a FlowFile the next sequence, as it is added to the held FlowFiles.  Sequences are given under the processor
+     * lock, in the same step as the FlowFile becomes visible, so that an export resumed from a cursor (see
+     * {@link StateFilter}) sees no FlowFile with a lower sequence appear later.  The sequence is at least the FlowFile
+     * id, so that it matches the id while FlowFiles are held in the order they are created, and so that FlowFiles
+     * restored from the journal after a restart follow on from the cursors of earlier exports.
+     *
+     * @param flowFile the FlowFile being added
+     * @return the FlowFile
+     */
+    private ProbeFlowFile sequence(final ProbeFlowFile flowFile) {
+        lastSequence = Math.max(lastSequence + 1L, flowFile.getId());
+        flowFile.setSequence(lastSequence);
+        return flowFile;
+    }
+
+    /**
+     * Return the content placed for a FlowFile which was not added to its store.
+     */
+    private static boolean releaseRejected(final ProbeFlowFile flowFile, final boolean added) {
+        final Content content = flowFile.getContent();
+        if (!added && (content != null)) {
+            content.release();
+        }
+        return added;
+    }
+
+    /**
+     * Release FlowFiles evicted to make room for new FlowFiles.  The content of FlowFiles evicted within a session is
+     * released once the session is committed.
+     */
+    private void releaseEvicted(final List<ProbeFlowFile> evicted, final ProbeTransaction transaction) {
+        for (final ProbeFlowFile flowFileEvicted : evicted) {
+            if (flowFileEvicted.getRelationship() != null) {
+                countRouted.decrementAndGet();
+            }
+            flowFilesReleased.offer(flowFileEvicted.getId());
+            if (transaction == null) {
+                discard(flowFileEvicted);
+            }
+        }
+    }
+
+    /**
+     * Compute the key of the content of a FlowFile to be held, if content is deduplicated.  This is done outside of the
+     * processor lock, as the content is read in full.
+     */
+    private void keyContent(final ProbeFlowFile flowFile) {
+        final Content content = flowFile.getContent();
+        if ((content != null) && (flowFile.getContentKey() == null) && contentStore.isDedupEnabled()) {
+            try {
+                flowFile.setContentKey(contentStore.toKey(content));
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to read FlowFile %d; content not deduplicated (%s)",
+                        flowFile.getId(), e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Move the content of a FlowFile to be held into the content store (which may spill it to disk, or share it with
+     * identical content already held).  On failure to spill, the content stays on heap.  This is done outside of the
+     * processor lock, as the content may be copied in full.
+     */
+    private void placeContent(final ProbeFlowFile flowFile) {
+        flowFile.setContent(placeContent(flowFile.getId(), flowFile.getContent(), flowFile.getContentKey()));
+    }
+
+    /**
+     * @return the content placed in the content store, or the content itself (on failure to spill, or if null)
+     */
+    private Content placeContent(final long id, final Content content, final String key) {
+        Content contentPlaced = content;
+        if (content != null) {
+            try {
+                contentPlaced = contentStore.place(content, key);
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to spill FlowFile %d; content held on heap (%s)", id, e.getMessage())));
+            }
         }
+        return contentPlaced;
+    }
+
+    /**
+     * Move the content of FlowFiles already held into the content store.  The content is copied outside of the
+     * processor lock, then swapped in, unless the FlowFile was released (or its content replaced) meanwhile.
+     */
+    private void placeHeld(final List<ProbeFlowFile> flowFilesHeld) {
+        for (final ProbeFlowFile flowFile : flowFilesHeld) {
+            final Content content = flowFile.getContent();
+            final Content contentPlaced = placeContent(flowFile.getId(), content, flowFile.getContentKey());
+            final boolean held;
+            synchronized (this) {
+                held = (flowFiles.get(flowFile.getId()) == flowFile) && (flowFile.getContent() == content);
+                if (held) {
+                    flowFile.setContent(contentPlaced);
+                }
+            }
+            if (!held && (contentPlaced != content)) {
+                contentPlaced.release();
+            }
+        }
+    }
+
+    /**
+     * Queue the content of a newly held FlowFile for compression, if enabled.  Compression runs in the background, so
+     * that it adds no latency to the processor.
+     */
+    private void compressContent(final ProbeFlowFile flowFile) {
+        final Content content = flowFile.getContent();
+        if ((content != null) && contentStore.isCompressEnabled()) {
+            contentStore.compressLater(content, compressed -> swapCompressed(flowFile, content, compressed));
+        }
+    }
+
+    /**
+     * Hold the compressed content of a FlowFile in place of its content, counting the compressed size against the
+     * processor limits.  The content of a FlowFile released (or edited) meanwhile is left as is.
+     */
+    private void swapCompressed(final ProbeFlowFile flowFile, final Content content, final Content compressed) {
+        final boolean held;
+        synchronized (this) {
+            held = (flowFile.getContent() == content) && flowFiles.resize(flowFile, compressed.getStoredSize());
+            if (held) {
+                flowFile.setContent(compressed);
+            }
+        }
+        if (compressed != content) {
+            (held ? content : compressed).release();
+        }
+    }
+
+    /**
+     * Release a FlowFile no longer held: its record in the journal is removed, and its content is released.
+     */
+    private void discard(final ProbeFlowFile flowFile) {
+        journalRemove(flowFile);
+        final Content content = flowFile.getContent();
+        if (content != null) {
+            content.release();
+        }
+    }
+
+    /**
+     * Write the content of a FlowFile about to be held to the journal, if enabled (outside the lock, so that other
+     * tasks do not wait on the copy).  The clone of a journaled FlowFile needs none.
+     *
+     * @param flowFile the FlowFile to be added
+     * @param original the FlowFile cloned (null, if the FlowFile is not a clone)
+     * @return the content as written to the journal (null, if none was written)
+     */
+    private Content journalContent(final ProbeFlowFile flowFile, final ProbeFlowFile original) {
+        final Journal journalIt = journal;
+        final boolean write = (journalIt != null) && (flowFile.getContent() != null)
+                && ((original == null) || !journalIt.contains(original.getId()));
+        Content written = null;
+        if (write) {
+            try {
+                written = journalIt.writeContent(flowFile.getId(), flowFile.getContent());
+            } catch (final IOException e) {
+                alertJournal(e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Record a FlowFile newly held (other than one accepted from upstream, while its NiFi original is held) in the
+     * journal, if enabled.  The clone of a
+     * journaled FlowFile is recorded by reference to the original, so that its content is not written again.
+     *
+     * @param flowFile the FlowFile added
+     * @param original the FlowFile cloned (null, if the FlowFile is not a clone)
+     * @param written  the content of the FlowFile, as written ahead by {@link #journalContent(ProbeFlowFile,
+     *                 ProbeFlowFile)} (null, if not written)
+     */
+    private void journalAdd(final ProbeFlowFile flowFile, final ProbeFlowFile original, final Content written) {
+        final Journal journalIt = journal;
+        if (journalIt != null) {
+            try {
+                final boolean cloned = (original != null)
+                        && journalIt.addClone(flowFile.getId(), original.getId(), flowFile.getEntryDate());
+                if (!cloned) {
+                    journalIt.add(flowFile.getId(), flowFile.getEntryDate(), flowFile.getAttributes(),
+                            flowFile.getContent(), written);
+                }
+            } catch (final IOException e) {
+                alertJournal(e);
+            }
+        }
+    }
+
+    private void journalRemove(final ProbeFlowFile flowFile) {
+        final Journal journalIt = journal;
+        if (journalIt != null) {
+            try {
+                journalIt.remove(flowFile.getId());
+            } catch (final IOException e) {
+                alertJournal(e);
+            }
+        }
+    }
+
+    private void alertJournal(final IOException e) {
+        alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                "failed to write journal; held FlowFiles may not be restored (%s)", e.getMessage())));
+    }
+
+    /**
+     * Open the journal of held FlowFiles in a directory, restoring the FlowFiles it holds.  Subsequent changes to the
+     * held FlowFiles are recorded in the journal, other than FlowFiles accepted from upstream while their NiFi originals
+     * are held (NiFi returns those to their queues on restart).  A FlowFile held as a copy (see
+     * {@link ProbeTransaction#copy(long)}) is recorded once its original is removed.
+     * <p>
+     * Restored FlowFiles keep their ids, and their marks to be routed.  Their content is not read; it stays in the
+     * journal file until it is needed.  FlowFiles which no longer fit within the processor limits are not restored.
+     * <p>
+     * A journal taken over from an earlier run of the processor (see {@link #adopt(ProbeProcessorState)}) is kept, if
+     * it is in the same directory; otherwise, it is closed.
+     *
+     * @param directory the directory holding the journal (null, to disable the journal)
+     */
+    public void openJournal(final Path directory) {
+        final Journal journalAdopted;
+        final List<ProbeFlowFile> flowFilesJournaled;
+        synchronized (this) {
+            journalAdopted = journal;
+            flowFilesJournaled = flowFiles.values().stream()
+                    .filter(f -> (journalAdopted != null) && journalAdopted.isContentOf(f.getId(), f.getContent()))
+                    .collect(Collectors.toList());
+        }
+        final boolean close = (journalAdopted != null) && !journalAdopted.getDirectory().equals(directory);
+        if (close) {
+            placeHeld(flowFilesJournaled);
+        }
+        synchronized (this) {
+            if (close) {
+                closeJournal(journalAdopted);
+            }
+            if ((directory != null) && (journal == null)) {
+                try {
+                    restore(new Journal(directory, Journal.SYNC_INTERVAL, this::alertJournal));
+                } catch (final IOException e) {
+                    alerts.add(new Alert(Alert.Severity.ERR, new Date(), String.format(
+                            "failed to open journal; held FlowFiles are not journaled (%s)", e.getMessage())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Close a journal no longer used.  Held content still read from the journal file has first been copied into the
+     * content store (see {@link #placeHeld(List)}).
+     */
+    private void closeJournal(final Journal journalIt) {
+        journal = null;
+        try {
+            journalIt.close();
+        } catch (final IOException e) {
+            alertJournal(e);
+        }
+    }
+
+    private void restore(final Journal journalIn) throws IOException {
+        int restored = 0;
+        for (final Journal.Entry entry : journalIn.getEntries()) {
+            final ProbeFlowFile flowFile = new ProbeFlowFile(
+                    entry.getId(), entry.getEntryDate(), entry.getAttributes(), entry.getContent());
+            nextFlowFileId.accumulateAndGet(entry.getId(), Math::max);
+            final List<ProbeFlowFile> evicted = new ArrayList<>();
+            if (flowFiles.get(entry.getId()) != null) {
+                // (a FlowFile taken over from an earlier run of the processor is held with this id)
+                journalIn.remove(entry.getId());
+            } else if (flowFiles.add(sequence(flowFile), evicted)) {
+                ++restored;
+                if (entry.getRelationship() != null) {
+                    setRelationship(flowFile, entry.getRelationship());
+                }
+            } else {
+                evicted.add(flowFile);
+            }
+            for (final ProbeFlowFile flowFileEvicted : evicted) {
+                if (flowFileEvicted.getRelationship() != null) {
+                    countRouted.decrementAndGet();
+                }
+                journalIn.remove(flowFileEvicted.getId());
+            }
+        }
+        // FlowFiles taken over from an earlier run of the processor (with no journal, or another) are journaled now
+        for (final ProbeFlowFile flowFile : flowFiles.values()) {
+            if (!journalIn.contains(flowFile.getId())) {
+                journalIn.add(flowFile.getId(), flowFile.getEntryDate(), flowFile.getAttributes(),
+                        flowFile.getContent());
+                if (flowFile.getRelationship() != null) {
+                    journalIn.route(flowFile.getId(), flowFile.getRelationship());
+                }
+            }
+        }
+        if (journalIn.getTruncated() > 0L) {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "journal truncated by %d byte(s) (incomplete record)", journalIn.getTruncated())));
+        }
+        alerts.add(new Alert(Alert.Severity.INFO, new Date(), String.format(
+                "%d FlowFile(s) restored from journal", restored)));
+        this.journal = journalIn;
+    }
+
+    /**
+     * @return the journal of held FlowFiles (null, if not enabled)
+     */
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Mark the processor as stopped.  Its held state is retained (by the controller service) for its next run.  The
+     * FlowFiles accepted from upstream, whose NiFi originals have been dropped, are held as copies from now on (and
+     * journaled, if enabled); any whose originals were returned to their upstream queues are discarded.  A pending
+     * request to accept FlowFiles is cancelled.
+     *
+     * @param dropped  the ids of the held FlowFiles whose originals were dropped
+     * @param returned the ids of the held FlowFiles whose originals were returned upstream
+     */
+    public void retire(final Collection<Long> dropped, final Collection<Long> returned) {
+        journalCopies(dropped);
+        retireHeld(returned);
+    }
+
+    private synchronized void retireHeld(final Collection<Long> returned) {
+        for (final Long id : returned) {
+            final ProbeFlowFile flowFile = flowFiles.get(id);
+            if ((flowFile != null) && flowFiles.remove(flowFile)) {
+                if (flowFile.getRelationship() != null) {
+                    countRouted.decrementAndGet();
+                }
+                discard(flowFile);
+            }
+        }
+        flowFilesReleased.clear();
+        cancelConsume("processor stopped");
+        stopped = new Date();
+    }
+
+    /**
+     * Record held FlowFiles whose NiFi originals were removed in the journal, if enabled, so that the held copies
+     * survive a restart.  Content is written outside the lock.
+     *
+     * @param ids the ids of the held FlowFiles
+     */
+    private void journalCopies(final Collection<Long> ids) {
+        for (final Long id : ids) {
+            final ProbeFlowFile flowFile;
+            synchronized (this) {
+                flowFile = flowFiles.get(id);
+            }
+            final Content written = (flowFile == null) ? null : journalContent(flowFile, null);
+            synchronized (this) {
+                if ((flowFile != null) && (flowFiles.get(id) == flowFile)) {
+                    journalAdd(flowFile, null, written);
+                    if (flowFile.getRelationship() != null) {
+                        journalRoute(flowFile);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Take over the held state of an earlier run of the processor (stopped, and retained by the controller service):
+     * its held FlowFiles (with their ids, and their marks to be routed), the FlowFile being edited, and its journal.
+     * <p>
+     * If the earlier run used the same content store, held content is taken as is, so that nothing is read or copied;
+     * otherwise, content is placed in the content store of this state.  FlowFiles which no longer fit within the
+     * processor limits are dropped.
+     *
+     * @param retained the state of the earlier run (which holds nothing afterwards, other than its content store)
+     */
+    public void adopt(final ProbeProcessorState retained) {
+        final boolean shared = (retained.contentStore == contentStore);
+        final List<ProbeFlowFile> flowFilesIn;
+        final Journal journalIn;
+        final long lastSequenceIn;
+        synchronized (retained) {
+            flowFilesIn = retained.flowFiles.values();
+            flowFilesIn.forEach(retained.flowFiles::remove);
+            journalIn = retained.journal;
+            retained.journal = null;
+            lastSequenceIn = retained.lastSequence;
+        }
+        // (the FlowFiles taken over are not yet reachable, so their content is placed outside of the processor lock)
+        if (!shared) {
+            for (final ProbeFlowFile flowFile : flowFilesIn) {
+                flowFile.setContentKey(null);
+                keyContent(flowFile);
+                placeContent(flowFile);
+            }
+        }
+        adopt(retained, shared, flowFilesIn, journalIn, lastSequenceIn);
+    }
+
+    private synchronized void adopt(final ProbeProcessorState retained, final boolean shared,
+                                    final List<ProbeFlowFile> flowFilesIn, final Journal journalIn,
+                                    final long lastSequenceIn) {
+        journal = journalIn;
+        nextFlowFileId.accumulateAndGet(retained.nextFlowFileId.get(), Math::max);
+        // (FlowFiles taken over keep their sequences, so that exports resume across the restart of the processor)
+        lastSequence = Math.max(lastSequence, lastSequenceIn);
+        flowFileEditor.take(retained.flowFileEditor);
+        int dropped = 0;
+        for (final ProbeFlowFile flowFile : flowFilesIn) {
+            final String relationship = flowFile.getRelationship();
+            flowFile.setRelationship(null);
+            final List<ProbeFlowFile> evicted = new ArrayList<>();
+            if (flowFiles.add(flowFile, evicted)) {
+                if (shared) {
+                    // (content compressed while held is counted as such)
+                    flowFiles.resize(flowFile, flowFile.getStoredSize());
+                } else {
+                    compressContent(flowFile);
+                }
+                if (relationship != null) {
+                    setRelationship(flowFile, relationship);
+                }
+            } else {
+                evicted.add(flowFile);
+            }
+            for (final ProbeFlowFile flowFileEvicted : evicted) {
+                if (flowFileEvicted.getRelationship() != null) {
+                    countRouted.decrementAndGet();
+                }
+                discard(flowFileEvicted);
+                ++dropped;
+            }
+        }
+        alerts.add(new Alert(Alert.Severity.INFO, new Date(), String.format(
+                "%d FlowFile(s) retained from the last run of the processor", flowFiles.size())));
+        if (dropped > 0) {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "processor capture limit exceeded; %d FlowFile(s) retained from the last run dropped", dropped)));
+        }
+    }
+
+    /**
+     * Finalize the changes made to the held FlowFiles in a session which committed successfully.  The content of
+     * FlowFiles evicted or drained in the session is released.  FlowFiles added as copies (their NiFi originals
+     * removed by the session) are journaled.
+     *
+     * @param transaction record of the changes made in the session
+     */
+    public void commit(final ProbeTransaction transaction) {
+        if (transaction.close()) {
+            for (final ProbeFlowFile flowFile : transaction.getEvicted()) {
+                discard(flowFile);
+            }
+            for (final ProbeFlowFile flowFile : transaction.getDrained()) {
+                discard(flowFile);
+            }
+            journalCopies(transaction.getCopied());
+        }
+    }
+
+    /**
+     * Revert the changes made to the held FlowFiles in a session which failed to commit.  FlowFiles added are
+     * removed; FlowFiles evicted or drained are restored (drained FlowFiles are queued again for routing).  Restored
+     * FlowFiles are placed at the end of the arrival order.  FlowFiles whose NiFi FlowFile was migrated into the
+     * session are not restored, as the session rollback returns them to the upstream queue.  A transaction already
+     * committed or reverted is left as is.
+     *
+     * @param transaction record of the changes made in the session
+     */
+    public synchronized void rollback(final ProbeTransaction transaction) {
+        if (transaction.close()) {
+            for (final ProbeFlowFile flowFile : transaction.getAdded()) {
+                removeFlowFile(flowFile);
+            }
+            final List<ProbeFlowFile> restore = new ArrayList<>(transaction.getEvicted());
+            restore.addAll(transaction.getDrained());
+            final List<ProbeFlowFile> evicted = new ArrayList<>();
+            for (final ProbeFlowFile flowFile : restore) {
+                final boolean restored = !transaction.isMigrated(flowFile.getId())
+                        && flowFiles.add(sequence(flowFile), evicted);
+                if (!restored) {
+                    discard(flowFile);
+                } else {
+                    // (content compressed while held is counted as such)
+                    flowFiles.resize(flowFile, flowFile.getStoredSize());
+                    if (flowFile.getRelationship() != null) {
+                        countRouted.incrementAndGet();
+                        final Queue<ProbeFlowFile> queue = flowFilesRouted.get(flowFile.getRelationship());
+                        if (queue != null) {
+                            queue.offer(flowFile);
+                        }
+                    }
+                }
+            }
+            for (final ProbeFlowFile flowFileEvicted : evicted) {
+                if (flowFileEvicted.getRelationship() != null) {
+                    countRouted.decrementAndGet();
+                }
+                flowFilesReleased.offer(flowFileEvicted.getId());
+                discard(flowFileEvicted);
+            }
+            countToConsume.addAndGet(transaction.getConsumed());
+            alerts.add(new Alert(Alert.Severity.ERR, new Date(), String.format(
+                    "session failed; processor state restored (%s)", transaction)));
+        }
+    }
+
+    /**
+     * Record a FlowFile passing through the processor in tap mode.
+     *
+     * @param flowFile the NiFi FlowFile record
+     * @param data     the FlowFile content, or null if content is not to be captured
+     */
+    public void tapFlowFile(final FlowFile flowFile, final byte[] data) {
+        tapFlowFile(flowFile, data, -1);
+    }
+
+    /**
+     * Record a FlowFile passing through the processor in tap mode.
+     *
+     * @param flowFile the NiFi FlowFile record
+     * @param data     the FlowFile content, or null if content is not to be captured
+     * @param slot     the sample slot to which the FlowFile is admitted (see {@link #admitSample()}), or -1
+     */
+    public void tapFlowFile(final FlowFile flowFile, final byte[] data, final int slot) {
+        tapFlowFile(flowFile, (data == null) ? null : new HeapContent(data), slot);
+    }
+
+    /**
+     * Record a FlowFile passing through the processor in tap mode.
+     *
+     * @param flowFile the NiFi FlowFile record
+     * @param content  the FlowFile content (on heap), or null if content is not to be captured
+     * @param slot     the sample slot to which the FlowFile is admitted (see {@link #admitSample()}), or -1
+     */
+    public void tapFlowFile(final FlowFile flowFile, final Content content, final int slot) {
+        final ProbeTapState tap = tapState;
+        if (tap != null) {
+            final boolean capture = ((content != null) && memoryBudget.tryReserve(content.getSize()));
+            final long id = nextFlowFileId.incrementAndGet();
+            memoryBudget.release(tap.add(id, flowFile, (capture ? content : null), slot));
+        }
+    }
+
+    /**
+     * Offer the next FlowFile passing through the processor in tap mode to the random sample (restarting the sample
+     * if its window has elapsed).
+     *
+     * @return the sample slot to which the FlowFile is admitted, or -1 if it is not sampled
+     */
+    public int admitSample() {
+        final ProbeTapState tap = tapState;
+        int slot = -1;
+        if ((tap != null) && tap.isSampling()) {
+            memoryBudget.release(tap.expireSample(System.currentTimeMillis()));
+            slot = tap.admitSample();
+        }
+        return slot;
     }
 
     public Optional<ProbeFlowFile> getFlowFile(final String idString) {
         final long id = Long.parseLong(idString);
-        return flowFiles.stream().filter(ff -> ff.getId() == id).findFirst();
+        flowFiles.touch(id);
+        return lookupFlowFile(id);
+    }
+
+    /**
+     * @return the held FlowFile with the specified id; or else the FlowFile in the tap snapshot with the specified id
+     */
+    private Optional<ProbeFlowFile> lookupFlowFile(final long id) {
+        final ProbeFlowFile flowFile = flowFiles.get(id);
+        final ProbeTapState tap = tapState;
+        return Optional.ofNullable(((flowFile == null) && (tap != null)) ? tap.getFlowFile(id) : flowFile);
     }
 
     public void routeFlowFile(final String value) {
@@ -226,9 +1148,31 @@ public final class ProbeProcessorState {
     }
 
     public void routeFlowFile(final String idString, final String relationship) {
-        final long id = Long.parseLong(idString);
-        final Optional<ProbeFlowFile> flowFile = flowFiles.stream().filter(ff -> ff.getId() == id).findFirst();
-        flowFile.ifPresent(ff -> ff.setRelationship(relationship));
+        final Optional<ProbeFlowFile> flowFile = getFlowFile(idString);
+        flowFile.ifPresent(ff -> setRelationship(ff, relationship));
+    }
+
+    private synchronized void setRelationship(final ProbeFlowFile flowFile, final String relationship) {
+        final Queue<ProbeFlowFile> queue = flowFilesRouted.get(relationship);
+        if ((queue != null) && (flowFiles.get(flowFile.getId()) == flowFile)) {
+            if (flowFile.getRelationship() == null) {
+                countRouted.incrementAndGet();
+            }
+            flowFile.setRelationship(relationship);
+            queue.offer(flowFile);
+            journalRoute(flowFile);
+        }
+    }
+
+    private void journalRoute(final ProbeFlowFile flowFile) {
+        final Journal journalIt = journal;
+        if (journalIt != null) {
+            try {
+                journalIt.route(flowFile.getId(), flowFile.getRelationship());
+            } catch (final IOException e) {
+                alertJournal(e);
+            }
+        }
     }
 
     public String actionFlowFile(final String pid, final String value, final String location) {
@@ -257,40 +1201,378 @@ public final class ProbeProcessorState {
 
     private static final Pattern PATTERN = Pattern.compile("\\[(\\d+)]\\[(\\w+)]");
 
+    /**
+     * Clone a held (or tapped) FlowFile.  When content is deduplicated, the clone shares the stored content of the
+     * original (which stays live while the original is held), without reading it; otherwise, the content is copied.
+     * Only the lookup of the original (and the index of the clone, see {@link #storeAdded(ProbeFlowFile,
+     * ProbeFlowFile)}) is done under the processor lock; the content is copied and placed outside of it.
+     */
     private void cloneFlowFile(final long flowFileId) {
-        final Optional<ProbeFlowFile> flowFile = flowFiles.stream().filter(ff -> ff.getId() == flowFileId).findFirst();
-        flowFile.ifPresent(ff -> addFlowFile(create(System.currentTimeMillis(), ff.getAttributes(), ff.getData())));
+        final Optional<ProbeFlowFile> flowFile;
+        synchronized (this) {
+            flowFile = lookupFlowFile(flowFileId).filter(ff -> !ff.isNull());
+        }
+        if (flowFile.isPresent()) {
+            final ProbeFlowFile original = flowFile.get();
+            final String contentKey = original.getContentKey();
+            try {
+                final Content content = (contentKey == null)
+                        ? HeapContent.copyOf(original.getContent()) : original.getContent();
+                final ProbeFlowFile flowFileClone = create(
+                        System.currentTimeMillis(), original.getAttributes(), content);
+                flowFileClone.setContentKey(contentKey);
+                addFlowFile(flowFileClone, original);
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to clone FlowFile %d (%s)", flowFileId, e.getMessage())));
+            }
+        }
     }
 
     private void dropFlowFile(final long flowFileId) {
-        final Optional<ProbeFlowFile> flowFile = flowFiles.stream().filter(ff -> ff.getId() == flowFileId).findFirst();
-        //noinspection ResultOfMethodCallIgnored
-        flowFile.ifPresent(flowFiles::remove);
+        final Optional<ProbeFlowFile> flowFile = Optional.ofNullable(flowFiles.get(flowFileId));
+        flowFile.ifPresent(this::removeFlowFile);
+    }
+
+    private synchronized void removeFlowFile(final ProbeFlowFile flowFile) {
+        if (flowFiles.remove(flowFile)) {
+            if (flowFile.getRelationship() != null) {
+                countRouted.decrementAndGet();
+            }
+            flowFilesReleased.offer(flowFile.getId());
+            discard(flowFile);
+        }
     }
 
     private String editFlowFile(final String pid, final long flowFileId) {
-        final Optional<ProbeFlowFile> flowFile = flowFiles.stream().filter(ff -> ff.getId() == flowFileId).findFirst();
-        flowFile.ifPresent(flowFileEditor::set);
+        final Optional<ProbeFlowFile> flowFile = lookupFlowFile(flowFileId).filter(ff -> !ff.isNull());
+        if (flowFile.isPresent()) {
+            try {
+                flowFileEditor.set(flowFile.get());
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to edit FlowFile %d (%s)", flowFileId, e.getMessage())));
+            }
+        }
         return String.format("/editor/%s", pid);
     }
 
+    /**
+     * Remove from the processor state the FlowFiles marked to be routed to outgoing relationships.
+     * <p>
+     * Queue entries are stale if the FlowFile has since been dropped, or routed again (to another relationship); these
+     * are skipped.
+     *
+     * @return the FlowFiles to be transferred to outgoing relationships, in order of routing
+     */
     public List<ProbeFlowFile> drainTo() {
-        final List<ProbeFlowFile> flowFilesRouted = flowFiles.stream()
-                .filter(ff -> (ff.getRelationship() != null)).collect(Collectors.toList());
-        flowFiles.removeAll(flowFilesRouted);
-        return flowFilesRouted;
+        return drainTo(null);
+    }
+
+    /**
+     * Remove from the processor state the FlowFiles marked to be routed to outgoing relationships.
+     * <p>
+     * The content of the drained FlowFiles stays readable until the session is committed (see
+     * {@link #commit(ProbeTransaction)}).
+     *
+     * @param transaction record of the changes made in the current session (null if not needed)
+     * @return the FlowFiles to be transferred to outgoing relationships, in order of routing
+     */
+    public List<ProbeFlowFile> drainTo(final ProbeTransaction transaction) {
+        final List<ProbeFlowFile> flowFilesDrained = new ArrayList<>();
+        if (countRouted.get() > 0) {
+            for (final Map.Entry<String, Queue<ProbeFlowFile>> entry : flowFilesRouted.entrySet()) {
+                final Queue<ProbeFlowFile> queue = entry.getValue();
+                ProbeFlowFile flowFile;
+                while ((flowFile = queue.poll()) != null) {
+                    if (entry.getKey().equals(flowFile.getRelationship()) && removeRouted(flowFile)) {
+                        flowFilesDrained.add(flowFile);
+                    }
+                }
+            }
+        }
+        if (transaction != null) {
+            transaction.getDrained().addAll(flowFilesDrained);
+        } else {
+            flowFilesDrained.forEach(this::journalRemove);
+        }
+        return flowFilesDrained;
+    }
+
+    /**
+     * Remove the record of held FlowFiles dropped or evicted since the last call.
+     *
+     * @return the ids of the FlowFiles released, in order of release
+     */
+    public List<Long> drainReleased() {
+        final List<Long> ids = new ArrayList<>();
+        Long id;
+        while ((id = flowFilesReleased.poll()) != null) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private synchronized boolean removeRouted(final ProbeFlowFile flowFile) {
+        final boolean removed = flowFiles.remove(flowFile);
+        if (removed) {
+            countRouted.decrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * Release the resources held by the processor state (spilled content is deleted; the journal is kept).
+     *
+     * @throws IOException on failure to delete spilled content
+     */
+    public void close() throws IOException {
+        final Journal journalIt = journal;
+        try {
+            if (journalIt != null) {
+                journalIt.close();
+            }
+        } finally {
+            contentStore.close();
+        }
     }
 
     public byte[] toXml() {
-        return new ProbeSerializer().serialize(flowFiles);
+        return new ProbeSerializer().serialize(flowFiles.values());
     }
 
-    public void addState(final byte[] xml) throws IOException {
-        final Collection<ProbeFlowFile> flowFilesIn = new ProbeSerializer().deserialize(xml);
-        for (final ProbeFlowFile flowFile : flowFilesIn) {
-            if (addFlowFile(create(flowFile.getEntryDate(), flowFile.getAttributes(), flowFile.getData())) == null) {
-                break;
+    /**
+     * Write the held FlowFiles to a stream as a state document, as they are read (see {@link #toXml()}).
+     *
+     * @param outputStream the target of the document (left open)
+     * @throws IOException on failure to read held content, or to write to the target
+     */
+    public void writeXml(final OutputStream outputStream) throws IOException {
+        writeState(outputStream, StateFormat.XML);
+    }
+
+    /**
+     * Write the held FlowFiles to a stream in the given format, as they are read.
+     *
+     * @param outputStream the target of the FlowFiles (left open)
+     * @param format       the format in which to write the FlowFiles
+     * @throws IOException on failure to read held content, or to write to the target
+     */
+    public void writeState(final OutputStream outputStream, final StateFormat format) throws IOException {
+        new ProbeSerializer().serialize(flowFiles.values(), outputStream, format);
+    }
+
+    /**
+     * @param filter the conditions on the held FlowFiles to export
+     * @return the held FlowFiles selected by the filter, and the cursor from which to resume the export
+     */
+    public StateSelection selectState(final StateFilter filter) {
+        final List<ProbeFlowFile> flowFilesIt;
+        synchronized (this) {
+            flowFilesIt = flowFiles.values();
+        }
+        return filter.select(flowFilesIt);
+    }
+
+    /**
+     * Write selected FlowFiles to a stream in the given format, as they are read.
+     *
+     * @param outputStream the target of the FlowFiles (left open)
+     * @param format       the format in which to write the FlowFiles
+     * @param selection    the FlowFiles to write (see {@link #selectState(StateFilter)})
+     * @throws IOException on failure to read held content, or to write to the target
+     */
+    public void writeState(final OutputStream outputStream, final StateFormat format,
+                           final StateSelection selection) throws IOException {
+        new ProbeSerializer().serialize(selection.getFlowFiles(), outputStream, format);
+    }
+
+    public ImportResult addState(final byte[] xml) throws IOException {
+        return addState(() -> new ByteArrayInputStream(xml), ImportMode.BEST_EFFORT);
+    }
+
+    /**
+     * Import FlowFiles from a state document, or a FlowFile package (see {@link #writeState(OutputStream,
+     * StateFormat)}); the format is recognized by its leading bytes.  The source is read twice: first to size each
+     * FlowFile (skipping its content), so that room for the batch is reserved against the processor limits up front;
+     * then to read the content of each FlowFile with reserved room into the content store.
+     *
+     * @param source the FlowFiles
+     * @param mode   whether to import the FlowFiles which fit, or none unless all fit
+     * @return the number of FlowFiles imported and rejected
+     * @throws IOException on failure to read the document, or if it is malformed (detected while sizing the batch, in
+     *                     which case nothing is imported)
+     */
+    public ImportResult addState(final ByteSource source, final ImportMode mode) throws IOException {
+        return addState(source, mode, IMPORT_THREADS);
+    }
+
+    /**
+     * Import FlowFiles (see {@link #addState(ByteSource, ImportMode)}), spreading the work of decoding and hashing
+     * their content over several threads.  The source is parsed on the calling thread; the FlowFiles are held in
+     * source order, also on the calling thread.
+     *
+     * @param source  the FlowFiles
+     * @param mode    whether to import the FlowFiles which fit, or none unless all fit
+     * @param threads the number of threads on which to decode and hash content (1, for the calling thread only)
+     * @return the number of FlowFiles imported and rejected
+     * @throws IOException on failure to read the document, or if it is malformed
+     */
+    public ImportResult addState(final ByteSource source, final ImportMode mode, final int threads) throws IOException {
+        final StateFormat format = StateFormat.detect(source);
+        final long[] sizes = sizeState(source, format);
+        final long[] reserved = reserveState(sizes, mode);
+        final int threadsIt = (int) Math.min(threads, Arrays.stream(reserved).filter(r -> r > 0L).count());
+        final long entryDate = System.currentTimeMillis();
+        final AtomicInteger imported = new AtomicInteger(0);
+        final Consumer<ImportedContent> sink = c -> imported.addAndGet(storeImported(c, entryDate, reserved) ? 1 : 0);
+        try (InputStream is = source.openStream(); FlowFileReader reader = format.newReader(is);
+             OrderedPipeline<ImportedContent> pipeline = new OrderedPipeline<>(threadsIt, sink)) {
+            int index = 0;
+            for (Map<String, String> attributes = reader.next(); (attributes != null) && (index < reserved.length);
+                 attributes = reader.next()) {
+                if (reserved[index] > 0L) {
+                    final int indexIt = index;
+                    final Map<String, String> attributesIt = attributes;
+                    final Callable<Content> decoder = reader.readContent(sizes[index]);
+                    pipeline.submit(() -> decodeImported(indexIt, attributesIt, decoder));
+                }
+                ++index;
+            }
+            pipeline.finish();
+        } finally {
+            // return the room reserved for FlowFiles not reached (on failure to read the document)
+            releaseState(reserved);
+        }
+        final int countImported = imported.get();
+        final ImportResult result = new ImportResult(countImported, sizes.length - countImported);
+        if (result.getCountRejected() == 0) {
+            alerts.add(new Alert(Alert.Severity.INFO, new Date(), String.format(
+                    "imported %d FlowFile(s)", result.getCountImported())));
+        } else {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "processor capture limit exceeded; imported %d FlowFile(s), rejected %d",
+                    result.getCountImported(), result.getCountRejected())));
+        }
+        return result;
+    }
+
+    /**
+     * Decode the content of an imported FlowFile, and key it for deduplication (if enabled).  Runs on any thread.
+     */
+    private ImportedContent decodeImported(final int index, final Map<String, String> attributes,
+                                           final Callable<Content> decoder) throws Exception {
+        final Content content = decoder.call();
+        final String key = contentStore.isDedupEnabled() ? contentStore.toKey(content) : null;
+        return new ImportedContent(index, attributes, content, key);
+    }
+
+    /**
+     * Hold an imported FlowFile, in the room reserved for it.  Runs on the importing thread, in source order.
+     *
+     * @return true, if the FlowFile is held
+     */
+    private boolean storeImported(final ImportedContent imported, final long entryDate, final long[] reserved) {
+        final ProbeFlowFile flowFile = create(entryDate, imported.attributes, imported.content);
+        flowFile.setContentKey(imported.key);
+        final long reservedIt = reserved[imported.index];
+        reserved[imported.index] = 0L;
+        return storeAdded(flowFile, null, reservedIt);
+    }
+
+    /**
+     * @return the estimated memory each FlowFile in the source will hold (its overhead, and the size of its content)
+     */
+    private long[] sizeState(final ByteSource source, final StateFormat format) throws IOException {
+        final long keySize = contentStore.isDedupEnabled() ? KEY_SIZE : 0L;
+        long[] sizes = new long[INITIAL_BATCH];
+        int count = 0;
+        try (InputStream is = source.openStream(); FlowFileReader reader = format.newReader(is)) {
+            for (Map<String, String> attributes = reader.next(); attributes != null; attributes = reader.next()) {
+                final long size = reader.skipContent();
+                final ProbeFlowFile flowFile = new ProbeFlowFile(0L, 0L, attributes, new byte[0]);
+                if (count == sizes.length) {
+                    sizes = Arrays.copyOf(sizes, count * 2);
+                }
+                sizes[count] = flowFile.getOverheadSize() + keySize + size;
+                ++count;
+            }
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    /**
+     * Reserve room for a batch of FlowFiles, evicting held FlowFiles (as allowed by the eviction policy).
+     *
+     * @return the memory reserved for each FlowFile (zero for a FlowFile without reserved room)
+     */
+    private synchronized long[] reserveState(final long[] sizes, final ImportMode mode) {
+        final long[] reserved = new long[sizes.length];
+        final List<ProbeFlowFile> evicted = new ArrayList<>();
+        if (mode == ImportMode.ALL_OR_NOTHING) {
+            if (flowFiles.reserve(Arrays.stream(sizes).sum(), sizes.length, evicted)) {
+                System.arraycopy(sizes, 0, reserved, 0, sizes.length);
+            }
+        } else {
+            for (int i = 0; (i < sizes.length); ++i) {
+                reserved[i] = flowFiles.reserve(sizes[i], 1, evicted) ? sizes[i] : 0L;
             }
         }
+        releaseEvicted(evicted, null);
+        return reserved;
+    }
+
+    private void releaseState(final long[] reserved) {
+        final long size = Arrays.stream(reserved).sum();
+        final int count = (int) Arrays.stream(reserved).filter(r -> r > 0L).count();
+        if (count > 0) {
+            flowFiles.release(size, count);
+        }
     }
+
+    /**
+     * The content of an imported FlowFile, decoded (see {@link #decodeImported(int, Map, Callable)}).
+     */
+    private static final class ImportedContent {
+        private final int index;
+        private final Map<String, String> attributes;
+        private final Content content;
+        private final String key;
+
+        private ImportedContent(final int index, final Map<String, String> attributes,
+                                final Content content, final String key) {
+            this.index = index;
+            this.attributes = attributes;
+            this.content = content;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Marker for a FlowFile added without reserved room.
+     */
+    private static final long NOT_RESERVED = -1L;
+
+    /**
+     * The most threads on which to decode imported content.
+     */
+    private static final int MAX_IMPORT_THREADS = 4;
+
+    /**
+     * The number of threads on which to decode imported content; half the processors, leaving the rest to the flow.
+     * The document is parsed on one thread, which takes about 40% of the serial cost of an import (16 KiB and 256 KiB
+     * content, see ImportPipelineBenchmark); two or three threads keep up with it, so the count is capped.
+     */
+    private static final int IMPORT_THREADS = Math.max(1, Math.min(
+            MAX_IMPORT_THREADS, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * The initial capacity for the sizes of a batch of imported FlowFiles.
+     */
+    private static final int INITIAL_BATCH = 64;
+
+    /**
+     * The estimated footprint of the key of deduplicated content (a hex SHA-256 digest).
+     */
+    private static final long KEY_SIZE = Footprint.ofString(ProbeUtils.sha256(new byte[0]));
 }
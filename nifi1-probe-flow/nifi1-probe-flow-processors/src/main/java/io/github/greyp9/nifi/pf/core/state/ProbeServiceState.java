@@ -12,14 +12,23 @@
  */
 package io.github.greyp9.nifi.pf.core.state;
 
+import io.github.greyp9.nifi.pf.core.alert.Alert;
 import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
 import org.apache.nifi.processor.Relationship;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public final class ProbeServiceState {
 
@@ -44,10 +53,22 @@ public final class ProbeServiceState {
     private final Alerts alerts;
 
     /**
-     * Processors registered to this controller service.
+     * Processors registered to this controller service (running, or stopped with their state retained).
      */
     private final Map<String, ProbeProcessorState> processorStates;
 
+    /**
+     * The time for which the state of a stopped processor is retained, in milliseconds (zero to discard it when the
+     * processor is stopped).
+     */
+    private final long retention;
+
+    /**
+     * Background thread discarding the state of processors stopped for longer than the retention period (null, if
+     * state is not retained).
+     */
+    private final ScheduledExecutorService sweeper;
+
     /**
      * Constructor.
      *
@@ -55,11 +76,30 @@ public final class ProbeServiceState {
      * @param name          NiFi controller service name
      */
     public ProbeServiceState(final String id, final String name) {
+        this(id, name, 0L);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id        NiFi controller service identifier
+     * @param name      NiFi controller service name
+     * @param retention the time for which the state of a stopped processor is retained, in milliseconds (zero to
+     *                  discard it when the processor is stopped)
+     */
+    public ProbeServiceState(final String id, final String name, final long retention) {
         this.serviceId = id;
         this.serviceName = name;
         this.start = new Date();
         this.alerts = new Alerts();
-        this.processorStates = new HashMap<>();
+        this.processorStates = new ConcurrentHashMap<>();
+        this.retention = Math.max(0L, retention);
+        this.sweeper = (this.retention > 0L)
+                ? Executors.newSingleThreadScheduledExecutor(ProbeServiceState::newSweepThread) : null;
+        if (sweeper != null) {
+            final long interval = Math.min(this.retention, SWEEP_INTERVAL);
+            sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
     public String getId() {
@@ -78,16 +118,172 @@ public final class ProbeServiceState {
         return alerts;
     }
 
+    public long getRetention() {
+        return retention;
+    }
+
     public ProbeProcessorState register(final String pid, final String name,
                                         final long maxMemorySize, final Set<Relationship> relationships) {
-        final ProbeProcessorState probeProcessorState = new ProbeProcessorState(
-                pid, name, maxMemorySize, relationships, alerts);
+        return register(pid, name, maxMemorySize, 0, EvictionPolicy.REJECT, relationships);
+    }
+
+    public ProbeProcessorState register(final String pid, final String name,
+                                        final long maxMemorySize, final int maxFlowFileCount,
+                                        final EvictionPolicy evictionPolicy, final Set<Relationship> relationships) {
+        return register(pid, name, maxMemorySize, maxFlowFileCount, evictionPolicy, new ContentStore(), relationships);
+    }
+
+    /**
+     * Register a processor which is started.  The state retained from its last run (if any) is taken over: its held
+     * FlowFiles are carried into the new state, which is configured afresh.  If the content store is configured as
+     * before, the retained content store is kept (and the new one, which holds nothing yet, is closed), so that held
+     * content is neither read nor copied.
+     *
+     * @param pid              NiFi processor identifier
+     * @param name             NiFi processor name
+     * @param maxMemorySize    Maximum size of FlowFile content held (on heap and spilled)
+     * @param maxFlowFileCount Maximum number of FlowFiles held (zero for no limit)
+     * @param evictionPolicy   Action taken when a FlowFile does not fit within the limits
+     * @param contentStore     Tiered storage for the content of held FlowFiles
+     * @param relationships    Set of {@link Relationship} configured for processor
+     * @return the state of the processor
+     */
+    public synchronized ProbeProcessorState register(final String pid, final String name,
+                                                     final long maxMemorySize, final int maxFlowFileCount,
+                                                     final EvictionPolicy evictionPolicy,
+                                                     final ContentStore contentStore,
+                                                     final Set<Relationship> relationships) {
+        final ProbeProcessorState retained = processorStates.get(pid);
+        final ContentStore contentStoreRetained = (retained == null) ? null : retained.getContentStore();
+        final boolean shared = (contentStoreRetained != null) && contentStoreRetained.hasSameSettings(contentStore);
+        final ContentStore contentStoreIt = shared ? contentStoreRetained : contentStore;
+        final ProbeProcessorState probeProcessorState = new ProbeProcessorState(pid, name, maxMemorySize,
+                maxFlowFileCount, evictionPolicy, contentStoreIt, relationships, alerts);
+        if (retained != null) {
+            probeProcessorState.adopt(retained);
+        }
         processorStates.put(pid, probeProcessorState);
+        if (shared) {
+            // (stops its compressor, and drops its off-heap memory)
+            closeUnused(contentStore, name);
+        }
+        if ((retained != null) && !shared) {
+            try {
+                retained.close();
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to delete content spilled by the last run of processor '%s' (%s)", name,
+                        e.getMessage())));
+            }
+        }
         return probeProcessorState;
     }
 
-    public void unregister(final String pid) {
-        processorStates.remove(pid);
+    private void closeUnused(final ContentStore contentStore, final String name) {
+        try {
+            contentStore.close();
+        } catch (final IOException e) {
+            alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "failed to close unused content store of processor '%s' (%s)", name, e.getMessage())));
+        }
+    }
+
+    /**
+     * Record that a processor is stopped.  Its state is retained for its next run, for the retention period (or
+     * discarded now, if state is not retained).
+     *
+     * @param pid      NiFi processor identifier
+     * @param dropped  the ids of the held FlowFiles whose NiFi originals were dropped (the copies are kept)
+     * @param returned the ids of the held FlowFiles whose NiFi originals were returned to their upstream queues
+     * @throws IOException on failure to delete spilled content (when state is not retained)
+     */
+    public synchronized void retire(final String pid, final Collection<Long> dropped,
+                                    final Collection<Long> returned) throws IOException {
+        final ProbeProcessorState probeProcessorState = processorStates.get(pid);
+        if (probeProcessorState != null) {
+            probeProcessorState.retire(dropped, returned);
+            if (retention == 0L) {
+                unregister(pid);
+            }
+        }
+    }
+
+    /**
+     * Discard the state retained for a stopped processor.
+     *
+     * @param pid NiFi processor identifier
+     * @return true, if the state was discarded; false, if there is none, or if the processor is running
+     * @throws IOException on failure to delete spilled content
+     */
+    public synchronized boolean purge(final String pid) throws IOException {
+        final ProbeProcessorState probeProcessorState = processorStates.get(pid);
+        final boolean purge = (probeProcessorState != null) && probeProcessorState.isStopped();
+        if (purge) {
+            unregister(pid);
+            alerts.add(new Alert(Alert.Severity.INFO, new Date(), String.format(
+                    "state of stopped processor '%s' discarded", probeProcessorState.getName())));
+        }
+        return purge;
+    }
+
+    /**
+     * Discard the state of a processor, deleting any content it has spilled to disk.
+     *
+     * @param pid NiFi processor identifier
+     * @throws IOException on failure to delete spilled content
+     */
+    public synchronized void unregister(final String pid) throws IOException {
+        final ProbeProcessorState probeProcessorState = processorStates.remove(pid);
+        if (probeProcessorState != null) {
+            probeProcessorState.close();
+        }
+    }
+
+    /**
+     * Discard the state of processors stopped for longer than the retention period.
+     */
+    private synchronized void sweep() {
+        final long idleBefore = System.currentTimeMillis() - retention;
+        final List<ProbeProcessorState> idle = new ArrayList<>();
+        for (final ProbeProcessorState probeProcessorState : processorStates.values()) {
+            if (probeProcessorState.isStoppedBefore(idleBefore)) {
+                idle.add(probeProcessorState);
+            }
+        }
+        for (final ProbeProcessorState probeProcessorState : idle) {
+            try {
+                unregister(probeProcessorState.getId());
+                alerts.add(new Alert(Alert.Severity.INFO, new Date(), String.format(
+                        "state of processor '%s' discarded, after %d ms stopped",
+                        probeProcessorState.getName(), retention)));
+            } catch (final IOException e) {
+                alerts.add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                        "failed to discard state of processor '%s' (%s)", probeProcessorState.getName(),
+                        e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Discard the state of all processors (as the controller service is disabled).
+     *
+     * @throws IOException on failure to delete spilled content
+     */
+    public synchronized void close() throws IOException {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        IOException failure = null;
+        for (final String pid : new ArrayList<>(processorStates.keySet())) {
+            try {
+                unregister(pid);
+            } catch (final IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     public Collection<ProbeProcessorState> getProcessorStates() {
@@ -97,4 +293,15 @@ public final class ProbeServiceState {
     public ProbeProcessorState getProcessorState(final String pid) {
         return processorStates.get(pid);
     }
+
+    private static Thread newSweepThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "probe-flow-sweep");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The longest interval between checks for processor state to be discarded, in milliseconds.
+     */
+    private static final long SWEEP_INTERVAL = 10000L;
 }
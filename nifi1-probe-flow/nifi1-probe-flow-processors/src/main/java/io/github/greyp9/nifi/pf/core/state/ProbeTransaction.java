@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.state;
+
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Record of the changes made to the held FlowFiles of a processor during one <code>onTrigger()</code> invocation.
+ * <p>
+ * The changes become final when the NiFi session is committed.  If the commit fails, the changes are reverted (see
+ * {@link ProbeProcessorState#rollback(ProbeTransaction)}), so that held state stays consistent with the upstream
+ * queues and outgoing relationships.
+ */
+public final class ProbeTransaction {
+
+    /**
+     * FlowFiles consumed from upstream queue(s) and added to the held FlowFiles.
+     */
+    private final List<ProbeFlowFile> added;
+
+    /**
+     * Held FlowFiles evicted to make room for added FlowFiles.
+     */
+    private final List<ProbeFlowFile> evicted;
+
+    /**
+     * Held FlowFiles removed, to be transferred to outgoing relationships.
+     */
+    private final List<ProbeFlowFile> drained;
+
+    /**
+     * The number of FlowFiles counted against the pending request to accept FlowFiles from upstream queue(s).
+     */
+    private int consumed;
+
+    /**
+     * Ids of held FlowFiles whose original NiFi FlowFile was migrated into the session (to be transferred or removed).
+     */
+    private final Set<Long> migrated;
+
+    /**
+     * Ids of FlowFiles added in the session whose original NiFi FlowFile was removed, leaving the held copy.
+     */
+    private final List<Long> copied;
+
+    /**
+     * True once the changes have been committed or reverted (a failed commit may be reported more than once).
+     */
+    private boolean closed;
+
+    public ProbeTransaction() {
+        this.added = new ArrayList<>();
+        this.evicted = new ArrayList<>();
+        this.drained = new ArrayList<>();
+        this.consumed = 0;
+        this.migrated = new HashSet<>();
+        this.copied = new ArrayList<>();
+        this.closed = false;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && evicted.isEmpty() && drained.isEmpty() && (consumed == 0) && migrated.isEmpty();
+    }
+
+    List<ProbeFlowFile> getAdded() {
+        return added;
+    }
+
+    List<ProbeFlowFile> getEvicted() {
+        return evicted;
+    }
+
+    List<ProbeFlowFile> getDrained() {
+        return drained;
+    }
+
+    int getConsumed() {
+        return consumed;
+    }
+
+    void consume() {
+        ++consumed;
+    }
+
+    /**
+     * @return the ids of the FlowFiles added to the held FlowFiles in the session
+     */
+    public List<Long> getIdsAdded() {
+        return added.stream().map(ProbeFlowFile::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Record that the original NiFi FlowFile of a held FlowFile was migrated into the session.  If the session fails
+     * to commit, the FlowFile is returned to its upstream queue, and so is not restored to the held FlowFiles.
+     *
+     * @param id the id of the held FlowFile
+     */
+    public void migrate(final long id) {
+        migrated.add(id);
+    }
+
+    boolean isMigrated(final long id) {
+        return migrated.contains(id);
+    }
+
+    /**
+     * Record that the original NiFi FlowFile of a FlowFile added in the session is removed with the session commit,
+     * so that the held copy is the only instance (and is journaled once the session commits).
+     *
+     * @param id the id of the held FlowFile
+     */
+    public void copy(final long id) {
+        copied.add(id);
+    }
+
+    List<Long> getCopied() {
+        return copied;
+    }
+
+    /**
+     * Mark the changes as committed or reverted.
+     *
+     * @return true if the changes were pending (and are to be finalized by the caller)
+     */
+    boolean close() {
+        final boolean pending = !closed;
+        closed = true;
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("added=%d, evicted=%d, drained=%d, consumed=%d, migrated=%d, copied=%d",
+                added.size(), evicted.size(), drained.size(), consumed, migrated.size(), copied.size());
+    }
+}
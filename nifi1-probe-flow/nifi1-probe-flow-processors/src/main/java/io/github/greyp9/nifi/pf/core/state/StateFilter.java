@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.state;
+
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Selection of the held FlowFiles to be exported.
+ * <p>
+ * FlowFiles are selected in the order in which they became visible in the held FlowFiles (their sequence; see
+ * {@link ProbeFlowFile#getSequence()}), which may differ from the order of their ids, as FlowFiles are created and
+ * stored by concurrent tasks.  All conditions given must hold for a FlowFile to be selected.  Selection stops before
+ * the first FlowFile which would exceed the byte budget, so that an export of limited size can be resumed from the
+ * returned cursor; the first FlowFile selected is always included, so that each export makes progress.
+ */
+public final class StateFilter {
+
+    /**
+     * Select only FlowFiles with a sequence greater than this cursor (null for no bound).
+     */
+    private final Long since;
+
+    /**
+     * Select only FlowFiles with these ids (null for any id).
+     */
+    private final Set<Long> ids;
+
+    /**
+     * Select only FlowFiles entered at or after this time, in epoch milliseconds (null for no bound).
+     */
+    private final Long from;
+
+    /**
+     * Select only FlowFiles entered before this time, in epoch milliseconds (null for no bound).
+     */
+    private final Long to;
+
+    /**
+     * Select only FlowFiles with this attribute (null for any attributes).
+     */
+    private final String attribute;
+
+    /**
+     * Select only FlowFiles with an attribute value matching this expression (null for any value).
+     */
+    private final Pattern value;
+
+    /**
+     * Maximum total content size of the FlowFiles to select.
+     */
+    private final long maxBytes;
+
+    private StateFilter(final Long since, final Set<Long> ids, final Long from, final Long to,
+                        final String attribute, final Pattern value, final long maxBytes) {
+        this.since = since;
+        this.ids = ids;
+        this.from = from;
+        this.to = to;
+        this.attribute = attribute;
+        this.value = value;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return a filter selecting all held FlowFiles
+     */
+    public static StateFilter all() {
+        return new StateFilter(null, null, null, null, null, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Parse a filter from request parameters (see {@link Probe.Export}).  Times are given as ISO-8601 instants, or as
+     * epoch milliseconds; ids as a comma-separated list.
+     *
+     * @param parameters the lookup of a request parameter by name (returning null for a parameter not given)
+     * @return the filter
+     * @throws IllegalArgumentException on a malformed parameter
+     */
+    public static StateFilter parse(final Function<String, String> parameters) {
+        final String attribute = toValue(parameters.apply(Probe.Export.ATTRIBUTE));
+        final String value = toValue(parameters.apply(Probe.Export.VALUE));
+        if ((attribute == null) && (value != null)) {
+            throw new IllegalArgumentException(String.format("%s requires %s",
+                    Probe.Export.VALUE, Probe.Export.ATTRIBUTE));
+        }
+        final Long maxBytes = toLong(parameters.apply(Probe.Export.MAX_BYTES));
+        if ((maxBytes != null) && (maxBytes <= 0L)) {
+            throw new IllegalArgumentException(String.format("%s must be positive", Probe.Export.MAX_BYTES));
+        }
+        return new StateFilter(toLong(parameters.apply(Probe.Export.SINCE)),
+                toIds(parameters.apply(Probe.Export.IDS)),
+                toTime(parameters.apply(Probe.Export.FROM)),
+                toTime(parameters.apply(Probe.Export.TO)),
+                attribute, (value == null) ? null : Pattern.compile(value),
+                (maxBytes == null) ? Long.MAX_VALUE : maxBytes);
+    }
+
+    /**
+     * Select FlowFiles to be exported.
+     *
+     * @param flowFiles the held FlowFiles
+     * @return the FlowFiles selected, and the cursor from which to resume
+     */
+    public StateSelection select(final Collection<ProbeFlowFile> flowFiles) {
+        final List<ProbeFlowFile> sorted = new ArrayList<>(flowFiles);
+        sorted.sort(Comparator.comparingLong(ProbeFlowFile::getSequence));
+        final List<ProbeFlowFile> selected = new ArrayList<>();
+        long cursor = (since == null) ? 0L : since;
+        long bytes = 0L;
+        boolean more = false;
+        for (int i = 0; (i < sorted.size()) && !more; ++i) {
+            final ProbeFlowFile flowFile = sorted.get(i);
+            final boolean isNew = (since == null) || (flowFile.getSequence() > since);
+            final boolean isSelected = isNew && accept(flowFile);
+            // the first FlowFile over budget is left for the next export
+            more = isSelected && !selected.isEmpty() && (flowFile.getSize() > (maxBytes - bytes));
+            if (isSelected && !more) {
+                selected.add(flowFile);
+                bytes += flowFile.getSize();
+            }
+            if (isNew && !more) {
+                cursor = flowFile.getSequence();
+            }
+        }
+        return new StateSelection(selected, cursor, more);
+    }
+
+    private boolean accept(final ProbeFlowFile flowFile) {
+        final long entryDate = flowFile.getEntryDate();
+        final String attributeValue = (attribute == null) ? null : flowFile.getAttribute(attribute);
+        return ((ids == null) || ids.contains(flowFile.getId()))
+                && ((from == null) || (entryDate >= from))
+                && ((to == null) || (entryDate < to))
+                && ((attribute == null) || (attributeValue != null))
+                && ((value == null) || value.matcher(attributeValue).matches());
+    }
+
+    private static String toValue(final String parameter) {
+        return ((parameter == null) || parameter.trim().isEmpty()) ? null : parameter.trim();
+    }
+
+    private static Long toLong(final String parameter) {
+        final String value = toValue(parameter);
+        return (value == null) ? null : Long.parseLong(value);
+    }
+
+    private static Long toTime(final String parameter) {
+        final String value = toValue(parameter);
+        final Long time;
+        if (value == null) {
+            time = null;
+        } else if (value.chars().allMatch(Character::isDigit)) {
+            time = Long.parseLong(value);
+        } else {
+            try {
+                time = Instant.parse(value).toEpochMilli();
+            } catch (final DateTimeParseException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+        return time;
+    }
+
+    private static Set<Long> toIds(final String parameter) {
+        final String value = toValue(parameter);
+        final Set<Long> ids = (value == null) ? null : new HashSet<>();
+        if (value != null) {
+            for (final String id : value.split(",")) {
+                ids.add(Long.parseLong(id.trim()));
+            }
+        }
+        return ids;
+    }
+}
@@ -38,12 +38,13 @@ public final class ContentView {
 
     private HttpResponse render(final ProbeProcessorState processorState, final String flowFileId) {
         final Optional<ProbeFlowFile> flowFile = processorState.getFlowFile(flowFileId);
-        return flowFile.map(this::render).orElseGet(() -> ServletUtils.toError(HttpURLConnection.HTTP_NOT_FOUND));
+        return flowFile.filter(ff -> !ff.isNull()).map(this::render)
+                .orElseGet(() -> ServletUtils.toError(HttpURLConnection.HTTP_NOT_FOUND));
     }
 
     private HttpResponse render(final ProbeFlowFile flowFile) {
         final String mimeType = flowFile.getAttribute(Probe.NiFi.ATTR_MIME_TYPE);
         final String contentType = (mimeType == null) ? Probe.Mime.TEXT_PLAIN : mimeType;
-        return ServletUtils.toResponse(HttpURLConnection.HTTP_OK, contentType, flowFile.getData());
+        return ServletUtils.toResponse(HttpURLConnection.HTTP_OK, contentType, flowFile.getContent());
     }
 }
@@ -14,12 +14,15 @@ package io.github.greyp9.nifi.pf.core.view;
 
 import io.github.greyp9.nifi.pf.core.ProbeUtils;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
 import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFileEditor;
 import io.github.greyp9.nifi.pf.core.servlet.ServletUtils;
 import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
 
 import javax.servlet.http.Part;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Map;
@@ -51,7 +54,7 @@ public final class EditorUpdate {
             flowFileEditor.setContent(Base64.getDecoder().decode(text));
         } else if (parameters.containsKey(Probe.App.CREATE)) {
             final Map<String, String> attributes = flowFileEditor.getAttributes();
-            final byte[] content = flowFileEditor.getContent().toByteArray();
+            final Content content = flowFileEditor.getContent();
             processorState.addFlowFile(processorState.create(System.currentTimeMillis(), attributes, content));
         } else if (parameters.containsKey(Probe.App.RESET)) {
             flowFileEditor.reset();
@@ -61,11 +64,14 @@ public final class EditorUpdate {
     public void update(final Collection<Part> parts) throws IOException {
         for (final Part part : parts) {
             if (part.getName().equals(Probe.App.UPLOAD_FILE)) {
-                final byte[] bytes = ProbeUtils.toBytes(part.getInputStream());
-                //logger.trace("UPLOAD: file=[{}], size=[{}], sha256=[{}]",
-                //        part.getName(), bytes.length, ProbeUtils.sha256(bytes));
-                flowFileEditor.setContent(bytes);
+                flowFileEditor.setContent(toContent(part));
             }
         }
     }
+
+    private static Content toContent(final Part part) throws IOException {
+        try (InputStream is = part.getInputStream()) {
+            return HeapContent.read(is, part.getSize());
+        }
+    }
 }
@@ -12,7 +12,6 @@
  */
 package io.github.greyp9.nifi.pf.core.view;
 
-import io.github.greyp9.nifi.pf.core.ProbeUtils;
 import io.github.greyp9.nifi.pf.core.common.Attribute;
 import io.github.greyp9.nifi.pf.core.common.Probe;
 import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFileEditor;
@@ -192,7 +191,7 @@ public final class EditorView {
                 new Attribute(Probe.Html.ACTION, requestURI),
                 new Attribute(Probe.Html.METHOD, Probe.Html.POST));
         final Element divFormEdit1 = XmlUtils.addChild(formEdit, Probe.Html.DIV);
-        final String contentFlowFile = ProbeUtils.fromBytesUTF8(flowFileEditor.getContent().toByteArray());
+        final String contentFlowFile = flowFileEditor.getText();
         final String content = contentFlowFile.isEmpty() ? "\n" : contentFlowFile;
         XmlUtils.addChild(divFormEdit1, Probe.Form.TEXTAREA, content,
                 new Attribute(Probe.Form.PLACEHOLDER, "enter text"),
@@ -217,6 +216,6 @@ public final class EditorView {
 
         final Element tbody = XmlUtils.addChild(table, Probe.Html.TBODY,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
-        XhtmlUtils.addRow(tbody, "Size (Bytes)", editor.getContent().toByteArray().length);
+        XhtmlUtils.addRow(tbody, "Size (Bytes)", editor.getContent().getSize());
     }
 }
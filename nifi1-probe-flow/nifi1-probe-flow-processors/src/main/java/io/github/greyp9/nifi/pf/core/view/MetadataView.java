@@ -92,5 +92,9 @@ public final class MetadataView {
         XhtmlUtils.addRow(tbody, "Lineage Start Index", flowFile.getLineageStartIndex());
         XhtmlUtils.addRow(tbody, "Last Queue Index", flowFile.getQueueDateIndex());
         XhtmlUtils.addRow(tbody, "Size (Bytes)", flowFile.getSize());
+        final long storedSize = flowFile.getStoredSize();
+        XhtmlUtils.addRow(tbody, "Stored Size (Bytes)", storedSize);
+        XhtmlUtils.addRow(tbody, "Compression Ratio", (storedSize == 0L)
+                ? "-" : String.format("%.2f", (double) flowFile.getSize() / storedSize));
     }
 }
@@ -13,6 +13,8 @@
 package io.github.greyp9.nifi.pf.core.view;
 
 import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.capture.ImportMode;
+import io.github.greyp9.nifi.pf.core.capture.ImportResult;
 import io.github.greyp9.nifi.pf.core.common.Probe;
 import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
 import org.slf4j.Logger;
@@ -20,7 +22,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.Part;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public final class ServiceUpdate {
     private final ProbeProcessorState processorState;
@@ -31,15 +36,27 @@ public final class ServiceUpdate {
 
     public void update(final Collection<Part> parts) throws IOException {
         final Logger logger = LoggerFactory.getLogger(getClass());
+        final boolean all = parts.stream().anyMatch(part -> part.getName().equals(Probe.App.UPLOAD_ALL));
+        final ImportMode mode = all ? ImportMode.ALL_OR_NOTHING : ImportMode.BEST_EFFORT;
         for (final Part part : parts) {
             if (part.getName().equals(Probe.App.UPLOAD_FILE)) {
-                final byte[] bytes = ProbeUtils.toBytes(part.getInputStream());
-                logger.info("UPLOAD: file=[{}], size=[{}], sha256=[{}]",
-                        part.getName(), bytes.length, ProbeUtils.sha256(bytes));
-                if (bytes.length > 0) {
-                    processorState.addState(bytes);
+                // the digest (for the log) is computed on another thread, while the part is imported
+                final CompletableFuture<String> sha256 = CompletableFuture.supplyAsync(() -> sha256(part));
+                if (part.getSize() > 0L) {
+                    final ImportResult result = processorState.addState(part::getInputStream, mode);
+                    logger.info("UPLOAD: mode=[{}], {}", mode, result);
                 }
+                logger.info("UPLOAD: file=[{}], size=[{}], sha256=[{}]",
+                        part.getName(), part.getSize(), sha256.exceptionally(Throwable::getMessage).join());
             }
         }
     }
+
+    private static String sha256(final Part part) {
+        try (InputStream is = part.getInputStream()) {
+            return ProbeUtils.sha256(is);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
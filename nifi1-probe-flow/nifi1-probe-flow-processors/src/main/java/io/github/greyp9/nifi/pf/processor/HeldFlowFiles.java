@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.collect.LongLinkedMap;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessSessionFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The original NiFi FlowFiles of the held FlowFiles, keyed by held FlowFile id.
+ * <p>
+ * Each original is migrated out of the <code>onTrigger()</code> session into a session of its own, which stays open
+ * while the FlowFile is held.  The FlowFile keeps its content claim, attributes and lineage.  When the held FlowFile
+ * is routed without modification, the original is migrated into the current session and transferred, with no content
+ * written.  When it is dropped or evicted, the original is migrated and removed.  Rolling back the session of an
+ * original returns it to its upstream queue.  When the processor is stopped, the originals are removed, and the held
+ * copies are kept.
+ * <p>
+ * As each original keeps a session open (and counted in flight upstream), at most {@link #MAX_HELD} originals are
+ * held.  Past that, the caller keeps only the copy held by the processor.
+ */
+final class HeldFlowFiles {
+
+    /**
+     * Sessions holding original FlowFiles, indexed by held FlowFile id.
+     */
+    private final LongLinkedMap<Held> held = new LongLinkedMap<>();
+
+    /**
+     * Move a FlowFile out of the current session, into a new session which holds it (unless {@link #MAX_HELD}
+     * originals are already held).
+     *
+     * @param sessionFactory source of the new session
+     * @param session        the current session, which owns the FlowFile
+     * @param id             the id of the held FlowFile
+     * @param flowFile       the original NiFi FlowFile
+     * @return true, if the original is held; false, if it is left in the current session
+     */
+    boolean hold(final ProcessSessionFactory sessionFactory, final ProcessSession session,
+                 final long id, final FlowFile flowFile) {
+        final boolean hold = (held.size() < MAX_HELD);
+        if (hold) {
+            final ProcessSession sessionHeld = sessionFactory.createSession();
+            session.migrate(sessionHeld, Collections.singleton(flowFile));
+            held.put(id, new Held(id, sessionHeld, flowFile));
+        }
+        return hold;
+    }
+
+    /**
+     * Move a held original FlowFile into the current session.
+     *
+     * @param session the current session
+     * @param id      the id of the held FlowFile
+     * @return the original NiFi FlowFile, now owned by the current session; or null if none is held for the id
+     */
+    FlowFile take(final ProcessSession session, final long id) {
+        final Held entry = held.remove(id);
+        if (entry != null) {
+            entry.session.migrate(session, Collections.singleton(entry.flowFile));
+        }
+        return (entry == null) ? null : entry.flowFile;
+    }
+
+    /**
+     * Return a held original FlowFile to its upstream queue.
+     *
+     * @param id the id of the held FlowFile
+     */
+    void rollback(final long id) {
+        final Held entry = held.remove(id);
+        if (entry != null) {
+            entry.session.rollback();
+        }
+    }
+
+    /**
+     * Drop all held original FlowFiles, so that the copies held by the processor are the only instances.  An original
+     * whose removal cannot be committed is returned to its upstream queue instead.
+     *
+     * @param dropped  the ids of the held FlowFiles whose originals were dropped (appended to)
+     * @param returned the ids of the held FlowFiles whose originals were returned upstream (appended to)
+     */
+    void dropAll(final List<Long> dropped, final List<Long> returned) {
+        Held entry;
+        while ((entry = held.removeFirst()) != null) {
+            try {
+                entry.session.remove(entry.flowFile);
+                entry.session.commit();
+                dropped.add(entry.id);
+            } catch (final RuntimeException e) {
+                entry.session.rollback();
+                returned.add(entry.id);
+            }
+        }
+    }
+
+    /**
+     * An original FlowFile, and the session which owns it.
+     */
+    private static final class Held {
+        private final long id;
+        private final ProcessSession session;
+        private final FlowFile flowFile;
+
+        private Held(final long id, final ProcessSession session, final FlowFile flowFile) {
+            this.id = id;
+            this.session = session;
+            this.flowFile = flowFile;
+        }
+    }
+
+    /**
+     * The maximum number of original FlowFiles held (each in a session of its own).
+     */
+    static final int MAX_HELD = 1000;
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.capture;
+
+import io.github.greyp9.nifi.pf.core.capture.Reservoir;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class ReservoirTest {
+
+    @Test
+    void testFill() {
+        final Reservoir<Long> reservoir = new Reservoir<>(4, new Random(0L));
+        for (long i = 0; i < 4; ++i) {
+            final int slot = reservoir.admit();
+            Assertions.assertEquals(i, slot);
+            Assertions.assertNull(reservoir.set(slot, i));
+        }
+        Assertions.assertEquals(4, reservoir.values().size());
+        Assertions.assertEquals(4, reservoir.reset().size());
+        Assertions.assertTrue(reservoir.values().isEmpty());
+        Assertions.assertEquals(0L, reservoir.getCountSeen());
+    }
+
+    @Test
+    void testUniform() {
+        final int sampleSize = 10;
+        final int streamSize = 1000;
+        final int trials = 2000;
+        final int buckets = 10;
+        final int[] counts = new int[buckets];
+        final Random random = new Random(1L);
+        for (int trial = 0; trial < trials; ++trial) {
+            final Reservoir<Integer> reservoir = new Reservoir<>(sampleSize, random);
+            for (int i = 0; i < streamSize; ++i) {
+                final int slot = reservoir.admit();
+                if (slot >= 0) {
+                    reservoir.set(slot, i);
+                }
+            }
+            final List<Integer> values = reservoir.values();
+            Assertions.assertEquals(sampleSize, values.size());
+            for (final Integer value : values) {
+                ++counts[value / (streamSize / buckets)];
+            }
+        }
+        // each bucket of the stream should hold about one tenth of the sampled items
+        final int expected = trials * sampleSize / buckets;
+        for (final int count : counts) {
+            Assertions.assertTrue(Math.abs(count - expected) < (expected / 10), Integer.toString(count));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.collect;
+
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactAttributesTest {
+
+    @Test
+    void testMapContract() {
+        final Map<String, String> source = new HashMap<>();
+        source.put("uuid", "1234");
+        source.put("filename", "a.json");
+        source.put("path", "./");
+        final Map<String, String> attributes = CompactAttributes.copyOf(source);
+        assertEquals(source, attributes);
+        assertEquals(source.hashCode(), attributes.hashCode());
+        assertEquals("a.json", attributes.get("filename"));
+        assertNull(attributes.get("mime.type"));
+        assertNull(attributes.get(1));
+        assertTrue(attributes.containsKey("path"));
+        assertFalse(attributes.containsKey("size"));
+        assertEquals(Arrays.asList("filename", "path", "uuid"), new ArrayList<>(attributes.keySet()));
+        assertThrows(UnsupportedOperationException.class, () -> attributes.put("size", "0"));
+        assertThrows(UnsupportedOperationException.class, () -> attributes.remove("uuid"));
+
+        // a compact copy is not copied again
+        assertSame(attributes, CompactAttributes.copyOf(attributes));
+        assertTrue(CompactAttributes.copyOf(new HashMap<>()).isEmpty());
+    }
+
+    @Test
+    void testCopyWithAttribute() {
+        final Map<String, String> source = new HashMap<>();
+        source.put("uuid", "1234");
+        final Map<String, String> attributes = CompactAttributes.copyOf(source, "flowfileIdIn", "7");
+        assertEquals(2, attributes.size());
+        assertEquals("7", attributes.get("flowfileIdIn"));
+        final Map<String, String> attributesReplaced = CompactAttributes.copyOf(attributes, "uuid", "5678");
+        assertEquals(2, attributesReplaced.size());
+        assertEquals("5678", attributesReplaced.get("uuid"));
+        assertEquals("1234", attributes.get("uuid"));
+    }
+
+    @Test
+    void testSharedNames() {
+        final Map<String, String> source1 = new HashMap<>();
+        source1.put(new String("filename".toCharArray()), "a.json");
+        final Map<String, String> source2 = new HashMap<>();
+        source2.put(new String("filename".toCharArray()), "b.json");
+        final String name1 = CompactAttributes.copyOf(source1).keySet().iterator().next();
+        final String name2 = CompactAttributes.copyOf(source2).keySet().iterator().next();
+        assertSame(name1, name2);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.collect;
+
+import io.github.greyp9.nifi.pf.core.collect.LongLinkedMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongLinkedMapTest {
+
+    @Test
+    void testInsertionOrder() {
+        final LongLinkedMap<String> map = new LongLinkedMap<>();
+        map.put(3L, "c");
+        map.put(1L, "a");
+        map.put(2L, "b");
+        assertNull(map.put(4L, "d"));
+        assertEquals("a", map.put(1L, "A"));
+        assertEquals(Arrays.asList("c", "A", "b", "d"), map.values());
+        assertEquals("b", map.remove(2L));
+        assertNull(map.remove(2L));
+        assertFalse(map.remove(3L, "x"));
+        assertTrue(map.remove(3L, "c"));
+        assertEquals(Arrays.asList("A", "d"), map.values());
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testRandomOperations() {
+        final LongLinkedMap<Long> map = new LongLinkedMap<>();
+        final Map<Long, Long> expected = new LinkedHashMap<>();
+        final Random random = new Random(0L);
+        for (int i = 0; i < 200_000; ++i) {
+            final long key = random.nextInt(5_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.putIfAbsent(key, key), map.containsKey(key) ? map.get(key) : map.put(key, key));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.values()), map.values());
+        for (final Long key : expected.keySet()) {
+            assertEquals(key, map.get(key));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.content;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class CompressTest {
+
+    @Test
+    void testCompress() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final ContentStore contentStore = new ContentStore(null, Long.MAX_VALUE, Long.MAX_VALUE, 0L, false, true);
+        final byte[] data = toText(100000);
+        final Content content = contentStore.place(new HeapContent(data), null);
+        Assertions.assertEquals(data.length, contentStore.getHeapUsed());
+
+        final CompletableFuture<Content> future = new CompletableFuture<>();
+        Assertions.assertTrue(contentStore.compressLater(content, future::complete));
+        final Content compressed = future.get(10L, TimeUnit.SECONDS);
+        content.release();
+        Assertions.assertEquals(data.length, compressed.getSize());
+        Assertions.assertTrue(compressed.getStoredSize() * 5 < data.length);
+        Assertions.assertEquals(compressed.getStoredSize(), contentStore.getHeapUsed());
+
+        // compressed content is inflated as it is read, in full or in part
+        Assertions.assertArrayEquals(data, compressed.toBytes());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        compressed.writeTo(os);
+        Assertions.assertArrayEquals(data, os.toByteArray());
+        try (InputStream is = compressed.newInputStream()) {
+            Assertions.assertArrayEquals(data, ProbeUtils.toBytes(is));
+        }
+        final byte[] buffer = new byte[100];
+        Assertions.assertEquals(100, compressed.read(50000L, buffer, 0, buffer.length));
+        Assertions.assertEquals(data[50000], buffer[0]);
+        Assertions.assertEquals(-1, compressed.read(data.length, buffer, 0, buffer.length));
+
+        // incompressible content is left as is
+        final byte[] random = new byte[100000];
+        new Random(0L).nextBytes(random);
+        final CompletableFuture<Content> futureRandom = new CompletableFuture<>();
+        contentStore.compressLater(contentStore.place(new HeapContent(random), null), futureRandom::complete);
+        contentStore.compressLater(content, c -> futureRandom.complete(null));
+        Assertions.assertNull(futureRandom.get(10L, TimeUnit.SECONDS));
+
+        compressed.release();
+        contentStore.close();
+        Assertions.assertFalse(contentStore.compressLater(compressed, future::complete));
+    }
+
+    @Test
+    void testCompressHeld() throws InterruptedException {
+        final String pid = "pidA";
+        final ContentStore contentStore = new ContentStore(null, Long.MAX_VALUE, Long.MAX_VALUE, 0L, true, true);
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 150000L, 0,
+                EvictionPolicy.REJECT, contentStore, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final byte[] data = toText(100000);
+
+        // once compressed, held content counts toward the processor limit at its compressed size
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        awaitMemorySize(processorState, flowFile1);
+        Assertions.assertArrayEquals(data, flowFile1.getData());
+
+        final byte[] data2 = toText(100001);
+        final ProbeFlowFile flowFile2 = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), data2);
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        awaitMemorySize(processorState, flowFile1, flowFile2);
+
+        // clones share the (compressed) content
+        processorState.actionFlowFile(pid, String.format("[%d][CLONE]", flowFile1.getId()), null);
+        Assertions.assertEquals(3, processorState.flowFileCount());
+        final long overheadSize = processorState.getFlowFiles().stream()
+                .mapToLong(ProbeFlowFile::getOverheadSize).sum();
+        Assertions.assertEquals(flowFile1.getStoredSize() + flowFile2.getStoredSize() + overheadSize,
+                processorState.getMemorySize());
+
+        for (final ProbeFlowFile flowFile : processorState.getFlowFiles()) {
+            processorState.actionFlowFile(pid, Long.toString(flowFile.getId()), "DROP", null);
+        }
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+        Assertions.assertEquals(0L, contentStore.getHeapUsed());
+    }
+
+    /**
+     * Wait for the (background) compression of the content of the FlowFiles to be counted by the processor.
+     */
+    private static void awaitMemorySize(final ProbeProcessorState processorState,
+                                        final ProbeFlowFile... flowFiles) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10L);
+        boolean compressed = false;
+        while (!compressed && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10L);
+            long retainedSize = 0L;
+            compressed = true;
+            for (final ProbeFlowFile flowFile : flowFiles) {
+                retainedSize += flowFile.getRetainedSize();
+                compressed &= (flowFile.getStoredSize() < flowFile.getSize());
+            }
+            compressed &= (processorState.getMemorySize() == retainedSize);
+        }
+        Assertions.assertTrue(compressed);
+    }
+
+    private static byte[] toText(final int size) {
+        final StringBuilder buffer = new StringBuilder();
+        for (int i = 0; buffer.length() < size; ++i) {
+            buffer.append(String.format("{\"id\":%d,\"name\":\"item-%d\",\"value\":%d}%n", i, i % 100, i * 7));
+        }
+        return ProbeUtils.toBytesUTF8(buffer.substring(0, size));
+    }
+}
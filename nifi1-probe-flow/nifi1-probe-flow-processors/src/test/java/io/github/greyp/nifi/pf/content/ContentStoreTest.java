@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.content;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class ContentStoreTest {
+
+    @Test
+    void testSpill() throws IOException {
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final ContentStore contentStore = new ContentStore(directory, 1024L, 2048L, 0L);
+        final byte[] small = new byte[1000];
+        final byte[] large = new byte[4096];
+        new Random(0L).nextBytes(large);
+
+        // small content stays on heap, until the heap budget is used
+        final Content content1 = contentStore.place(new HeapContent(small));
+        final Content content2 = contentStore.place(new HeapContent(small));
+        final Content content3 = contentStore.place(new HeapContent(small));
+        Assertions.assertTrue(content1 instanceof HeapContent);
+        Assertions.assertTrue(content2 instanceof HeapContent);
+        Assertions.assertFalse(content3 instanceof HeapContent);
+        Assertions.assertEquals(2000L, contentStore.getHeapUsed());
+
+        // large content is spilled, and read back through the file mapping
+        final Content content4 = contentStore.place(new HeapContent(large));
+        Assertions.assertFalse(content4 instanceof HeapContent);
+        Assertions.assertEquals(5096L, contentStore.getSpillUsed());
+        Assertions.assertArrayEquals(large, content4.toBytes());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        content4.writeTo(os);
+        Assertions.assertArrayEquals(large, os.toByteArray());
+        Assertions.assertEquals(1, contentStore.getSegmentCount());
+
+        content1.release();
+        content1.release();
+        content4.release();
+        Assertions.assertEquals(1000L, contentStore.getHeapUsed());
+        Assertions.assertEquals(1000L, contentStore.getSpillUsed());
+
+        contentStore.close();
+        Assertions.assertFalse(Files.exists(directory));
+        Files.delete(directory.getParent());
+    }
+
+    @Test
+    void testHeapOnly() throws IOException {
+        final ContentStore contentStore = new ContentStore();
+        final Content content = contentStore.place(new HeapContent(new byte[1 << 20]));
+        Assertions.assertTrue(content instanceof HeapContent);
+        Assertions.assertFalse(contentStore.isSpillEnabled());
+        content.release();
+        Assertions.assertEquals(0L, contentStore.getHeapUsed());
+        contentStore.close();
+    }
+
+    @Test
+    void testOffHeap() throws IOException {
+        final ContentStore contentStore = new ContentStore(null, 1024L, 2048L, 8L * 1024L * 1024L);
+        final byte[] large = new byte[100 * 1024];
+        new Random(0L).nextBytes(large);
+
+        // large content is held off heap, in whole pages, and read back
+        final Content content1 = contentStore.place(new HeapContent(large));
+        Assertions.assertFalse(content1 instanceof HeapContent);
+        Assertions.assertEquals(128L * 1024L, contentStore.getOffHeapUsed());
+        Assertions.assertEquals(4L * 1024L * 1024L, contentStore.getOffHeapReserved());
+        Assertions.assertArrayEquals(large, content1.toBytes());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        content1.writeTo(os);
+        Assertions.assertArrayEquals(large, os.toByteArray());
+
+        // pages are reused once released; the slab is kept
+        content1.release();
+        content1.release();
+        Assertions.assertEquals(0L, contentStore.getOffHeapUsed());
+        final Content content2 = contentStore.place(new HeapContent(large));
+        Assertions.assertEquals(4L * 1024L * 1024L, contentStore.getOffHeapReserved());
+
+        // content beyond the off-heap budget (with no spill directory) is held on heap
+        final Content content3 = contentStore.place(new HeapContent(new byte[8 * 1024 * 1024]));
+        Assertions.assertTrue(content3 instanceof HeapContent);
+        Assertions.assertEquals(8L * 1024L * 1024L, contentStore.getHeapUsed());
+
+        contentStore.close();
+        content2.release();
+        Assertions.assertEquals(0L, contentStore.getOffHeapReserved());
+    }
+
+    @Test
+    void testOffHeapReleasedWhileRead() throws IOException {
+        final ContentStore contentStore = new ContentStore(null, 1024L, 2048L, 8L * 1024L * 1024L);
+        final byte[] large = new byte[100 * 1024];
+        new Random(0L).nextBytes(large);
+        final byte[] other = new byte[large.length];
+        final Content content1 = contentStore.place(new HeapContent(large));
+        final Content[] content2 = new Content[1];
+
+        // content released during a read keeps its pages until the read ends; they are not reused meanwhile
+        final ByteArrayOutputStream os = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(final byte[] b, final int off, final int len) {
+                if (content2[0] == null) {
+                    content1.release();
+                    Assertions.assertThrows(IOException.class, content1::toBytes);
+                    content2[0] = Assertions.assertDoesNotThrow(() -> contentStore.place(new HeapContent(other)));
+                }
+                super.write(b, off, len);
+            }
+        };
+        content1.writeTo(os);
+        Assertions.assertArrayEquals(large, os.toByteArray());
+        Assertions.assertEquals(128L * 1024L, contentStore.getOffHeapUsed());
+        Assertions.assertArrayEquals(other, content2[0].toBytes());
+
+        // the pages are freed once the read ends
+        content2[0].release();
+        Assertions.assertEquals(0L, contentStore.getOffHeapUsed());
+        contentStore.close();
+    }
+
+    @Test
+    void testOffHeapTrim() throws IOException {
+        final long slabSize = 4L * 1024L * 1024L;
+        final ContentStore contentStore = new ContentStore(null, 1024L, 2048L, 4L * slabSize);
+        final byte[] slab = new byte[(int) slabSize];
+        new Random(0L).nextBytes(slab);
+        final Content content1 = contentStore.place(new HeapContent(slab));
+        final Content content2 = contentStore.place(new HeapContent(slab));
+        final Content content3 = contentStore.place(new HeapContent(slab));
+        Assertions.assertEquals(3L * slabSize, contentStore.getOffHeapReserved());
+
+        // a free slab is kept while it is the only one; the next slab freed is dropped
+        content1.release();
+        Assertions.assertEquals(3L * slabSize, contentStore.getOffHeapReserved());
+        content2.release();
+        Assertions.assertEquals(2L * slabSize, contentStore.getOffHeapReserved());
+        content3.release();
+        Assertions.assertEquals(slabSize, contentStore.getOffHeapReserved());
+        Assertions.assertEquals(0L, contentStore.getOffHeapUsed());
+
+        // the free slab is reused; the page numbers of a dropped slab are reused for a new slab
+        final Content content4 = contentStore.place(new HeapContent(slab));
+        final Content content5 = contentStore.place(new HeapContent(slab));
+        Assertions.assertEquals(2L * slabSize, contentStore.getOffHeapReserved());
+        Assertions.assertArrayEquals(slab, content4.toBytes());
+        Assertions.assertArrayEquals(slab, content5.toBytes());
+        content4.release();
+        content5.release();
+        contentStore.close();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.content;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class DedupTest {
+
+    @Test
+    void testDedup() throws IOException {
+        final String pid = "pidA";
+        final ContentStore contentStore = new ContentStore(null, 1024L, 1024L * 1024L, 0L, true);
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 8000L, 0,
+                EvictionPolicy.REJECT, contentStore, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final byte[] data = new byte[1000];
+        new Random(0L).nextBytes(data);
+
+        // identical content is stored (and counted) once; each FlowFile counts its own overhead
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        Assertions.assertEquals(1000L + overheadSize(processorState), processorState.getMemorySize());
+        Assertions.assertEquals(1000L, contentStore.getHeapUsed());
+        Assertions.assertEquals(2000L, contentStore.getDedupSharedSize());
+        Assertions.assertEquals(1000L, contentStore.getDedupStoredSize());
+
+        // clones share content
+        for (int i = 0; i < 8; ++i) {
+            processorState.actionFlowFile(pid, Long.toString(flowFile1.getId()), Probe.Action.CLONE, null);
+        }
+        Assertions.assertEquals(10, processorState.flowFileCount());
+        Assertions.assertEquals(1000L + overheadSize(processorState), processorState.getMemorySize());
+        Assertions.assertEquals(1, contentStore.getDedupCount());
+
+        // distinct content is counted
+        final ProbeFlowFile flowFile3 = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), new byte[1000]);
+        Assertions.assertNull(processorState.addFlowFile(flowFile3));
+        Assertions.assertEquals(2000L + overheadSize(processorState), processorState.getMemorySize());
+
+        // content is released with its last reference
+        processorState.actionFlowFile(pid, Long.toString(flowFile1.getId()), Probe.Action.DROP, null);
+        Assertions.assertArrayEquals(data, flowFile2.getData());
+        final List<ProbeFlowFile> flowFiles = processorState.getFlowFiles();
+        for (final ProbeFlowFile flowFile : flowFiles) {
+            if (flowFile != flowFile3) {
+                processorState.actionFlowFile(pid, Long.toString(flowFile.getId()), Probe.Action.DROP, null);
+            }
+        }
+        Assertions.assertEquals(flowFile3.getRetainedSize(), processorState.getMemorySize());
+        Assertions.assertEquals(1000L, contentStore.getHeapUsed());
+        Assertions.assertEquals(1, contentStore.getDedupCount());
+        contentStore.close();
+    }
+
+    private static long overheadSize(final ProbeProcessorState processorState) {
+        return processorState.getFlowFiles().stream().mapToLong(ProbeFlowFile::getOverheadSize).sum();
+    }
+}
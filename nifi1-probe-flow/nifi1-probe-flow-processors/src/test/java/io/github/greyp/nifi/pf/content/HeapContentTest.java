@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.content;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class HeapContentTest {
+
+    @Test
+    void testReadChunked() throws IOException {
+        final byte[] data = new byte[1_000_000];
+        new Random(0L).nextBytes(data);
+        // size known, unknown, overstated, understated
+        for (final long sizeHint : new long[]{data.length, -1L, data.length + 100L, data.length - 300_000L, 0L}) {
+            final HeapContent content = HeapContent.read(new ByteArrayInputStream(data), sizeHint);
+            Assertions.assertEquals(data.length, content.getSize());
+            Assertions.assertArrayEquals(data, content.toBytes());
+            assertContent(data, content);
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        final HeapContent content = HeapContent.read(new ByteArrayInputStream(new byte[0]), -1L);
+        Assertions.assertEquals(0L, content.getSize());
+        Assertions.assertEquals(0, content.toBytes().length);
+        Assertions.assertEquals(-1, content.newInputStream().read());
+    }
+
+    @Test
+    void testStoreTiers() throws IOException {
+        final byte[] data = new byte[3_000_000];
+        new Random(1L).nextBytes(data);
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final ContentStore contentStore = new ContentStore(directory, 1024L, 1024L, 4L * 1024L * 1024L);
+        final HeapContent content = HeapContent.read(new ByteArrayInputStream(data), -1L);
+        // off heap, then (off-heap budget used) spilled
+        final Content content1 = contentStore.place(content);
+        final Content content2 = contentStore.place(content);
+        Assertions.assertEquals(46L * 64L * 1024L, contentStore.getOffHeapUsed());
+        Assertions.assertEquals(data.length, contentStore.getSpillUsed());
+        assertContent(data, content1);
+        assertContent(data, content2);
+        content1.release();
+        Assertions.assertThrows(IOException.class, () -> content1.read(0L, new byte[1], 0, 1));
+        contentStore.close();
+        Files.delete(directory.getParent());
+    }
+
+    private static void assertContent(final byte[] data, final Content content) throws IOException {
+        // stream
+        try (InputStream is = content.newInputStream()) {
+            Assertions.assertArrayEquals(data, ProbeUtils.toBytes(is, -1L));
+        }
+        // channel
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (ReadableByteChannel channel = content.newChannel()) {
+            final ByteBuffer buffer = ByteBuffer.allocate(10_000);
+            while (channel.read(buffer) >= 0) {
+                os.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        Assertions.assertArrayEquals(data, os.toByteArray());
+        // random access, across chunk and page boundaries
+        final Random random = new Random(2L);
+        for (int i = 0; i < 100; ++i) {
+            final int position = random.nextInt(data.length);
+            final byte[] buffer = new byte[random.nextInt(100_000) + 1];
+            final int count = content.read(position, buffer, 0, buffer.length);
+            Assertions.assertTrue(count > 0);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, position, position + count),
+                    Arrays.copyOf(buffer, count));
+        }
+        Assertions.assertEquals(-1, content.read(data.length, new byte[1], 0, 1));
+    }
+}
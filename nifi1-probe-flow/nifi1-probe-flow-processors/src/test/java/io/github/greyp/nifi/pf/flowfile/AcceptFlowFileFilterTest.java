@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.flowfile;
+
+import io.github.greyp9.nifi.pf.core.flowfile.AcceptFlowFileFilter;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import org.apache.nifi.processor.FlowFileFilter.FlowFileFilterResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+public class AcceptFlowFileFilterTest {
+
+    private static ProbeFlowFile create(final long id, final String type, final int size) {
+        return new ProbeFlowFile(id, System.currentTimeMillis(), Collections.singletonMap("type", type),
+                new byte[size]);
+    }
+
+    @Test
+    void testStopAtByteBudget() {
+        final AcceptFlowFileFilter filter = new AcceptFlowFileFilter(10, 1000L, null);
+        Assertions.assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(create(1L, "a", 400)));
+        Assertions.assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(create(2L, "a", 400)));
+        Assertions.assertEquals(FlowFileFilterResult.REJECT_AND_TERMINATE, filter.filter(create(3L, "a", 400)));
+        Assertions.assertEquals(2, filter.getCount());
+        Assertions.assertEquals(800L, filter.getBytes());
+        Assertions.assertTrue(filter.isBudgetExceeded());
+    }
+
+    @Test
+    void testStopAtCount() {
+        final AcceptFlowFileFilter filter = new AcceptFlowFileFilter(2, 1000L, null);
+        Assertions.assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(create(1L, "a", 10)));
+        Assertions.assertEquals(FlowFileFilterResult.ACCEPT_AND_TERMINATE, filter.filter(create(2L, "a", 10)));
+        Assertions.assertFalse(filter.isBudgetExceeded());
+    }
+
+    @Test
+    void testSkipByAttribute() {
+        final AcceptFlowFileFilter filter = new AcceptFlowFileFilter(
+                10, 1000L, f -> "a".equals(f.getAttribute("type")));
+        Assertions.assertEquals(FlowFileFilterResult.REJECT_AND_CONTINUE, filter.filter(create(1L, "b", 900)));
+        Assertions.assertEquals(FlowFileFilterResult.ACCEPT_AND_CONTINUE, filter.filter(create(2L, "a", 900)));
+        Assertions.assertEquals(1, filter.getCount());
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.io;
+
+import io.github.greyp9.nifi.pf.core.io.ContentReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContentReaderTest {
+
+    @Test
+    void testReadSizeKnown() throws IOException {
+        final byte[] content = content(100_000);
+        assertArrayEquals(content, ContentReader.read(new ByteArrayInputStream(content), content.length));
+    }
+
+    @Test
+    void testReadSizeUnknown() throws IOException {
+        final byte[] content = content(200_000);
+        assertArrayEquals(content, ContentReader.read(new ByteArrayInputStream(content), -1L));
+        assertEquals(0, ContentReader.read(new ByteArrayInputStream(new byte[0]), -1L).length);
+    }
+
+    @Test
+    void testReadSizeHintIncorrect() throws IOException {
+        final byte[] content = content(70_000);
+        assertArrayEquals(content, ContentReader.read(new ByteArrayInputStream(content), 1_000L));
+        assertArrayEquals(content, ContentReader.read(new ByteArrayInputStream(content), 100_000L));
+    }
+
+    @Test
+    void testCopy() throws IOException {
+        final byte[] content = content(150_000);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(content.length, ContentReader.copy(new ByteArrayInputStream(content), os));
+        assertArrayEquals(content, os.toByteArray());
+    }
+
+    private static byte[] content(final int size) {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
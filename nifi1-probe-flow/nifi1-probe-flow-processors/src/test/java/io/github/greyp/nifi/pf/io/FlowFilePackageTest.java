@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.io;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.io.FlowFileReader;
+import io.github.greyp9.nifi.pf.core.io.FlowFileWriter;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FlowFilePackageTest {
+
+    private static byte[] write(final StateFormat format, final Map<String, String> attributes,
+                                final byte[]... contents) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FlowFileWriter writer = format.newWriter(os)) {
+            for (final byte[] content : contents) {
+                writer.write(attributes, new HeapContent(content));
+            }
+        }
+        return os.toByteArray();
+    }
+
+    @Test
+    void testFraming() throws IOException {
+        final byte[] bytes = write(StateFormat.FLOWFILE_V3,
+                Collections.singletonMap("filename", "a.txt"), ProbeUtils.toBytesUTF8("hello"));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(ProbeUtils.toBytesUTF8("NiFiFF3"));
+        expected.write(new byte[] {0, 1, 0, 8});
+        expected.write(ProbeUtils.toBytesUTF8("filename"));
+        expected.write(new byte[] {0, 5});
+        expected.write(ProbeUtils.toBytesUTF8("a.txt"));
+        expected.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 5});
+        expected.write(ProbeUtils.toBytesUTF8("hello"));
+        assertArrayEquals(expected.toByteArray(), bytes);
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        // an attribute value too long for a 2-byte length; content larger than the stream buffers; empty content
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("filename", "data.bin");
+        final char[] chars = new char[70000];
+        Arrays.fill(chars, 'x');
+        attributes.put("long", new String(chars));
+        final byte[] content = new byte[200000];
+        new Random(0L).nextBytes(content);
+        for (final StateFormat format : StateFormat.values()) {
+            final byte[] bytes = write(format, attributes, content, new byte[0], content);
+            assertEquals(format, StateFormat.detect(() -> new ByteArrayInputStream(bytes)));
+            try (InputStream is = new ByteArrayInputStream(bytes); FlowFileReader reader = format.newReader(is)) {
+                assertEquals(attributes, reader.next());
+                assertEquals(content.length, reader.skipContent());
+                assertEquals(attributes, reader.next());
+                assertEquals(0, ProbeUtils.toBytes(reader.getContent()).length);
+                assertEquals(attributes, reader.next());
+                assertArrayEquals(content, ProbeUtils.toBytes(reader.getContent()));
+                assertNull(reader.next());
+            }
+        }
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        final byte[] bytes = write(StateFormat.FLOWFILE_V3, Collections.emptyMap(), new byte[1000]);
+        final byte[] truncated = Arrays.copyOf(bytes, bytes.length - 10);
+        try (InputStream is = new ByteArrayInputStream(truncated);
+             FlowFileReader reader = StateFormat.FLOWFILE_V3.newReader(is)) {
+            assertEquals(Collections.emptyMap(), reader.next());
+            assertThrows(EOFException.class, reader::skipContent);
+        }
+    }
+}
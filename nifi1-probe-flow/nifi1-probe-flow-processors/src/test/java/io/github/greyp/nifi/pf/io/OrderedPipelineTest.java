@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.io;
+
+import io.github.greyp9.nifi.pf.core.io.OrderedPipeline;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class OrderedPipelineTest {
+
+    @Test
+    void testOrder() throws IOException {
+        for (final int threads : new int[] {1, 4}) {
+            final List<Integer> results = new ArrayList<>();
+            final Random random = new Random(0L);
+            try (OrderedPipeline<Integer> pipeline = new OrderedPipeline<>(threads, results::add)) {
+                for (int i = 0; i < 100; ++i) {
+                    final int value = i;
+                    final long delay = random.nextInt(3);
+                    // tasks finish out of order; results are passed on in order of submission
+                    pipeline.submit(() -> {
+                        Thread.sleep(delay);
+                        return value;
+                    });
+                }
+                pipeline.finish();
+            }
+            Assertions.assertEquals(100, results.size());
+            for (int i = 0; i < results.size(); ++i) {
+                Assertions.assertEquals(i, results.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    void testFailure() {
+        for (final int threads : new int[] {1, 4}) {
+            final List<Integer> results = new ArrayList<>();
+            final OrderedPipeline<Integer> pipeline = new OrderedPipeline<>(threads, results::add);
+            Assertions.assertThrows(IOException.class, () -> {
+                for (int i = 0; i < 10; ++i) {
+                    final int value = i;
+                    pipeline.submit(() -> {
+                        if (value == 5) {
+                            throw new IOException("task failed");
+                        }
+                        return value;
+                    });
+                }
+                pipeline.finish();
+            });
+            pipeline.close();
+            // results before the failed task are passed on; none after it
+            Assertions.assertEquals(5, results.size());
+        }
+    }
+}
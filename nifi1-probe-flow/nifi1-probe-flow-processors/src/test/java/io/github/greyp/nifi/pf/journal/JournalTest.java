@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.journal;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.journal.Journal;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.ProbeTransaction;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class JournalTest {
+
+    private static ProbeProcessorState createState(final Path directory) {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 1024L * 1024L, 0,
+                EvictionPolicy.REJECT, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        processorState.openJournal(directory);
+        Assertions.assertNotNull(processorState.getJournal());
+        return processorState;
+    }
+
+    private static byte[] createData(final int size, final long seed) {
+        final byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void testRestore() throws IOException {
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final ProbeProcessorState processorState = createState(directory);
+        final String pid = processorState.getId();
+        final byte[] data1 = createData(1000, 1L);
+        final byte[] data2 = createData(2000, 2L);
+        final ProbeFlowFile flowFile1 = processorState.create(
+                System.currentTimeMillis(), Collections.singletonMap("name", "one"), data1);
+        final ProbeFlowFile flowFile2 = processorState.create(
+                System.currentTimeMillis(), Collections.singletonMap("name", "two"), data2);
+        final ProbeFlowFile flowFile3 = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), data2);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        Assertions.assertNull(processorState.addFlowFile(flowFile3));
+        processorState.actionFlowFile(pid, Long.toString(flowFile1.getId()), Probe.Action.CLONE, null);
+        processorState.routeFlowFile(Long.toString(flowFile2.getId()), ProbeFlow.REL_OUTGOING.getName());
+        processorState.actionFlowFile(pid, Long.toString(flowFile3.getId()), Probe.Action.DROP, null);
+        Assertions.assertEquals(3, processorState.getJournal().getCount());
+        processorState.close();
+
+        // held FlowFiles are restored, with their ids and marks to route; content is read from the journal
+        final ProbeProcessorState processorStateRestored = createState(directory);
+        final List<ProbeFlowFile> flowFiles = processorStateRestored.getFlowFiles();
+        Assertions.assertEquals(3, flowFiles.size());
+        Assertions.assertEquals(flowFile1.getId(), flowFiles.get(0).getId());
+        Assertions.assertEquals(flowFile2.getId(), flowFiles.get(1).getId());
+        Assertions.assertEquals("one", flowFiles.get(2).getAttribute("name"));
+        Assertions.assertArrayEquals(data1, flowFiles.get(0).getData());
+        Assertions.assertArrayEquals(data1, flowFiles.get(2).getData());
+        Assertions.assertArrayEquals(data2, flowFiles.get(1).getData());
+        Assertions.assertEquals(1, processorStateRestored.flowFileRoutedCount());
+        final ProbeFlowFile flowFile4 = processorStateRestored.create(
+                System.currentTimeMillis(), Collections.emptyMap(), data1);
+        Assertions.assertTrue(flowFile4.getId() > flowFiles.get(2).getId());
+
+        // routed FlowFiles leave the journal
+        Assertions.assertEquals(flowFile2.getId(), processorStateRestored.drainTo().get(0).getId());
+        Assertions.assertEquals(2, processorStateRestored.getJournal().getCount());
+        processorStateRestored.close();
+        Assertions.assertEquals(2, createState(directory).flowFileCount());
+    }
+
+    @Test
+    void testRetire() throws IOException {
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final ProbeProcessorState processorState = createState(directory);
+        final byte[] data = createData(1000, 1L);
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile1, new ProbeTransaction()));
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile2, new ProbeTransaction()));
+        processorState.routeFlowFile(Long.toString(flowFile2.getId()), ProbeFlow.REL_OUTGOING.getName());
+        // FlowFiles held with their originals are not journaled
+        Assertions.assertEquals(0, processorState.getJournal().getCount());
+
+        // once their originals are dropped (the processor is stopped), the copies are journaled
+        processorState.retire(Arrays.asList(flowFile1.getId(), flowFile2.getId()), Collections.emptyList());
+        Assertions.assertEquals(2, processorState.getJournal().getCount());
+        processorState.close();
+        final ProbeProcessorState processorStateRestored = createState(directory);
+        Assertions.assertEquals(2, processorStateRestored.flowFileCount());
+        Assertions.assertEquals(1, processorStateRestored.flowFileRoutedCount());
+        Assertions.assertArrayEquals(data, processorStateRestored.getFlowFiles().get(0).getData());
+        processorStateRestored.close();
+    }
+
+    @Test
+    void testCommitCopy() throws IOException {
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final ProbeProcessorState processorState = createState(directory);
+        final byte[] data = createData(1000, 1L);
+        final ProbeFlowFile flowFile = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        final ProbeTransaction transaction = new ProbeTransaction();
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile, transaction));
+        // the original is removed with the session (past the limit of held originals): the copy is journaled on commit
+        transaction.copy(flowFile.getId());
+        Assertions.assertEquals(0, processorState.getJournal().getCount());
+        processorState.commit(transaction);
+        Assertions.assertEquals(1, processorState.getJournal().getCount());
+        processorState.close();
+        final ProbeProcessorState processorStateRestored = createState(directory);
+        Assertions.assertEquals(flowFile.getId(), processorStateRestored.getFlowFiles().get(0).getId());
+        Assertions.assertArrayEquals(data, processorStateRestored.getFlowFiles().get(0).getData());
+        processorStateRestored.close();
+    }
+
+    @Test
+    void testCompact() throws IOException {
+        final List<IOException> failures = new CopyOnWriteArrayList<>();
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final Journal journal = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        final byte[] data = createData(64 * 1024, 1L);
+        for (long id = 1L; id <= 100L; ++id) {
+            journal.add(id, id, Collections.singletonMap("id", Long.toString(id)), new HeapContent(data));
+            journal.addClone(id + 1000L, id, id);
+            if (id % 10L != 0L) {
+                journal.remove(id);
+                journal.remove(id + 1000L);
+            }
+        }
+        journal.route(10L, "success");
+        final long size = journal.getSize();
+        journal.compact();
+        Assertions.assertTrue(journal.getSize() < (size / 5L));
+        Assertions.assertEquals(1, journal.getCountCompacted());
+        Assertions.assertEquals(20, journal.getCount());
+        // content is read from the compacted file, clones still share it
+        final List<Journal.Entry> entries = journal.getEntries();
+        Assertions.assertEquals(10L, entries.get(0).getId());
+        Assertions.assertArrayEquals(data, entries.get(0).getContent().toBytes());
+        Assertions.assertSame(entries.get(0).getContent(), entries.get(1).getContent());
+        journal.add(2000L, 2000L, Collections.emptyMap(), null);
+        journal.close();
+
+        final Journal journalReopened = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        Assertions.assertEquals(21, journalReopened.getCount());
+        Assertions.assertEquals("success", journalReopened.getEntries().get(0).getRelationship());
+        Assertions.assertEquals("10", journalReopened.getEntries().get(0).getAttributes().get("id"));
+        Assertions.assertArrayEquals(data, journalReopened.getEntries().get(19).getContent().toBytes());
+        Assertions.assertNull(journalReopened.getEntries().get(20).getContent());
+        journalReopened.close();
+        Assertions.assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    void testWriteContent() throws IOException {
+        final List<IOException> failures = new CopyOnWriteArrayList<>();
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final Journal journal = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        final byte[] data1 = createData(1000, 1L);
+        final byte[] data2 = createData(2000, 2L);
+        // content written ahead of its record; the content of a FlowFile not then added is dead space
+        final Content written1 = journal.writeContent(1L, new HeapContent(data1));
+        final Content written2 = journal.writeContent(2L, new HeapContent(data2));
+        journal.add(1L, 1L, Collections.emptyMap(), new HeapContent(data1), written1);
+        Assertions.assertEquals(1, journal.getCount());
+        journal.close();
+
+        final Journal journalReopened = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        Assertions.assertEquals(1, journalReopened.getCount());
+        Assertions.assertArrayEquals(data1, journalReopened.getEntries().get(0).getContent().toBytes());
+        final long size = journalReopened.getSize();
+        journalReopened.compact();
+        Assertions.assertTrue(journalReopened.getSize() < (size - data2.length));
+        Assertions.assertArrayEquals(data1, journalReopened.getEntries().get(0).getContent().toBytes());
+        // content written before a compaction is written again with its record
+        journalReopened.add(2L, 2L, Collections.emptyMap(), new HeapContent(data2), written2);
+        journalReopened.close();
+        final Journal journalCompacted = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        Assertions.assertEquals(2, journalCompacted.getCount());
+        Assertions.assertArrayEquals(data2, journalCompacted.getEntries().get(1).getContent().toBytes());
+        journalCompacted.close();
+        Assertions.assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        final List<IOException> failures = new CopyOnWriteArrayList<>();
+        final Path directory = Files.createTempDirectory("probe-flow").resolve("pidA");
+        final Journal journal = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        final byte[] data = createData(1000, 1L);
+        journal.add(1L, 1L, Collections.emptyMap(), new HeapContent(data));
+        journal.add(2L, 2L, Collections.emptyMap(), new HeapContent(data));
+        journal.close();
+
+        // a record torn by a crash is cut from the journal
+        final Path path = directory.resolve("journal.log");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10L);
+        }
+        final Journal journalReopened = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        Assertions.assertEquals(1, journalReopened.getCount());
+        Assertions.assertTrue(journalReopened.getTruncated() > 0L);
+        Assertions.assertArrayEquals(data, journalReopened.getEntries().get(0).getContent().toBytes());
+        journalReopened.add(3L, 3L, Collections.emptyMap(), new HeapContent(data));
+        journalReopened.close();
+        final Journal journalReopened2 = new Journal(directory, Journal.SYNC_INTERVAL, failures::add);
+        Assertions.assertEquals(2, journalReopened2.getCount());
+        Assertions.assertEquals(0L, journalReopened2.getTruncated());
+        journalReopened2.close();
+        Assertions.assertTrue(failures.isEmpty());
+    }
+}
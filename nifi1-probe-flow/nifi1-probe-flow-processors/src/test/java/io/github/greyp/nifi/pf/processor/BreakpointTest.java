@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeBreakpointState;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+public class BreakpointTest {
+
+    @Test
+    void testBreakpointCounters() throws IOException {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, 1536L, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final ProbeBreakpointState breakpointState = new ProbeBreakpointState(ProbeFlow.REL_OUTGOING.getName(),
+                "filename=*.json", f -> f.getAttribute("filename").endsWith(".json"),
+                t -> t.toString().contains("error"));
+        processorState.setBreakpointState(breakpointState);
+
+        final String[][] inputs = {{"a.txt", "error"}, {"b.json", "ok"}, {"c.json", "error"}};
+        for (final String[] input : inputs) {
+            final ProbeFlowFile flowFile = processorState.create(System.currentTimeMillis(),
+                    Collections.singletonMap("filename", input[0]), input[1].getBytes(StandardCharsets.UTF_8));
+            if (breakpointState.matchesAttributes(flowFile) && breakpointState.matchesContent(flowFile.getContent())) {
+                Assertions.assertTrue(processorState.holdFlowFile(flowFile, null));
+            } else {
+                breakpointState.pass();
+            }
+        }
+        Assertions.assertEquals(3L, breakpointState.getCountEvaluated());
+        Assertions.assertEquals(1L, breakpointState.getCountMatched());
+        Assertions.assertEquals(2L, breakpointState.getCountPassed());
+        Assertions.assertEquals(1, processorState.flowFileCount());
+        Assertions.assertEquals("c.json", processorState.getFlowFiles().get(0).getAttribute("filename"));
+    }
+
+    @Test
+    void testBreakpointContentChunked() throws IOException {
+        final Pattern pattern = Pattern.compile("caf\u00e9");
+        final ProbeBreakpointState breakpointState = new ProbeBreakpointState(ProbeFlow.REL_OUTGOING.getName(),
+                "true", f -> true, t -> pattern.matcher(t).find());
+        // the match spans the boundary between chunks of content read from the session
+        final byte[] text = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        final byte[] data = new byte[(256 * 1024) + text.length];
+        Arrays.fill(data, (byte) ' ');
+        System.arraycopy(text, 0, data, (256 * 1024) - 2, text.length);
+        Assertions.assertTrue(breakpointState.matchesContent(
+                HeapContent.read(new ByteArrayInputStream(data), data.length)));
+        Assertions.assertFalse(breakpointState.matchesContent(
+                HeapContent.read(new ByteArrayInputStream(new byte[data.length]), data.length)));
+        Assertions.assertEquals(1L, breakpointState.getCountMatched());
+    }
+}
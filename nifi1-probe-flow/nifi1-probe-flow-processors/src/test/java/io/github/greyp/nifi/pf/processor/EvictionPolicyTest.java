@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+public class EvictionPolicyTest {
+
+    private static ProbeProcessorState createState(final long maxMemorySize, final int maxFlowFileCount,
+                                                   final EvictionPolicy evictionPolicy) {
+        return new ProbeProcessorState("pidA", "pidA", maxMemorySize, maxFlowFileCount, evictionPolicy,
+                Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+    }
+
+    private static ProbeFlowFile add(final ProbeProcessorState processorState, final int size) {
+        final ProbeFlowFile flowFile = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), new byte[size]);
+        Assertions.assertTrue(processorState.addFlowFileProcessSession(flowFile));
+        return flowFile;
+    }
+
+    private static boolean isHeld(final ProbeProcessorState processorState, final ProbeFlowFile flowFile) {
+        return processorState.getFlowFile(Long.toString(flowFile.getId())).isPresent();
+    }
+
+    @Test
+    void testRejectCount() {
+        final ProbeProcessorState processorState = createState(4096L, 2, EvictionPolicy.REJECT);
+        add(processorState, 10);
+        add(processorState, 10);
+        Assertions.assertFalse(processorState.isAdmissible(10));
+        final ProbeFlowFile flowFile = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), new byte[10]);
+        Assertions.assertFalse(processorState.addFlowFileProcessSession(flowFile));
+        Assertions.assertEquals(2, processorState.flowFileCount());
+        Assertions.assertEquals(1L, processorState.getCountRejected());
+        Assertions.assertEquals(0L, processorState.getCountEvicted());
+    }
+
+    @Test
+    void testDropOldestCount() {
+        final ProbeProcessorState processorState = createState(4096L, 2, EvictionPolicy.DROP_OLDEST);
+        final ProbeFlowFile flowFile1 = add(processorState, 10);
+        final ProbeFlowFile flowFile2 = add(processorState, 10);
+        Assertions.assertTrue(processorState.isAdmissible(10));
+        final ProbeFlowFile flowFile3 = add(processorState, 10);
+        Assertions.assertFalse(isHeld(processorState, flowFile1));
+        Assertions.assertTrue(isHeld(processorState, flowFile2));
+        Assertions.assertTrue(isHeld(processorState, flowFile3));
+        Assertions.assertEquals(flowFile2.getRetainedSize() + flowFile3.getRetainedSize(),
+                processorState.getMemorySize());
+        Assertions.assertEquals(1L, processorState.getCountEvicted());
+    }
+
+    @Test
+    void testDropLargestMemory() {
+        final ProbeProcessorState processorState = createState(1536L, 0, EvictionPolicy.DROP_LARGEST);
+        final ProbeFlowFile flowFile1 = add(processorState, 100);
+        final ProbeFlowFile flowFile2 = add(processorState, 600);
+        final ProbeFlowFile flowFile3 = add(processorState, 200);
+        final ProbeFlowFile flowFile4 = add(processorState, 300);
+        Assertions.assertTrue(isHeld(processorState, flowFile1));
+        Assertions.assertFalse(isHeld(processorState, flowFile2));
+        Assertions.assertTrue(isHeld(processorState, flowFile3));
+        Assertions.assertTrue(isHeld(processorState, flowFile4));
+        Assertions.assertEquals(flowFile1.getRetainedSize() + flowFile3.getRetainedSize()
+                + flowFile4.getRetainedSize(), processorState.getMemorySize());
+        Assertions.assertFalse(processorState.isAdmissible(2048L));
+    }
+
+    @Test
+    void testLeastRecentlyViewed() {
+        final ProbeProcessorState processorState = createState(4096L, 3, EvictionPolicy.LRU);
+        final ProbeFlowFile flowFile1 = add(processorState, 10);
+        final ProbeFlowFile flowFile2 = add(processorState, 10);
+        final ProbeFlowFile flowFile3 = add(processorState, 10);
+        Assertions.assertTrue(isHeld(processorState, flowFile1));  // view moves flowFile1 to most recent
+        final ProbeFlowFile flowFile4 = add(processorState, 10);
+        Assertions.assertFalse(processorState.getFlowFiles().contains(flowFile2));
+        Assertions.assertTrue(processorState.getFlowFiles().contains(flowFile1));
+        Assertions.assertTrue(processorState.getFlowFiles().contains(flowFile3));
+        Assertions.assertTrue(processorState.getFlowFiles().contains(flowFile4));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.capture.ImportMode;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.StateFilter;
+import io.github.greyp9.nifi.pf.core.state.StateSelection;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ExportStateTest {
+
+    private static ProbeProcessorState createState() {
+        final ProbeProcessorState processorState = new ProbeProcessorState("pidA", "pidA", 1024L * 1024L, 0,
+                EvictionPolicy.REJECT, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        for (int i = 1; i <= 6; ++i) {
+            final String filename = String.format("%d.%s", i, ((i % 2) == 0) ? "json" : "txt");
+            final ProbeFlowFile flowFile = processorState.create(i * 1000L,
+                    Collections.singletonMap("filename", filename), new byte[i * 100]);
+            Assertions.assertNull(processorState.addFlowFile(flowFile));
+        }
+        return processorState;
+    }
+
+    private static StateSelection select(final ProbeProcessorState processorState, final String... parameters) {
+        final Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            map.put(parameters[i], parameters[i + 1]);
+        }
+        return processorState.selectState(StateFilter.parse(map::get));
+    }
+
+    private static long[] toIds(final StateSelection selection) {
+        return selection.getFlowFiles().stream().mapToLong(ProbeFlowFile::getId).toArray();
+    }
+
+    @Test
+    void testSelect() {
+        final ProbeProcessorState processorState = createState();
+        final StateSelection all = select(processorState);
+        Assertions.assertArrayEquals(new long[] {1L, 2L, 3L, 4L, 5L, 6L}, toIds(all));
+        Assertions.assertEquals(6L, all.getCursor());
+        Assertions.assertFalse(all.isMore());
+
+        Assertions.assertArrayEquals(new long[] {5L, 6L}, toIds(select(processorState, Probe.Export.SINCE, "4")));
+        Assertions.assertArrayEquals(new long[] {2L, 5L}, toIds(select(processorState, Probe.Export.IDS, "5, 2, 9")));
+        Assertions.assertArrayEquals(new long[] {2L, 3L}, toIds(select(processorState,
+                Probe.Export.FROM, "2000", Probe.Export.TO, Instant.ofEpochMilli(4000L).toString())));
+        Assertions.assertArrayEquals(new long[] {2L, 4L, 6L}, toIds(select(processorState,
+                Probe.Export.ATTRIBUTE, "filename", Probe.Export.VALUE, ".*\\.json")));
+        Assertions.assertArrayEquals(new long[0], toIds(select(processorState, Probe.Export.ATTRIBUTE, "mime.type")));
+
+        // nothing new; the cursor stays put
+        final StateSelection none = select(processorState, Probe.Export.SINCE, "6");
+        Assertions.assertEquals(0, none.getFlowFiles().size());
+        Assertions.assertEquals(6L, none.getCursor());
+    }
+
+    @Test
+    void testSelectIncremental() {
+        final ProbeProcessorState processorState = createState();
+        // the byte budget is exceeded by the third FlowFile (100 + 200 + 300)
+        final StateSelection first = select(processorState, Probe.Export.MAX_BYTES, "500");
+        Assertions.assertArrayEquals(new long[] {1L, 2L}, toIds(first));
+        Assertions.assertEquals(2L, first.getCursor());
+        Assertions.assertTrue(first.isMore());
+
+        // a FlowFile larger than the budget is exported on its own
+        final StateSelection second = select(processorState, Probe.Export.MAX_BYTES, "500",
+                Probe.Export.SINCE, Long.toString(first.getCursor()));
+        Assertions.assertArrayEquals(new long[] {3L}, toIds(second));
+        Assertions.assertTrue(second.isMore());
+
+        // FlowFiles not matching the filter are skipped by the cursor
+        final StateSelection third = select(processorState, Probe.Export.MAX_BYTES, "2000",
+                Probe.Export.SINCE, Long.toString(second.getCursor()),
+                Probe.Export.ATTRIBUTE, "filename", Probe.Export.VALUE, ".*\\.txt");
+        Assertions.assertArrayEquals(new long[] {5L}, toIds(third));
+        Assertions.assertEquals(6L, third.getCursor());
+        Assertions.assertFalse(third.isMore());
+    }
+
+    @Test
+    void testSelectOutOfIdOrder() {
+        final ProbeProcessorState processorState = createState();
+        // (a FlowFile created before the last export, and held after it, as by a concurrent task)
+        final ProbeFlowFile slow = processorState.create(7000L,
+                Collections.singletonMap("filename", "7.txt"), new byte[0]);
+        final ProbeFlowFile fast = processorState.create(8000L,
+                Collections.singletonMap("filename", "8.txt"), new byte[0]);
+        Assertions.assertNull(processorState.addFlowFile(fast));
+        final StateSelection first = select(processorState, Probe.Export.SINCE, "6");
+        Assertions.assertArrayEquals(new long[] {8L}, toIds(first));
+        Assertions.assertEquals(8L, first.getCursor());
+
+        Assertions.assertNull(processorState.addFlowFile(slow));
+        final StateSelection second = select(processorState, Probe.Export.SINCE, Long.toString(first.getCursor()));
+        Assertions.assertArrayEquals(new long[] {7L}, toIds(second));
+        Assertions.assertEquals(9L, second.getCursor());
+
+        final StateSelection all = select(processorState);
+        Assertions.assertArrayEquals(new long[] {1L, 2L, 3L, 4L, 5L, 6L, 8L, 7L}, toIds(all));
+    }
+
+    @Test
+    void testSelectMalformed() {
+        final ProbeProcessorState processorState = createState();
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> select(processorState, Probe.Export.SINCE, "abc"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> select(processorState, Probe.Export.FROM, "yesterday"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> select(processorState, Probe.Export.MAX_BYTES, "0"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> select(processorState, Probe.Export.VALUE, "x"));
+    }
+
+    @Test
+    void testWriteSelection() throws IOException {
+        final ProbeProcessorState processorState = createState();
+        final StateSelection selection = select(processorState, Probe.Export.IDS, "3,4");
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        processorState.writeState(os, StateFormat.FLOWFILE_V3, selection);
+        final ProbeProcessorState processorStateTo = new ProbeProcessorState("pidB", "pidB", 1024L * 1024L, 0,
+                EvictionPolicy.REJECT, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        Assertions.assertEquals(2, processorStateTo.addState(() -> new ByteArrayInputStream(os.toByteArray()),
+                ImportMode.ALL_OR_NOTHING).getCountImported());
+        final List<ProbeFlowFile> flowFiles = processorStateTo.getFlowFiles();
+        Assertions.assertEquals("3.txt", flowFiles.get(0).getAttribute("filename"));
+        Assertions.assertEquals(400L, flowFiles.get(1).getSize());
+    }
+}
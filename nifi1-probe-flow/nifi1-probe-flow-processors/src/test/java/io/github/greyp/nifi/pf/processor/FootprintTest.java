@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFileEditor;
+import io.github.greyp9.nifi.pf.core.memory.Footprint;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FootprintTest {
+
+    private static Map<String, String> createAttributes(final int count) {
+        final Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            attributes.put(String.format("attribute.%d", i), String.format("value-%d", i));
+        }
+        return attributes;
+    }
+
+    @Test
+    void testEstimates() {
+        Assertions.assertEquals(0L, Footprint.align(0L));
+        Assertions.assertEquals(16L, Footprint.align(9L));
+        Assertions.assertEquals(16L, Footprint.ofObject(4L));
+        Assertions.assertEquals(0L, Footprint.ofString(null));
+        Assertions.assertTrue(Footprint.ofString("abcdefgh") < Footprint.ofString("abcdefghabcdefgh"));
+        final Map<String, String> attributes = createAttributes(20);
+        final ProbeFlowFile flowFile = new ProbeFlowFile(1L, System.currentTimeMillis(), attributes, new byte[0]);
+        // held attributes share their names, so cost less than the map they were copied from
+        Assertions.assertTrue(Footprint.ofAttributes(flowFile.getAttributes()) < Footprint.ofAttributes(attributes));
+        Assertions.assertTrue(flowFile.getRetainedSize() > Footprint.ofAttributes(flowFile.getAttributes()));
+    }
+
+    @Test
+    void testLimitAttributes() {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, 4096L, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+
+        // FlowFiles with little content, but many attributes, are limited by their attributes
+        final Map<String, String> attributes = createAttributes(40);
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), attributes, new byte[10]);
+        Assertions.assertTrue(flowFile1.getRetainedSize() > 2048L);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertEquals(flowFile1.getRetainedSize(), processorState.getMemorySize());
+        Assertions.assertFalse(processorState.isAdmissible(10L, attributes));
+        Assertions.assertTrue(processorState.isAdmissible(10L, Collections.emptyMap()));
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), attributes, new byte[10]);
+        Assertions.assertNotNull(processorState.addFlowFile(flowFile2));
+
+        processorState.actionFlowFile(pid, Long.toString(flowFile1.getId()), Probe.Action.DROP, null);
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+    }
+
+    @Test
+    void testEditor() throws Exception {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, 4096L, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final ProbeFlowFileEditor editor = processorState.getFlowFileEditor();
+        Assertions.assertEquals(0L, editor.getRetainedSize());
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+
+        // the FlowFile being edited counts toward the processor memory
+        editor.setContent(new byte[1000]);
+        editor.setAttribute("filename", "edited.txt");
+        Assertions.assertEquals(editor.getRetainedSize(), processorState.getMemorySize());
+        Assertions.assertTrue(processorState.getMemorySize() > 1000L);
+        final ProbeFlowFile flowFile = processorState.create(
+                System.currentTimeMillis(), Collections.emptyMap(), new byte[3000]);
+        Assertions.assertNotNull(processorState.addFlowFile(flowFile));
+
+        editor.reset();
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+        Assertions.assertNull(processorState.addFlowFile(flowFile));
+    }
+}
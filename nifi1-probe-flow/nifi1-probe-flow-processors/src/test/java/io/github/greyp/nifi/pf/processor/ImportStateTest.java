@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.capture.ImportMode;
+import io.github.greyp9.nifi.pf.core.capture.ImportResult;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+public class ImportStateTest {
+
+    private static ProbeProcessorState createState(final long maxMemorySize, final EvictionPolicy policy) {
+        return new ProbeProcessorState("pidA", "pidA", maxMemorySize, 0, policy,
+                Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+    }
+
+    /**
+     * @return a state document holding FlowFiles with the given content sizes
+     */
+    private static byte[] createStateXml(final int... sizes) {
+        final ProbeProcessorState processorState = createState(1024L * 1024L, EvictionPolicy.REJECT);
+        for (final int size : sizes) {
+            final ProbeFlowFile flowFile = processorState.create(System.currentTimeMillis(),
+                    Collections.singletonMap("filename", String.format("%d.bin", size)), new byte[size]);
+            Assertions.assertNull(processorState.addFlowFile(flowFile));
+        }
+        return processorState.toXml();
+    }
+
+    @Test
+    void testImportAll() throws IOException {
+        final byte[] xml = createStateXml(1000, 0, 2000, 3000);
+        final ProbeProcessorState processorState = createState(64L * 1024L, EvictionPolicy.REJECT);
+        final ImportResult result = processorState.addState(xml);
+        Assertions.assertEquals(4, result.getCountImported());
+        Assertions.assertEquals(0, result.getCountRejected());
+        final List<ProbeFlowFile> flowFiles = processorState.getFlowFiles();
+        Assertions.assertEquals(4, flowFiles.size());
+        Assertions.assertEquals("2000.bin", flowFiles.get(2).getAttribute("filename"));
+        Assertions.assertEquals(2000L, flowFiles.get(2).getSize());
+        long memorySize = 0L;
+        for (final ProbeFlowFile flowFile : flowFiles) {
+            memorySize += flowFile.getRetainedSize();
+        }
+        // the room reserved for the batch is all used, or returned
+        Assertions.assertEquals(memorySize, processorState.getMemorySize());
+        Assertions.assertEquals(xml.length, processorState.toXml().length);
+    }
+
+    @Test
+    void testImportMode() throws IOException {
+        final byte[] xml = createStateXml(1000, 1000, 1000, 1000);
+        final long maxMemorySize = createState(0L, EvictionPolicy.REJECT).create(0L,
+                Collections.singletonMap("filename", "1000.bin"), new byte[1000]).getRetainedSize() * 3L;
+
+        final ProbeProcessorState processorState = createState(maxMemorySize, EvictionPolicy.REJECT);
+        final ImportResult resultAll = processorState.addState(() -> new ByteArrayInputStream(xml),
+                ImportMode.ALL_OR_NOTHING);
+        Assertions.assertEquals(0, resultAll.getCountImported());
+        Assertions.assertEquals(4, resultAll.getCountRejected());
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+
+        final ImportResult resultSome = processorState.addState(() -> new ByteArrayInputStream(xml),
+                ImportMode.BEST_EFFORT);
+        Assertions.assertEquals(3, resultSome.getCountImported());
+        Assertions.assertEquals(1, resultSome.getCountRejected());
+        Assertions.assertEquals(3, processorState.flowFileCount());
+
+        // under a policy which evicts, the batch makes room for itself
+        final ProbeProcessorState processorStateEvict = createState(maxMemorySize, EvictionPolicy.DROP_OLDEST);
+        Assertions.assertEquals(3, processorStateEvict.addState(createStateXml(1000, 1000, 1000)).getCountImported());
+        final ImportResult resultEvict = processorStateEvict.addState(() -> new ByteArrayInputStream(
+                createStateXml(1000, 1000)), ImportMode.ALL_OR_NOTHING);
+        Assertions.assertEquals(2, resultEvict.getCountImported());
+        Assertions.assertEquals(3, processorStateEvict.flowFileCount());
+        Assertions.assertEquals(2L, processorStateEvict.getCountEvicted());
+    }
+
+    @Test
+    void testImportPackage() throws IOException {
+        final ProbeProcessorState processorStateFrom = createState(1024L * 1024L, EvictionPolicy.REJECT);
+        Assertions.assertEquals(3, processorStateFrom.addState(createStateXml(1000, 0, 5000)).getCountImported());
+        for (final StateFormat format : StateFormat.values()) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            processorStateFrom.writeState(os, format);
+            final ProbeProcessorState processorState = createState(64L * 1024L, EvictionPolicy.REJECT);
+            final ImportResult result = processorState.addState(() -> new ByteArrayInputStream(os.toByteArray()),
+                    ImportMode.ALL_OR_NOTHING);
+            Assertions.assertEquals(3, result.getCountImported());
+            Assertions.assertEquals(5000L, processorState.getFlowFiles().get(2).getSize());
+            Assertions.assertEquals("5000.bin", processorState.getFlowFiles().get(2).getAttribute("filename"));
+        }
+    }
+
+    @Test
+    void testImportParallel() throws IOException {
+        final ProbeProcessorState processorStateFrom = createState(1024L * 1024L, EvictionPolicy.REJECT);
+        for (int i = 0; i < 50; ++i) {
+            final ProbeFlowFile flowFile = processorStateFrom.create(System.currentTimeMillis(),
+                    Collections.singletonMap("filename", String.format("%d.bin", i)), new byte[(i % 5) * 1000]);
+            Assertions.assertNull(processorStateFrom.addFlowFile(flowFile));
+        }
+        final byte[] xml = processorStateFrom.toXml();
+        for (final int threads : new int[] {1, 4}) {
+            final ContentStore contentStore = new ContentStore(null, 1024L * 1024L, 1024L * 1024L, 0L, true);
+            final ProbeProcessorState processorState = new ProbeProcessorState("pidA", "pidA", 1024L * 1024L, 0,
+                    EvictionPolicy.REJECT, contentStore, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+            final ImportResult result = processorState.addState(() -> new ByteArrayInputStream(xml),
+                    ImportMode.ALL_OR_NOTHING, threads);
+            Assertions.assertEquals(50, result.getCountImported());
+            // FlowFiles are held in document order, and their content is keyed for deduplication
+            final List<ProbeFlowFile> flowFiles = processorState.getFlowFiles();
+            for (int i = 0; i < flowFiles.size(); ++i) {
+                Assertions.assertEquals(String.format("%d.bin", i), flowFiles.get(i).getAttribute("filename"));
+                Assertions.assertEquals((i % 5) * 1000L, flowFiles.get(i).getSize());
+            }
+            Assertions.assertEquals(5, contentStore.getDedupCount());
+            Assertions.assertArrayEquals(xml, processorState.toXml());
+        }
+    }
+
+    @Test
+    void testImportMalformed() {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<state xmlns=\"urn:probe:state\">\n"
+                + "  <flowfile><content>aGVsbG8=</content></flowfile>\n"
+                + "  <flowfile><content>a#VsbG8=</content></flowfile>\n</state>\n";
+        final ProbeProcessorState processorState = createState(64L * 1024L, EvictionPolicy.REJECT);
+        Assertions.assertThrows(IOException.class, () -> processorState.addState(ProbeUtils.toBytesUTF8(xml)));
+        Assertions.assertEquals(0, processorState.flowFileCount());
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+        Assertions.assertEquals(Integer.MAX_VALUE, processorState.getAcceptCount());
+    }
+}
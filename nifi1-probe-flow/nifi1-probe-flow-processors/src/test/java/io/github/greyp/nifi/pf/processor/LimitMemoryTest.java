@@ -13,11 +13,11 @@
 package io.github.greyp.nifi.pf.processor;
 
 import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.common.Probe;
 import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
 import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
 import io.github.greyp9.nifi.pf.processor.ProbeFlow;
 import org.apache.nifi.processor.Relationship;
-import org.apache.nifi.processor.exception.ProcessException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -37,7 +37,38 @@ public class LimitMemoryTest {
         final byte[] data = new byte[1024];
         final ProbeFlowFile flowFile = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
 
-        processorState.addFlowFileProcessSession(flowFile);
-        Assertions.assertThrows(ProcessException.class, () -> processorState.addFlowFileProcessSession(flowFile));
+        Assertions.assertTrue(processorState.addFlowFileProcessSession(flowFile));
+        Assertions.assertFalse(processorState.addFlowFileProcessSession(flowFile));
+        Assertions.assertEquals(1L, processorState.getCountRejected());
+        Assertions.assertEquals(1, processorState.flowFileCount());
+    }
+
+    @Test
+    void testLimitMemoryRelease() {
+        final String pid = "pidA";
+        final long maxMemorySize = 1536L;
+        final Set<Relationship> relationships = Collections.singleton(ProbeFlow.REL_OUTGOING);
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, maxMemorySize, relationships, new Alerts());
+        final byte[] data = new byte[1024];
+
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertEquals(flowFile1.getRetainedSize(), processorState.getMemorySize());
+        processorState.routeFlowFile(Long.toString(flowFile1.getId()), ProbeFlow.REL_OUTGOING.getName());
+        Assertions.assertEquals(1, processorState.flowFileRoutedCount());
+        Assertions.assertEquals(1, processorState.drainTo().size());
+        Assertions.assertEquals(0, processorState.flowFileRoutedCount());
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        final String action = String.format("[%d][%s]", flowFile2.getId(), Probe.Action.CLONE);
+        processorState.actionFlowFile(pid, action, null);
+        Assertions.assertEquals(1, processorState.flowFileCount());
+        processorState.actionFlowFile(pid, Long.toString(flowFile2.getId()), Probe.Action.DROP, null);
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+        processorState.actionFlowFile(pid, action, null);
+        Assertions.assertEquals(0, processorState.flowFileCount());
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.ProbeServiceState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import io.github.greyp9.nifi.pf.service.ProbeFlowControllerService;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Drive the processor through the NiFi mock framework, so that <code>onTrigger()</code> and the processor lifecycle
+ * are covered along with the held state.
+ */
+public class ProbeFlowTest {
+
+    @Test
+    void testBreakpointRejected() throws InitializationException {
+        final TestProbeService service = new TestProbeService();
+        final TestRunner runner = newBreakpointRunner(service);
+        runner.setProperty(ProbeFlow.MAX_FLOWFILE_COUNT, "1");
+
+        runner.enqueue("{}", Collections.singletonMap("filename", "a.json"));
+        runner.run(1, false, true);
+        final ProbeProcessorState processorState = service.getProbeState().getProcessorState(
+                runner.getProcessor().getIdentifier());
+        Assertions.assertEquals(1, processorState.flowFileCount());
+        Assertions.assertEquals(0, runner.getQueueSize().getObjectCount());
+
+        // every FlowFile of the batch matches, and is rejected; the session still ends, returning them upstream
+        runner.enqueue("{}", Collections.singletonMap("filename", "b.json"));
+        runner.enqueue("{}", Collections.singletonMap("filename", "c.json"));
+        runner.run(1, false, false);
+        Assertions.assertEquals(1, processorState.flowFileCount());
+        Assertions.assertEquals(2, runner.getQueueSize().getObjectCount());
+        runner.assertTransferCount(ProbeFlow.REL_OUTGOING, 0);
+        runner.run(1, true, false);
+    }
+
+    @Test
+    void testStopKeepsCopy() throws InitializationException {
+        final TestProbeService service = new TestProbeService();
+        final TestRunner runner = newBreakpointRunner(service);
+        runner.enqueue("{}", Collections.singletonMap("filename", "a.json"));
+        runner.enqueue("{}", Collections.singletonMap("filename", "b.txt"));
+        runner.run(1, true, true);
+        runner.assertTransferCount(ProbeFlow.REL_OUTGOING, 1);
+        // the original of the held FlowFile is dropped on stop; the copy is retained for the next run
+        Assertions.assertEquals(0, runner.getQueueSize().getObjectCount());
+        final ProbeProcessorState processorState = service.getProbeState().getProcessorState(
+                runner.getProcessor().getIdentifier());
+        Assertions.assertTrue(processorState.isStopped());
+        Assertions.assertEquals(1, processorState.flowFileCount());
+    }
+
+    private static TestRunner newBreakpointRunner(final TestProbeService service) throws InitializationException {
+        final TestRunner runner = newTestRunner(service);
+        runner.setProperty(ProbeFlow.MODE, ProbeFlow.MODE_BREAKPOINT.getValue());
+        runner.setProperty(ProbeFlow.BREAKPOINT_CONDITION, "${filename:endsWith('.json')}");
+        return runner;
+    }
+
+    private static TestRunner newTestRunner(final TestProbeService service) throws InitializationException {
+        final TestRunner runner = TestRunners.newTestRunner(ProbeFlow.class);
+        runner.addControllerService(SERVICE_ID, service);
+        runner.enableControllerService(service);
+        runner.setProperty(ProbeFlow.CONTROLLER_SERVICE, SERVICE_ID);
+        return runner;
+    }
+
+    /**
+     * The processor state of a controller service, without its web server.
+     */
+    public static final class TestProbeService extends AbstractControllerService
+            implements ProbeFlowControllerService {
+
+        private ProbeServiceState probeServiceState;
+
+        @OnEnabled
+        public void onEnabled(final ConfigurationContext context) {
+            probeServiceState = new ProbeServiceState(getIdentifier(), SERVICE_ID, RETENTION);
+        }
+
+        @Override
+        public ProbeServiceState getProbeState() {
+            return probeServiceState;
+        }
+
+        @Override
+        public ProbeProcessorState register(final String id, final String name,
+                                            final long maxMemorySize, final Set<Relationship> relationships) {
+            return probeServiceState.register(id, name, maxMemorySize, relationships);
+        }
+
+        @Override
+        public void unregister(final String id) {
+            try {
+                probeServiceState.unregister(id);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final String SERVICE_ID = "probe-service";
+    private static final long RETENTION = 60000L;
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.ProbeServiceState;
+import io.github.greyp9.nifi.pf.core.state.ProbeTransaction;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.apache.nifi.processor.Relationship;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class RetainStateTest {
+    private static final Set<Relationship> RELATIONSHIPS = Collections.singleton(ProbeFlow.REL_OUTGOING);
+
+    private static ProbeProcessorState register(final ProbeServiceState serviceState, final String pid,
+                                                final ContentStore contentStore) {
+        return serviceState.register(pid, pid, 8192L, 0, EvictionPolicy.REJECT, contentStore, RELATIONSHIPS);
+    }
+
+    @Test
+    void testRetain() throws IOException {
+        final String pid = "pidA";
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 60000L);
+        final ContentStore contentStore = new ContentStore();
+        final ProbeProcessorState processorState = register(serviceState, pid, contentStore);
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(),
+                "one".getBytes(StandardCharsets.UTF_8));
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(),
+                "two".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        processorState.routeFlowFile(Long.toString(flowFile2.getId()), ProbeFlow.REL_OUTGOING.getName());
+        processorState.getFlowFileEditor().setContent("edit".getBytes(StandardCharsets.UTF_8));
+        // FlowFiles accepted from upstream: one whose original is dropped when the processor stops (the copy is kept),
+        // and one whose original goes back upstream (the removal of the original failed)
+        final ProbeFlowFile flowFile3 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(),
+                "three".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile3, new ProbeTransaction()));
+        final ProbeFlowFile flowFile4 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(),
+                "four".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile4, new ProbeTransaction()));
+        final long memorySize = processorState.getMemorySize() - flowFile4.getRetainedSize();
+
+        serviceState.retire(pid, Collections.singletonList(flowFile3.getId()),
+                Collections.singletonList(flowFile4.getId()));
+        Assertions.assertTrue(processorState.isStopped());
+        Assertions.assertEquals(3, processorState.flowFileCount());
+        Assertions.assertSame(processorState, serviceState.getProcessorState(pid));
+
+        // restarted with the same content store settings: held state is taken over, content as is
+        final ProbeProcessorState processorStateNext = register(serviceState, pid, new ContentStore());
+        Assertions.assertNotSame(processorState, processorStateNext);
+        Assertions.assertFalse(processorStateNext.isStopped());
+        Assertions.assertSame(contentStore, processorStateNext.getContentStore());
+        Assertions.assertEquals(3, processorStateNext.flowFileCount());
+        Assertions.assertEquals(0, processorState.flowFileCount());
+        Assertions.assertEquals(memorySize, processorStateNext.getMemorySize());
+        Assertions.assertEquals("edit", processorStateNext.getFlowFileEditor().getText());
+        Assertions.assertEquals(1, processorStateNext.flowFileRoutedCount());
+        Assertions.assertEquals(flowFile2, processorStateNext.drainTo().get(0));
+        final ProbeFlowFile flowFile5 = processorStateNext.create(System.currentTimeMillis(), Collections.emptyMap(),
+                new byte[0]);
+        Assertions.assertTrue(flowFile5.getId() > flowFile4.getId());
+        serviceState.close();
+    }
+
+    @Test
+    void testRetainClosesUnused() throws IOException {
+        final String pid = "pidA";
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 60000L);
+        final ContentStore contentStore = new ContentStore(null, 1024L, 4096L, 0L, false, true);
+        register(serviceState, pid, contentStore);
+        serviceState.retire(pid, Collections.emptyList(), Collections.emptyList());
+
+        // restarted with the same content store settings: the new content store is not used, and is closed
+        final ContentStore contentStoreUnused = new ContentStore(null, 1024L, 4096L, 0L, false, true);
+        Assertions.assertSame(contentStore, register(serviceState, pid, contentStoreUnused).getContentStore());
+        Assertions.assertFalse(contentStoreUnused.compressLater(new HeapContent(new byte[1]), Content::release));
+        Assertions.assertTrue(contentStore.compressLater(new HeapContent(new byte[1]), Content::release));
+        serviceState.close();
+    }
+
+    @Test
+    void testRetainCopy() throws IOException {
+        final String pid = "pidA";
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 60000L);
+        final ProbeProcessorState processorState = register(serviceState, pid, new ContentStore());
+        final byte[] data = "content".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertNull(processorState.addFlowFile(
+                processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data)));
+        Assertions.assertNull(processorState.addFlowFile(
+                processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data)));
+        serviceState.retire(pid, Collections.emptyList(), Collections.emptyList());
+
+        // restarted with content deduplicated: content is placed in the new content store
+        final ContentStore contentStore = new ContentStore(null, 1024L, 4096L, 0L, true);
+        final ProbeProcessorState processorStateNext = register(serviceState, pid, contentStore);
+        Assertions.assertSame(contentStore, processorStateNext.getContentStore());
+        Assertions.assertEquals(2, processorStateNext.flowFileCount());
+        Assertions.assertEquals(1, contentStore.getDedupCount());
+        for (final ProbeFlowFile flowFile : processorStateNext.getFlowFiles()) {
+            Assertions.assertArrayEquals(data, flowFile.getData());
+        }
+        serviceState.close();
+    }
+
+    @Test
+    void testRetainCopySpilled() throws IOException {
+        final String pid = "pidA";
+        final Path directory = Files.createTempDirectory("probe-flow").resolve(pid);
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 60000L);
+        final ProbeProcessorState processorState = register(serviceState, pid,
+                new ContentStore(directory, 16L, 16L, 0L));
+        final byte[] data1 = new byte[1000];
+        new Random(0L).nextBytes(data1);
+        Assertions.assertNull(processorState.addFlowFile(
+                processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data1)));
+        serviceState.retire(pid, Collections.emptyList(), Collections.emptyList());
+
+        // restarted with another heap size: content is copied into a new store, spilling to the same directory
+        final ContentStore contentStore = new ContentStore(directory, 16L, 32L, 0L);
+        final ProbeProcessorState processorStateNext = register(serviceState, pid, contentStore);
+        Assertions.assertSame(contentStore, processorStateNext.getContentStore());
+        Assertions.assertEquals(1, contentStore.getSegmentCount());
+        // the store of the last run, now closed, has deleted its own files only
+        Assertions.assertEquals(1L, countFiles(directory));
+
+        final byte[] data2 = new byte[2000];
+        new Random(1L).nextBytes(data2);
+        Assertions.assertNull(processorStateNext.addFlowFile(
+                processorStateNext.create(System.currentTimeMillis(), Collections.emptyMap(), data2)));
+        Assertions.assertEquals(3000L, contentStore.getSpillUsed());
+        Assertions.assertArrayEquals(data1, processorStateNext.getFlowFiles().get(0).getData());
+        Assertions.assertArrayEquals(data2, processorStateNext.getFlowFiles().get(1).getData());
+
+        serviceState.close();
+        Assertions.assertFalse(Files.exists(directory));
+        Files.delete(directory.getParent());
+    }
+
+    private static long countFiles(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.count();
+        }
+    }
+
+    @Test
+    void testPurge() throws IOException {
+        final String pid = "pidA";
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 60000L);
+        final ProbeProcessorState processorState = register(serviceState, pid, new ContentStore());
+        Assertions.assertNull(processorState.addFlowFile(
+                processorState.create(System.currentTimeMillis(), Collections.emptyMap(), new byte[100])));
+        Assertions.assertFalse(serviceState.purge(pid));
+        serviceState.retire(pid, Collections.emptyList(), Collections.emptyList());
+        Assertions.assertTrue(serviceState.purge(pid));
+        Assertions.assertNull(serviceState.getProcessorState(pid));
+        Assertions.assertEquals(0, register(serviceState, pid, new ContentStore()).flowFileCount());
+        serviceState.close();
+    }
+
+    @Test
+    void testRetention() throws IOException, InterruptedException {
+        final String pid = "pidA";
+        final ProbeServiceState serviceStateNone = new ProbeServiceState("sid", "sid");
+        register(serviceStateNone, pid, new ContentStore());
+        serviceStateNone.retire(pid, Collections.emptyList(), Collections.emptyList());
+        Assertions.assertNull(serviceStateNone.getProcessorState(pid));
+
+        // state stopped for longer than the retention period is discarded in the background
+        final ProbeServiceState serviceState = new ProbeServiceState("sid", "sid", 50L);
+        register(serviceState, pid, new ContentStore());
+        serviceState.retire(pid, Collections.emptyList(), Collections.emptyList());
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while ((serviceState.getProcessorState(pid) != null) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10L);
+        }
+        Assertions.assertNull(serviceState.getProcessorState(pid));
+        serviceState.close();
+    }
+}
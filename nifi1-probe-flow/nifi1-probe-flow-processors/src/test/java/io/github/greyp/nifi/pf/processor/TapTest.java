@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.ProbeTapState;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.Relationship;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class TapTest {
+
+    @Test
+    void testTapSnapshot() {
+        final String pid = "pidA";
+        final Set<Relationship> relationships = Collections.singleton(ProbeFlow.REL_OUTGOING);
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, 1536L, relationships, new Alerts());
+        final ProbeTapState tapState = new ProbeTapState(ProbeFlow.REL_OUTGOING.getName(), 3);
+        processorState.setTapState(tapState);
+
+        tapState.incrementToCapture(1);
+        final byte[] data = new byte[1024];
+        for (int i = 0; i < 5; ++i) {
+            final FlowFile flowFile = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+            processorState.tapFlowFile(flowFile, tapState.shouldCapture() ? data : null);
+            Assertions.assertEquals((i < 3) ? 1024L : 0L, processorState.getMemorySize());
+        }
+        Assertions.assertEquals(5L, tapState.getCountTapped());
+        Assertions.assertEquals(0, processorState.flowFileCount());
+
+        final List<ProbeFlowFile> flowFiles = tapState.getFlowFiles();
+        Assertions.assertEquals(3, flowFiles.size());
+        final ProbeFlowFile flowFileTapped = flowFiles.get(0);
+        Assertions.assertTrue(flowFileTapped.isNull());
+        Assertions.assertTrue(processorState.getFlowFile(Long.toString(flowFileTapped.getId())).isPresent());
+    }
+
+    @Test
+    void testTapSample() {
+        final String pid = "pidA";
+        final Set<Relationship> relationships = Collections.singleton(ProbeFlow.REL_OUTGOING);
+        final ProbeProcessorState processorState = new ProbeProcessorState(
+                pid, pid, 4096L, relationships, new Alerts());
+        final ProbeTapState tapState = new ProbeTapState(ProbeFlow.REL_OUTGOING.getName(), 3, 2, 0L);
+        processorState.setTapState(tapState);
+
+        final byte[] data = new byte[1024];
+        for (int i = 0; i < 100; ++i) {
+            final FlowFile flowFile = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+            final int slot = processorState.admitSample();
+            processorState.tapFlowFile(flowFile, (slot >= 0) ? data : null, slot);
+            Assertions.assertEquals((i < 2) ? ((i + 1) * 1024L) : 2048L, processorState.getMemorySize());
+        }
+        Assertions.assertEquals(100L, tapState.getCountSampleSeen());
+        Assertions.assertEquals(3, tapState.getFlowFiles().size());
+
+        final List<ProbeFlowFile> flowFilesSampled = tapState.getFlowFilesSampled();
+        Assertions.assertEquals(2, flowFilesSampled.size());
+        for (final ProbeFlowFile flowFileSampled : flowFilesSampled) {
+            final String id = Long.toString(flowFileSampled.getId());
+            Assertions.assertFalse(processorState.getFlowFile(id).map(ProbeFlowFile::isNull).orElse(true));
+        }
+    }
+}
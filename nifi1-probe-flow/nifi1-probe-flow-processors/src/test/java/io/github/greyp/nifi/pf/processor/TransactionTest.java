@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.processor;
+
+import io.github.greyp9.nifi.pf.core.alert.Alerts;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeProcessorState;
+import io.github.greyp9.nifi.pf.core.state.ProbeTransaction;
+import io.github.greyp9.nifi.pf.processor.ProbeFlow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class TransactionTest {
+
+    @Test
+    void testRollback() {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 4096L, 2,
+                EvictionPolicy.DROP_OLDEST, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final byte[] data = new byte[100];
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        processorState.routeFlowFile(Long.toString(flowFile2.getId()), ProbeFlow.REL_OUTGOING.getName());
+        processorState.incrementToConsume(1);
+
+        // one FlowFile consumed (evicting flowFile1), one FlowFile drained (flowFile2)
+        final ProbeTransaction transaction = new ProbeTransaction();
+        final ProbeFlowFile flowFile3 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertTrue(processorState.addFlowFileProcessSession(flowFile3, transaction));
+        Assertions.assertEquals(1, processorState.drainTo(transaction).size());
+        Assertions.assertEquals(1, processorState.flowFileCount());
+        Assertions.assertEquals(0, processorState.shouldConsume());
+        Assertions.assertFalse(transaction.isEmpty());
+
+        processorState.rollback(transaction);
+        Assertions.assertEquals(2, processorState.flowFileCount());
+        Assertions.assertEquals(flowFile1.getRetainedSize() + flowFile2.getRetainedSize(),
+                processorState.getMemorySize());
+        Assertions.assertFalse(processorState.getFlowFile(Long.toString(flowFile3.getId())).isPresent());
+        Assertions.assertTrue(processorState.getFlowFile(Long.toString(flowFile1.getId())).isPresent());
+        Assertions.assertEquals(1, processorState.flowFileRoutedCount());
+        Assertions.assertEquals(1, processorState.shouldConsume());
+        Assertions.assertEquals(flowFile2, processorState.drainTo().get(0));
+    }
+
+    @Test
+    void testRollbackMigrated() {
+        final String pid = "pidA";
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 4096L, 1,
+                EvictionPolicy.DROP_OLDEST, Collections.singleton(ProbeFlow.REL_OUTGOING), new Alerts());
+        final byte[] data = new byte[100];
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertTrue(processorState.drainReleased().isEmpty());
+
+        // flowFile1 evicted; its original is migrated into the session (to be removed)
+        final ProbeTransaction transaction = new ProbeTransaction();
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile2, transaction));
+        Assertions.assertEquals(Collections.singletonList(flowFile1.getId()), processorState.drainReleased());
+        transaction.migrate(flowFile1.getId());
+        Assertions.assertEquals(Collections.singletonList(flowFile2.getId()), transaction.getIdsAdded());
+
+        // the session rollback returns the original of flowFile1 upstream, so it is not restored
+        processorState.rollback(transaction);
+        Assertions.assertEquals(0, processorState.flowFileCount());
+        Assertions.assertEquals(0L, processorState.getMemorySize());
+        Assertions.assertEquals(Collections.singletonList(flowFile2.getId()), processorState.drainReleased());
+    }
+
+    @Test
+    void testRollbackPartial() {
+        final String pid = "pidA";
+        final Alerts alerts = new Alerts();
+        final ProbeProcessorState processorState = new ProbeProcessorState(pid, pid, 4096L, 2,
+                EvictionPolicy.DROP_OLDEST, Collections.singleton(ProbeFlow.REL_OUTGOING), alerts);
+        final byte[] data = new byte[100];
+        final ProbeFlowFile flowFile1 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        final ProbeFlowFile flowFile2 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertNull(processorState.addFlowFile(flowFile1));
+        Assertions.assertNull(processorState.addFlowFile(flowFile2));
+        processorState.routeFlowFile(Long.toString(flowFile2.getId()), ProbeFlow.REL_OUTGOING.getName());
+
+        // the session fails after the routed FlowFiles are drained, before any commit
+        final ProbeTransaction transaction = new ProbeTransaction();
+        final ProbeFlowFile flowFile3 = processorState.create(System.currentTimeMillis(), Collections.emptyMap(), data);
+        Assertions.assertTrue(processorState.holdFlowFile(flowFile3, transaction));
+        final List<ProbeFlowFile> drained = processorState.drainTo(transaction);
+        Assertions.assertEquals(Collections.singletonList(flowFile2), drained);
+        Assertions.assertThrows(IllegalStateException.class, () -> drained.forEach(flowFile -> {
+            throw new IllegalStateException("transfer failed");
+        }));
+        processorState.rollback(transaction);
+        Assertions.assertEquals(2, processorState.flowFileCount());
+        Assertions.assertFalse(processorState.getFlowFile(Long.toString(flowFile3.getId())).isPresent());
+        Assertions.assertEquals(1, processorState.flowFileRoutedCount());
+        Assertions.assertEquals(1, alerts.removeAll().size());
+
+        // a failure reported again (commit callback, then exception) leaves the restored state as is
+        processorState.rollback(transaction);
+        processorState.commit(transaction);
+        Assertions.assertEquals(2, processorState.flowFileCount());
+        Assertions.assertEquals(flowFile1.getRetainedSize() + flowFile2.getRetainedSize(),
+                processorState.getMemorySize());
+        Assertions.assertEquals(1, processorState.flowFileRoutedCount());
+        Assertions.assertTrue(alerts.removeAll().isEmpty());
+        Assertions.assertEquals(flowFile2, processorState.drainTo().get(0));
+    }
+}
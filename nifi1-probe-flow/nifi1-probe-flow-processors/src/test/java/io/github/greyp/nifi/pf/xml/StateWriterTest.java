@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp.nifi.pf.xml;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf.core.state.ProbeSerializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class StateWriterTest {
+
+    @Test
+    void testFormat() throws IOException {
+        final ProbeFlowFile flowFile = new ProbeFlowFile(1L, System.currentTimeMillis(),
+                Collections.singletonMap("filename", "a&b.txt"), ProbeUtils.toBytesUTF8("hello world"));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ProbeSerializer().serialize(Collections.singletonList(flowFile), os);
+        final String xml = ProbeUtils.fromBytesUTF8(os.toByteArray());
+        Assertions.assertTrue(xml.contains("<state xmlns=\"urn:probe:state\">"));
+        Assertions.assertTrue(xml.contains("<attribute name=\"filename\">a&amp;b.txt</attribute>"));
+        Assertions.assertTrue(xml.contains("<content>aGVsbG8gd29ybGQ=</content>"));
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        // content spanning several encoder blocks, with a partial last block; and empty content
+        final byte[] large = new byte[200 * 1024 + 7];
+        new Random(0L).nextBytes(large);
+        final List<ProbeFlowFile> flowFiles = new ArrayList<>();
+        flowFiles.add(new ProbeFlowFile(1L, System.currentTimeMillis(),
+                Collections.singletonMap("filename", "large.bin"), large));
+        flowFiles.add(new ProbeFlowFile(2L, System.currentTimeMillis(),
+                Collections.singletonMap("filename", "empty.bin"), new byte[0]));
+        final ProbeSerializer serializer = new ProbeSerializer();
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        serializer.serialize(flowFiles, os);
+        Assertions.assertArrayEquals(os.toByteArray(), serializer.serialize(flowFiles));
+
+        final List<ProbeFlowFile> flowFilesRead = new ArrayList<>(serializer.deserialize(os.toByteArray()));
+        Assertions.assertEquals(2, flowFilesRead.size());
+        for (int i = 0; (i < flowFiles.size()); ++i) {
+            final Map<String, String> attributes = flowFilesRead.get(i).getAttributes();
+            Assertions.assertEquals(flowFiles.get(i).getAttribute("filename"), attributes.get("filename"));
+            Assertions.assertArrayEquals(flowFiles.get(i).getData(), flowFilesRead.get(i).getData());
+        }
+    }
+}
@@ -12,9 +12,14 @@
  */
 package io.github.greyp9.nifi.pf2.core.flowfile;
 
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.memory.Footprint;
 import org.apache.nifi.flowfile.FlowFile;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -22,17 +27,53 @@ public final class ProbeFlowFile implements FlowFile {
 
     private final long id;
     private final long entryDate;
+
+    /**
+     * The attributes of the FlowFile (compact and immutable; shared with clones).
+     */
     private final Map<String, String> attributes;
-    private final byte[] data;
+
+    /**
+     * Estimate of the heap held by the attributes.
+     */
+    private final long attributesSize;
+
+    private final long size;
+
+    /**
+     * The content of the FlowFile (null if not captured); replaced when the content moves between storage tiers.
+     */
+    private volatile Content content;
+
+    /**
+     * The key (digest) of the content, when content is deduplicated (null if not computed); set before the FlowFile is
+     * held.
+     */
+    private String contentKey;
 
     private String relationship;
 
+    /**
+     * The place of the FlowFile in the order in which held FlowFiles became visible (zero until held); the cursor of
+     * an incremental export.
+     */
+    private volatile long sequence;
+
     public ProbeFlowFile(final long id, final long entryDate, final Map<String, String> attributes, final byte[] data) {
+        this(id, entryDate, attributes, (data == null) ? null : new HeapContent(data));
+    }
+
+    public ProbeFlowFile(final long id, final long entryDate,
+                         final Map<String, String> attributes, final Content content) {
         this.id = id;
         this.entryDate = entryDate;
-        this.attributes = new HashMap<>(attributes);
-        this.data = data;
+        this.attributes = CompactAttributes.copyOf(attributes);
+        this.attributesSize = Footprint.ofAttributes(this.attributes);
+        this.size = (content == null) ? 0L : content.getSize();
+        this.content = content;
+        this.contentKey = null;
         this.relationship = null;
+        this.sequence = 0L;
     }
 
     @Override
@@ -77,11 +118,35 @@ public final class ProbeFlowFile implements FlowFile {
 
     @Override
     public long getSize() {
-        return (data == null) ? 0L : data.length;
+        return size;
+    }
+
+    /**
+     * @return an estimate of the heap held by the FlowFile, apart from its content bytes: the FlowFile object, its
+     * attributes, its content key, and the record of its content (fixed once the FlowFile is held)
+     */
+    public long getOverheadSize() {
+        return OVERHEAD + attributesSize + Footprint.ofString(contentKey) + ((content == null) ? 0L : CONTENT_OVERHEAD);
+    }
+
+    /**
+     * @return an estimate of the memory retained by the FlowFile (its overhead, and its stored content, which may be
+     * shared with other FlowFiles)
+     */
+    public long getRetainedSize() {
+        return getOverheadSize() + getStoredSize();
+    }
+
+    /**
+     * @return the number of bytes held to store the content (less than its size, if the content is compressed)
+     */
+    public long getStoredSize() {
+        final Content contentIt = content;
+        return (contentIt == null) ? 0L : contentIt.getStoredSize();
     }
 
     public boolean isNull() {
-        return (data == null);
+        return (content == null);
     }
 
     @Override
@@ -89,8 +154,37 @@ public final class ProbeFlowFile implements FlowFile {
         return attributes;
     }
 
+    /**
+     * @return the content of the FlowFile, as one array (read back into heap, if the content is stored elsewhere); see
+     * {@link #getContent()} for streaming and random access to content of any size
+     * @throws UncheckedIOException on failure to read stored content, or if the content is too large for an array
+     */
     public byte[] getData() {
-        return data;
+        final Content contentIt = content;
+        try {
+            return (contentIt == null) ? null : contentIt.toBytes();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Content getContent() {
+        return content;
+    }
+
+    /**
+     * @param content the same content, in another storage tier
+     */
+    public void setContent(final Content content) {
+        this.content = content;
+    }
+
+    public String getContentKey() {
+        return contentKey;
+    }
+
+    public void setContentKey(final String contentKey) {
+        this.contentKey = contentKey;
     }
 
     public String getRelationship() {
@@ -101,6 +195,14 @@ public final class ProbeFlowFile implements FlowFile {
         this.relationship = relationship;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(final long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public int compareTo(final FlowFile flowFile) {
         return (int) (id - flowFile.getId());
@@ -121,4 +223,14 @@ public final class ProbeFlowFile implements FlowFile {
     public int hashCode() {
         return Objects.hash(id);
     }
+
+    /**
+     * The FlowFile object: five longs, four references.
+     */
+    private static final long OVERHEAD = Footprint.ofObject(5L * Long.BYTES + 4L * Footprint.REFERENCE);
+
+    /**
+     * The record of stored content (for content on heap, its chunk table and release flag).
+     */
+    private static final long CONTENT_OVERHEAD = 64L;
 }
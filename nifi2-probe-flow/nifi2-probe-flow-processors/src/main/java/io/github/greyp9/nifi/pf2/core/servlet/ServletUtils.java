@@ -16,6 +16,7 @@ import io.github.greyp9.nifi.pf.core.ProbeUtils;
 import io.github.greyp9.nifi.pf.core.common.Attribute;
 import io.github.greyp9.nifi.pf.core.common.Attributes;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
 import io.github.greyp9.nifi.pf.core.http.HttpRequest;
 import io.github.greyp9.nifi.pf.core.http.HttpResponse;
 import jakarta.servlet.http.HttpServletRequest;
@@ -94,7 +95,7 @@ public final class ServletUtils {
         for (final Attribute nameValue : httpResponse.getHeaders()) {
             servletResponse.addHeader(nameValue.getName(), nameValue.getValue());
         }
-        servletResponse.getOutputStream().write(ProbeUtils.toBytes(httpResponse.getEntity()));
+        ProbeUtils.copy(httpResponse.getEntity(), servletResponse.getOutputStream());
     }
 
     public static HttpResponse toResponseOk(final String contentType, final byte[] entity) {
@@ -109,6 +110,19 @@ public final class ServletUtils {
         return new HttpResponse(statusCode, headers, entity);
     }
 
+    /**
+     * @param statusCode  the HTTP status code
+     * @param contentType the media type of the content
+     * @param content     the content, streamed to the client as the response is written
+     * @return the HTTP response
+     */
+    public static HttpResponse toResponse(final int statusCode, final String contentType, final Content content) {
+        final Attributes headers = new Attributes(
+                new Attribute(Probe.Http.CONTENT_TYPE, contentType),
+                new Attribute(Probe.Http.CONTENT_LENGTH, Long.toString(content.getSize())));
+        return new HttpResponse(statusCode, headers, content.newInputStream());
+    }
+
     public static HttpResponse toRedirect(final String location) {
         final Attributes headers = new Attributes(new Attribute(Probe.Http.LOCATION, location));
         return new HttpResponse(HttpServletResponse.SC_FOUND, headers, new byte[0]);
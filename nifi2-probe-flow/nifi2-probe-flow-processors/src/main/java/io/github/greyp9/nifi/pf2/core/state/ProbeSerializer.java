@@ -12,62 +12,84 @@
  */
 package io.github.greyp9.nifi.pf2.core.state;
 
-import io.github.greyp9.nifi.pf.core.common.Attribute;
-import io.github.greyp9.nifi.pf.core.common.Probe;
-import io.github.greyp9.nifi.pf.core.xml.ProbeXml;
-import io.github.greyp9.nifi.pf.core.xml.XPather;
-import io.github.greyp9.nifi.pf.core.xml.XmlUtils;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.io.FlowFileWriter;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
+import io.github.greyp9.nifi.pf.core.xml.StateReader;
 import io.github.greyp9.nifi.pf2.core.flowfile.ProbeFlowFile;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import javax.xml.namespace.NamespaceContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class ProbeSerializer {
 
     public final byte[] serialize(final Collection<ProbeFlowFile> flowFiles) {
-        final Document document = XmlUtils.create(Probe.State.STATE, Probe.Xml.URI_STATE);
-        for (final ProbeFlowFile flowFile : flowFiles) {
-            final Element elementFlowFile = XmlUtils.addChild(document.getDocumentElement(), Probe.State.FLOWFILE);
-            final Map<String, String> attributes = flowFile.getAttributes();
-            for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                XmlUtils.addChild(elementFlowFile, Probe.State.ATTRIBUTE, entry.getValue(),
-                        new Attribute(Probe.State.NAME, entry.getKey()));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            serialize(flowFiles, os);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Write FlowFiles to a stream as a state document, one at a time; memory use does not depend on the number or
+     * size of the FlowFiles.
+     *
+     * @param flowFiles    the FlowFiles
+     * @param outputStream the target of the document (left open)
+     * @throws IOException on failure to read FlowFile content, or to write to the target
+     */
+    public final void serialize(final Collection<ProbeFlowFile> flowFiles,
+                                final OutputStream outputStream) throws IOException {
+        serialize(flowFiles, outputStream, StateFormat.XML);
+    }
+
+    /**
+     * Write FlowFiles to a stream in the given format, one at a time.
+     *
+     * @param flowFiles    the FlowFiles
+     * @param outputStream the target of the FlowFiles (left open)
+     * @param format       the format in which to write the FlowFiles
+     * @throws IOException on failure to read FlowFile content, or to write to the target
+     */
+    public final void serialize(final Collection<ProbeFlowFile> flowFiles, final OutputStream outputStream,
+                                final StateFormat format) throws IOException {
+        try (FlowFileWriter writer = format.newWriter(outputStream)) {
+            for (final ProbeFlowFile flowFile : flowFiles) {
+                writer.write(flowFile.getAttributes(), flowFile.getContent());
             }
-            XmlUtils.addChild(elementFlowFile, Probe.State.CONTENT,
-                    Base64.getEncoder().encodeToString(flowFile.getData()));
         }
-        return XmlUtils.toXml(document);
     }
 
 
-    public final Collection<ProbeFlowFile> deserialize(final byte[] bytes) throws IOException {
+    /**
+     * Read FlowFiles from a state document, one at a time (the FlowFiles themselves are all held in memory).
+     *
+     * @param inputStream the source of the document (left open)
+     * @return the FlowFiles in the document
+     * @throws IOException on failure to read the document, or if it is malformed
+     */
+    public final Collection<ProbeFlowFile> deserialize(final InputStream inputStream) throws IOException {
         final Collection<ProbeFlowFile> flowFilesDeserialized = new ArrayList<>();
-        final Document document = XmlUtils.toDocument(bytes);
-        final NamespaceContext context = ProbeXml.getContext();
-        final XPather xpatherState = new XPather(document, context);
-        final List<Element> flowfiles = xpatherState.getElements(XPATH_FLOWFILE);
-        for (final Element flowfile : flowfiles) {
-            final Map<String, String> attributes = new HashMap<>();
-            final XPather xpatherFlowFile = new XPather(flowfile, context);
-            final List<Element> elementsAttr = xpatherFlowFile.getElements(XPATH_ATTRIBUTE);
-            for (Element elementAttr : elementsAttr) {
-                attributes.put(elementAttr.getAttribute(Probe.State.NAME), elementAttr.getTextContent());
+        try (StateReader reader = new StateReader(inputStream)) {
+            for (Map<String, String> attributes = reader.next(); attributes != null; attributes = reader.next()) {
+                final HeapContent content = HeapContent.read(reader.getContent(), -1L);
+                flowFilesDeserialized.add(new ProbeFlowFile(0L, System.currentTimeMillis(), attributes, content));
             }
-            final byte[] content = Base64.getDecoder().decode(xpatherFlowFile.getText(XPATH_CONTENT));
-            flowFilesDeserialized.add(new ProbeFlowFile(0L, System.currentTimeMillis(), attributes, content));
         }
         return flowFilesDeserialized;
     }
 
-    public static final String XPATH_FLOWFILE = "/st:state/st:flowfile";
-    public static final String XPATH_ATTRIBUTE = "st:attribute";
-    public static final String XPATH_CONTENT = "st:content/text()";
+    public final Collection<ProbeFlowFile> deserialize(final byte[] bytes) throws IOException {
+        return deserialize(new ByteArrayInputStream(bytes));
+    }
 }
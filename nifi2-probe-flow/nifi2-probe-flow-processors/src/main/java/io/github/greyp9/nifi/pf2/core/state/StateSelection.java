@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf2.core.state;
+
+import io.github.greyp9.nifi.pf2.core.flowfile.ProbeFlowFile;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The held FlowFiles selected for export (see {@link StateFilter}).
+ */
+public final class StateSelection {
+
+    /**
+     * The FlowFiles selected, in sequence order.
+     */
+    private final List<ProbeFlowFile> flowFiles;
+
+    /**
+     * The sequence from which to resume the export (the <code>since</code> of the next request).
+     */
+    private final long cursor;
+
+    /**
+     * True, if FlowFiles matching the filter were left out by the byte budget.
+     */
+    private final boolean more;
+
+    public StateSelection(final List<ProbeFlowFile> flowFiles, final long cursor, final boolean more) {
+        this.flowFiles = Collections.unmodifiableList(flowFiles);
+        this.cursor = cursor;
+        this.more = more;
+    }
+
+    public List<ProbeFlowFile> getFlowFiles() {
+        return flowFiles;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public boolean isMore() {
+        return more;
+    }
+}
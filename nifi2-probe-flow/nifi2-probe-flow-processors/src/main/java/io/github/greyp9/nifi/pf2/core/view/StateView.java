@@ -15,6 +15,7 @@ package io.github.greyp9.nifi.pf2.core.view;
 import io.github.greyp9.nifi.pf.core.common.Attribute;
 import io.github.greyp9.nifi.pf.core.common.Probe;
 import io.github.greyp9.nifi.pf.core.http.HttpResponse;
+import io.github.greyp9.nifi.pf.core.io.StateFormat;
 import io.github.greyp9.nifi.pf.core.xhtml.XhtmlUtils;
 import io.github.greyp9.nifi.pf.core.xml.XmlUtils;
 import io.github.greyp9.nifi.pf2.core.servlet.ServletUtils;
@@ -66,6 +67,16 @@ public final class StateView {
         XmlUtils.addChild(div, Probe.Html.A, "Download",
                 new Attribute(Probe.Html.TITLE, "Download State"),
                 new Attribute(Probe.Html.HREF, String.format("/state/xml/%s", processorState.getId())));
+        XmlUtils.addChild(div, Probe.Html.SPAN, " | ");
+        XmlUtils.addChild(div, Probe.Html.A, "FlowFile Package v3",
+                new Attribute(Probe.Html.TITLE, "Download State (for UnpackContent)"),
+                new Attribute(Probe.Html.HREF, String.format("/state/%s/%s",
+                        StateFormat.FLOWFILE_V3.getPath(), processorState.getId())));
+        XmlUtils.addChild(div, Probe.Html.SPAN, " | ");
+        XmlUtils.addChild(div, Probe.Html.A, "FlowFile Package v3 (gzip)",
+                new Attribute(Probe.Html.TITLE, "Download State (gzip compressed)"),
+                new Attribute(Probe.Html.HREF, String.format("/state/%s/%s",
+                        StateFormat.FLOWFILE_V3_GZIP.getPath(), processorState.getId())));
     }
 
     private void addDivUpload(final Element parent, final ProbeProcessorState processorState) {
@@ -86,5 +97,10 @@ public final class StateView {
                 new Attribute(Probe.Html.NAME, Probe.Form.SUBMIT),
                 new Attribute(Probe.Html.TYPE, Probe.Form.SUBMIT),
                 new Attribute(Probe.Html.VALUE, "Upload Content"));
+        XmlUtils.addChild(formUpload, Probe.Html.INPUT,
+                new Attribute(Probe.Html.NAME, Probe.App.UPLOAD_ALL),
+                new Attribute(Probe.Html.TYPE, Probe.Form.SUBMIT),
+                new Attribute(Probe.Html.TITLE, "Upload only if all FlowFiles fit within the processor limits"),
+                new Attribute(Probe.Html.VALUE, "Upload All or Nothing"));
     }
 }
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf2.processor;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.function.Consumer;
+
+/**
+ * Commit of the NiFi session at the end of an <code>onTrigger()</code> invocation.
+ * <p>
+ * The session is committed asynchronously, so that <code>onTrigger()</code> does not block on repository updates.
+ * The callbacks are invoked by the framework once the commit completes (or fails).
+ */
+final class SessionCommitter {
+
+    /**
+     * @param session   the session to commit
+     * @param onSuccess callback on successful commit
+     * @param onFailure callback on failed commit
+     */
+    void commit(final ProcessSession session, final Runnable onSuccess, final Consumer<Throwable> onFailure) {
+        session.commitAsync(onSuccess, onFailure);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf2.core.state;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+import org.apache.nifi.flowfile.FlowFile;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * State of a processor in breakpoint mode, where incoming FlowFiles are transferred to the pass-through relationship
+ * as they arrive, except for those matching the breakpoint condition, which are held for inspection.
+ * <p>
+ * The conditions are compiled when the processor is scheduled.  The attribute condition is evaluated first; FlowFile
+ * content is read (for the content condition) only for FlowFiles matching the attribute condition.  The content
+ * condition is evaluated against the UTF-8 decoded text of (at most) the first {@link #MAX_TEXT_SIZE} bytes of content.
+ */
+public final class ProbeBreakpointState {
+
+    /**
+     * Name of the relationship to which FlowFiles not matching the breakpoint condition are transferred.
+     */
+    private final String relationship;
+
+    /**
+     * Text of the breakpoint condition (for display).
+     */
+    private final String conditionText;
+
+    /**
+     * Condition on the attributes of an incoming FlowFile.
+     */
+    private final Predicate<FlowFile> attributeCondition;
+
+    /**
+     * Condition on the content of an incoming FlowFile (null if not configured).
+     */
+    private final Predicate<CharSequence> contentCondition;
+
+    /**
+     * The number of FlowFiles evaluated against the breakpoint condition.
+     */
+    private final AtomicLong countEvaluated;
+
+    /**
+     * The number of FlowFiles matching the breakpoint condition.
+     */
+    private final AtomicLong countMatched;
+
+    /**
+     * The number of FlowFiles transferred to the pass-through relationship.
+     */
+    private final AtomicLong countPassed;
+
+    /**
+     * Constructor.
+     *
+     * @param relationship       name of the relationship to which non-matching FlowFiles are transferred
+     * @param conditionText      text of the breakpoint condition (for display)
+     * @param attributeCondition condition on the attributes of an incoming FlowFile
+     * @param contentCondition   condition on the content of an incoming FlowFile (null if not configured)
+     */
+    public ProbeBreakpointState(final String relationship, final String conditionText,
+                                final Predicate<FlowFile> attributeCondition,
+                                final Predicate<CharSequence> contentCondition) {
+        this.relationship = relationship;
+        this.conditionText = conditionText;
+        this.attributeCondition = attributeCondition;
+        this.contentCondition = contentCondition;
+        this.countEvaluated = new AtomicLong(0L);
+        this.countMatched = new AtomicLong(0L);
+        this.countPassed = new AtomicLong(0L);
+    }
+
+    public String getRelationship() {
+        return relationship;
+    }
+
+    public String getConditionText() {
+        return conditionText;
+    }
+
+    public long getCountEvaluated() {
+        return countEvaluated.get();
+    }
+
+    public long getCountMatched() {
+        return countMatched.get();
+    }
+
+    public long getCountPassed() {
+        return countPassed.get();
+    }
+
+    /**
+     * @return true, if the content of FlowFiles matching the attribute condition must be read to evaluate the
+     * content condition
+     */
+    public boolean hasContentCondition() {
+        return (contentCondition != null);
+    }
+
+    /**
+     * @param flowFile an incoming FlowFile
+     * @return true, if the FlowFile attributes match the breakpoint condition
+     */
+    public boolean matchesAttributes(final FlowFile flowFile) {
+        countEvaluated.incrementAndGet();
+        final boolean matches = attributeCondition.test(flowFile);
+        if (matches && (contentCondition == null)) {
+            countMatched.incrementAndGet();
+        }
+        return matches;
+    }
+
+    /**
+     * @param content the content of an incoming FlowFile matching the attribute condition
+     * @return true, if the FlowFile content matches the breakpoint condition
+     * @throws IOException on failure to read the content
+     */
+    public boolean matchesContent(final Content content) throws IOException {
+        final boolean matches = (contentCondition == null) || contentCondition.test(toText(content));
+        if (matches && (contentCondition != null)) {
+            countMatched.incrementAndGet();
+        }
+        return matches;
+    }
+
+    /**
+     * Decode the content in one pass into a buffer sized to it (UTF-8 needs at least one byte per char), so that the
+     * content condition is evaluated without an intermediate copy of the content as a single array.
+     */
+    private static CharSequence toText(final Content content) throws IOException {
+        final CharBuffer text = CharBuffer.allocate((int) Math.min(content.getSize(), MAX_TEXT_SIZE));
+        try (Reader reader = new InputStreamReader(content.newInputStream(), StandardCharsets.UTF_8)) {
+            int count = 0;
+            while (text.hasRemaining() && (count >= 0)) {
+                count = reader.read(text);
+            }
+        }
+        text.flip();
+        return text;
+    }
+
+    /**
+     * Record the transfer of an incoming FlowFile to the pass-through relationship.
+     */
+    public void pass() {
+        countPassed.incrementAndGet();
+    }
+
+    /**
+     * The maximum number of bytes of content against which the content condition is evaluated.
+     */
+    private static final int MAX_TEXT_SIZE = 64 * 1024 * 1024;
+}
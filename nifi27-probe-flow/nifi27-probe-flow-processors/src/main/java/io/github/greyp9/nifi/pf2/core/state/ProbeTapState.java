@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf2.core.state;
+
+import io.github.greyp9.nifi.pf.core.capture.Reservoir;
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
+import io.github.greyp9.nifi.pf.core.collect.LongLinkedMap;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf2.core.flowfile.ProbeFlowFile;
+import org.apache.nifi.flowfile.FlowFile;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of a processor in tap mode, where each incoming FlowFile is transferred to the tap relationship as it
+ * arrives.
+ * <p>
+ * A snapshot of the most recent FlowFiles is kept for viewing.  Each entry references the (immutable) NiFi FlowFile
+ * record; attributes are copied only when the entry is viewed.  Content is captured only for FlowFiles requested by
+ * the user.
+ * <p>
+ * Optionally, a uniform random sample of the FlowFiles passing through the processor is also kept.  Content is
+ * captured for each FlowFile admitted to the sample.  The sample may be restarted at a fixed interval, so that it
+ * represents a recent window of the stream.
+ */
+public final class ProbeTapState {
+
+    /**
+     * Name of the relationship to which tapped FlowFiles are transferred.
+     */
+    private final String relationship;
+
+    /**
+     * Maximum number of FlowFiles retained in the snapshot.
+     */
+    private final int snapshotSize;
+
+    /**
+     * The most recent FlowFiles to pass through the processor, indexed by probe id.
+     */
+    private final LongLinkedMap<Tapped> snapshot;
+
+    /**
+     * Uniform random sample of the FlowFiles passing through the processor (null if sampling is not enabled).
+     */
+    private final Reservoir<Tapped> sample;
+
+    /**
+     * Interval (in milliseconds) at which the sample is restarted (zero to sample the whole stream).
+     */
+    private final long sampleWindow;
+
+    /**
+     * Start of the current sample window (epoch milliseconds).
+     */
+    private volatile long sampleStart;
+
+    /**
+     * The number of FlowFiles passing through the processor.
+     */
+    private final AtomicLong countTapped;
+
+    /**
+     * The number of subsequent FlowFiles for which content should be captured.
+     */
+    private final AtomicInteger countToCapture;
+
+    /**
+     * Constructor.
+     *
+     * @param relationship name of the relationship to which tapped FlowFiles are transferred
+     * @param snapshotSize maximum number of FlowFiles retained in the snapshot
+     */
+    public ProbeTapState(final String relationship, final int snapshotSize) {
+        this(relationship, snapshotSize, 0, 0L);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param relationship name of the relationship to which tapped FlowFiles are transferred
+     * @param snapshotSize maximum number of FlowFiles retained in the snapshot
+     * @param sampleSize   number of FlowFiles retained in the random sample (zero to disable sampling)
+     * @param sampleWindow interval (in milliseconds) at which the sample is restarted (zero for no restart)
+     */
+    public ProbeTapState(final String relationship, final int snapshotSize,
+                         final int sampleSize, final long sampleWindow) {
+        this.relationship = relationship;
+        this.snapshotSize = snapshotSize;
+        this.snapshot = new LongLinkedMap<>();
+        this.sample = (sampleSize > 0) ? new Reservoir<>(sampleSize, new Random()) : null;
+        this.sampleWindow = sampleWindow;
+        this.sampleStart = System.currentTimeMillis();
+        this.countTapped = new AtomicLong(0L);
+        this.countToCapture = new AtomicInteger(0);
+    }
+
+    public String getRelationship() {
+        return relationship;
+    }
+
+    public int getSnapshotSize() {
+        return snapshotSize;
+    }
+
+    public long getCountTapped() {
+        return countTapped.get();
+    }
+
+    public int getCountSnapshot() {
+        return snapshot.size();
+    }
+
+    public boolean isSampling() {
+        return (sample != null);
+    }
+
+    public int getSampleSize() {
+        return (sample == null) ? 0 : sample.getSize();
+    }
+
+    public long getSampleWindow() {
+        return sampleWindow;
+    }
+
+    public long getSampleStart() {
+        return sampleStart;
+    }
+
+    /**
+     * @return the number of FlowFiles offered to the sample in the current sample window
+     */
+    public long getCountSampleSeen() {
+        return (sample == null) ? 0L : sample.getCountSeen();
+    }
+
+    /**
+     * Offer the next FlowFile to the random sample.
+     *
+     * @return the sample slot to which the FlowFile is admitted, or -1 if it is not sampled
+     */
+    public int admitSample() {
+        return (sample == null) ? -1 : sample.admit();
+    }
+
+    /**
+     * Restart the random sample, if the current sample window has elapsed.
+     *
+     * @param now the current time (epoch milliseconds)
+     * @return the size of the captured content of the discarded entries
+     */
+    synchronized long expireSample(final long now) {
+        long expired = 0L;
+        if ((sample != null) && (sampleWindow > 0L) && ((now - sampleStart) >= sampleWindow)) {
+            sampleStart = now;
+            for (final Tapped tapped : sample.reset()) {
+                expired += tapped.getDataSize();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @param amount the number of subsequent FlowFiles for which content should be captured
+     * @return the updated number of FlowFiles for which content should be captured
+     */
+    public int incrementToCapture(final int amount) {
+        return countToCapture.addAndGet(amount);
+    }
+
+    /**
+     * @return true, if the content of the next FlowFile should be captured (claiming one pending request)
+     */
+    public boolean shouldCapture() {
+        int count = countToCapture.get();
+        while ((count > 0) && !countToCapture.compareAndSet(count, count - 1)) {
+            count = countToCapture.get();
+        }
+        return (count > 0);
+    }
+
+    /**
+     * Add a FlowFile to the snapshot, evicting the oldest entries beyond the snapshot size.  A FlowFile admitted to
+     * the random sample is also placed in the sample; its captured content is held only by the sample entry.
+     *
+     * @param id       probe id for the FlowFile
+     * @param flowFile the NiFi FlowFile record
+     * @param content  the captured FlowFile content, or null if not captured
+     * @param slot     the sample slot to which the FlowFile is admitted, or -1 if it is not sampled
+     * @return the size of the captured content of the evicted entries
+     */
+    long add(final long id, final FlowFile flowFile, final Content content, final int slot) {
+        countTapped.incrementAndGet();
+        long evicted = 0L;
+        if ((sample != null) && (slot >= 0)) {
+            snapshot.put(id, new Tapped(id, flowFile, null));
+            final Tapped displaced = sample.set(slot, new Tapped(id, flowFile, content));
+            evicted += (displaced == null) ? 0L : displaced.getDataSize();
+        } else {
+            snapshot.put(id, new Tapped(id, flowFile, content));
+        }
+        while (snapshot.size() > snapshotSize) {
+            final Tapped tapped = snapshot.removeFirst();
+            evicted += (tapped == null) ? 0L : tapped.getDataSize();
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the FlowFile with the specified id, preferring the sample entry (which holds any captured content)
+     */
+    public ProbeFlowFile getFlowFile(final long id) {
+        Tapped tapped = null;
+        if (sample != null) {
+            for (final Tapped sampled : sample.values()) {
+                tapped = (sampled.id == id) ? sampled : tapped;
+            }
+        }
+        tapped = (tapped == null) ? snapshot.get(id) : tapped;
+        return (tapped == null) ? null : tapped.toProbeFlowFile();
+    }
+
+    /**
+     * @return the FlowFiles in the snapshot (oldest first)
+     */
+    public List<ProbeFlowFile> getFlowFiles() {
+        final List<ProbeFlowFile> flowFiles = new ArrayList<>();
+        for (final Tapped tapped : snapshot.values()) {
+            flowFiles.add(tapped.toProbeFlowFile());
+        }
+        return flowFiles;
+    }
+
+    /**
+     * @return the FlowFiles in the random sample (ordered by arrival)
+     */
+    public List<ProbeFlowFile> getFlowFilesSampled() {
+        final List<ProbeFlowFile> flowFiles = new ArrayList<>();
+        if (sample != null) {
+            final List<Tapped> values = sample.values();
+            values.sort(Comparator.comparingLong(t -> t.id));
+            for (final Tapped tapped : values) {
+                flowFiles.add(tapped.toProbeFlowFile());
+            }
+        }
+        return flowFiles;
+    }
+
+    /**
+     * Snapshot entry, materialized as a {@link ProbeFlowFile} on demand.
+     */
+    private static final class Tapped {
+        private final long id;
+        private final FlowFile flowFile;
+        private final Content content;
+
+        private Tapped(final long id, final FlowFile flowFile, final Content content) {
+            this.id = id;
+            this.flowFile = flowFile;
+            this.content = content;
+        }
+
+        private long getDataSize() {
+            return (content == null) ? 0L : content.getSize();
+        }
+
+        private ProbeFlowFile toProbeFlowFile() {
+            final Map<String, String> attributes = CompactAttributes.copyOf(
+                    flowFile.getAttributes(), Probe.App.FLOWFILE_ID_IN, Long.toString(flowFile.getId()));
+            return new ProbeFlowFile(id, flowFile.getEntryDate(), attributes, content);
+        }
+    }
+}
@@ -13,21 +13,28 @@
 package io.github.greyp9.nifi.pf2.core.view;
 
 import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.alert.Alert;
 import io.github.greyp9.nifi.pf.core.common.Attribute;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
 import io.github.greyp9.nifi.pf.core.http.HttpResponse;
+import io.github.greyp9.nifi.pf.core.journal.Journal;
 import io.github.greyp9.nifi.pf.core.xhtml.XhtmlUtils;
 import io.github.greyp9.nifi.pf.core.xml.XmlUtils;
 import io.github.greyp9.nifi.pf2.core.flowfile.ProbeFlowFile;
 import io.github.greyp9.nifi.pf2.core.servlet.ServletUtils;
+import io.github.greyp9.nifi.pf2.core.state.ProbeBreakpointState;
 import io.github.greyp9.nifi.pf2.core.state.ProbeProcessorState;
 import io.github.greyp9.nifi.pf2.core.state.ProbeServiceState;
+import io.github.greyp9.nifi.pf2.core.state.ProbeTapState;
 import org.apache.nifi.flowfile.FlowFile;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -55,16 +62,42 @@ public final class ProcessorView {
                 if (Probe.App.ACCEPT.equals(key) && (Probe.App.FLOWFILE.equals(value))) {
                     final String count = ProbeUtils.onNull(ServletUtils.getParameter(Probe.Form.COUNT, parameters), "");
                     processorState.incrementToConsume(ProbeUtils.toInt(count, 1));
+                } else if (Probe.App.ACCEPT.equals(key) && (Probe.App.CAPTURE.equals(value))) {
+                    final String count = ProbeUtils.onNull(ServletUtils.getParameter(Probe.Form.COUNT, parameters), "");
+                    final ProbeTapState tapState = processorState.getTapState();
+                    if (tapState != null) {
+                        tapState.incrementToCapture(ProbeUtils.toInt(count, 1));
+                    }
                 } else if (Probe.App.ROUTE.equals(key)) {
                     processorState.routeFlowFile(value);
                 } else if (Probe.Html.ACTION.equals(key)) {
                     locationUpdate = processorState.actionFlowFile(processorState.getId(), value, location);
+                } else if (Probe.App.PURGE.equals(key)) {
+                    locationUpdate = purge(processorState, location);
                 }
             }
         }
         return locationUpdate;
     }
 
+    /**
+     * Discard the state retained for a stopped processor; the processor page then no longer exists.
+     */
+    private String purge(final ProbeProcessorState processorState, final String location) {
+        String locationUpdate = location;
+        try {
+            if (serviceState.purge(processorState.getId())) {
+                locationUpdate = Probe.Resource.ROOT;
+            }
+        } catch (final IOException e) {
+            serviceState.getAlerts().add(new Alert(Alert.Severity.WARN, new Date(), String.format(
+                    "failed to delete content spilled by processor '%s' (%s)", processorState.getName(),
+                    e.getMessage())));
+            locationUpdate = Probe.Resource.ROOT;
+        }
+        return locationUpdate;
+    }
+
     public HttpResponse render(final String processorId, final String requestURI) {
         final ProbeProcessorState processorState = serviceState.getProcessorState(processorId);
         return (processorState == null)
@@ -88,9 +121,22 @@ public final class ProcessorView {
 
         final Element divContent = XmlUtils.addChild(body, Probe.Html.DIV,
                 new Attribute(Probe.Html.CLASS, Probe.CSS.CONTENT));
+        final ProbeTapState tapState = processorState.getTapState();
         addDivState(divContent, processorState);
-        addDivAccept(divContent, requestURI);
+        if (processorState.isStopped()) {
+            addDivPurge(divContent, requestURI);
+        } else if (tapState != null) {
+            addDivCapture(divContent, requestURI);
+        } else if (processorState.getBreakpointState() == null) {
+            addDivAccept(divContent, requestURI);
+        }
         addDivFlowFiles(divContent, processorState, requestURI);
+        if (tapState != null) {
+            addDivTapped(divContent, processorState, tapState, requestURI);
+            if (tapState.isSampling()) {
+                addDivSampled(divContent, processorState, tapState, requestURI);
+            }
+        }
         XhtmlUtils.createFooter(body);
         return ServletUtils.toResponse(HttpURLConnection.HTTP_OK,
                 Probe.Mime.TEXT_HTML_UTF8, XmlUtils.toXhtml(document));
@@ -105,7 +151,72 @@ public final class ProcessorView {
         final Element tbody = XmlUtils.addChild(table, Probe.Html.TBODY,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         XhtmlUtils.addRow(tbody, "Processor started", processorState.getStart());
+        if (processorState.isStopped()) {
+            XhtmlUtils.addRow(tbody, "Processor stopped", processorState.getStopped());
+        }
         XhtmlUtils.addRow(tbody, "Last 'onTrigger()'", processorState.getLastOnTrigger());
+        final int maxFlowFileCount = processorState.getMaxFlowFileCount();
+        XhtmlUtils.addRow(tbody, "Capture limits", String.format("%d / %d bytes, %d / %s FlowFile(s)",
+                processorState.getMemorySize(), processorState.getMaxMemorySize(), processorState.flowFileCount(),
+                (maxFlowFileCount > 0) ? Integer.toString(maxFlowFileCount) : "unlimited"));
+        XhtmlUtils.addRow(tbody, "Eviction policy", processorState.getEvictionPolicy().getDisplayName());
+        XhtmlUtils.addRow(tbody, "FlowFiles evicted / rejected", String.format("%d / %d",
+                processorState.getCountEvicted(), processorState.getCountRejected()));
+        final ContentStore contentStore = processorState.getContentStore();
+        if (contentStore.isOffHeapEnabled()) {
+            XhtmlUtils.addRow(tbody, "Content off heap", String.format("%d / %d bytes (%d bytes allocated)",
+                    contentStore.getOffHeapUsed(), contentStore.getMaxOffHeapSize(),
+                    contentStore.getOffHeapReserved()));
+        }
+        if (contentStore.isDedupEnabled()) {
+            final long storedSize = contentStore.getDedupStoredSize();
+            final long sharedSize = contentStore.getDedupSharedSize();
+            XhtmlUtils.addRow(tbody, "Content deduplicated", String.format(
+                    "%d bytes held as %d bytes (%d distinct), ratio %.2f", sharedSize, storedSize,
+                    contentStore.getDedupCount(), (storedSize == 0L) ? 1.0d : ((double) sharedSize / storedSize)));
+        }
+        if (contentStore.isSpillEnabled()) {
+            XhtmlUtils.addRow(tbody, "Content on heap / spilled", String.format(
+                    "%d / %d bytes (%d spill file(s))", contentStore.getHeapUsed(), contentStore.getSpillUsed(),
+                    contentStore.getSegmentCount()));
+        }
+        final Journal journal = processorState.getJournal();
+        if (journal != null) {
+            XhtmlUtils.addRow(tbody, "Journal", String.format("%d FlowFile(s), %d bytes (%d compaction(s))",
+                    journal.getCount(), journal.getSize(), journal.getCountCompacted()));
+        }
+        final ProbeTapState tapState = processorState.getTapState();
+        if (tapState != null) {
+            XhtmlUtils.addRow(tbody, "Mode", String.format("Tap (to '%s')", tapState.getRelationship()));
+            XhtmlUtils.addRow(tbody, "FlowFiles tapped", Long.toString(tapState.getCountTapped()));
+            if (tapState.isSampling()) {
+                XhtmlUtils.addRow(tbody, "FlowFiles sampled", String.format("%d (of %d seen)",
+                        tapState.getFlowFilesSampled().size(), tapState.getCountSampleSeen()));
+            }
+        }
+        final ProbeBreakpointState breakpointState = processorState.getBreakpointState();
+        if (breakpointState != null) {
+            XhtmlUtils.addRow(tbody, "Mode", String.format("Breakpoint (pass to '%s')",
+                    breakpointState.getRelationship()));
+            XhtmlUtils.addRow(tbody, "Breakpoint condition", breakpointState.getConditionText());
+            XhtmlUtils.addRow(tbody, "FlowFiles evaluated / matched / passed", String.format("%d / %d / %d",
+                    breakpointState.getCountEvaluated(), breakpointState.getCountMatched(),
+                    breakpointState.getCountPassed()));
+        }
+    }
+
+    private void addDivPurge(final Element parent, final String requestURI) {
+        final Element div = XmlUtils.addChild(parent, Probe.Html.DIV,
+                new Attribute(Probe.Html.ID, "purge"));
+        XmlUtils.addChild(div, Probe.Html.H2, "Purge Processor State");
+        XmlUtils.addChild(div, Probe.Html.P, "(the processor is stopped; its held FlowFiles are retained for its next "
+                + "run, unless they are purged)");
+
+        final Element form = XmlUtils.addChild(div, Probe.Html.FORM,
+                new Attribute(Probe.Html.ACTION, requestURI),
+                new Attribute(Probe.Html.METHOD, Probe.Html.POST));
+        XmlUtils.addChild(form, "button", "Purge Held FlowFiles", new Attribute("accesskey", "P"),
+                new Attribute("type", "submit"), new Attribute("name", "purge"), new Attribute("value", "state"));
     }
 
     private void addDivAccept(final Element parent, final String requestURI) {
@@ -125,6 +236,23 @@ public final class ProcessorView {
                 new Attribute("type", "submit"), new Attribute("name", "accept"), new Attribute("value", "flowfile"));
     }
 
+    private void addDivCapture(final Element parent, final String requestURI) {
+        final Element div = XmlUtils.addChild(parent, Probe.Html.DIV,
+                new Attribute(Probe.Html.ID, "capture"));
+        XmlUtils.addChild(div, Probe.Html.H2, "Capture FlowFile Content");
+        XmlUtils.addChild(div, Probe.Html.P, "(increment number of tapped FlowFiles for which content is captured)");
+
+        final Element form = XmlUtils.addChild(div, Probe.Html.FORM,
+                new Attribute(Probe.Html.ACTION, requestURI),
+                new Attribute(Probe.Html.METHOD, Probe.Html.POST));
+        XmlUtils.addChild(form, Probe.Html.INPUT,
+                new Attribute(Probe.Html.NAME, Probe.Form.COUNT),
+                new Attribute(Probe.Html.TYPE, Probe.Form.TEXT),
+                new Attribute(Probe.Html.VALUE, "1"));
+        XmlUtils.addChild(form, "button", "Capture Content of Tapped FlowFile", new Attribute("accesskey", "A"),
+                new Attribute("type", "submit"), new Attribute("name", "accept"), new Attribute("value", "capture"));
+    }
+
     private void addDivFlowFiles(
             final Element parent, final ProbeProcessorState processorState, final String requestURI) {
         final Element div = XmlUtils.addChild(parent, Probe.Html.DIV,
@@ -168,7 +296,8 @@ public final class ProcessorView {
         final Element thead = XmlUtils.addChild(table, Probe.Html.THEAD,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         final Element trHead = XmlUtils.addChild(thead, Probe.Html.TR);
-        final String[] columns = {"Metadata", "Content", "ID", "Entry Date", "Attributes", "Size", "Action", "Route"};
+        final String[] columns = {"Metadata", "Content", "ID", "Entry Date", "Attributes", "Size", "Retained", "Action",
+                "Route"};
         for (final String column : columns) {
             XmlUtils.addChild(trHead, Probe.Html.TH, column);
         }
@@ -188,7 +317,72 @@ public final class ProcessorView {
         final String footer = String.format("%s FlowFile(s) to accept, %d FlowFile(s) held, %d FlowFile(s) routed",
                 flowFileToAcceptCount, flowFileCount, flowFileRoutedCount);
         XmlUtils.addChild(trFoot, Probe.Html.TH, footer,
-                new Attribute(Probe.Html.COLSPAN, "8"));
+                new Attribute(Probe.Html.COLSPAN, "9"));
+    }
+
+    private void addDivTapped(final Element parent, final ProbeProcessorState processorState,
+                              final ProbeTapState tapState, final String requestURI) {
+        final Element div = XmlUtils.addChild(parent, Probe.Html.DIV,
+                new Attribute(Probe.Html.ID, "tapped"));
+        XmlUtils.addChild(div, Probe.Html.H2, "Tapped FlowFiles");
+        XmlUtils.addChild(div, Probe.Html.P, String.format("This table lists the most recent FlowFiles "
+                + "passed through the processor to relationship '%s'.  Content is available for FlowFiles "
+                + "captured on request; these may be cloned into the held FlowFiles, or copied into the FlowFile "
+                + "editor.", tapState.getRelationship()));
+        final List<ProbeFlowFile> flowFiles = tapState.getFlowFiles();
+        final String footer = String.format("%d FlowFile(s) tapped, %d of %d FlowFile(s) in snapshot, "
+                        + "%d FlowFile(s) to capture", tapState.getCountTapped(), flowFiles.size(),
+                tapState.getSnapshotSize(), tapState.incrementToCapture(0));
+        addTableTapped(div, processorState, tapState, flowFiles, footer, requestURI);
+    }
+
+    private void addDivSampled(final Element parent, final ProbeProcessorState processorState,
+                               final ProbeTapState tapState, final String requestURI) {
+        final Element div = XmlUtils.addChild(parent, Probe.Html.DIV,
+                new Attribute(Probe.Html.ID, "sampled"));
+        XmlUtils.addChild(div, Probe.Html.H2, "Sampled FlowFiles");
+        XmlUtils.addChild(div, Probe.Html.P, "This table lists a uniform random sample of the FlowFiles "
+                + "passed through the processor, with content.  These may be cloned into the held FlowFiles, or "
+                + "copied into the FlowFile editor.");
+        final List<ProbeFlowFile> flowFiles = tapState.getFlowFilesSampled();
+        final String window = (tapState.getSampleWindow() > 0L)
+                ? String.format(" (window of %d ms)", tapState.getSampleWindow()) : "";
+        final String footer = String.format("%d of %d FlowFile(s) in sample, %d FlowFile(s) seen since %s%s",
+                flowFiles.size(), tapState.getSampleSize(), tapState.getCountSampleSeen(),
+                new Date(tapState.getSampleStart()).toInstant().toString(), window);
+        addTableTapped(div, processorState, tapState, flowFiles, footer, requestURI);
+    }
+
+    private void addTableTapped(final Element div, final ProbeProcessorState processorState,
+                                final ProbeTapState tapState, final List<ProbeFlowFile> flowFiles,
+                                final String footer, final String requestURI) {
+        final Element form = XmlUtils.addChild(div, Probe.Html.FORM,
+                new Attribute(Probe.Html.ACTION, requestURI),
+                new Attribute(Probe.Html.METHOD, Probe.Html.POST));
+        final Element table = XmlUtils.addChild(form, Probe.Html.TABLE,
+                new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
+        final Element thead = XmlUtils.addChild(table, Probe.Html.THEAD,
+                new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
+        final Element trHead = XmlUtils.addChild(thead, Probe.Html.TR);
+        final String[] columns = {"Metadata", "Content", "ID", "Entry Date", "Attributes", "Size", "Retained", "Action",
+                "Route"};
+        for (final String column : columns) {
+            XmlUtils.addChild(trHead, Probe.Html.TH, column);
+        }
+        if (!flowFiles.isEmpty()) {
+            final Element tbody = XmlUtils.addChild(table, Probe.Html.TBODY,
+                    new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
+            final List<String> actions = Arrays.asList(Probe.Action.CLONE, Probe.Action.EDIT);
+            for (final ProbeFlowFile flowFile : flowFiles) {
+                addRowFlowFile(processorState, tbody, flowFile, (flowFile.isNull() ? null : actions),
+                        Collections.emptySet(), tapState.getRelationship());
+            }
+        }
+        final Element tfoot = XmlUtils.addChild(table, Probe.Html.TFOOT,
+                new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
+        final Element trFoot = XmlUtils.addChild(tfoot, Probe.Html.TR);
+        XmlUtils.addChild(trFoot, Probe.Html.TH, footer,
+                new Attribute(Probe.Html.COLSPAN, "9"));
     }
 
     private void addRowFlowFile(final ProbeProcessorState processorState, final Element table, final FlowFile flowFile,
@@ -215,6 +409,9 @@ public final class ProcessorView {
                 : (probeFlowFile.isNull() ? "-" :  Long.toString(flowFile.getSize()));
         XmlUtils.addChild(tr, Probe.Html.TD, size,
                 new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
+        final String retained = (probeFlowFile == null) ? "-" : Long.toString(probeFlowFile.getRetainedSize());
+        XmlUtils.addChild(tr, Probe.Html.TD, retained,
+                new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
 
         final Element tdAction = XmlUtils.addChild(tr, Probe.Html.TD);
         if (actions == null) {
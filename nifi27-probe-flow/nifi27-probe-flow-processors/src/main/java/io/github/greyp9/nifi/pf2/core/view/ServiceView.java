@@ -14,6 +14,7 @@ package io.github.greyp9.nifi.pf2.core.view;
 
 import io.github.greyp9.nifi.pf.core.common.Attribute;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
 import io.github.greyp9.nifi.pf.core.http.HttpResponse;
 import io.github.greyp9.nifi.pf.core.xhtml.XhtmlUtils;
 import io.github.greyp9.nifi.pf.core.xml.XmlUtils;
@@ -26,6 +27,7 @@ import org.w3c.dom.Element;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 public final class ServiceView {
@@ -66,20 +68,37 @@ public final class ServiceView {
         final Element tbody = XmlUtils.addChild(table, Probe.Html.TBODY,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         XhtmlUtils.addRow(tbody, "Controller Service started", serviceState.getStart());
+        XhtmlUtils.addRow(tbody, "Stopped processor state retention", (serviceState.getRetention() > 0L)
+                ? String.format("%d ms", serviceState.getRetention()) : "none");
+        final Collection<ProbeProcessorState> processorStates = serviceState.getProcessorStates();
+        XhtmlUtils.addRow(tbody, "Held content on heap / off heap / spilled", String.format("%d / %d / %d bytes",
+                sumContent(processorStates, ContentStore::getHeapUsed),
+                sumContent(processorStates, ContentStore::getOffHeapUsed),
+                sumContent(processorStates, ContentStore::getSpillUsed)));
+        XhtmlUtils.addRow(tbody, "Held memory (estimated footprint)", String.format("%d / %d bytes",
+                processorStates.stream().mapToLong(ProbeProcessorState::getMemorySize).sum(),
+                processorStates.stream().mapToLong(ProbeProcessorState::getMaxMemorySize).sum()));
+    }
+
+    private static long sumContent(final Collection<ProbeProcessorState> processorStates,
+                                   final ToLongFunction<ContentStore> metric) {
+        return processorStates.stream().map(ProbeProcessorState::getContentStore).mapToLong(metric).sum();
     }
 
     private void addDivProcessors(final Element div, final Collection<ProbeProcessorState> processorStates) {
         final Element divProcessors = XmlUtils.addChild(div, Probe.Html.DIV,
                 new Attribute(Probe.Html.ID, "processors"));
         XmlUtils.addChild(divProcessors, Probe.Html.H2, "Active Processors");
-        XmlUtils.addChild(divProcessors, Probe.Html.P, "(information about any running ProbeFlow processors)");
+        XmlUtils.addChild(divProcessors, Probe.Html.P, "(information about any running ProbeFlow processors, and "
+                + "stopped processors whose state is retained)");
         final Element table = XmlUtils.addChild(divProcessors, Probe.Html.TABLE,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         final Element thead = XmlUtils.addChild(table, Probe.Html.THEAD,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         final Element trHead = XmlUtils.addChild(thead, Probe.Html.TR);
-        final String[] columns = {"Name", "ProcessorID", "Start Time", "State", "Editor",
-                "FlowFiles to Accept", "FlowFiles", "FlowFiles Routed"};
+        final String[] columns = {"Name", "ProcessorID", "Start Time", "Stop Time", "State", "Editor",
+                "FlowFiles to Accept", "FlowFiles", "FlowFiles Routed", "Retained (Bytes)", "Heap (Bytes)",
+                "Off-Heap (Bytes)", "Spilled (Bytes)"};
         for (final String column : columns) {
             XmlUtils.addChild(trHead, Probe.Html.TH, column);
         }
@@ -95,7 +114,8 @@ public final class ServiceView {
         final Element tfoot = XmlUtils.addChild(table, Probe.Html.TFOOT,
                 new Attribute(Probe.Html.CLASS, Probe.Html.TABLE));
         final Element trFoot = XmlUtils.addChild(tfoot, Probe.Html.TR);
-        final String footer = String.format("%d active ProbeFlow processor(s)", processorStates.size());
+        final String footer = String.format("%d active ProbeFlow processor(s) (%d stopped)", processorStates.size(),
+                processorStates.stream().filter(ProbeProcessorState::isStopped).count());
         XmlUtils.addChild(trFoot, Probe.Html.TH, footer,
                 new Attribute(Probe.Html.COLSPAN, Integer.toString(columns.length)));
     }
@@ -108,6 +128,7 @@ public final class ServiceView {
         XmlUtils.addChild(tdLinkView, Probe.Html.A, id + " " + Probe.Icon.HREF,
                 new Attribute(Probe.Html.HREF, String.format("/viewer/%s/flowfiles", id)));
         XmlUtils.addChild(tr, Probe.Html.TD, processorState.getStart());
+        XmlUtils.addChild(tr, Probe.Html.TD, processorState.getStopped());
         final Element tdLinkState = XmlUtils.addChild(tr, Probe.Html.TD);
         XmlUtils.addChild(tdLinkState, Probe.Html.A, Probe.Icon.DOWNLOAD + Probe.Icon.UPLOAD,
                 new Attribute(Probe.Html.TITLE, "Download / Upload State"),
@@ -123,5 +144,14 @@ public final class ServiceView {
                 new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
         XmlUtils.addChild(tr, Probe.Html.TD, Long.toString(processorState.getFlowFilesRouted()),
                 new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
+        XmlUtils.addChild(tr, Probe.Html.TD, Long.toString(processorState.getMemorySize()),
+                new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
+        final ContentStore contentStore = processorState.getContentStore();
+        XmlUtils.addChild(tr, Probe.Html.TD, Long.toString(contentStore.getHeapUsed()),
+                new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
+        XmlUtils.addChild(tr, Probe.Html.TD, Long.toString(contentStore.getOffHeapUsed()),
+                new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
+        XmlUtils.addChild(tr, Probe.Html.TD, Long.toString(contentStore.getSpillUsed()),
+                new Attribute(Probe.Html.CLASS, Probe.CSS.RIGHT));
     }
 }
@@ -1,10 +1,18 @@
 package io.github.greyp9.nifi.pf2.processor;
 
-import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.capture.EvictionPolicy;
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
 import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.ContentStore;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf2.core.flowfile.AcceptFlowFileFilter;
 import io.github.greyp9.nifi.pf2.core.flowfile.ProbeFlowFile;
+import io.github.greyp9.nifi.pf2.core.state.ProbeBreakpointState;
 import io.github.greyp9.nifi.pf2.core.state.ProbeProcessorState;
 import io.github.greyp9.nifi.pf2.core.state.ProbeServiceState;
+import io.github.greyp9.nifi.pf2.core.state.ProbeTapState;
+import io.github.greyp9.nifi.pf2.core.state.ProbeTransaction;
 import io.github.greyp9.nifi.pf2.service.ProbeFlowControllerService;
 import org.apache.nifi.annotation.behavior.Restricted;
 import org.apache.nifi.annotation.behavior.Restriction;
@@ -12,15 +20,22 @@ import org.apache.nifi.annotation.behavior.TriggerWhenEmpty;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.annotation.lifecycle.OnUnscheduled;
+import org.apache.nifi.components.AllowableValue;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.components.RequiredPermission;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.expression.AttributeExpression;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
-import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.AbstractSessionFactoryProcessor;
 import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessSessionFactory;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
@@ -28,13 +43,20 @@ import org.apache.nifi.processor.util.StandardValidators;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 @SuppressWarnings("unused")
 @CapabilityDescription("Provide interactivity to manually debug a NiFi flow")
@@ -46,16 +68,216 @@ import java.util.concurrent.atomic.AtomicReference;
 }
 )
 @TriggerWhenEmpty
-public final class ProbeFlow extends AbstractProcessor {
+public final class ProbeFlow extends AbstractSessionFactoryProcessor {
 
+    public static final AllowableValue MODE_HOLD = new AllowableValue("Hold", "Hold",
+            "FlowFiles are accepted from upstream connections on request, and held until manually routed.");
+    public static final AllowableValue MODE_TAP = new AllowableValue("Tap", "Tap",
+            "Each incoming FlowFile is transferred to the tap relationship as it arrives.  A snapshot of the most "
+                    + "recent FlowFiles is kept for viewing; content is captured on request.");
+    public static final AllowableValue MODE_BREAKPOINT = new AllowableValue("Breakpoint", "Breakpoint",
+            "Each incoming FlowFile is transferred to the pass-through relationship as it arrives, except for "
+                    + "FlowFiles matching the breakpoint condition, which are held until manually routed.");
+
+    public static final PropertyDescriptor MODE = new PropertyDescriptor.Builder()
+            .name("mode")
+            .displayName("Mode")
+            .description("Specifies whether the processor holds FlowFiles for manual routing, passes all "
+                    + "FlowFiles through to an outgoing relationship while observing them, or passes through all "
+                    + "FlowFiles except those matching a breakpoint condition.")
+            .required(true)
+            .allowableValues(MODE_HOLD, MODE_TAP, MODE_BREAKPOINT)
+            .defaultValue(MODE_HOLD.getValue())
+            .build();
+    public static final PropertyDescriptor ACCEPT_CONDITION = new PropertyDescriptor.Builder()
+            .name("accept.condition")
+            .displayName("Accept Condition")
+            .description("An optional boolean Expression Language expression, evaluated against the attributes of "
+                    + "each queued FlowFile when FlowFiles are accepted in hold mode.  FlowFiles not matching the "
+                    + "condition are skipped, and remain in the upstream queue.")
+            .required(false)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .addValidator(StandardValidators.createAttributeExpressionLanguageValidator(
+                    AttributeExpression.ResultType.BOOLEAN, false))
+            .dependsOn(MODE, MODE_HOLD)
+            .build();
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("batch.size")
+            .displayName("Batch Size")
+            .description("The maximum number of FlowFiles taken from upstream queue(s) in one processor invocation.  "
+                    + "Larger requests to accept FlowFiles are satisfied over several invocations.")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("100")
+            .build();
+    public static final PropertyDescriptor TAP_RELATIONSHIP = new PropertyDescriptor.Builder()
+            .name("tap.relationship")
+            .displayName("Pass-Through Relationship")
+            .description("The outgoing relationship to which FlowFiles are transferred in tap mode (and, in "
+                    + "breakpoint mode, FlowFiles not matching the breakpoint).  The value must be one of the "
+                    + "configured relationships.")
+            .required(true)
+            .expressionLanguageSupported(ExpressionLanguageScope.NONE)
+            .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+            .defaultValue("Outgoing")
+            .dependsOn(MODE, MODE_TAP, MODE_BREAKPOINT)
+            .build();
+    public static final PropertyDescriptor BREAKPOINT_CONDITION = new PropertyDescriptor.Builder()
+            .name("breakpoint.condition")
+            .displayName("Breakpoint Condition")
+            .description("A boolean Expression Language expression, evaluated against the attributes of each incoming "
+                    + "FlowFile in breakpoint mode.  Matching FlowFiles are held by the processor; others are "
+                    + "transferred to the pass-through relationship.  For example: ${filename:endsWith('.json')}")
+            .required(true)
+            .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+            .addValidator(StandardValidators.createAttributeExpressionLanguageValidator(
+                    AttributeExpression.ResultType.BOOLEAN, false))
+            .dependsOn(MODE, MODE_BREAKPOINT)
+            .build();
+    public static final PropertyDescriptor BREAKPOINT_CONTENT_PATTERN = new PropertyDescriptor.Builder()
+            .name("breakpoint.content.pattern")
+            .displayName("Breakpoint Content Pattern")
+            .description("An optional regular expression, which must also be found in the (UTF-8 decoded) content of "
+                    + "a FlowFile for it to match the breakpoint.  Content is read only for FlowFiles matching the "
+                    + "breakpoint condition.  Only the first 64 MiB of content is searched.")
+            .required(false)
+            .addValidator(StandardValidators.REGULAR_EXPRESSION_VALIDATOR)
+            .dependsOn(MODE, MODE_BREAKPOINT)
+            .build();
+    public static final PropertyDescriptor TAP_SNAPSHOT_SIZE = new PropertyDescriptor.Builder()
+            .name("tap.snapshot.size")
+            .displayName("Tap Snapshot Size")
+            .description("The number of most recent FlowFiles retained for viewing in tap mode.")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .defaultValue("100")
+            .dependsOn(MODE, MODE_TAP)
+            .build();
+    public static final PropertyDescriptor TAP_SAMPLE_SIZE = new PropertyDescriptor.Builder()
+            .name("tap.sample.size")
+            .displayName("Tap Sample Size")
+            .description("The number of FlowFiles retained in a uniform random sample of the FlowFiles passing "
+                    + "through the processor in tap mode, with content.  Set to 0 to disable sampling.")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("0")
+            .dependsOn(MODE, MODE_TAP)
+            .build();
+    public static final PropertyDescriptor TAP_SAMPLE_WINDOW = new PropertyDescriptor.Builder()
+            .name("tap.sample.window")
+            .displayName("Tap Sample Window")
+            .description("The interval at which the random sample is discarded and restarted, so that it represents "
+                    + "recent FlowFiles.  Set to 0 sec to sample all FlowFiles since the processor was started.")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .defaultValue("0 sec")
+            .dependsOn(MODE, MODE_TAP)
+            .build();
     public static final PropertyDescriptor MAX_MEMORY_SIZE = new PropertyDescriptor.Builder()
             .name("max.memory.size")
             .displayName("Max Memory Size")
-            .description("Specifies the maximum size of FlowFile content held by processor.")
+            .description("Specifies the maximum memory held by processor for FlowFiles: an estimate of the heap "
+                    + "footprint of each FlowFile (its attributes and object overhead) and of its content (in all "
+                    + "storage tiers: on heap, off heap and on disk).")
             .required(true)
             .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
             .defaultValue("10 MB")
             .build();
+    public static final PropertyDescriptor DEDUPLICATE_CONTENT = new PropertyDescriptor.Builder()
+            .name("deduplicate.content")
+            .displayName("Deduplicate Content")
+            .description("Specifies whether identical held FlowFile content (by SHA-256 digest) is stored only once.  "
+                    + "Clones then share the content of the original, and only distinct content counts toward the "
+                    + "maximum memory size.  The content of each held FlowFile is read once more, to compute its "
+                    + "digest.")
+            .required(true)
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .defaultValue(Boolean.TRUE.toString())
+            .allowableValues("true", "false")
+            .build();
+    public static final PropertyDescriptor COMPRESS_CONTENT = new PropertyDescriptor.Builder()
+            .name("compress.content")
+            .displayName("Compress Content")
+            .description("Specifies whether held FlowFile content kept on heap is compressed (deflate), in the "
+                    + "background after it is accepted.  Compressed content counts toward the maximum memory size at "
+                    + "its compressed size, and is decompressed as it is read.  Content which compresses poorly is "
+                    + "kept as is.")
+            .required(true)
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .defaultValue(Boolean.FALSE.toString())
+            .allowableValues("true", "false")
+            .build();
+    public static final PropertyDescriptor SPILL_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("spill.directory")
+            .displayName("Spill Directory")
+            .description("A local directory to which held FlowFile content is spilled, when it is larger than the "
+                    + "heap threshold, or when the heap budget is used (and off-heap storage is disabled or full).  "
+                    + "Spilled content is read back through memory-mapped files, and is deleted when the processor "
+                    + "is stopped.")
+            .required(false)
+            .addValidator(StandardValidators.createDirectoryExistsValidator(false, true))
+            .build();
+    public static final PropertyDescriptor JOURNAL_DIRECTORY = new PropertyDescriptor.Builder()
+            .name("journal.directory")
+            .displayName("Journal Directory")
+            .description("A local directory holding a journal of the FlowFiles held by the processor, so that they "
+                    + "survive a restart of the processor (or of NiFi).  Held FlowFiles created, cloned, edited or "
+                    + "imported through the web interface are restored when the processor is next started; "
+                    + "FlowFiles accepted from upstream are not journaled, as NiFi returns them to their queues.  "
+                    + "Changes are forced to disk in batches, shortly after they are made.")
+            .required(false)
+            .addValidator(StandardValidators.createDirectoryExistsValidator(false, true))
+            .build();
+    public static final PropertyDescriptor MAX_OFF_HEAP_SIZE = new PropertyDescriptor.Builder()
+            .name("max.off.heap.size")
+            .displayName("Max Off-Heap Size")
+            .description("Specifies the maximum size of held FlowFile content kept off heap, in direct memory (0 B "
+                    + "to disable).  Content is kept off heap when it is larger than the heap threshold, or when the "
+                    + "heap budget is used.  Direct memory is also bounded by the JVM (-XX:MaxDirectMemorySize).  "
+                    + "Empty slabs of direct memory are dropped as content is released, and all slabs when the held "
+                    + "state is discarded; the JVM frees their memory when it collects them.")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .defaultValue("0 B")
+            .build();
+    public static final PropertyDescriptor HEAP_THRESHOLD = new PropertyDescriptor.Builder()
+            .name("heap.threshold")
+            .displayName("Heap Threshold")
+            .description("Held FlowFile content larger than this is kept off heap or spilled to the spill directory "
+                    + "(if either is configured).")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .defaultValue("1 MB")
+            .build();
+    public static final PropertyDescriptor MAX_HEAP_SIZE = new PropertyDescriptor.Builder()
+            .name("max.heap.size")
+            .displayName("Max Heap Size")
+            .description("Specifies the maximum size of held FlowFile content kept on heap.  Content beyond this is "
+                    + "kept off heap or spilled to the spill directory (if either is configured).")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .defaultValue("10 MB")
+            .build();
+    public static final PropertyDescriptor MAX_FLOWFILE_COUNT = new PropertyDescriptor.Builder()
+            .name("max.flowfile.count")
+            .displayName("Max FlowFile Count")
+            .description("Specifies the maximum number of FlowFiles held by processor (0 for no limit).  Up to "
+                    + HeldFlowFiles.MAX_HELD + " FlowFiles accepted from upstream are held as their originals (each "
+                    + "in an open NiFi session); further FlowFiles are held as copies, and routed as new FlowFiles.")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .defaultValue("0")
+            .build();
+    public static final PropertyDescriptor EVICTION_POLICY = new PropertyDescriptor.Builder()
+            .name("eviction.policy")
+            .displayName("Eviction Policy")
+            .description("Specifies the action taken when a new FlowFile does not fit within the processor limits.  "
+                    + "With 'Reject', FlowFiles accepted from upstream connections are returned to the upstream "
+                    + "queue.  Other policies evict held FlowFiles (which are dropped) to make room.")
+            .required(true)
+            .allowableValues(toAllowableValues(EvictionPolicy.values()))
+            .defaultValue(EvictionPolicy.REJECT.name())
+            .build();
     public static final PropertyDescriptor RELATIONSHIPS = new PropertyDescriptor.Builder()
             .name("relationships")
             .displayName("Relationships")
@@ -77,7 +299,11 @@ public final class ProbeFlow extends AbstractProcessor {
             .build();
 
     private static final List<PropertyDescriptor> PROPERTY_DESCRIPTORS = Arrays.asList(
-            MAX_MEMORY_SIZE, RELATIONSHIPS, CONTROLLER_SERVICE
+            MODE, MAX_MEMORY_SIZE, MAX_FLOWFILE_COUNT, EVICTION_POLICY,
+            DEDUPLICATE_CONTENT, COMPRESS_CONTENT, HEAP_THRESHOLD, MAX_HEAP_SIZE, MAX_OFF_HEAP_SIZE, SPILL_DIRECTORY,
+            JOURNAL_DIRECTORY, RELATIONSHIPS, ACCEPT_CONDITION, BATCH_SIZE,
+            TAP_RELATIONSHIP, BREAKPOINT_CONDITION, BREAKPOINT_CONTENT_PATTERN,
+            TAP_SNAPSHOT_SIZE, TAP_SAMPLE_SIZE, TAP_SAMPLE_WINDOW, CONTROLLER_SERVICE
     );
 
     @Override
@@ -87,74 +313,201 @@ public final class ProbeFlow extends AbstractProcessor {
 
     private ProbeServiceState probeServiceState;
     private ProbeProcessorState probeProcessorState;
+    private Predicate<FlowFile> acceptCondition;
+    private final SessionCommitter sessionCommitter = new SessionCommitter();
+    private final HeldFlowFiles heldFlowFiles = new HeldFlowFiles();
+    private int batchSize;
 
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final Set<Relationship> set = new HashSet<>();
         set.add(REL_OUTGOING);
-        relationships = new AtomicReference<>(set);
+        setRelationships(set);
     }
 
     @Override
     public void onPropertyModified(final PropertyDescriptor descriptor, final String oldValue, final String newValue) {
         if (descriptor.equals(RELATIONSHIPS)) {
-            relationships.set(toRelationships(newValue));
+            setRelationships(toRelationships(newValue));
         }
     }
 
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext validationContext) {
+        final Collection<ValidationResult> results = new ArrayList<>();
+        final String mode = validationContext.getProperty(MODE).getValue();
+        if (MODE_TAP.getValue().equals(mode) || MODE_BREAKPOINT.getValue().equals(mode)) {
+            final String tapRelationship = validationContext.getProperty(TAP_RELATIONSHIP).getValue();
+            final boolean isDefined = toRelationships(validationContext.getProperty(RELATIONSHIPS).getValue())
+                    .stream().anyMatch(r -> r.getName().equals(tapRelationship));
+            if (!isDefined) {
+                results.add(new ValidationResult.Builder()
+                        .subject(TAP_RELATIONSHIP.getDisplayName())
+                        .input(tapRelationship)
+                        .valid(false)
+                        .explanation("the pass-through relationship must be one of the configured relationships")
+                        .build());
+            }
+        }
+        return results;
+    }
+
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
         getLogger().info("onScheduled()");
         final long maxMemorySize = context.getProperty(MAX_MEMORY_SIZE).asDataSize(DataUnit.B).longValue();
+        final int maxFlowFileCount = context.getProperty(MAX_FLOWFILE_COUNT).asInteger();
+        final EvictionPolicy evictionPolicy = EvictionPolicy.valueOf(context.getProperty(EVICTION_POLICY).getValue());
         final ProbeFlowControllerService probeService =
                 context.getProperty(CONTROLLER_SERVICE).asControllerService(ProbeFlowControllerService.class);
         probeServiceState = probeService.getProbeState();
 
-        probeProcessorState = probeServiceState.register(
-                getIdentifier(), context.getName(), maxMemorySize, getRelationships());
+        final PropertyValue condition = context.getProperty(ACCEPT_CONDITION);
+        acceptCondition = condition.isSet() ? f -> condition.evaluateAttributeExpressions(f).asBoolean() : null;
+        batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        probeProcessorState = probeServiceState.register(getIdentifier(), context.getName(),
+                maxMemorySize, maxFlowFileCount, evictionPolicy, toContentStore(context), getRelationships());
+        final String journalDirectory = context.getProperty(JOURNAL_DIRECTORY).getValue();
+        probeProcessorState.openJournal((journalDirectory == null)
+                ? null : Paths.get(journalDirectory, getIdentifier()));
+        if (MODE_TAP.getValue().equals(context.getProperty(MODE).getValue())) {
+            probeProcessorState.setTapState(new ProbeTapState(context.getProperty(TAP_RELATIONSHIP).getValue(),
+                    context.getProperty(TAP_SNAPSHOT_SIZE).asInteger(),
+                    context.getProperty(TAP_SAMPLE_SIZE).asInteger(),
+                    context.getProperty(TAP_SAMPLE_WINDOW).asTimePeriod(TimeUnit.MILLISECONDS)));
+        } else if (MODE_BREAKPOINT.getValue().equals(context.getProperty(MODE).getValue())) {
+            probeProcessorState.setBreakpointState(toBreakpointState(context));
+        }
     }
 
     @OnUnscheduled
     public void onUnscheduled(final ProcessContext context) {
         getLogger().info("onUnscheduled()");
-        probeServiceState.unregister(getIdentifier());
+    }
+
+    @OnStopped
+    public void onStopped() {
+        // originals of held FlowFiles are dropped, leaving the held copies; the held state is retained by the
+        // controller service, for the next run of the processor
+        final List<Long> dropped = new ArrayList<>();
+        final List<Long> returned = new ArrayList<>();
+        heldFlowFiles.dropAll(dropped, returned);
+        if (probeServiceState != null) {
+            try {
+                probeServiceState.retire(getIdentifier(), dropped, returned);
+            } catch (final IOException e) {
+                getLogger().warn("Failed to release held content", e);
+            }
+        }
         probeProcessorState = null;
+        acceptCondition = null;
         probeServiceState = null;
     }
 
     @Override
-    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        boolean consume = false;
+    public void onTrigger(final ProcessContext context, final ProcessSessionFactory sessionFactory)
+            throws ProcessException {
+        final ProcessSession session = sessionFactory.createSession();
+        final ProbeProcessorState processorState = probeProcessorState;
+        final ProbeTransaction transaction = new ProbeTransaction();
+        try {
+            onTrigger(context, session, sessionFactory, transaction);
+        } catch (final Throwable t) {
+            // held state changed before the failure is restored along with the session
+            session.rollback(true);
+            rollback(processorState, transaction);
+            throw t;
+        }
+    }
+
+    private void onTrigger(final ProcessContext context, final ProcessSession session,
+                           final ProcessSessionFactory sessionFactory, final ProbeTransaction transaction) {
         final int count = probeProcessorState.shouldConsume();
-        if (count > 0) {
-            final List<FlowFile> flowFilesIn = session.get(count);
-            for (final FlowFile flowFileIn : flowFilesIn) {
-                probeProcessorState.addFlowFileProcessSession(fromProcessSession(session, flowFileIn));
-                session.remove(flowFileIn);
-            }
-            if (!flowFilesIn.isEmpty()) {
-                session.commit();
-                consume = true;
-            } else {
-                session.rollback();
-            }
+        final ProbeTapState tapState = probeProcessorState.getTapState();
+        final ProbeBreakpointState breakpointState = probeProcessorState.getBreakpointState();
+        boolean consume = false;
+        if (tapState != null) {
+            consume = onTriggerTap(session, tapState);
+        } else if (breakpointState != null) {
+            consume = onTriggerBreakpoint(context, session, sessionFactory, breakpointState, transaction);
+        } else if (count > 0) {
+            consume = onTriggerHold(session, sessionFactory, count, transaction);
         }
 
-        final List<ProbeFlowFile> flowFilesRouted = probeProcessorState.drainTo();
-        final boolean produce = !flowFilesRouted.isEmpty();
+        // originals of dropped and evicted FlowFiles are removed from the flow
+        boolean produce = false;
+        for (final Long id : probeProcessorState.drainReleased()) {
+            final FlowFile flowFileReleased = heldFlowFiles.take(session, id);
+            if (flowFileReleased != null) {
+                transaction.migrate(id);
+                session.remove(flowFileReleased);
+                produce = true;
+            }
+        }
+        // an unmodified FlowFile is emitted as its original (no content written); otherwise as a new FlowFile
+        final List<ProbeFlowFile> flowFilesRouted = probeProcessorState.drainTo(transaction);
+        produce |= !flowFilesRouted.isEmpty();
         for (final ProbeFlowFile flowFile : flowFilesRouted) {
-            final FlowFile flowFileIt = toProcessSession(session, flowFile);
+            final FlowFile flowFileHeld = heldFlowFiles.take(session, flowFile.getId());
+            if (flowFileHeld != null) {
+                transaction.migrate(flowFile.getId());
+            }
+            final FlowFile flowFileIt = (flowFileHeld == null) ? toProcessSession(session, flowFile) : flowFileHeld;
             session.transfer(flowFileIt, asRelationship(flowFile.getRelationship()));
         }
-        if (produce) {
-            session.commit();
-        }
 
-        if ((!consume) && (!produce)) {
+        // consumed and produced FlowFiles are committed together; held state is restored if the commit fails
+        if (consume || produce) {
+            final ProbeProcessorState processorState = probeProcessorState;
+            sessionCommitter.commit(session,
+                    () -> commit(processorState, transaction),
+                    e -> rollback(processorState, transaction));
+        } else {
             context.yield();
         }
     }
 
+    private void commit(final ProbeProcessorState processorState, final ProbeTransaction transaction) {
+        processorState.commit(transaction);
+        getLogger().debug("commit: {}", transaction);
+    }
+
+    /**
+     * Revert a failed session: originals of FlowFiles added in the session go back upstream, and held state is
+     * restored.  (A failed commit may be reported both to the commit callback and by an exception.)
+     */
+    private void rollback(final ProbeProcessorState processorState, final ProbeTransaction transaction) {
+        for (final Long id : transaction.getIdsAdded()) {
+            heldFlowFiles.rollback(id);
+        }
+        processorState.rollback(transaction);
+    }
+
+    /**
+     * Accept FlowFiles requested by the user from upstream queue(s), adding each to the held FlowFiles.
+     */
+    private boolean onTriggerHold(final ProcessSession session, final ProcessSessionFactory sessionFactory,
+                                  final int count, final ProbeTransaction transaction) {
+        final List<FlowFile> flowFilesIn = acceptFlowFiles(session, count);
+        int rejected = 0;
+        for (final FlowFile flowFileIn : flowFilesIn) {
+            final boolean admissible = probeProcessorState.isAdmissible(
+                    flowFileIn.getSize(), flowFileIn.getAttributes());
+            final ProbeFlowFile flowFile = admissible ? fromProcessSession(session, flowFileIn) : null;
+            final boolean added = (flowFile == null)
+                    ? probeProcessorState.rejectFlowFileProcessSession(transaction)
+                    : probeProcessorState.addFlowFileProcessSession(flowFile, transaction);
+            if (added) {
+                holdOriginal(sessionFactory, session, flowFile.getId(), flowFileIn, transaction);
+            } else {
+                session.transfer(flowFileIn);
+                ++rejected;
+            }
+        }
+        probeProcessorState.alertRejected(rejected);
+        return !flowFilesIn.isEmpty();
+    }
+
 /*
     @Override
     public boolean isStateful(final ProcessContext context) {
@@ -172,15 +525,136 @@ public final class ProbeFlow extends AbstractProcessor {
     }
 */
 
+    /**
+     * Keep the original of a newly held FlowFile in the flow, if the limit of held originals allows.  Otherwise, the
+     * original is removed with the session commit; the held copy is journaled then, and is routed as a new FlowFile.
+     */
+    private void holdOriginal(final ProcessSessionFactory sessionFactory, final ProcessSession session,
+                              final long id, final FlowFile flowFile, final ProbeTransaction transaction) {
+        if (!heldFlowFiles.hold(sessionFactory, session, id, flowFile)) {
+            session.remove(flowFile);
+            transaction.copy(id);
+        }
+    }
+
+    /**
+     * Take FlowFiles requested by the user from upstream queue(s), bounded by the batch size and by the processor
+     * capture limits, so that a large request is satisfied over several invocations without exceeding the limits.
+     */
+    private List<FlowFile> acceptFlowFiles(final ProcessSession session, final int count) {
+        final int maxCount = Math.min(count, Math.min(batchSize, probeProcessorState.getAcceptCount()));
+        final AcceptFlowFileFilter filter = new AcceptFlowFileFilter(
+                maxCount, probeProcessorState.getAcceptBytes(), acceptCondition);
+        final List<FlowFile> flowFilesIn = (maxCount > 0) ? session.get(filter) : Collections.emptyList();
+        if (maxCount <= 0) {
+            probeProcessorState.cancelConsume("processor FlowFile count limit reached");
+        } else if (flowFilesIn.isEmpty() && filter.isBudgetExceeded()) {
+            probeProcessorState.cancelConsume("next FlowFile exceeds processor memory limit");
+        }
+        return flowFilesIn;
+    }
+
+    /**
+     * Pass incoming FlowFiles through to the tap relationship, recording each in the processor state.  FlowFile
+     * content is read only when requested by the user.
+     */
+    private boolean onTriggerTap(final ProcessSession session, final ProbeTapState tapState) {
+        final List<FlowFile> flowFilesIn = session.get(batchSize);
+        final Relationship relationship = asRelationship(tapState.getRelationship());
+        for (final FlowFile flowFileIn : flowFilesIn) {
+            final int slot = probeProcessorState.admitSample();
+            final boolean capture = (slot >= 0) || tapState.shouldCapture();
+            final Content content = capture ? readContent(session, flowFileIn) : null;
+            probeProcessorState.tapFlowFile(flowFileIn, content, slot);
+            session.transfer(flowFileIn, relationship);
+        }
+        return !flowFilesIn.isEmpty();
+    }
+
+    /**
+     * Pass incoming FlowFiles through to the pass-through relationship, except for those matching the breakpoint
+     * condition, which are held.  FlowFile content is read only for FlowFiles matching the attribute condition.
+     */
+    private boolean onTriggerBreakpoint(final ProcessContext context, final ProcessSession session,
+                                        final ProcessSessionFactory sessionFactory,
+                                        final ProbeBreakpointState breakpointState,
+                                        final ProbeTransaction transaction) {
+        final List<FlowFile> flowFilesIn = session.get(batchSize);
+        final Relationship relationship = asRelationship(breakpointState.getRelationship());
+        int rejected = 0;
+        for (final FlowFile flowFileIn : flowFilesIn) {
+            // content is read once (when the attributes match), and kept only if the FlowFile is held
+            final Content content = breakpointState.matchesAttributes(flowFileIn)
+                    ? readContent(session, flowFileIn) : null;
+            final boolean matches = (content != null) && matchesContent(breakpointState, content);
+            final ProbeFlowFile flowFile = matches ? fromProcessSession(flowFileIn, content) : null;
+            if (flowFile == null) {
+                if (content != null) {
+                    content.release();
+                }
+                breakpointState.pass();
+                session.transfer(flowFileIn, relationship);
+            } else if (probeProcessorState.holdFlowFile(flowFile, transaction)) {
+                holdOriginal(sessionFactory, session, flowFile.getId(), flowFileIn, transaction);
+            } else {
+                session.transfer(flowFileIn);
+                ++rejected;
+            }
+        }
+        probeProcessorState.alertRejected(rejected);
+        if (rejected > 0) {
+            context.yield();
+        }
+        // (the session is committed even if every FlowFile was rejected, so that those return to the input queue)
+        return !flowFilesIn.isEmpty();
+    }
+
+    private ContentStore toContentStore(final ProcessContext context) {
+        final String spillDirectory = context.getProperty(SPILL_DIRECTORY).getValue();
+        final long maxOffHeapSize = context.getProperty(MAX_OFF_HEAP_SIZE).asDataSize(DataUnit.B).longValue();
+        final boolean deduplicate = context.getProperty(DEDUPLICATE_CONTENT).asBoolean();
+        final boolean compress = context.getProperty(COMPRESS_CONTENT).asBoolean();
+        return ((spillDirectory == null) && (maxOffHeapSize <= 0L) && !deduplicate && !compress) ? new ContentStore()
+                : new ContentStore((spillDirectory == null) ? null : Paths.get(spillDirectory, getIdentifier()),
+                context.getProperty(HEAP_THRESHOLD).asDataSize(DataUnit.B).longValue(),
+                context.getProperty(MAX_HEAP_SIZE).asDataSize(DataUnit.B).longValue(),
+                maxOffHeapSize, deduplicate, compress);
+    }
+
+    private ProbeBreakpointState toBreakpointState(final ProcessContext context) {
+        // PropertyValue holds the expression compiled at configuration time; evaluation does not re-parse it
+        final PropertyValue condition = context.getProperty(BREAKPOINT_CONDITION);
+        final Predicate<FlowFile> attributeCondition = f -> condition.evaluateAttributeExpressions(f).asBoolean();
+        final String contentPattern = context.getProperty(BREAKPOINT_CONTENT_PATTERN).getValue();
+        final Pattern pattern = (contentPattern == null) ? null : Pattern.compile(contentPattern);
+        final Predicate<CharSequence> contentCondition = (pattern == null) ? null : t -> pattern.matcher(t).find();
+        return new ProbeBreakpointState(context.getProperty(TAP_RELATIONSHIP).getValue(),
+                condition.getValue(), attributeCondition, contentCondition);
+    }
+
     private ProbeFlowFile fromProcessSession(final ProcessSession session, final FlowFile flowFile) {
+        return fromProcessSession(flowFile, readContent(session, flowFile));
+    }
+
+    private ProbeFlowFile fromProcessSession(final FlowFile flowFile, final Content content) {
+        final long entryDate = flowFile.getEntryDate();
+        // (the one copy of the attributes held)
+        final Map<String, String> attributes = CompactAttributes.copyOf(
+                flowFile.getAttributes(), Probe.App.FLOWFILE_ID_IN, Long.toString(flowFile.getId()));
+        return probeProcessorState.create(entryDate, attributes, content);
+    }
+
+    private static boolean matchesContent(final ProbeBreakpointState breakpointState, final Content content) {
         try {
-            final long entryDate = flowFile.getEntryDate();
-            final Map<String, String> attributes = new HashMap<>(flowFile.getAttributes());
-            attributes.put(Probe.App.FLOWFILE_ID_IN, Long.toString(flowFile.getId()));
-            try (InputStream read = session.read(flowFile)) {
-                final byte[] data = ProbeUtils.toBytes(read);
-                return probeProcessorState.create(entryDate, attributes, data);
-            }
+            return breakpointState.matchesContent(content);
+        } catch (final IOException e) {
+            throw new ProcessException(e);
+        }
+    }
+
+    private Content readContent(final ProcessSession session, final FlowFile flowFile) {
+        try (InputStream read = session.read(flowFile)) {
+            return HeapContent.read(read, flowFile.getSize());
         } catch (final IOException e) {
             throw new ProcessException(e);
         }
@@ -188,10 +662,16 @@ public final class ProbeFlow extends AbstractProcessor {
 
     private FlowFile toProcessSession(final ProcessSession session, final ProbeFlowFile probeFlowFile) {
         FlowFile flowFile = session.create();
-        flowFile = session.write(flowFile, out -> out.write(probeFlowFile.getData()));
+        flowFile = session.write(flowFile, out -> probeFlowFile.getContent().writeTo(out));
         return session.putAllAttributes(flowFile, probeFlowFile.getAttributes());
     }
 
+    private static AllowableValue[] toAllowableValues(final EvictionPolicy[] policies) {
+        return Arrays.stream(policies)
+                .map(p -> new AllowableValue(p.name(), p.getDisplayName(), p.getDescription()))
+                .toArray(AllowableValue[]::new);
+    }
+
     private Set<Relationship> toRelationships(final String config) {
         final Set<Relationship> relationshipsUpdate = new HashSet<>();
         final String[] names = config.split(",");
@@ -205,8 +685,17 @@ public final class ProbeFlow extends AbstractProcessor {
         return relationshipsUpdate;
     }
 
+    private void setRelationships(final Set<Relationship> relationshipsUpdate) {
+        final Map<String, Relationship> relationshipsByNameUpdate = new HashMap<>();
+        for (final Relationship relationship : relationshipsUpdate) {
+            relationshipsByNameUpdate.put(relationship.getName(), relationship);
+        }
+        relationshipsByName.set(relationshipsByNameUpdate);
+        relationships.set(relationshipsUpdate);
+    }
+
     private Relationship asRelationship(final String name) {
-        return getRelationships().stream().filter(r -> r.getName().equals(name)).findFirst().orElse(null);
+        return relationshipsByName.get().get(name);
     }
 
     @Override
@@ -214,7 +703,8 @@ public final class ProbeFlow extends AbstractProcessor {
         return relationships.get();
     }
 
-    private AtomicReference<Set<Relationship>> relationships = new AtomicReference<>();
+    private final AtomicReference<Set<Relationship>> relationships = new AtomicReference<>();
+    private final AtomicReference<Map<String, Relationship>> relationshipsByName = new AtomicReference<>();
 
     public static final Relationship REL_OUTGOING = new Relationship.Builder()
             .name("Outgoing")
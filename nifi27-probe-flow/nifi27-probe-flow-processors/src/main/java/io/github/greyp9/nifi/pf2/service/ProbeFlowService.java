@@ -32,9 +32,11 @@ import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.ssl.SSLContextService;
 import org.eclipse.jetty.server.Server;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Tags({"debug", "probe"})
 @CapabilityDescription("ProbeFlowService implementation.")
@@ -80,11 +82,24 @@ public final class ProbeFlowService extends AbstractControllerService implements
             .allowableValues("true", "false")
             .build();
 
+    public static final PropertyDescriptor STATE_RETENTION = new PropertyDescriptor.Builder()
+            .name("state.retention")
+            .displayName("Stopped Processor State Retention")
+            .description("The time for which the held state of a stopped ProbeFlow processor (its held FlowFiles, "
+                    + "and the FlowFile being edited) is retained, so that it is taken up again when the processor "
+                    + "is started.  The state of a stopped processor may also be purged through the web interface.  "
+                    + "Set to 0 sec to discard the held state of a processor when it is stopped.")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .defaultValue("1 hour")
+            .build();
+
     private static final List<PropertyDescriptor> PROPERTY_DESCRIPTORS = Arrays.asList(
             PORT,
             SSL_CONTEXT_SERVICE,
             BASIC_AUTH,
-            ENABLE_CERTIFICATE_AUTH
+            ENABLE_CERTIFICATE_AUTH,
+            STATE_RETENTION
     );
 
     @Override
@@ -108,13 +123,18 @@ public final class ProbeFlowService extends AbstractControllerService implements
 
     @Override
     public void unregister(final String id) {
-        probeServiceState.unregister(id);
+        try {
+            probeServiceState.unregister(id);
+        } catch (final IOException e) {
+            getLogger().warn("Failed to delete spilled content of processor {}", id, e);
+        }
     }
 
     @OnEnabled
     public void onEnabled(final ConfigurationContext context) {
         getLogger().info("onEnabled() [{}]", context);
-        probeServiceState = new ProbeServiceState(getIdentifier(), context.getName());
+        probeServiceState = new ProbeServiceState(getIdentifier(), context.getName(),
+                context.getProperty(STATE_RETENTION).asTimePeriod(TimeUnit.MILLISECONDS));
         final int port = context.getProperty(PORT).asInteger();
         final SSLContextService sslContextService =
                 context.getProperty(SSL_CONTEXT_SERVICE).asControllerService(SSLContextService.class);
@@ -146,6 +166,11 @@ public final class ProbeFlowService extends AbstractControllerService implements
         } finally {
             server = null;
         }
+        try {
+            probeServiceState.close();
+        } catch (final IOException e) {
+            getLogger().warn("Failed to delete spilled content", e);
+        }
         probeServiceState = null;
 
         getLogger().info("onDisabled():FINISH");
@@ -13,11 +13,12 @@
 package io.github.greyp9.nifi.pf.core;
 
 import at.favre.lib.bytes.Bytes;
+import io.github.greyp9.nifi.pf.core.io.ContentReader;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -40,18 +41,27 @@ public final class ProbeUtils {
     }
 
     public static byte[] toBytes(final InputStream is) throws IOException {
-        try (BufferedInputStream bis = new BufferedInputStream(is)) {
-            return toBytes(bis);
+        try (InputStream in = is) {
+            return ContentReader.read(in, -1L);
         }
     }
 
     public static byte[] toBytes(final BufferedInputStream is) throws IOException {
-        final ByteArrayOutputStream os = new ByteArrayOutputStream();
-        int b;
-        while ((b = is.read()) >= 0) {
-            os.write(b);
-        }
-        return os.toByteArray();
+        return ContentReader.read(is, -1L);
+    }
+
+    /**
+     * @param is       source of content; the stream is not closed
+     * @param sizeHint expected size of content (<code>FlowFile.getSize()</code>, <code>Content-Length</code>), or -1
+     * @return the content of the stream
+     * @throws IOException on failure to read the stream
+     */
+    public static byte[] toBytes(final InputStream is, final long sizeHint) throws IOException {
+        return ContentReader.read(is, sizeHint);
+    }
+
+    public static long copy(final InputStream is, final OutputStream os) throws IOException {
+        return ContentReader.copy(is, os);
     }
 
     public static String fromBytesUTF8(final byte[] bytes) {
@@ -88,9 +98,29 @@ public final class ProbeUtils {
         }
     }
 
+    /**
+     * @param is the source of the input (not closed)
+     * @return the hex-encoded SHA-256 digest of the input
+     * @throws IOException on failure to read the input
+     */
+    public static String sha256(final InputStream is) throws IOException {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance(SHA_256);
+            final byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) >= 0) {
+                messageDigest.update(buffer, 0, n);
+            }
+            return Bytes.wrap(messageDigest.digest()).encodeHex();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <T> T as(final Object o, final Class<T> clazz) {
         return Optional.of(o).filter(clazz::isInstance).map(clazz::cast).orElse(null);
     }
 
     private static final String SHA_256 = "SHA-256";
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
 }
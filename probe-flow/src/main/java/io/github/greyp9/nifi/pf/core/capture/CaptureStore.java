@@ -0,0 +1,461 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.capture;
+
+import io.github.greyp9.nifi.pf.core.collect.LongLinkedMap;
+import io.github.greyp9.nifi.pf.core.memory.MemoryBudget;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded store of captured items, limited by item count and/or by total item size.
+ * <p>
+ * When a new item does not fit, the configured {@link EvictionPolicy} selects items to evict, or rejects the new item.
+ * Evictions and rejections are counted, for presentation to the user.
+ * <p>
+ * The memory counted for an item is its overhead (memory held by the item alone), and its size (memory which may be
+ * shared with other items).  The size is counted when the item is added, and may later be changed with
+ * {@link #resize(Object, long)} (for example, as the item is compressed).
+ * <p>
+ * Room for a batch of items may be reserved up front with {@link #reserve(long, int, List)}, before the items are
+ * materialized; each item is then added with {@link #addReserved(Object, long, List)}, and any room left unused is
+ * returned with {@link #release(long, int)}.
+ *
+ * @param <V> the type of the stored items
+ */
+public final class CaptureStore<V> {
+
+    /**
+     * Maximum number of items held (zero for no limit).
+     */
+    private final int maxCount;
+
+    /**
+     * Running total of item size held, bounded by the configured maximum.
+     */
+    private final MemoryBudget memoryBudget;
+
+    /**
+     * Action taken when a new item does not fit.
+     */
+    private final EvictionPolicy policy;
+
+    /**
+     * Accessor for the (unique) id of an item.
+     */
+    private final ToLongFunction<V> idOf;
+
+    /**
+     * Accessor for the (immutable) size of an item, as added (and as ordered, for {@link EvictionPolicy#DROP_LARGEST}).
+     */
+    private final ToLongFunction<V> sizeOf;
+
+    /**
+     * Accessor for the (immutable) overhead of an item: the memory it holds which is never shared.
+     */
+    private final ToLongFunction<V> overheadOf;
+
+    /**
+     * Accessor for the key of the (shared) memory held by an item; null for an item sharing no memory.
+     */
+    private final Function<V, Object> keyOf;
+
+    /**
+     * The memory counted against the budget for each key (or for the id of an item sharing no memory), with the
+     * number of items holding it; the memory of a key is counted only once.
+     */
+    private final Map<Object, Charge> charges;
+
+    /**
+     * Items held, indexed by id (in order of arrival).
+     */
+    private final LongLinkedMap<V> items;
+
+    /**
+     * Items held, in order of last view ({@link EvictionPolicy#LRU} only).
+     */
+    private final LongLinkedMap<V> itemsByRecency;
+
+    /**
+     * Items held, in order of size ({@link EvictionPolicy#DROP_LARGEST} only).
+     */
+    private final NavigableSet<V> itemsBySize;
+
+    /**
+     * The number of items for which room is reserved, not yet added.
+     */
+    private int countReserved;
+
+    /**
+     * The number of items evicted to make room for new items.
+     */
+    private final AtomicLong countEvicted;
+
+    /**
+     * The number of new items refused.
+     */
+    private final AtomicLong countRejected;
+
+    /**
+     * Constructor.
+     *
+     * @param maxCount     maximum number of items held (zero for no limit)
+     * @param memoryBudget running total of item size held, bounded by the configured maximum
+     * @param policy       action taken when a new item does not fit
+     * @param idOf         accessor for the (unique) id of an item
+     * @param sizeOf       accessor for the (immutable) size of an item
+     */
+    public CaptureStore(final int maxCount, final MemoryBudget memoryBudget, final EvictionPolicy policy,
+                        final ToLongFunction<V> idOf, final ToLongFunction<V> sizeOf) {
+        this(maxCount, memoryBudget, policy, idOf, sizeOf, v -> null);
+    }
+
+    /**
+     * Constructor, for items which may share memory.  Items with the same key share the same memory, which is
+     * counted against the budget when the first such item is added, and released when the last is removed.
+     *
+     * @param maxCount     maximum number of items held (zero for no limit)
+     * @param memoryBudget running total of item size held, bounded by the configured maximum
+     * @param policy       action taken when a new item does not fit
+     * @param idOf         accessor for the (unique) id of an item
+     * @param sizeOf       accessor for the (immutable) size of an item
+     * @param keyOf        accessor for the (immutable) key of the memory held by an item, or null if not shared (a key
+     *                     may not be a {@link Long}, as the memory of an unshared item is keyed by its id)
+     */
+    public CaptureStore(final int maxCount, final MemoryBudget memoryBudget, final EvictionPolicy policy,
+                        final ToLongFunction<V> idOf, final ToLongFunction<V> sizeOf,
+                        final Function<V, Object> keyOf) {
+        this(maxCount, memoryBudget, policy, idOf, sizeOf, keyOf, v -> 0L);
+    }
+
+    /**
+     * Constructor, for items which may share memory, and which hold memory of their own.
+     *
+     * @param maxCount     maximum number of items held (zero for no limit)
+     * @param memoryBudget running total of item size held, bounded by the configured maximum
+     * @param policy       action taken when a new item does not fit
+     * @param idOf         accessor for the (unique) id of an item
+     * @param sizeOf       accessor for the (immutable) size of an item
+     * @param keyOf        accessor for the (immutable) key of the memory held by an item, or null if not shared (a key
+     *                     may not be a {@link Long}, as the memory of an unshared item is keyed by its id)
+     * @param overheadOf   accessor for the (immutable) overhead of an item, counted for each item, whether or not its
+     *                     memory is shared
+     */
+    public CaptureStore(final int maxCount, final MemoryBudget memoryBudget, final EvictionPolicy policy,
+                        final ToLongFunction<V> idOf, final ToLongFunction<V> sizeOf,
+                        final Function<V, Object> keyOf, final ToLongFunction<V> overheadOf) {
+        this.maxCount = maxCount;
+        this.memoryBudget = memoryBudget;
+        this.policy = policy;
+        this.idOf = idOf;
+        this.sizeOf = sizeOf;
+        this.keyOf = keyOf;
+        this.overheadOf = overheadOf;
+        this.charges = new HashMap<>();
+        this.items = new LongLinkedMap<>();
+        this.itemsByRecency = (policy == EvictionPolicy.LRU) ? new LongLinkedMap<>() : null;
+        this.itemsBySize = (policy == EvictionPolicy.DROP_LARGEST)
+                ? new TreeSet<>(Comparator.comparingLong(sizeOf).thenComparingLong(idOf)) : null;
+        this.countReserved = 0;
+        this.countEvicted = new AtomicLong(0L);
+        this.countRejected = new AtomicLong(0L);
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getCountEvicted() {
+        return countEvicted.get();
+    }
+
+    public long getCountRejected() {
+        return countRejected.get();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public V get(final long id) {
+        return items.get(id);
+    }
+
+    /**
+     * @return a snapshot of the items held, in order of arrival
+     */
+    public List<V> values() {
+        return items.values();
+    }
+
+    /**
+     * Record a view of an item, for {@link EvictionPolicy#LRU}.
+     *
+     * @param id the id of the item
+     */
+    public void touch(final long id) {
+        if (itemsByRecency != null) {
+            itemsByRecency.moveToLast(id);
+        }
+    }
+
+    /**
+     * A hint, allowing callers to skip the work of materializing an item which would be rejected.
+     *
+     * @param size the size of a prospective item
+     * @return false, if an item of this size would be rejected given the current state of the store
+     */
+    public boolean isAdmissible(final long size) {
+        final boolean fits = (size <= memoryBudget.getAvailable()) && hasRoomFor(1);
+        return (size <= memoryBudget.getLimit()) && (fits || (policy != EvictionPolicy.REJECT));
+    }
+
+    /**
+     * @return the total size of new items which may be added without rejection (evicting items, if allowed)
+     */
+    public long getAdmissibleBytes() {
+        return (policy == EvictionPolicy.REJECT) ? memoryBudget.getAvailable() : memoryBudget.getLimit();
+    }
+
+    /**
+     * @return the number of new items which may be added without rejection (evicting items, if allowed)
+     */
+    public int getAdmissibleCount() {
+        final int admissibleCount;
+        if (maxCount <= 0) {
+            admissibleCount = Integer.MAX_VALUE;
+        } else if (policy == EvictionPolicy.REJECT) {
+            admissibleCount = Math.max(0, maxCount - items.size() - countReserved);
+        } else {
+            admissibleCount = maxCount;
+        }
+        return admissibleCount;
+    }
+
+    /**
+     * Record the refusal of a prospective item, turned away by the caller on the basis of {@link #isAdmissible(long)}.
+     */
+    public void reject() {
+        countRejected.incrementAndGet();
+    }
+
+    /**
+     * Add an item, evicting other items (as allowed by the policy) to make room.
+     *
+     * @param item    the new item
+     * @param evicted container to receive the items evicted to make room for the new item
+     * @return true, if the item was added; false, if it was rejected
+     */
+    public synchronized boolean add(final V item, final List<V> evicted) {
+        final long size = sizeOf.applyAsLong(item);
+        final long overhead = overheadOf.applyAsLong(item);
+        final boolean shared = (keyOf.apply(item) != null);
+        final Object key = chargeKey(item);
+        long charge = size;
+        boolean reserved = false;
+        V victim = null;
+        if ((overhead + size) <= memoryBudget.getLimit()) {
+            do {
+                if (victim != null) {
+                    removeItem(victim);
+                    evicted.add(victim);
+                    countEvicted.incrementAndGet();
+                }
+                // memory already held for the key is not counted again (re-checked, as a victim may have held it)
+                charge = (shared && charges.containsKey(key)) ? 0L : size;
+                reserved = (hasRoomFor(1) && memoryBudget.tryReserve(overhead + charge));
+                victim = reserved ? null : nextVictim();
+            } while (victim != null);
+        }
+        if (reserved) {
+            final Charge held = charges.computeIfAbsent(key, k -> new Charge());
+            held.size += charge;
+            ++held.count;
+            final long id = idOf.applyAsLong(item);
+            items.put(id, item);
+            if (itemsByRecency != null) {
+                itemsByRecency.put(id, item);
+            }
+            if (itemsBySize != null) {
+                itemsBySize.add(item);
+            }
+        } else {
+            countRejected.incrementAndGet();
+        }
+        return reserved;
+    }
+
+    /**
+     * Reserve room for a batch of items, evicting other items (as allowed by the policy) to make room.  The batch is
+     * reserved as a whole, or not at all.
+     *
+     * @param size    the total memory of the items (their overhead, and their size, as if not shared)
+     * @param count   the number of items
+     * @param evicted container to receive the items evicted to make room for the batch
+     * @return true, if the room was reserved; false, if the batch does not fit
+     */
+    public synchronized boolean reserve(final long size, final int count, final List<V> evicted) {
+        final boolean fitsEmpty = (size <= memoryBudget.getLimit()) && ((maxCount <= 0) || (count <= maxCount));
+        // under a policy which evicts, the batch fits once enough items are evicted; otherwise, it must fit as is
+        final boolean fits = fitsEmpty && ((policy != EvictionPolicy.REJECT)
+                || ((size <= memoryBudget.getAvailable()) && hasRoomFor(count)));
+        boolean reserved = false;
+        V victim = null;
+        if (fits) {
+            do {
+                if (victim != null) {
+                    removeItem(victim);
+                    evicted.add(victim);
+                    countEvicted.incrementAndGet();
+                }
+                reserved = (hasRoomFor(count) && memoryBudget.tryReserve(size));
+                victim = reserved ? null : nextVictim();
+            } while (victim != null);
+        }
+        if (reserved) {
+            countReserved += count;
+        }
+        return reserved;
+    }
+
+    /**
+     * Add an item, for which room was reserved by {@link #reserve(long, int, List)}.  The reserved room is used
+     * first; should the item need more (or the room have been taken meanwhile), other items are evicted (as allowed
+     * by the policy) as for {@link #add(Object, List)}.
+     *
+     * @param item     the new item
+     * @param reserved the memory reserved for the item (one of the items of the batch)
+     * @param evicted  container to receive the items evicted to make room for the new item
+     * @return true, if the item was added; false, if it was rejected
+     */
+    public synchronized boolean addReserved(final V item, final long reserved, final List<V> evicted) {
+        release(reserved, 1);
+        return add(item, evicted);
+    }
+
+    /**
+     * Return room reserved by {@link #reserve(long, int, List)}, and not used.
+     *
+     * @param size  the memory to return
+     * @param count the number of items to return
+     */
+    public synchronized void release(final long size, final int count) {
+        memoryBudget.release(size);
+        countReserved -= count;
+    }
+
+    /**
+     * @param item the item to remove
+     * @return true, if the item was held (and has been removed)
+     */
+    public synchronized boolean remove(final V item) {
+        final boolean removed = (items.get(idOf.applyAsLong(item)) == item);
+        if (removed) {
+            removeItem(item);
+        }
+        return removed;
+    }
+
+    /**
+     * Change the memory counted for a held item (and for the other items sharing its memory).  The budget may be
+     * exceeded by an increase.
+     *
+     * @param item the item
+     * @param size the memory now held for the item
+     * @return true, if the item is held
+     */
+    public synchronized boolean resize(final V item, final long size) {
+        final Charge charge = (items.get(idOf.applyAsLong(item)) == item) ? charges.get(chargeKey(item)) : null;
+        if (charge != null) {
+            if (size < charge.size) {
+                memoryBudget.release(charge.size - size);
+            } else {
+                memoryBudget.reserve(size - charge.size);
+            }
+            charge.size = size;
+        }
+        return (charge != null);
+    }
+
+    private boolean hasRoomFor(final int count) {
+        return (maxCount <= 0) || ((items.size() + countReserved + count) <= maxCount);
+    }
+
+    private V nextVictim() {
+        final V victim;
+        if (policy == EvictionPolicy.DROP_OLDEST) {
+            victim = items.peekFirst();
+        } else if (policy == EvictionPolicy.DROP_LARGEST) {
+            victim = itemsBySize.isEmpty() ? null : itemsBySize.last();
+        } else if (policy == EvictionPolicy.LRU) {
+            victim = itemsByRecency.peekFirst();
+        } else {
+            victim = null;
+        }
+        return victim;
+    }
+
+    private void removeItem(final V item) {
+        final long id = idOf.applyAsLong(item);
+        items.remove(id, item);
+        if (itemsByRecency != null) {
+            itemsByRecency.remove(id, item);
+        }
+        if (itemsBySize != null) {
+            itemsBySize.remove(item);
+        }
+        // the memory of a shared key is released with the last item holding it
+        final Object key = chargeKey(item);
+        final Charge charge = charges.get(key);
+        long released = overheadOf.applyAsLong(item);
+        if (--charge.count == 0) {
+            charges.remove(key);
+            released += charge.size;
+        }
+        memoryBudget.release(released);
+    }
+
+    private Object chargeKey(final V item) {
+        final Object key = keyOf.apply(item);
+        return (key == null) ? Long.valueOf(idOf.applyAsLong(item)) : key;
+    }
+
+    /**
+     * Memory counted against the budget, and the number of items holding it.
+     */
+    private static final class Charge {
+        private long size;
+        private int count;
+
+        private Charge() {
+            this.size = 0L;
+            this.count = 0;
+        }
+    }
+}
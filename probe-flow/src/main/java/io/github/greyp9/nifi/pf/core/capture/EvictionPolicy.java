@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.capture;
+
+/**
+ * Action taken when a new item does not fit within the limits of a {@link CaptureStore}.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Refuse the new item; the items already held are kept.
+     */
+    REJECT("Reject", "Refuse the new item; the items already held are kept."),
+
+    /**
+     * Evict the items held longest (FIFO), until the new item fits.
+     */
+    DROP_OLDEST("Drop Oldest", "Evict the items held longest, until the new item fits."),
+
+    /**
+     * Evict the largest items held, until the new item fits.
+     */
+    DROP_LARGEST("Drop Largest", "Evict the largest items held, until the new item fits."),
+
+    /**
+     * Evict the items least recently viewed (or added), until the new item fits.
+     */
+    LRU("Least Recently Viewed", "Evict the items least recently viewed, until the new item fits.");
+
+    private final String displayName;
+    private final String description;
+
+    EvictionPolicy(final String displayName, final String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
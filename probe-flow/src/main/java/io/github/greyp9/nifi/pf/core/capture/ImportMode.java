@@ -0,0 +1,29 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.capture;
+
+/**
+ * Action taken when a batch of new items does not fit within the limits of a {@link CaptureStore} as a whole.
+ */
+public enum ImportMode {
+
+    /**
+     * Refuse the whole batch; no item of the batch is added.
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * Add the items of the batch which fit, in order; refuse the others.
+     */
+    BEST_EFFORT
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.capture;
+
+/**
+ * The outcome of adding a batch of new items to a {@link CaptureStore}.
+ */
+public final class ImportResult {
+
+    /**
+     * The number of items added.
+     */
+    private final int countImported;
+
+    /**
+     * The number of items refused.
+     */
+    private final int countRejected;
+
+    /**
+     * Constructor.
+     *
+     * @param countImported the number of items added
+     * @param countRejected the number of items refused
+     */
+    public ImportResult(final int countImported, final int countRejected) {
+        this.countImported = countImported;
+        this.countRejected = countRejected;
+    }
+
+    public int getCountImported() {
+        return countImported;
+    }
+
+    public int getCountRejected() {
+        return countRejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d imported, %d rejected", countImported, countRejected);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.capture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Uniform random sample of fixed size, drawn from a stream of unknown length (reservoir sampling, "Algorithm L").
+ * <p>
+ * Rather than drawing a random number for each item offered, the sampler computes the number of items to skip until
+ * the next admission, so the cost per item not admitted is a counter comparison.  Sampling is split into two steps
+ * ({@link #admit()}, then {@link #set(int, Object)}), so callers may defer the work of materializing an item until
+ * it is known to be admitted.
+ *
+ * @param <V> the type of the sampled items
+ */
+public final class Reservoir<V> {
+
+    /**
+     * Source of randomness for the sampler.
+     */
+    private final Random random;
+
+    /**
+     * The sampled items (length is the sample size).
+     */
+    private final Object[] items;
+
+    /**
+     * The number of items offered to the sampler (since the last reset).
+     */
+    private long countSeen;
+
+    /**
+     * The (zero-based) index of the next item to be admitted to the sample.
+     */
+    private long indexNext;
+
+    /**
+     * Algorithm state: the largest of the random keys of the sampled items, in the equivalent key-based formulation.
+     */
+    private double w;
+
+    /**
+     * Constructor.
+     *
+     * @param size   the sample size
+     * @param random source of randomness for the sampler
+     */
+    public Reservoir(final int size, final Random random) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(Integer.toString(size));
+        }
+        this.random = random;
+        this.items = new Object[size];
+        reset();
+    }
+
+    public int getSize() {
+        return items.length;
+    }
+
+    public synchronized long getCountSeen() {
+        return countSeen;
+    }
+
+    /**
+     * Offer the next item of the stream to the sampler.
+     *
+     * @return the sample slot to which the item is admitted, or -1 if the item is not sampled
+     */
+    public synchronized int admit() {
+        final long index = countSeen++;
+        final int slot;
+        if (index < items.length) {
+            slot = (int) index;
+        } else if (index == indexNext) {
+            slot = random.nextInt(items.length);
+            w *= Math.exp(Math.log(nextOpenUnit()) / items.length);
+            indexNext += skip() + 1L;
+        } else {
+            slot = -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Place an admitted item in the sample.
+     *
+     * @param slot the sample slot returned by {@link #admit()}
+     * @param item the admitted item
+     * @return the item displaced from the sample, or null if the slot was empty
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V set(final int slot, final V item) {
+        final V itemPrevious = (V) items[slot];
+        items[slot] = item;
+        return itemPrevious;
+    }
+
+    /**
+     * @return a snapshot of the sampled items
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<V> values() {
+        final List<V> values = new ArrayList<>(items.length);
+        for (final Object item : items) {
+            if (item != null) {
+                values.add((V) item);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Discard the sample, and begin sampling the stream anew.
+     *
+     * @return the items discarded from the sample
+     */
+    public synchronized List<V> reset() {
+        final List<V> values = values();
+        for (int i = 0; (i < items.length); ++i) {
+            items[i] = null;
+        }
+        countSeen = 0L;
+        w = Math.exp(Math.log(nextOpenUnit()) / items.length);
+        indexNext = items.length + skip();
+        return values;
+    }
+
+    /**
+     * @return the number of items to pass over before the next admission to the sample
+     */
+    private long skip() {
+        final double skip = Math.floor(Math.log(nextOpenUnit()) / Math.log(1.0d - w));
+        return (Double.isNaN(skip) || (skip >= Long.MAX_VALUE / 2)) ? (Long.MAX_VALUE / 2) : (long) skip;
+    }
+
+    /**
+     * @return a random value in the range (0, 1]; the logarithm of which is finite
+     */
+    private double nextOpenUnit() {
+        return 1.0d - random.nextDouble();
+    }
+}
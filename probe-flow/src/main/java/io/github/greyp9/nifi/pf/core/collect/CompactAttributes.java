@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.collect;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact, immutable map of FlowFile attributes.
+ * <p>
+ * Keys and values are held in parallel arrays, with keys in sorted order (lookup is a binary search).  The key array
+ * is drawn from a shared schema, so that FlowFiles with the same attribute names (<code>filename</code>,
+ * <code>path</code>, <code>uuid</code>, ...) hold one copy of the names between them; each instance then costs little
+ * more than its value array.  The number of schemas (and of distinct interned names) is bounded; beyond the bound,
+ * new key arrays are not shared.
+ */
+public final class CompactAttributes extends AbstractMap<String, String> {
+
+    /**
+     * The attribute names, sorted (shared by all instances with the same names).
+     */
+    private final String[] keys;
+
+    /**
+     * The attribute values, in the order of {@link #keys}.
+     */
+    private final String[] values;
+
+    private CompactAttributes(final String[] keys, final String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @param attributes FlowFile attributes
+     * @return compact (immutable) attributes; the argument itself, if already compact
+     */
+    public static CompactAttributes copyOf(final Map<String, String> attributes) {
+        return (attributes instanceof CompactAttributes)
+                ? (CompactAttributes) attributes : copyOf(attributes, null, null);
+    }
+
+    /**
+     * @param attributes FlowFile attributes
+     * @param key        the name of an attribute to add (or replace), or null
+     * @param value      the value of the attribute to add
+     * @return compact (immutable) attributes, with the added attribute
+     */
+    public static CompactAttributes copyOf(final Map<String, String> attributes, final String key, final String value) {
+        final boolean add = (key != null) && !attributes.containsKey(key);
+        final String[] keys = attributes.keySet().toArray(new String[attributes.size() + (add ? 1 : 0)]);
+        if (add) {
+            keys[keys.length - 1] = key;
+        }
+        Arrays.sort(keys);
+        final String[] values = new String[keys.length];
+        for (int i = 0; (i < keys.length); ++i) {
+            values[i] = keys[i].equals(key) ? value : attributes.get(keys[i]);
+        }
+        return new CompactAttributes(toSchema(keys), values);
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return (indexOf(key) >= 0);
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = indexOf(key);
+        return (index < 0) ? null : values[index];
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new EntrySet();
+    }
+
+    private int indexOf(final Object key) {
+        return (key instanceof String) ? Arrays.binarySearch(keys, key) : -1;
+    }
+
+    /**
+     * @return the shared key array equal to the argument (registering the argument, with interned names, if new)
+     */
+    private static String[] toSchema(final String[] keys) {
+        final List<String> schemaKey = Arrays.asList(keys);
+        String[] schema = SCHEMAS.get(schemaKey);
+        if (schema == null) {
+            for (int i = 0; (i < keys.length); ++i) {
+                keys[i] = intern(keys[i]);
+            }
+            schema = (SCHEMAS.size() < MAX_SCHEMAS) ? SCHEMAS.computeIfAbsent(schemaKey, k -> keys) : keys;
+        }
+        return schema;
+    }
+
+    private static String intern(final String name) {
+        final String nameInterned = NAMES.get(name);
+        return (nameInterned != null) ? nameInterned
+                : ((NAMES.size() < MAX_NAMES) ? NAMES.computeIfAbsent(name, k -> name) : name);
+    }
+
+    /**
+     * View of the entries of the map, in key order.
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, String>> {
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<Entry<String, String>>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return (index < keys.length);
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    if (index >= keys.length) {
+                        throw new NoSuchElementException();
+                    }
+                    final Entry<String, String> entry = new SimpleImmutableEntry<>(keys[index], values[index]);
+                    ++index;
+                    return entry;
+                }
+            };
+        }
+    }
+
+    /**
+     * Shared key arrays, by content.
+     */
+    private static final Map<List<String>, String[]> SCHEMAS = new ConcurrentHashMap<>();
+
+    /**
+     * Interned attribute names.
+     */
+    private static final Map<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private static final int MAX_SCHEMAS = 4096;
+    private static final int MAX_NAMES = 65536;
+}
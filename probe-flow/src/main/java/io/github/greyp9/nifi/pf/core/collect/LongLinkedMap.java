@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.collect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Insertion-ordered map keyed by primitive <code>long</code>, safe for concurrent use.
+ * <p>
+ * Entries are indexed by an open-addressed (linear probing) hash table, and linked in insertion order.  Lookup,
+ * insertion and removal are O(1); keys are never boxed.  Iteration is over a snapshot, so callers (web server views)
+ * may iterate while other threads (NiFi <code>onTrigger()</code>) modify the map.
+ *
+ * @param <V> the type of the mapped values
+ */
+public final class LongLinkedMap<V> {
+
+    /**
+     * Guard for table and list state; lookups share the read lock.
+     */
+    private final ReadWriteLock lock;
+
+    /**
+     * Open-addressed hash table of entries (length is a power of two).
+     */
+    private Entry<V>[] table;
+
+    /**
+     * Oldest entry in the map.
+     */
+    private Entry<V> head;
+
+    /**
+     * Newest entry in the map.
+     */
+    private Entry<V> tail;
+
+    /**
+     * Number of entries in the map.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public LongLinkedMap() {
+        this.lock = new ReentrantReadWriteLock();
+        this.table = newTable(INITIAL_CAPACITY);
+        this.head = null;
+        this.tail = null;
+        this.size = 0;
+    }
+
+    public int size() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return (size() == 0);
+    }
+
+    /**
+     * @param key the key of the entry
+     * @return the value mapped to the key, or null if no mapping exists
+     */
+    public V get(final long key) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final Entry<V> entry = table[indexOf(key)];
+            return (entry == null) ? null : entry.value;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean containsKey(final long key) {
+        return (get(key) != null);
+    }
+
+    /**
+     * Add a mapping.  A new key is linked at the end of the iteration order; an existing key keeps its position.
+     *
+     * @param key   the key of the entry
+     * @param value the (non-null) value of the entry
+     * @return the value previously mapped to the key, or null if no mapping existed
+     */
+    public V put(final long key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final int index = indexOf(key);
+            final Entry<V> existing = table[index];
+            final V valuePrevious;
+            if (existing == null) {
+                final Entry<V> entry = new Entry<>(key, value);
+                table[index] = entry;
+                linkLast(entry);
+                ++size;
+                if ((size * LOAD_FACTOR_DENOMINATOR) > (table.length * LOAD_FACTOR_NUMERATOR)) {
+                    resize(table.length << 1);
+                }
+                valuePrevious = null;
+            } else {
+                valuePrevious = existing.value;
+                existing.value = value;
+            }
+            return valuePrevious;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param key the key of the entry
+     * @return the value previously mapped to the key, or null if no mapping existed
+     */
+    public V remove(final long key) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final int index = indexOf(key);
+            final Entry<V> entry = table[index];
+            if (entry != null) {
+                unlink(entry);
+                deleteSlot(index);
+                --size;
+            }
+            return (entry == null) ? null : entry.value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param key   the key of the entry
+     * @param value the value expected to be mapped to the key
+     * @return true, if the key was mapped to the (identical) value, and the mapping was removed
+     */
+    public boolean remove(final long key, final V value) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final int index = indexOf(key);
+            final Entry<V> entry = table[index];
+            final boolean remove = ((entry != null) && (entry.value == value));
+            if (remove) {
+                unlink(entry);
+                deleteSlot(index);
+                --size;
+            }
+            return remove;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the value of the oldest entry in the map, or null if the map is empty
+     */
+    public V peekFirst() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return (head == null) ? null : head.value;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Move an entry to the end of the iteration order (as if newly inserted).
+     *
+     * @param key the key of the entry
+     * @return true, if the key was mapped (and the entry moved)
+     */
+    public boolean moveToLast(final long key) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final Entry<V> entry = table[indexOf(key)];
+            if ((entry != null) && (entry != tail)) {
+                unlink(entry);
+                linkLast(entry);
+            }
+            return (entry != null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the value of the oldest entry in the map (which is removed), or null if the map is empty
+     */
+    public V removeFirst() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final Entry<V> entry = head;
+            if (entry != null) {
+                final int index = indexOf(entry.key);
+                unlink(entry);
+                deleteSlot(index);
+                --size;
+            }
+            return (entry == null) ? null : entry.value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            table = newTable(INITIAL_CAPACITY);
+            head = null;
+            tail = null;
+            size = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the values in the map, in insertion order
+     */
+    public List<V> values() {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final List<V> values = new ArrayList<>(size);
+            for (Entry<V> entry = head; (entry != null); entry = entry.after) {
+                values.add(entry.value);
+            }
+            return values;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where the key would be inserted
+     */
+    private int indexOf(final long key) {
+        final int mask = table.length - 1;
+        int index = hash(key) & mask;
+        Entry<V> entry = table[index];
+        while ((entry != null) && (entry.key != key)) {
+            index = (index + 1) & mask;
+            entry = table[index];
+        }
+        return index;
+    }
+
+    /**
+     * Empty the slot, shifting back any later entries of the probe sequence, so that no tombstones are needed.
+     */
+    private void deleteSlot(final int index) {
+        final int mask = table.length - 1;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (table[next] != null) {
+            final int home = hash(table[next].key) & mask;
+            // move entry back into hole, unless its home slot lies cyclically within (hole, next]
+            final boolean stay = (hole <= next) ? ((hole < home) && (home <= next)) : ((hole < home) || (home <= next));
+            if (!stay) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = null;
+    }
+
+    private void resize(final int capacity) {
+        table = newTable(capacity);
+        final int mask = capacity - 1;
+        for (Entry<V> entry = head; (entry != null); entry = entry.after) {
+            int index = hash(entry.key) & mask;
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = entry;
+        }
+    }
+
+    private void linkLast(final Entry<V> entry) {
+        entry.before = tail;
+        if (tail == null) {
+            head = entry;
+        } else {
+            tail.after = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(final Entry<V> entry) {
+        if (entry.before == null) {
+            head = entry.after;
+        } else {
+            entry.before.after = entry.after;
+        }
+        if (entry.after == null) {
+            tail = entry.before;
+        } else {
+            entry.after.before = entry.before;
+        }
+        entry.before = null;
+        entry.after = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newTable(final int capacity) {
+        return (Entry<V>[]) new Entry[capacity];
+    }
+
+    /**
+     * Spread sequential ids across the table (64-bit finalizer of MurmurHash3).
+     */
+    private static int hash(final long key) {
+        long h = key;
+        h ^= (h >>> SHIFT_MIX);
+        h *= MIX_1;
+        h ^= (h >>> SHIFT_MIX);
+        h *= MIX_2;
+        h ^= (h >>> SHIFT_MIX);
+        return (int) h;
+    }
+
+    /**
+     * Entry in the map, linked to its neighbors in insertion order.
+     */
+    private static final class Entry<V> {
+        private final long key;
+        private V value;
+        private Entry<V> before;
+        private Entry<V> after;
+
+        private Entry(final long key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int LOAD_FACTOR_NUMERATOR = 2;
+    private static final int LOAD_FACTOR_DENOMINATOR = 3;
+    private static final int SHIFT_MIX = 33;
+    private static final long MIX_1 = 0xff51afd7ed558ccdL;
+    private static final long MIX_2 = 0xc4ceb9fe1a85ec53L;
+}
@@ -26,6 +26,7 @@ public class Probe {
     public static class App {
         public static final String ACCEPT = "accept";
         public static final String ADD_ATTRIBUTE = "addAttribute";
+        public static final String CAPTURE = "capture";
         public static final String CREATE = "create";
         public static final String DELETE_ATTRIBUTE = "deleteAttribute";
         public static final String FLOWFILE = "flowfile";
@@ -33,10 +34,12 @@ public class Probe {
         public static final String ID_ATTRIBUTE = "attribute";
         public static final String ID_ATTRIBUTES = "attributes";
         public static final String ID_METADATA = "metadata";
+        public static final String PURGE = "purge";
         public static final String RESET = "reset";
         public static final String ROUTE = "route";
         public static final String UPDATE_TEXT = "updateText";
         public static final String UPDATE_TEXT_BASE64 = "updateTextBase64";
+        public static final String UPLOAD_ALL = "uploadAll";
         public static final String UPLOAD_FILE = "uploadFile";
 
         public static final String COLUMN_NAME = "Name";
@@ -111,12 +114,25 @@ public class Probe {
     }
 
     public static class Http {
+        public static final String CONTENT_DISPOSITION = "Content-Disposition";
         public static final String CONTENT_LENGTH = "Content-Length";
         public static final String CONTENT_TYPE = "Content-Type";
         public static final String ENCTYPE = "enctype";
         public static final String FORM_MULTIPART = "multipart/form-data";
         public static final String FORM_URL_ENCODED = "application/x-www-form-urlencoded";
         public static final String LOCATION = "Location";
+        public static final String X_PROBE_CURSOR = "X-Probe-Cursor";
+        public static final String X_PROBE_MORE = "X-Probe-More";
+    }
+
+    public static class Export {
+        public static final String ATTRIBUTE = "attribute";
+        public static final String FROM = "from";
+        public static final String IDS = "ids";
+        public static final String MAX_BYTES = "maxBytes";
+        public static final String SINCE = "since";
+        public static final String TO = "to";
+        public static final String VALUE = "value";
     }
 
     public static class Form {
@@ -133,6 +149,8 @@ public class Probe {
     }
 
     public static class Mime {
+        public static final String APPLICATION_FLOWFILE_V3 = "application/flowfile-v3";
+        public static final String APPLICATION_GZIP = "application/gzip";
         public static final String IMAGE_ICON = "image/x-icon";
         public static final String TEXT_CSS = "text/css";
         public static final String TEXT_HTML_UTF8 = "text/html; charset='UTF-8'";
@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content held on heap in compressed (deflate) form, and inflated as it is read.
+ * <p>
+ * Streaming reads ({@link #newInputStream()}, {@link #writeTo(OutputStream)}) inflate the content once, from its start.
+ * A random access read also inflates from the start of the content, up to the requested region; sequential consumers
+ * should prefer the streaming methods.
+ */
+final class CompressedContent implements Content {
+
+    /**
+     * The compressed content (counted against the heap budget of the store).
+     */
+    private final HeapContent compressed;
+
+    /**
+     * The size of the content (inflated).
+     */
+    private final long size;
+
+    private CompressedContent(final HeapContent compressed, final long size) {
+        this.compressed = compressed;
+        this.size = size;
+    }
+
+    /**
+     * @param content the content to compress
+     * @param level   the compression level (see {@link Deflater})
+     * @return the compressed content, on heap (not counted against any budget)
+     * @throws IOException on failure to read the content
+     */
+    static HeapContent deflate(final Content content, final int level) throws IOException {
+        final Deflater deflater = new Deflater(level);
+        try (InputStream is = new DeflaterInputStream(content.newInputStream(), deflater)) {
+            return HeapContent.read(is, -1L);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param compressed the compressed content (see {@link #deflate(Content, int)}), counted against the heap budget
+     * @param size       the size of the content (inflated)
+     * @return the content, inflated as it is read
+     */
+    static CompressedContent of(final HeapContent compressed, final long size) {
+        return new CompressedContent(compressed, size);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getStoredSize() {
+        return compressed.getSize();
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        final int count;
+        if (position >= size) {
+            count = -1;
+        } else {
+            try (InputStream is = newInputStream()) {
+                long skipped = 0L;
+                while (skipped < position) {
+                    final long n = is.skip(position - skipped);
+                    if (n <= 0L) {
+                        throw new IOException(String.format("content truncated at %d", skipped));
+                    }
+                    skipped += n;
+                }
+                count = is.read(buffer, offset, (int) Math.min(length, size - position));
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("content too large for array: %d", size));
+        }
+        final byte[] data = new byte[(int) size];
+        try (InputStream is = newInputStream()) {
+            int position = 0;
+            while (position < data.length) {
+                final int n = is.read(data, position, data.length - position);
+                if (n < 0) {
+                    throw new EOFException(String.format("content truncated at %d", position));
+                }
+                position += n;
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        try (InputStream is = newInputStream()) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * @return a stream over the inflated content; the stream should be closed, to free the native inflater promptly
+     */
+    @Override
+    public InputStream newInputStream() {
+        return new InflaterStream(compressed.newInputStream());
+    }
+
+    @Override
+    public void release() {
+        compressed.release();
+    }
+
+    /**
+     * Inflating stream owning its {@link Inflater}, which is ended on close.
+     */
+    private static final class InflaterStream extends InflaterInputStream {
+
+        private InflaterStream(final InputStream is) {
+            super(is, new Inflater(), BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest array size reliably supported by the JVM.
+     */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * The (immutable) content of a held FlowFile, wherever it is stored.
+ * <p>
+ * Content is addressed by <code>long</code> offset, so that it may exceed the size of a Java array.  Consumers should
+ * prefer the streaming ({@link #newInputStream()}, {@link #writeTo(OutputStream)}) and random access
+ * ({@link #read(long, byte[], int, int)}) methods to {@link #toBytes()}, which needs one contiguous allocation.
+ */
+public interface Content {
+
+    /**
+     * @return the size of the content, in bytes
+     */
+    long getSize();
+
+    /**
+     * @return the number of bytes held to store the content (less than its size, if the content is compressed)
+     */
+    default long getStoredSize() {
+        return getSize();
+    }
+
+    /**
+     * Read a region of the content.
+     *
+     * @param position the offset in the content of the first byte to read
+     * @param buffer   the target of the read
+     * @param offset   the offset in the buffer of the first byte to write
+     * @param length   the maximum number of bytes to read
+     * @return the number of bytes read (which may be less than requested), or -1 if the position is at the end of the
+     * content
+     * @throws IOException on failure to read stored content
+     */
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * @return the content; for content held on heap in a single chunk, the backing array (which must not be modified)
+     * @throws IOException on failure to read stored content, or if the content is too large for an array
+     */
+    byte[] toBytes() throws IOException;
+
+    /**
+     * Copy the content to a stream, without materializing stored content on heap.
+     *
+     * @param outputStream the target of the copy
+     * @throws IOException on failure to read stored content, or to write to the target
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+
+    /**
+     * Return the storage held by the content to its store.  Subsequent reads of stored content may fail.  Calls after
+     * the first have no effect.
+     */
+    void release();
+
+    /**
+     * @return a stream over the content, from its start (closing the stream does not release the content)
+     */
+    default InputStream newInputStream() {
+        return new ContentInputStream(this);
+    }
+
+    /**
+     * @return a channel over the content, from its start (closing the channel does not release the content)
+     */
+    default ReadableByteChannel newChannel() {
+        return Channels.newChannel(newInputStream());
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sequential view of {@link Content}, by way of its random access reads.
+ */
+final class ContentInputStream extends InputStream {
+
+    /**
+     * The content being read.
+     */
+    private final Content content;
+
+    /**
+     * The offset in the content of the next byte to read.
+     */
+    private long position;
+
+    /**
+     * The position saved by {@link #mark(int)}.
+     */
+    private long mark;
+
+    ContentInputStream(final Content content) {
+        this.content = content;
+        this.position = 0L;
+        this.mark = 0L;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int n = read(b, 0, 1);
+        return (n < 0) ? n : (b[0] & BYTE_MASK);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n;
+        if (len == 0) {
+            n = 0;
+        } else {
+            n = content.read(position, b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) {
+        final long skipped = Math.max(0L, Math.min(n, content.getSize() - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, content.getSize() - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+    private static final int BYTE_MASK = 0xff;
+}
@@ -0,0 +1,610 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.memory.MemoryBudget;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+/**
+ * Tiered storage for the content of held FlowFiles.
+ * <p>
+ * Content up to the heap threshold is held on heap, while it fits within the heap budget.  Larger content, and content
+ * beyond the heap budget, is held off heap (in direct memory, while it fits within the off-heap budget), or else
+ * spilled to append-only segment files in a local directory, and read back through memory-mapped regions of the files.
+ * A segment file is deleted once it is full and none of its content is live.
+ * <p>
+ * Content which fits in no other tier is held on heap (the capture limits of the processor still apply).
+ * <p>
+ * If compression is enabled, content held on heap may be compressed after it is placed, on a background thread (see
+ * {@link #compressLater(Content, Consumer)}).
+ */
+public final class ContentStore implements Closeable {
+
+    /**
+     * The directory holding segment files (null, if spilling is disabled).
+     */
+    private final Path directory;
+
+    /**
+     * Content larger than this is held off heap or spilled.
+     */
+    private final long heapThreshold;
+
+    /**
+     * Running total of content held on heap, bounded by the configured maximum.
+     */
+    private final MemoryBudget heapBudget;
+
+    /**
+     * Off-heap memory for content (null, if off-heap storage is disabled).
+     */
+    private final SlabAllocator offHeap;
+
+    /**
+     * Content placed by key (digest), held once for all FlowFiles with identical content (null, if deduplication is
+     * disabled).
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Running total of the size of live references to deduplicated content (the size as seen by FlowFiles).
+     */
+    private long sharedSize;
+
+    /**
+     * Running total of the size of deduplicated content (the size actually stored).
+     */
+    private long storedSize;
+
+    /**
+     * The single thread compressing placed content (null, if compression is disabled).
+     */
+    private final ExecutorService compressor;
+
+    /**
+     * Segment files not yet deleted, in order of creation.
+     */
+    private final Set<Segment> segments;
+
+    /**
+     * The segment file to which content is appended.
+     */
+    private Segment active;
+
+    /**
+     * Ordinal of the last segment file created.
+     */
+    private int segmentOrdinal;
+
+    /**
+     * The prefix of the names of the segment files of this store; unique among the stores in this JVM, so that a
+     * store taking over from another in the same directory (see {@link #hasSameSettings(ContentStore)}) leaves the
+     * files of the other alone.
+     */
+    private final String segmentPrefix;
+
+    /**
+     * Running total of live content spilled to segment files.
+     */
+    private long spillUsed;
+
+    /**
+     * Constructor, for a store holding all content on heap.
+     */
+    public ContentStore() {
+        this(null, Long.MAX_VALUE, Long.MAX_VALUE, 0L);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory      the directory to hold segment files (created on first use; null to disable spilling)
+     * @param heapThreshold  content larger than this is held off heap or spilled
+     * @param maxHeapSize    the maximum size of content held on heap; content beyond this is held off heap or spilled
+     * @param maxOffHeapSize the maximum size of content held off heap (zero to disable off-heap storage)
+     */
+    public ContentStore(final Path directory, final long heapThreshold,
+                        final long maxHeapSize, final long maxOffHeapSize) {
+        this(directory, heapThreshold, maxHeapSize, maxOffHeapSize, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory      the directory to hold segment files (created on first use; null to disable spilling)
+     * @param heapThreshold  content larger than this is held off heap or spilled
+     * @param maxHeapSize    the maximum size of content held on heap; content beyond this is held off heap or spilled
+     * @param maxOffHeapSize the maximum size of content held off heap (zero to disable off-heap storage)
+     * @param deduplicate    true, to hold content placed with the same key only once
+     */
+    public ContentStore(final Path directory, final long heapThreshold,
+                        final long maxHeapSize, final long maxOffHeapSize, final boolean deduplicate) {
+        this(directory, heapThreshold, maxHeapSize, maxOffHeapSize, deduplicate, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory      the directory to hold segment files (created on first use; null to disable spilling)
+     * @param heapThreshold  content larger than this is held off heap or spilled
+     * @param maxHeapSize    the maximum size of content held on heap; content beyond this is held off heap or spilled
+     * @param maxOffHeapSize the maximum size of content held off heap (zero to disable off-heap storage)
+     * @param deduplicate    true, to hold content placed with the same key only once
+     * @param compress       true, to compress content held on heap (in the background, after it is placed)
+     */
+    public ContentStore(final Path directory, final long heapThreshold, final long maxHeapSize,
+                        final long maxOffHeapSize, final boolean deduplicate, final boolean compress) {
+        this.directory = directory;
+        this.heapThreshold = heapThreshold;
+        this.heapBudget = new MemoryBudget(maxHeapSize);
+        this.offHeap = (maxOffHeapSize > 0L) ? new SlabAllocator(maxOffHeapSize) : null;
+        this.entries = deduplicate ? new HashMap<>() : null;
+        this.sharedSize = 0L;
+        this.storedSize = 0L;
+        this.compressor = compress ? Executors.newSingleThreadExecutor(ContentStore::newCompressorThread) : null;
+        this.segments = new LinkedHashSet<>();
+        this.active = null;
+        this.segmentOrdinal = 0;
+        this.segmentPrefix = String.format(SEGMENT_PREFIX, STORE_ORDINAL.incrementAndGet());
+        this.spillUsed = 0L;
+    }
+
+    public boolean isSpillEnabled() {
+        return (directory != null);
+    }
+
+    public boolean isDedupEnabled() {
+        return (entries != null);
+    }
+
+    public boolean isCompressEnabled() {
+        return (compressor != null);
+    }
+
+    public boolean isOffHeapEnabled() {
+        return (offHeap != null);
+    }
+
+    public long getHeapThreshold() {
+        return heapThreshold;
+    }
+
+    public long getHeapUsed() {
+        return heapBudget.getUsed();
+    }
+
+    public long getMaxHeapSize() {
+        return heapBudget.getLimit();
+    }
+
+    /**
+     * @return the off-heap memory in use by live content (in whole pages)
+     */
+    public long getOffHeapUsed() {
+        return (offHeap == null) ? 0L : offHeap.getUsed();
+    }
+
+    /**
+     * @return the off-heap memory allocated (in use, or free for reuse)
+     */
+    public long getOffHeapReserved() {
+        return (offHeap == null) ? 0L : offHeap.getReserved();
+    }
+
+    public long getMaxOffHeapSize() {
+        return (offHeap == null) ? 0L : offHeap.getLimit();
+    }
+
+    /**
+     * @param store another content store
+     * @return true, if the stores are configured alike (same spill directory, tier limits, deduplication and
+     * compression), so that content held in one would be held the same way in the other
+     */
+    public boolean hasSameSettings(final ContentStore store) {
+        return Objects.equals(directory, store.directory)
+                && (heapThreshold == store.heapThreshold)
+                && (getMaxHeapSize() == store.getMaxHeapSize())
+                && (getMaxOffHeapSize() == store.getMaxOffHeapSize())
+                && (isDedupEnabled() == store.isDedupEnabled())
+                && (isCompressEnabled() == store.isCompressEnabled());
+    }
+
+    public synchronized long getSpillUsed() {
+        return spillUsed;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the number of distinct deduplicated content items stored
+     */
+    public synchronized int getDedupCount() {
+        return (entries == null) ? 0 : entries.size();
+    }
+
+    /**
+     * @return the total size of live references to deduplicated content
+     */
+    public synchronized long getDedupSharedSize() {
+        return sharedSize;
+    }
+
+    /**
+     * @return the total size of deduplicated content stored (once per distinct content item)
+     */
+    public synchronized long getDedupStoredSize() {
+        return storedSize;
+    }
+
+    /**
+     * @param content content, in any storage tier
+     * @return the key of the content, for {@link #place(Content, String)}; or null, if deduplication is disabled
+     * @throws IOException on failure to read the content
+     */
+    public String toKey(final Content content) throws IOException {
+        if (entries == null) {
+            return null;
+        }
+        try (InputStream is = content.newInputStream()) {
+            return ProbeUtils.sha256(is);
+        }
+    }
+
+    /**
+     * Place content in the store.  If content with the same key is already stored, a new reference to it is returned
+     * (and the content itself is not read).
+     *
+     * @param content the content
+     * @param key     the key of the content (see {@link #toKey(Content)}), or null
+     * @return the stored content, to be released when no longer held
+     * @throws IOException on failure to read the content, or to spill it
+     */
+    public Content place(final Content content, final String key) throws IOException {
+        final boolean dedup = (entries != null) && (key != null);
+        Content contentPlaced = dedup ? retain(key, content.getSize()) : null;
+        if (contentPlaced == null) {
+            contentPlaced = place(content);
+            if (dedup) {
+                contentPlaced = share(key, contentPlaced);
+            }
+        }
+        return contentPlaced;
+    }
+
+    /**
+     * Place content in the store (on heap, off heap or spilled), according to its size and the tier budgets.
+     *
+     * @param content the content (typically on heap, as read from its source)
+     * @return the stored content, to be released when no longer held
+     * @throws IOException on failure to read the content, or to spill it
+     */
+    public Content place(final Content content) throws IOException {
+        final long size = content.getSize();
+        final boolean heap = (size <= heapThreshold) && heapBudget.tryReserve(size);
+        Content contentPlaced = heap ? toHeap(content) : null;
+        if ((contentPlaced == null) && (offHeap != null)) {
+            contentPlaced = offHeap.allocate(content);
+        }
+        if ((contentPlaced == null) && (directory != null)) {
+            contentPlaced = spill(content);
+        }
+        if (contentPlaced == null) {
+            heapBudget.reserve(size);
+            contentPlaced = toHeap(content);
+        }
+        return contentPlaced;
+    }
+
+    /**
+     * @return the content on heap (sharing its chunks, if already on heap), counted against the heap budget
+     */
+    private HeapContent toHeap(final Content content) throws IOException {
+        try {
+            return HeapContent.copyOf(content).withBudget(heapBudget);
+        } catch (final IOException e) {
+            heapBudget.release(content.getSize());
+            throw e;
+        }
+    }
+
+    private synchronized Content spill(final Content content) throws IOException {
+        final long size = content.getSize();
+        if ((active == null) || ((active.getPosition() > 0L)
+                && ((active.getPosition() + size) > SEGMENT_SIZE))) {
+            roll();
+        }
+        final long offset = active.append(content);
+        spillUsed += size;
+        return new MappedContent(this, active, offset, size);
+    }
+
+    private synchronized Content retain(final String key, final long size) {
+        final Entry entry = entries.get(key);
+        final boolean match = (entry != null) && (entry.content.getSize() == size);
+        if (match) {
+            ++entry.references;
+            sharedSize += size;
+        }
+        return match ? new SharedContent(this, key, entry) : null;
+    }
+
+    private Content share(final String key, final Content content) {
+        final Content contentShared;
+        synchronized (this) {
+            final Entry entry = entries.containsKey(key) ? null : new Entry(content);
+            if (entry != null) {
+                entries.put(key, entry);
+                sharedSize += content.getSize();
+                storedSize += content.getSize();
+            }
+            contentShared = (entry != null) ? new SharedContent(this, key, entry) : retain(key, content.getSize());
+        }
+        if (contentShared == null) {
+            // (unlikely) another content item, of a different size, was stored with the key meanwhile
+            return content;
+        } else if (((SharedContent) contentShared).getContent() != content) {
+            // the same content was stored concurrently; hold that instead
+            content.release();
+        }
+        return contentShared;
+    }
+
+    synchronized void release(final SharedContent content) {
+        // (after close, the entry is gone)
+        final Entry entry = entries.get(content.getKey());
+        if (entry != null) {
+            sharedSize -= content.getSize();
+            if (--entry.references == 0) {
+                entries.remove(content.getKey());
+                storedSize -= content.getSize();
+                entry.content.release();
+            }
+        }
+    }
+
+    /**
+     * Compress placed content on a background thread, if compression is enabled.  Only content held on heap is
+     * compressed, and only if compression saves at least an eighth of its size; otherwise, the content is left as is.
+     *
+     * @param content      content returned by {@link #place(Content, String)}
+     * @param onCompressed called (on the compression thread) with the compressed content, which replaces the content
+     *                     for its holder; the holder must release whichever of the two it does not keep.  Content
+     *                     deduplicated by key is replaced in place, for all of its holders; the callback then receives
+     *                     the same reference (and the holder keeps it)
+     * @return true, if the content is queued for compression; false, if compression is disabled or the store is closed
+     */
+    public boolean compressLater(final Content content, final Consumer<Content> onCompressed) {
+        boolean queued = false;
+        if (compressor != null) {
+            try {
+                compressor.execute(() -> compress(content, onCompressed));
+                queued = true;
+            } catch (final RejectedExecutionException e) {
+                // the store is closed; the content is left as is
+                queued = false;
+            }
+        }
+        return queued;
+    }
+
+    private void compress(final Content content, final Consumer<Content> onCompressed) {
+        final SharedContent shared = (content instanceof SharedContent) ? (SharedContent) content : null;
+        final Content target = (shared == null) ? content : shared.getContent();
+        if (target instanceof CompressedContent) {
+            // deduplicated content, already compressed for another holder
+            onCompressed.accept(content);
+        } else if (target instanceof HeapContent) {
+            // (null, if not worth compressing, or no longer readable)
+            final Content compressed = compress(target);
+            if ((compressed != null) && (shared == null)) {
+                onCompressed.accept(compressed);
+            } else if (compressed != null) {
+                if (replace(shared.getKey(), target, compressed)) {
+                    target.release();
+                    onCompressed.accept(content);
+                } else {
+                    compressed.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the content, compressed and counted against the heap budget; or null if compression saves too little
+     */
+    private Content compress(final Content content) {
+        Content compressed = null;
+        try {
+            final HeapContent deflated = CompressedContent.deflate(content, Deflater.DEFAULT_COMPRESSION);
+            if ((deflated.getSize() * COMPRESS_RATIO_DENOMINATOR)
+                    <= (content.getSize() * COMPRESS_RATIO_NUMERATOR)) {
+                // held alongside the content until the holder releases one of them
+                heapBudget.reserve(deflated.getSize());
+                compressed = CompressedContent.of(deflated.withBudget(heapBudget), content.getSize());
+            }
+        } catch (final IOException e) {
+            compressed = null;
+        }
+        return compressed;
+    }
+
+    private synchronized boolean replace(final String key, final Content content, final Content compressed) {
+        final Entry entry = entries.get(key);
+        final boolean replaced = (entry != null) && (entry.content == content);
+        if (replaced) {
+            entry.content = compressed;
+        }
+        return replaced;
+    }
+
+    private void roll() throws IOException {
+        if (segmentOrdinal == 0) {
+            Files.createDirectories(directory);
+            deleteSegmentFiles(path -> !OPEN_PREFIXES.contains(toSegmentPrefix(path)));
+            OPEN_PREFIXES.add(segmentPrefix);
+        }
+        final Segment previous = active;
+        active = new Segment(directory.resolve(String.format(SEGMENT_NAME, segmentPrefix, ++segmentOrdinal)));
+        segments.add(active);
+        if ((previous != null) && !previous.isLive()) {
+            deleteSegment(previous);
+        }
+    }
+
+    synchronized void release(final MappedContent content) {
+        final Segment segment = content.getSegment();
+        spillUsed -= content.getSize();
+        segment.release();
+        if (!segment.isLive() && (segment != active)) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(final Segment segment) {
+        // on failure, the segment is retained, so that deletion is retried on close
+        if (segment.tryDelete()) {
+            segments.remove(segment);
+        }
+    }
+
+    /**
+     * Drop off-heap memory, and delete the segment files of this store (and the directory, if then empty).  Content
+     * held off heap or spilled may no longer be read.
+     *
+     * @throws IOException on failure to delete a file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (compressor != null) {
+            compressor.shutdownNow();
+        }
+        if (offHeap != null) {
+            offHeap.close();
+        }
+        for (final Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        active = null;
+        spillUsed = 0L;
+        if (entries != null) {
+            entries.clear();
+            sharedSize = 0L;
+            storedSize = 0L;
+        }
+        OPEN_PREFIXES.remove(segmentPrefix);
+        if ((directory != null) && Files.isDirectory(directory)) {
+            deleteSegmentFiles(path -> segmentPrefix.equals(toSegmentPrefix(path)));
+            // the directory may still be in use by the store which took over from this one
+            final boolean empty;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                empty = !stream.iterator().hasNext();
+            }
+            if (empty) {
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    /**
+     * Delete segment files in the directory; on first use, those left by stores no longer open (including stores of
+     * an earlier run, not closed cleanly), and on close, those of this store.
+     */
+    private void deleteSegmentFiles(final Predicate<Path> filter) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_GLOB)) {
+            stream.forEach(paths::add);
+        }
+        for (final Path path : paths) {
+            if (filter.test(path)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * @return the prefix of the name of a segment file, identifying the store which wrote it
+     */
+    private static String toSegmentPrefix(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('-') + 1);
+    }
+
+    private static Thread newCompressorThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "probe-flow-compress");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Deduplicated content, with the number of live references to it.
+     */
+    static final class Entry {
+        private volatile Content content;
+        private int references;
+
+        private Entry(final Content content) {
+            this.content = content;
+            this.references = 1;
+        }
+
+        Content getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * Content is kept compressed only if compression saves at least an eighth of its size.
+     */
+    private static final long COMPRESS_RATIO_NUMERATOR = 7L;
+    private static final long COMPRESS_RATIO_DENOMINATOR = 8L;
+
+    private static final long SEGMENT_SIZE = 64L * 1024L * 1024L;
+    private static final String SEGMENT_PREFIX = "segment-%d-";
+    private static final String SEGMENT_NAME = "%s%06d.bin";
+    private static final String SEGMENT_GLOB = "segment-*.bin";
+
+    /**
+     * The source of the (unique) prefixes of the segment files of the stores created in this JVM.
+     */
+    private static final AtomicInteger STORE_ORDINAL = new AtomicInteger(0);
+
+    /**
+     * The prefixes of the segment files of the stores in this JVM which have spilled content, and are not closed.
+     */
+    private static final Set<String> OPEN_PREFIXES = ConcurrentHashMap.newKeySet();
+}
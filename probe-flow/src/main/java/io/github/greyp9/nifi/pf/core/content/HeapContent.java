@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import io.github.greyp9.nifi.pf.core.memory.MemoryBudget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Content held on heap, as a list of fixed-size chunks (the last chunk may be shorter).
+ * <p>
+ * Content read from a stream is split into chunks of 256 KiB, so that content larger than a Java array may be held,
+ * and so that no chunk is large enough to need a humongous allocation in the G1 collector (half a region, and regions
+ * are at least 1 MiB).  Content wrapping a caller's array is held as a single chunk.
+ */
+public final class HeapContent implements Content {
+
+    /**
+     * The content, in order.  Each chunk but the last holds exactly {@link #chunkSize} bytes.
+     */
+    private final byte[][] chunks;
+
+    /**
+     * The size of each chunk but the last.
+     */
+    private final int chunkSize;
+
+    /**
+     * The size of the content.
+     */
+    private final long size;
+
+    /**
+     * The budget against which the content is counted (null if not counted).
+     */
+    private final MemoryBudget budget;
+
+    /**
+     * Set when the content is released, so that it is returned to the budget only once.
+     */
+    private final AtomicBoolean released;
+
+    /**
+     * Constructor, for content not counted against any budget.
+     *
+     * @param data the content
+     */
+    public HeapContent(final byte[] data) {
+        this(new byte[][]{data}, Math.max(1, data.length), data.length, null);
+    }
+
+    private HeapContent(final byte[][] chunks, final int chunkSize, final long size, final MemoryBudget budget) {
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+        this.size = size;
+        this.budget = budget;
+        this.released = new AtomicBoolean(false);
+    }
+
+    /**
+     * @param budget the budget against which the content has been reserved
+     * @return the same content (sharing its chunks), counted against the budget
+     */
+    HeapContent withBudget(final MemoryBudget budget) {
+        return new HeapContent(chunks, chunkSize, size, budget);
+    }
+
+    /**
+     * Read the content of the stream into chunks.  The stream is not closed.
+     *
+     * @param is       the source of the content
+     * @param sizeHint the expected size of the content, or a negative value if unknown
+     * @return the content of the stream
+     * @throws IOException on failure to read the stream
+     */
+    public static HeapContent read(final InputStream is, final long sizeHint) throws IOException {
+        final List<byte[]> chunks = new ArrayList<>();
+        long size = 0L;
+        boolean more = true;
+        while (more) {
+            // size the chunk to the expected remainder of the stream, if known (then probe one byte for the end)
+            final int length = ((sizeHint < 0L) || (size > sizeHint))
+                    ? CHUNK_SIZE : (int) Math.min(CHUNK_SIZE, Math.max(1L, sizeHint - size));
+            final byte[] chunk = new byte[length];
+            final int count = readFully(is, chunk);
+            size += count;
+            more = (count == chunk.length);
+            if (count > 0) {
+                chunks.add(more ? chunk : Arrays.copyOf(chunk, count));
+            }
+        }
+        return new HeapContent(normalize(chunks), CHUNK_SIZE, size, null);
+    }
+
+    /**
+     * @param content content, in any storage tier
+     * @return a copy of the content on heap (sharing chunks, if the content is already on heap), not counted against
+     * any budget
+     * @throws IOException on failure to read stored content
+     */
+    public static HeapContent copyOf(final Content content) throws IOException {
+        if (content instanceof HeapContent) {
+            return ((HeapContent) content).withBudget(null);
+        }
+        try (InputStream is = content.newInputStream()) {
+            return read(is, content.getSize());
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) {
+        final int count;
+        if (position >= size) {
+            count = -1;
+        } else {
+            final byte[] chunk = chunks[(int) (position / chunkSize)];
+            final int chunkOffset = (int) (position % chunkSize);
+            count = Math.min(length, chunk.length - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, buffer, offset, count);
+        }
+        return count;
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if ((chunks.length == 1) && (chunks[0].length == size)) {
+            return chunks[0];
+        } else if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("content too large for array: %d", size));
+        }
+        final byte[] data = new byte[(int) size];
+        int position = 0;
+        for (final byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, data, position, chunk.length);
+            position += chunk.length;
+        }
+        return data;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        for (final byte[] chunk : chunks) {
+            outputStream.write(chunk);
+        }
+    }
+
+    @Override
+    public void release() {
+        if ((budget != null) && released.compareAndSet(false, true)) {
+            budget.release(size);
+        }
+    }
+
+    /**
+     * A stream longer than advertised leaves short chunks mid-list; re-split so that every chunk but the last is full.
+     */
+    private static byte[][] normalize(final List<byte[]> chunks) {
+        boolean uniform = true;
+        for (int i = 0; i < (chunks.size() - 1); ++i) {
+            uniform &= (chunks.get(i).length == CHUNK_SIZE);
+        }
+        final byte[][] normalized;
+        if (uniform) {
+            normalized = chunks.toArray(new byte[0][]);
+        } else {
+            final List<byte[]> list = new ArrayList<>();
+            byte[] chunk = null;
+            int position = 0;
+            for (final byte[] c : chunks) {
+                int offset = 0;
+                while (offset < c.length) {
+                    if ((chunk == null) || (position == chunk.length)) {
+                        chunk = new byte[CHUNK_SIZE];
+                        list.add(chunk);
+                        position = 0;
+                    }
+                    final int length = Math.min(c.length - offset, chunk.length - position);
+                    System.arraycopy(c, offset, chunk, position, length);
+                    offset += length;
+                    position += length;
+                }
+            }
+            if (chunk != null) {
+                list.set(list.size() - 1, Arrays.copyOf(chunk, position));
+            }
+            normalized = list.toArray(new byte[0][]);
+        }
+        return normalized;
+    }
+
+    /**
+     * Fill the buffer from the stream, stopping early only at end of stream.
+     */
+    private static int readFully(final InputStream is, final byte[] buffer) throws IOException {
+        int count = 0;
+        while (count < buffer.length) {
+            final int n = is.read(buffer, count, buffer.length - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Size of the chunks of content read from a stream.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Largest array size reliably supported by the JVM.
+     */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Content spilled to a region of a segment file, read back through memory-mapped regions of the file.
+ * <p>
+ * Mappings are made per read, and are not retained; the pages are owned by the OS page cache, not the Java heap.
+ */
+final class MappedContent implements Content {
+
+    /**
+     * The store owning the segment file.
+     */
+    private final ContentStore store;
+
+    /**
+     * The segment file holding the content.
+     */
+    private final Segment segment;
+
+    /**
+     * The offset of the content in the segment file.
+     */
+    private final long offset;
+
+    /**
+     * The size of the content.
+     */
+    private final long size;
+
+    /**
+     * Set when the content is released, so that it is returned to the store only once.
+     */
+    private final AtomicBoolean released;
+
+    MappedContent(final ContentStore store, final Segment segment, final long offset, final long size) {
+        this.store = store;
+        this.segment = segment;
+        this.offset = offset;
+        this.size = size;
+        this.released = new AtomicBoolean(false);
+    }
+
+    Segment getSegment() {
+        return segment;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        final int count;
+        if (position >= size) {
+            count = -1;
+        } else {
+            final ByteBuffer target = ByteBuffer.wrap(buffer, offset, (int) Math.min(length, size - position));
+            while (target.hasRemaining()) {
+                if (segment.getChannel().read(target, this.offset + position + target.position() - offset) < 0) {
+                    throw new EOFException(String.format("segment truncated at %d", this.offset + position));
+                }
+            }
+            count = target.position() - offset;
+        }
+        return count;
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("content too large for array: %d", size));
+        }
+        final byte[] data = new byte[(int) size];
+        int position = 0;
+        while (position < data.length) {
+            final int length = (int) Math.min(MAP_WINDOW, data.length - position);
+            map(position, length).get(data, position, length);
+            position += length;
+        }
+        return data;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        final WritableByteChannel channel = Channels.newChannel(outputStream);
+        long position = 0L;
+        while (position < size) {
+            final long length = Math.min(MAP_WINDOW, size - position);
+            final MappedByteBuffer buffer = map(position, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            position += length;
+        }
+    }
+
+    @Override
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            store.release(this);
+        }
+    }
+
+    private MappedByteBuffer map(final long position, final long length) throws IOException {
+        return segment.getChannel().map(FileChannel.MapMode.READ_ONLY, offset + position, length);
+    }
+
+    private static final long MAP_WINDOW = 8L * 1024L * 1024L;
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Content held off heap, in pages of a {@link SlabAllocator}.
+ * <p>
+ * Each read pins the content, so that its pages are not freed (and reused by other content, or dropped with their
+ * slab) while they are read.  Content released during a read has its pages freed when the last read ends.
+ */
+final class OffHeapContent implements Content {
+
+    /**
+     * The allocator owning the pages.
+     */
+    private final SlabAllocator allocator;
+
+    /**
+     * The allocator generation in which the pages were allocated.
+     */
+    private final int generation;
+
+    /**
+     * The pages holding the content, in order.
+     */
+    private final int[] pageNumbers;
+
+    /**
+     * The size of the content.
+     */
+    private final long size;
+
+    /**
+     * The number of reads in progress, with {@link #RELEASED} set once the content is released (so that its pages are
+     * freed only once, when no read is in progress).
+     */
+    private final AtomicInteger pins;
+
+    OffHeapContent(final SlabAllocator allocator, final int generation, final int[] pageNumbers, final long size) {
+        this.allocator = allocator;
+        this.generation = generation;
+        this.pageNumbers = pageNumbers;
+        this.size = size;
+        this.pins = new AtomicInteger(0);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        pin();
+        try {
+            final int count;
+            if (position >= size) {
+                count = -1;
+            } else {
+                final int pageSize = allocator.getPageSize();
+                final int pageOffset = (int) (position % pageSize);
+                count = (int) Math.min(Math.min(length, pageSize - pageOffset), size - position);
+                final ByteBuffer page = allocator.page(pageNumbers[(int) (position / pageSize)]);
+                ((Buffer) page).position(pageOffset);
+                page.get(buffer, offset, count);
+            }
+            return count;
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("content too large for array: %d", size));
+        }
+        pin();
+        try {
+            final byte[] data = new byte[(int) size];
+            final int pageSize = allocator.getPageSize();
+            int offset = 0;
+            for (final int pageNumber : pageNumbers) {
+                final int length = Math.min(pageSize, data.length - offset);
+                allocator.page(pageNumber).get(data, offset, length);
+                offset += length;
+            }
+            return data;
+        } finally {
+            unpin();
+        }
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        pin();
+        try {
+            final WritableByteChannel channel = Channels.newChannel(outputStream);
+            final int pageSize = allocator.getPageSize();
+            long offset = 0L;
+            for (final int pageNumber : pageNumbers) {
+                final int length = (int) Math.min(pageSize, size - offset);
+                final ByteBuffer page = allocator.page(pageNumber);
+                ((Buffer) page).limit(length);
+                while (page.hasRemaining()) {
+                    channel.write(page);
+                }
+                offset += length;
+            }
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * Free the pages of the content, unless a read is in progress (the last read then frees them).
+     */
+    @Override
+    public void release() {
+        boolean done = false;
+        while (!done) {
+            final int pinsIt = pins.get();
+            done = ((pinsIt & RELEASED) != 0) || pins.compareAndSet(pinsIt, pinsIt | RELEASED);
+            if (done && (pinsIt == 0)) {
+                allocator.free(generation, pageNumbers);
+            }
+        }
+    }
+
+    /**
+     * Pin the content for a read.  Released pages may be reused by other content; fail, rather than read that
+     * content.
+     *
+     * @throws IOException if the content is released
+     */
+    private void pin() throws IOException {
+        boolean pinned = false;
+        while (!pinned) {
+            final int pinsIt = pins.get();
+            if ((pinsIt & RELEASED) != 0) {
+                throw new IOException("content released");
+            }
+            pinned = pins.compareAndSet(pinsIt, pinsIt + 1);
+        }
+    }
+
+    /**
+     * End a read; if the content was released during the read (and no other read is in progress), its pages are
+     * freed now.
+     */
+    private void unpin() {
+        if (pins.decrementAndGet() == RELEASED) {
+            allocator.free(generation, pageNumbers);
+        }
+    }
+
+    /**
+     * The flag of {@link #pins} set once the content is released.
+     */
+    private static final int RELEASED = Integer.MIN_VALUE;
+
+    /**
+     * Largest array size reliably supported by the JVM.
+     */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
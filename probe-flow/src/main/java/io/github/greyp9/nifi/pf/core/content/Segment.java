@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file holding spilled content.  The file is deleted once it is full and none of its content is live.
+ * <p>
+ * Access is guarded by the owning {@link ContentStore}, except for reads, which are positional (and so need no lock).
+ */
+final class Segment {
+
+    /**
+     * The location of the file.
+     */
+    private final Path path;
+
+    /**
+     * The open file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The offset at which the next content is appended.
+     */
+    private long position;
+
+    /**
+     * The number of live (unreleased) content regions in the file.
+     */
+    private int liveCount;
+
+    Segment(final Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.position = 0L;
+        this.liveCount = 0;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    boolean isLive() {
+        return (liveCount > 0);
+    }
+
+    /**
+     * @param content the content to append
+     * @return the offset of the content in the file
+     * @throws IOException on failure to read the content, or to write the file
+     */
+    long append(final Content content) throws IOException {
+        final long offset = position;
+        final long size = content.getSize();
+        try (ReadableByteChannel source = content.newChannel()) {
+            long count = 0L;
+            while (count < size) {
+                final long n = channel.transferFrom(source, offset + count, size - count);
+                if (n <= 0L) {
+                    throw new EOFException(String.format("content truncated at %d", count));
+                }
+                count += n;
+            }
+        }
+        position += size;
+        ++liveCount;
+        return offset;
+    }
+
+    void release() {
+        --liveCount;
+    }
+
+    /**
+     * @return true, if the file was closed and deleted
+     */
+    boolean tryDelete() {
+        try {
+            delete();
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A reference to deduplicated content, held by one FlowFile.  The content is released when its last reference is.
+ */
+final class SharedContent implements Content {
+
+    /**
+     * The store holding the content.
+     */
+    private final ContentStore store;
+
+    /**
+     * The key (digest) of the content in the store.
+     */
+    private final String key;
+
+    /**
+     * The stored content, shared by all references with the same key (and replaced in place when compressed).
+     */
+    private final ContentStore.Entry entry;
+
+    /**
+     * Set when the reference is released, so that it is returned to the store only once.
+     */
+    private final AtomicBoolean released;
+
+    SharedContent(final ContentStore store, final String key, final ContentStore.Entry entry) {
+        this.store = store;
+        this.key = key;
+        this.entry = entry;
+        this.released = new AtomicBoolean(false);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    Content getContent() {
+        return entry.getContent();
+    }
+
+    @Override
+    public long getSize() {
+        return entry.getContent().getSize();
+    }
+
+    @Override
+    public long getStoredSize() {
+        return entry.getContent().getStoredSize();
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        return entry.getContent().read(position, buffer, offset, length);
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        return entry.getContent().toBytes();
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        entry.getContent().writeTo(outputStream);
+    }
+
+    @Override
+    public InputStream newInputStream() {
+        return entry.getContent().newInputStream();
+    }
+
+    @Override
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            store.release(this);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Off-heap memory for content, carved from direct {@link ByteBuffer} slabs into fixed-size pages.
+ * <p>
+ * Slabs are allocated on demand, up to the configured limit, and are kept for reuse: pages freed by released content
+ * return to a free list immediately, so the native memory held never exceeds the limit.  A slab whose pages are all
+ * free is dropped, once another slab's worth of pages is free (so that a workload freeing and allocating content
+ * around a slab boundary does not allocate slabs repeatedly).  All slabs are dropped on {@link #close()}.  The JVM
+ * reclaims the native memory of a dropped slab when it is collected.
+ */
+public final class SlabAllocator {
+
+    /**
+     * The size of each page.
+     */
+    private final int pageSize;
+
+    /**
+     * The number of pages in each slab.
+     */
+    private final int pagesPerSlab;
+
+    /**
+     * The maximum number of pages (the limit of off-heap memory, rounded down to whole slabs).
+     */
+    private final int maxPages;
+
+    /**
+     * Views of each page carved so far, indexed by page number.
+     */
+    private ByteBuffer[] pages;
+
+    /**
+     * The number of pages carved so far (a whole number of slabs), including those of slabs since dropped.
+     */
+    private int pageCount;
+
+    /**
+     * The number of pages in slabs currently held.
+     */
+    private int reservedCount;
+
+    /**
+     * The number of free pages in each slab, indexed by slab number.
+     */
+    private int[] slabFree;
+
+    /**
+     * Stack of free page numbers.
+     */
+    private int[] freePages;
+
+    /**
+     * The number of entries in the free page stack.
+     */
+    private int freeCount;
+
+    /**
+     * Incremented on {@link #close()}, so that pages of content allocated earlier are not freed into new slabs.
+     */
+    private int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize  the maximum off-heap memory held
+     * @param pageSize the size of each page
+     * @param slabSize the size of each slab (a multiple of the page size)
+     */
+    public SlabAllocator(final long maxSize, final int pageSize, final int slabSize) {
+        this.pageSize = pageSize;
+        this.pagesPerSlab = slabSize / pageSize;
+        this.maxPages = (int) Math.min(Integer.MAX_VALUE - pagesPerSlab, (maxSize / slabSize) * pagesPerSlab);
+        this.pages = new ByteBuffer[0];
+        this.pageCount = 0;
+        this.reservedCount = 0;
+        this.slabFree = new int[0];
+        this.freePages = new int[0];
+        this.freeCount = 0;
+        this.generation = 0;
+    }
+
+    /**
+     * Constructor, with default page (64 KiB) and slab (4 MiB) sizes.
+     *
+     * @param maxSize the maximum off-heap memory held
+     */
+    public SlabAllocator(final long maxSize) {
+        this(maxSize, PAGE_SIZE, SLAB_SIZE);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getLimit() {
+        return (long) maxPages * pageSize;
+    }
+
+    /**
+     * @return the off-heap memory allocated to slabs
+     */
+    public synchronized long getReserved() {
+        return (long) reservedCount * pageSize;
+    }
+
+    /**
+     * @return the off-heap memory in use by live content (in whole pages)
+     */
+    public synchronized long getUsed() {
+        return (long) (reservedCount - freeCount) * pageSize;
+    }
+
+    /**
+     * Copy content into off-heap pages.
+     *
+     * @param content the content
+     * @return the off-heap content; or null, if not enough off-heap memory is available
+     * @throws IOException on failure to read the content
+     */
+    public Content allocate(final Content content) throws IOException {
+        final long size = content.getSize();
+        final long pageCountContent = (size + pageSize - 1) / pageSize;
+        final int generationIt;
+        final int[] pageNumbers;
+        synchronized (this) {
+            generationIt = generation;
+            pageNumbers = (pageCountContent > maxPages) ? null : allocatePages((int) pageCountContent);
+        }
+        Content offHeapContent = null;
+        if (pageNumbers != null) {
+            offHeapContent = new OffHeapContent(this, generationIt, pageNumbers, size);
+            try (ReadableByteChannel channel = content.newChannel()) {
+                long offset = 0L;
+                for (final int pageNumber : pageNumbers) {
+                    final ByteBuffer page = page(pageNumber);
+                    ((Buffer) page).limit((int) Math.min(pageSize, size - offset));
+                    while (page.hasRemaining()) {
+                        if (channel.read(page) < 0) {
+                            throw new EOFException(String.format("content truncated at %d", offset + page.position()));
+                        }
+                    }
+                    offset += page.limit();
+                }
+            } catch (final IOException e) {
+                offHeapContent.release();
+                throw e;
+            }
+        }
+        return offHeapContent;
+    }
+
+    /**
+     * @param pageNumber the page
+     * @return an independent view of the page (position zero, limit the page size)
+     */
+    ByteBuffer page(final int pageNumber) {
+        final ByteBuffer page;
+        synchronized (this) {
+            page = pages[pageNumber];
+        }
+        return page.duplicate();
+    }
+
+    private synchronized int[] allocatePages(final int count) {
+        boolean grow = true;
+        while ((freeCount < count) && grow) {
+            grow = ((reservedCount + pagesPerSlab) <= maxPages) && addSlab();
+        }
+        final int[] pageNumbers = (freeCount < count) ? null : new int[count];
+        if (pageNumbers != null) {
+            freeCount -= count;
+            System.arraycopy(freePages, freeCount, pageNumbers, 0, count);
+            for (final int pageNumber : pageNumbers) {
+                --slabFree[pageNumber / pagesPerSlab];
+            }
+        }
+        return pageNumbers;
+    }
+
+    synchronized void free(final int generationFree, final int[] pageNumbers) {
+        if (generationFree == generation) {
+            for (final int pageNumber : pageNumbers) {
+                freePages[freeCount++] = pageNumber;
+                ++slabFree[pageNumber / pagesPerSlab];
+            }
+            for (final int pageNumber : pageNumbers) {
+                final int slabNumber = pageNumber / pagesPerSlab;
+                if ((slabFree[slabNumber] == pagesPerSlab) && (freeCount >= (2 * pagesPerSlab))) {
+                    dropSlab(slabNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop a slab whose pages are all free.  Its page numbers are reused by the next slab added.
+     */
+    private void dropSlab(final int slabNumber) {
+        final int firstPage = slabNumber * pagesPerSlab;
+        Arrays.fill(pages, firstPage, firstPage + pagesPerSlab, null);
+        int count = 0;
+        for (int i = 0; i < freeCount; ++i) {
+            if ((freePages[i] / pagesPerSlab) != slabNumber) {
+                freePages[count++] = freePages[i];
+            }
+        }
+        freeCount = count;
+        slabFree[slabNumber] = 0;
+        reservedCount -= pagesPerSlab;
+    }
+
+    private boolean addSlab() {
+        boolean added;
+        try {
+            final ByteBuffer slab = ByteBuffer.allocateDirect(pagesPerSlab * pageSize);
+            // (the page numbers of a dropped slab are reused first)
+            int firstPage = 0;
+            while ((firstPage < pageCount) && (pages[firstPage] != null)) {
+                firstPage += pagesPerSlab;
+            }
+            if (firstPage == pageCount) {
+                pageCount += pagesPerSlab;
+                pages = Arrays.copyOf(pages, pageCount);
+                freePages = Arrays.copyOf(freePages, pageCount);
+                slabFree = Arrays.copyOf(slabFree, pageCount / pagesPerSlab);
+            }
+            for (int i = 0; i < pagesPerSlab; ++i) {
+                // cast for Java 8 compatibility (covariant Buffer return types are Java 9+)
+                ((Buffer) slab).limit((i + 1) * pageSize).position(i * pageSize);
+                pages[firstPage + i] = slab.slice();
+                freePages[freeCount++] = firstPage + i;
+            }
+            slabFree[firstPage / pagesPerSlab] = pagesPerSlab;
+            reservedCount += pagesPerSlab;
+            added = true;
+        } catch (final OutOfMemoryError e) {
+            // direct memory limit of the JVM (-XX:MaxDirectMemorySize) reached
+            added = false;
+        }
+        return added;
+    }
+
+    /**
+     * Drop all slabs.  Content allocated from this allocator may no longer be read.
+     */
+    public synchronized void close() {
+        pages = new ByteBuffer[0];
+        pageCount = 0;
+        reservedCount = 0;
+        slabFree = new int[0];
+        freePages = new int[0];
+        freeCount = 0;
+        ++generation;
+    }
+
+    private static final int PAGE_SIZE = 64 * 1024;
+    private static final int SLAB_SIZE = 4 * 1024 * 1024;
+}
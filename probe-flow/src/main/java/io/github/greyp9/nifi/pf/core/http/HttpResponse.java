@@ -15,6 +15,7 @@ package io.github.greyp9.nifi.pf.core.http;
 import io.github.greyp9.nifi.pf.core.common.Attributes;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 /**
  * Container for data associated with a {@link javax.servlet.http.HttpServletResponse}.
@@ -23,9 +24,16 @@ public class HttpResponse {
 
     private final int statusCode;
     private final Attributes headers;
-    private final ByteArrayInputStream entity;
-
-    public HttpResponse(final int statusCode, final Attributes headers, final ByteArrayInputStream entity) {
+    private final InputStream entity;
+
+    /**
+     * Constructor.
+     *
+     * @param statusCode the HTTP status code
+     * @param headers    the HTTP response headers
+     * @param entity     the response entity (streamed to the client as the response is written), or null
+     */
+    public HttpResponse(final int statusCode, final Attributes headers, final InputStream entity) {
         this.statusCode = statusCode;
         this.headers = headers;
         this.entity = entity;
@@ -43,7 +51,7 @@ public class HttpResponse {
         return headers;
     }
 
-    public final ByteArrayInputStream getEntity() {
+    public final InputStream getEntity() {
         return entity;
     }
 }
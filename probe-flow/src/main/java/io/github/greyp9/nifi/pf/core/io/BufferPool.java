@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of fixed-size scratch buffers, shared by the web server threads and the NiFi framework threads.
+ */
+public final class BufferPool {
+
+    /**
+     * Size of each buffer in the pool.
+     */
+    private final int bufferSize;
+
+    /**
+     * Idle buffers, available for reuse.
+     */
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize size of each buffer in the pool
+     * @param capacity   maximum number of idle buffers retained by the pool
+     */
+    public BufferPool(final int bufferSize, final int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return an idle buffer from the pool, or a new buffer if none are available
+     */
+    public byte[] acquire() {
+        final byte[] buffer = buffers.poll();
+        return (buffer == null) ? new byte[bufferSize] : buffer;
+    }
+
+    /**
+     * @param buffer a buffer previously obtained from {@link #acquire()}; discarded if the pool is full
+     */
+    public void release(final byte[] buffer) {
+        if ((buffer != null) && (buffer.length == bufferSize)) {
+            //noinspection ResultOfMethodCallIgnored
+            buffers.offer(buffer);
+        }
+    }
+}
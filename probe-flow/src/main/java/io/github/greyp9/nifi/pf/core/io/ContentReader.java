@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk ingest of content streams (FlowFile content, HTTP request entities).
+ * <p>
+ * When the size of the incoming content is known in advance (<code>FlowFile.getSize()</code>,
+ * <code>Content-Length</code>), the destination array is allocated once and filled directly.  Otherwise, the content
+ * is read into pooled scratch buffers, and copied once into an array of the exact size.
+ */
+public final class ContentReader {
+
+    /**
+     * <a href="https://checkstyle.sourceforge.io/config_design.html#FinalClass">Constructor</a>
+     */
+    private ContentReader() {
+    }
+
+    /**
+     * Read the content of the stream.  The stream is not closed.
+     *
+     * @param is       the source of the content
+     * @param sizeHint the expected size of the content, or a negative value if unknown
+     * @return the content of the stream
+     * @throws IOException on failure to read the stream
+     */
+    public static byte[] read(final InputStream is, final long sizeHint) throws IOException {
+        return ((sizeHint >= 0) && (sizeHint <= MAX_ARRAY_SIZE)) ? readSized(is, (int) sizeHint) : readUnsized(is);
+    }
+
+    /**
+     * Copy the content of the stream to the target, using a pooled scratch buffer.  Neither stream is closed.
+     *
+     * @param is the source of the content
+     * @param os the target of the content
+     * @return the number of bytes copied
+     * @throws IOException on failure to read or write
+     */
+    public static long copy(final InputStream is, final OutputStream os) throws IOException {
+        long count = 0L;
+        if (is != null) {
+            final byte[] buffer = POOL.acquire();
+            try {
+                int n;
+                while ((n = is.read(buffer)) >= 0) {
+                    os.write(buffer, 0, n);
+                    count += n;
+                }
+            } finally {
+                POOL.release(buffer);
+            }
+        }
+        return count;
+    }
+
+    private static byte[] readSized(final InputStream is, final int size) throws IOException {
+        final byte[] bytes = new byte[size];
+        final int count = readFully(is, bytes, 0, size);
+        final byte[] content;
+        if (count < size) {
+            content = Arrays.copyOf(bytes, count);  // stream shorter than advertised
+        } else {
+            final int next = is.read();
+            content = (next < 0) ? bytes : readOverflow(is, bytes, next);  // stream longer than advertised
+        }
+        return content;
+    }
+
+    private static byte[] readOverflow(final InputStream is, final byte[] head, final int next) throws IOException {
+        final byte[] tail = readUnsized(is);
+        final byte[] content = new byte[Math.addExact(Math.addExact(head.length, 1), tail.length)];
+        System.arraycopy(head, 0, content, 0, head.length);
+        content[head.length] = (byte) next;
+        System.arraycopy(tail, 0, content, head.length + 1, tail.length);
+        return content;
+    }
+
+    private static byte[] readUnsized(final InputStream is) throws IOException {
+        final List<byte[]> chunks = new ArrayList<>();
+        int size = 0;
+        int count = 0;
+        try {
+            byte[] chunk = POOL.acquire();
+            chunks.add(chunk);
+            while ((count = readFully(is, chunk, 0, chunk.length)) == chunk.length) {
+                size = Math.addExact(size, count);
+                chunk = POOL.acquire();
+                chunks.add(chunk);
+            }
+            size = Math.addExact(size, count);
+            final byte[] content = new byte[size];
+            int offset = 0;
+            for (final byte[] c : chunks) {
+                final int length = Math.min(c.length, size - offset);
+                System.arraycopy(c, 0, content, offset, length);
+                offset += length;
+            }
+            return content;
+        } finally {
+            chunks.forEach(POOL::release);
+        }
+    }
+
+    /**
+     * Fill the buffer region from the stream, stopping early only at end of stream.
+     */
+    private static int readFully(final InputStream is, final byte[] buffer,
+                                 final int offset, final int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            final int n = is.read(buffer, offset + count, length - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Largest array size reliably supported by the JVM.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Size of scratch buffers used to read content of unknown size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of idle scratch buffers retained for reuse.
+     */
+    private static final int POOL_CAPACITY = 64;
+
+    private static final BufferPool POOL = new BufferPool(BUFFER_SIZE, POOL_CAPACITY);
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read FlowFiles from a stream in the NiFi FlowFile Package v3 format (see {@link FlowFilePackageWriter}), optionally
+ * gzip compressed.
+ * <p>
+ * The length of the content of each FlowFile precedes the content, so content is skipped without being read (unless
+ * the stream is compressed), and is otherwise read straight from the stream.  Memory use does not depend on the
+ * number or size of the FlowFiles read.
+ */
+public final class FlowFilePackageReader implements FlowFileReader {
+
+    /**
+     * The stream from which FlowFiles are read (buffered, and decompressed if requested).
+     */
+    private final DataInputStream inputStream;
+
+    /**
+     * The number of bytes of the content of the current FlowFile not yet read.
+     */
+    private long remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param inputStream the source of the FlowFiles (not closed by {@link #close()})
+     * @param gzip        true, if the stream is compressed
+     * @throws IOException on failure to read the source
+     */
+    public FlowFilePackageReader(final InputStream inputStream, final boolean gzip) throws IOException {
+        final InputStream unclosed = new UnclosedInputStream(inputStream);
+        this.inputStream = new DataInputStream(gzip
+                ? new GZIPInputStream(unclosed, FlowFilePackageWriter.BUFFER_SIZE)
+                : new BufferedInputStream(unclosed, FlowFilePackageWriter.BUFFER_SIZE));
+        this.remaining = 0L;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        skipContent();
+        Map<String, String> attributes = null;
+        final int first = inputStream.read();
+        if (first >= 0) {
+            final byte[] header = new byte[FlowFilePackageWriter.MAGIC_HEADER.length];
+            header[0] = (byte) first;
+            inputStream.readFully(header, 1, header.length - 1);
+            if (!Arrays.equals(FlowFilePackageWriter.MAGIC_HEADER, header)) {
+                throw new IOException("not a FlowFile package (v3)");
+            }
+            attributes = new LinkedHashMap<>();
+            final int count = readFieldLength();
+            for (int i = 0; (i < count); ++i) {
+                final String name = readString();
+                attributes.put(name, readString());
+            }
+            remaining = inputStream.readLong();
+            if (remaining < 0L) {
+                throw new IOException(String.format("invalid content length: %d", remaining));
+            }
+        }
+        return attributes;
+    }
+
+    private String readString() throws IOException {
+        final byte[] bytes = new byte[readFieldLength()];
+        inputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readFieldLength() throws IOException {
+        final int length = inputStream.readUnsignedShort();
+        return (length < FlowFilePackageWriter.MAX_VALUE_2_BYTES) ? length : inputStream.readInt();
+    }
+
+    @Override
+    public long skipContent() throws IOException {
+        final long size = remaining;
+        while (remaining > 0L) {
+            final long skipped = inputStream.skip(remaining);
+            if (skipped > 0L) {
+                remaining -= skipped;
+            } else if (inputStream.read() >= 0) {
+                --remaining;
+            } else {
+                throw new EOFException(String.format("content truncated by %d byte(s)", remaining));
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new BoundedInputStream();
+    }
+
+    /**
+     * Stop reading the stream (the source is left open).
+     *
+     * @throws IOException on failure to release the stream
+     */
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * The content of the current FlowFile.
+     */
+    private final class BoundedInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            int b = -1;
+            if (remaining > 0L) {
+                b = inputStream.read();
+                checkEnd(b);
+                --remaining;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int count = -1;
+            if (remaining > 0L) {
+                count = inputStream.read(b, off, (int) Math.min(len, remaining));
+                checkEnd(count);
+                remaining -= count;
+            } else if (len == 0) {
+                count = 0;
+            }
+            return count;
+        }
+
+        private void checkEnd(final int count) throws EOFException {
+            if (count < 0) {
+                throw new EOFException(String.format("content truncated by %d byte(s)", remaining));
+            }
+        }
+    }
+
+    /**
+     * A view of the source stream, which is not closed on close (so that decompression resources are released,
+     * without closing the source).
+     */
+    private static final class UnclosedInputStream extends FilterInputStream {
+
+        private UnclosedInputStream(final InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public void close() {
+            // the source stream is closed by its owner
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write FlowFiles to a stream in the NiFi FlowFile Package v3 format (as written by <code>MergeContent</code>, and read
+ * by <code>UnpackContent</code>), optionally gzip compressed.
+ * <p>
+ * Each FlowFile is framed as the header <code>NiFiFF3</code>, the number of attributes, each attribute name and value
+ * (UTF-8, prefixed by its length), the length of the content (8 bytes), and the content itself.  Counts and lengths
+ * under 65535 take 2 bytes; larger values are marked by <code>0xFFFF</code>, then take 4 bytes.  Content is copied to
+ * the stream as it is read, so memory use does not depend on the number or size of the FlowFiles written.
+ */
+public final class FlowFilePackageWriter implements FlowFileWriter {
+
+    /**
+     * The stream to which FlowFiles are written (buffered, and compressed if requested).
+     */
+    private final DataOutputStream outputStream;
+
+    /**
+     * Constructor.
+     *
+     * @param outputStream the target of the FlowFiles (not closed by {@link #close()})
+     * @param gzip         true, to compress the stream
+     * @throws IOException on failure to write to the target
+     */
+    public FlowFilePackageWriter(final OutputStream outputStream, final boolean gzip) throws IOException {
+        final OutputStream unclosed = new UnclosedOutputStream(outputStream);
+        this.outputStream = new DataOutputStream(gzip
+                ? new FastGZIPOutputStream(unclosed) : new BufferedOutputStream(unclosed, BUFFER_SIZE));
+    }
+
+    @Override
+    public void write(final Map<String, String> attributes, final Content content) throws IOException {
+        outputStream.write(MAGIC_HEADER);
+        writeFieldLength(attributes.size());
+        for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+            writeString(entry.getKey());
+            writeString(entry.getValue());
+        }
+        outputStream.writeLong((content == null) ? 0L : content.getSize());
+        if (content != null) {
+            content.writeTo(outputStream);
+        }
+    }
+
+    private void writeString(final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeFieldLength(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private void writeFieldLength(final int length) throws IOException {
+        if (length < MAX_VALUE_2_BYTES) {
+            outputStream.writeShort(length);
+        } else {
+            outputStream.writeShort(MAX_VALUE_2_BYTES);
+            outputStream.writeInt(length);
+        }
+    }
+
+    /**
+     * Complete the stream (flushing it to the target, which is left open).
+     *
+     * @throws IOException on failure to write to the target
+     */
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+
+    /**
+     * A gzip stream compressing at the fastest level (as <code>CompressContent</code> does by default), so that the
+     * export is not held up by compression.
+     */
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+
+        private FastGZIPOutputStream(final OutputStream outputStream) throws IOException {
+            super(outputStream, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    /**
+     * A view of the target stream, which flushes it on close (so that compression resources are released, without
+     * closing the target).
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+
+        private UnclosedOutputStream(final OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * The header preceding each FlowFile.
+     */
+    static final byte[] MAGIC_HEADER = "NiFiFF3".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The largest count or length held in 2 bytes (also the marker of a count or length held in 4 bytes).
+     */
+    static final int MAX_VALUE_2_BYTES = 0xffff;
+
+    /**
+     * The size of the buffer (or the compression buffer) of the stream.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+}
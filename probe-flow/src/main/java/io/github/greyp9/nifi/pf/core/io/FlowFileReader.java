@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Read FlowFiles from a stream in a serialized format, one FlowFile at a time.  Closing the reader leaves the source
+ * stream open.
+ */
+public interface FlowFileReader extends Closeable {
+
+    /**
+     * Advance to the next FlowFile, reading its attributes.  Content of the previous FlowFile not yet read is skipped.
+     *
+     * @return the attributes of the next FlowFile; or null, at the end of the stream
+     * @throws IOException on failure to read the source, or if it is malformed
+     */
+    Map<String, String> next() throws IOException;
+
+    /**
+     * Skip the content of the current FlowFile.
+     *
+     * @return the size of the content (zero, if there is no content, or it has already been read)
+     * @throws IOException on failure to read the source, or if it is malformed
+     */
+    long skipContent() throws IOException;
+
+    /**
+     * @return the content of the current FlowFile, as it is read (valid until {@link #next()})
+     */
+    InputStream getContent();
+
+    /**
+     * Read the content of the current FlowFile from the source, leaving any work to decode it to the returned task, so
+     * that the content may be decoded on another thread while the source is read further (see {@link
+     * OrderedPipeline}).  The content is held on heap, not counted against any budget.
+     *
+     * @param size the size of the content (see {@link #skipContent()}), or a negative value if unknown
+     * @return the task decoding the content (which may be run after {@link #next()})
+     * @throws IOException on failure to read the source
+     */
+    default Callable<Content> readContent(final long size) throws IOException {
+        final Content content = HeapContent.read(getContent(), size);
+        return () -> content;
+    }
+}
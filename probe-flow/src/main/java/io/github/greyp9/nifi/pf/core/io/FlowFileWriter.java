@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Write FlowFiles to a stream in a serialized format, one FlowFile at a time.  Closing the writer completes the
+ * format, and leaves the target stream open.
+ */
+public interface FlowFileWriter extends Closeable {
+
+    /**
+     * Write one FlowFile.
+     *
+     * @param attributes the FlowFile attributes
+     * @param content    the FlowFile content (may be null, for no content)
+     * @throws IOException on failure to read the content, or to write to the target
+     */
+    void write(Map<String, String> attributes, Content content) throws IOException;
+}
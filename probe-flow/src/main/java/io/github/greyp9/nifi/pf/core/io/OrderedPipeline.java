@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Run tasks on a pool of threads, passing their results to a sink in the order in which the tasks were submitted.
+ * <p>
+ * This lets a stream be read on one thread, while the work on each item read (decoding, hashing) is spread over
+ * several threads; the sink runs on the submitting thread, so that it needs no synchronization of its own.  The number
+ * of tasks in flight is bounded, so that a fast producer waits for the results at the head of the queue; memory use
+ * does not depend on the number of items.  With a single thread, tasks run on the submitting thread as they are
+ * submitted.
+ *
+ * @param <T> the type of the task results
+ */
+public final class OrderedPipeline<T> implements Closeable {
+
+    /**
+     * The threads running the tasks (null, if tasks run on the submitting thread).
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The maximum number of tasks in flight.
+     */
+    private final int window;
+
+    /**
+     * The recipient of the task results, in order of submission.
+     */
+    private final Consumer<T> sink;
+
+    /**
+     * The tasks in flight, in order of submission.
+     */
+    private final Deque<Future<T>> pending;
+
+    /**
+     * Constructor.
+     *
+     * @param threads the number of threads on which to run tasks
+     * @param sink    the recipient of the task results, in order of submission
+     */
+    public OrderedPipeline(final int threads, final Consumer<T> sink) {
+        this.executor = (threads > 1) ? Executors.newFixedThreadPool(threads, OrderedPipeline::newThread) : null;
+        this.window = threads * WINDOW_PER_THREAD;
+        this.sink = sink;
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Submit a task, first passing on the results at the head of the queue while the queue is full.
+     *
+     * @param task the task
+     * @throws IOException on failure of the task (or of an earlier task), or if interrupted while waiting
+     */
+    public void submit(final Callable<T> task) throws IOException {
+        if (executor == null) {
+            sink.accept(call(task));
+        } else {
+            while (pending.size() >= window) {
+                drain();
+            }
+            pending.add(executor.submit(task));
+        }
+    }
+
+    /**
+     * Wait for the tasks in flight, passing on their results.
+     *
+     * @throws IOException on failure of a task, or if interrupted while waiting
+     */
+    public void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            drain();
+        }
+    }
+
+    /**
+     * Cancel the tasks in flight (their results are discarded), and stop the threads.
+     */
+    @Override
+    public void close() {
+        for (final Future<T> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void drain() throws IOException {
+        final Future<T> future = pending.remove();
+        try {
+            sink.accept(future.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (final ExecutionException e) {
+            throw toIOException(e.getCause());
+        }
+    }
+
+    private static <T> T call(final Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (final IOException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static IOException toIOException(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+    }
+
+    private static Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "probe-flow-import");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The number of tasks in flight per thread; enough to keep each thread busy while the producer reads ahead.
+     */
+    private static final int WINDOW_PER_THREAD = 4;
+}
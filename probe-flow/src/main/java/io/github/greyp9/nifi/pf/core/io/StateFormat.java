@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.xml.StateReader;
+import io.github.greyp9.nifi.pf.core.xml.StateWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The formats in which held FlowFiles are exported, and imported.
+ */
+public enum StateFormat {
+
+    /**
+     * The state document (<code>urn:probe:state</code>): attributes, and Base64 encoded content.
+     */
+    XML("xml", Probe.Mime.TEXT_XML_UTF8, ".xml"),
+
+    /**
+     * NiFi FlowFile Package v3 (as read by <code>UnpackContent</code>).
+     */
+    FLOWFILE_V3("ffv3", Probe.Mime.APPLICATION_FLOWFILE_V3, ".pkg"),
+
+    /**
+     * NiFi FlowFile Package v3, gzip compressed.
+     */
+    FLOWFILE_V3_GZIP("ffv3gz", Probe.Mime.APPLICATION_GZIP, ".pkg.gz");
+
+    private final String path;
+    private final String mimeType;
+    private final String extension;
+
+    StateFormat(final String path, final String mimeType, final String extension) {
+        this.path = path;
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    /**
+     * @return the name of the format in the export URL (<code>/state/{path}/{id}</code>)
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param outputStream the target of the FlowFiles (left open when the writer is closed)
+     * @return a writer of FlowFiles in this format
+     * @throws IOException on failure to write to the target
+     */
+    public FlowFileWriter newWriter(final OutputStream outputStream) throws IOException {
+        return (this == XML) ? new StateWriter(outputStream)
+                : new FlowFilePackageWriter(outputStream, (this == FLOWFILE_V3_GZIP));
+    }
+
+    /**
+     * @param inputStream the source of the FlowFiles (left open when the reader is closed)
+     * @return a reader of FlowFiles in this format
+     * @throws IOException on failure to read the source, or if it is not in this format
+     */
+    public FlowFileReader newReader(final InputStream inputStream) throws IOException {
+        return (this == XML) ? new StateReader(inputStream)
+                : new FlowFilePackageReader(inputStream, (this == FLOWFILE_V3_GZIP));
+    }
+
+    /**
+     * @param path the name of a format in an export URL
+     * @return the format; or null, if there is none of that name
+     */
+    public static StateFormat fromPath(final String path) {
+        return Arrays.stream(values()).filter(f -> f.getPath().equals(path)).findFirst().orElse(null);
+    }
+
+    /**
+     * Recognize the format of FlowFiles by their leading bytes: the gzip header, or the FlowFile Package v3 header;
+     * anything else is taken to be a state document.
+     *
+     * @param source the FlowFiles
+     * @return the format of the FlowFiles
+     * @throws IOException on failure to read the source
+     */
+    public static StateFormat detect(final ByteSource source) throws IOException {
+        final byte[] header = new byte[FlowFilePackageWriter.MAGIC_HEADER.length];
+        int length = 0;
+        try (InputStream is = source.openStream()) {
+            int count = 0;
+            while ((length < header.length) && (count >= 0)) {
+                count = is.read(header, length, header.length - length);
+                length += Math.max(count, 0);
+            }
+        }
+        final StateFormat format;
+        if ((length >= 2) && ((header[0] & BYTE_MASK) == GZIP_MAGIC_1) && ((header[1] & BYTE_MASK) == GZIP_MAGIC_2)) {
+            format = FLOWFILE_V3_GZIP;
+        } else if (Arrays.equals(FlowFilePackageWriter.MAGIC_HEADER, header)) {
+            format = FLOWFILE_V3;
+        } else {
+            format = XML;
+        }
+        return format;
+    }
+
+    private static final int BYTE_MASK = 0xff;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+}
@@ -0,0 +1,779 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.journal;
+
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
+import io.github.greyp9.nifi.pf.core.collect.LongLinkedMap;
+import io.github.greyp9.nifi.pf.core.content.Content;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal of held FlowFiles, so that they survive a restart of the processor (or of NiFi).
+ * <p>
+ * Each change to the held FlowFiles (add, clone, route, remove) is appended to the journal file as a record, framed
+ * by its length and checksum; the content of an added FlowFile follows its record, or is written ahead of it (see
+ * {@link #writeContent(long, Content)}).  Appends are buffered, and are
+ * forced to disk by a background thread at a fixed interval, so that many appends share one sync (group commit), and
+ * callers do not wait on the disk.  Changes made within the last interval may be lost on a crash.
+ * <p>
+ * When the file grows to more than twice the size of its live records, it is compacted on the background thread: the
+ * live records are copied to a new file (content is copied file to file, not through the heap), which then replaces
+ * the journal file.  Appends wait while the journal is compacted.
+ * <p>
+ * On open, the records are replayed to rebuild the index of live FlowFiles.  Content is not read: each restored
+ * FlowFile refers to the region of the journal file holding its content, which is read when it is needed.  A record
+ * truncated (or corrupted) by a crash ends the replay, and is cut from the file.
+ */
+public final class Journal implements Closeable {
+
+    /**
+     * The journal file.
+     */
+    private final Path path;
+
+    /**
+     * Callback for failures on the background thread (sync, compaction).
+     */
+    private final Consumer<IOException> onFailure;
+
+    /**
+     * Live records, indexed by FlowFile id (in order of addition).
+     */
+    private final LongLinkedMap<Entry> entries;
+
+    /**
+     * Reusable checksum of record bodies.
+     */
+    private final CRC32 crc;
+
+    /**
+     * The open journal file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Buffered appends to the journal file.
+     */
+    private DataOutputStream out;
+
+    /**
+     * The size of the journal, including appends not yet flushed.
+     */
+    private long position;
+
+    /**
+     * The size of the live records (and their content), for the compaction trigger.
+     */
+    private long liveSize;
+
+    /**
+     * Set when records have been appended since the last sync.
+     */
+    private boolean dirty;
+
+    /**
+     * The journal file replaced by the last compaction, kept open until the next, for reads in progress.
+     */
+    private FileChannel retired;
+
+    /**
+     * The number of bytes cut from the end of the file on open (a record torn by a crash).
+     */
+    private final long truncated;
+
+    /**
+     * The number of compactions since the journal was opened.
+     */
+    private int countCompacted;
+
+    /**
+     * Set when the journal is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Background thread for sync and compaction.
+     */
+    private final ScheduledExecutorService syncer;
+
+    /**
+     * Open (or create) the journal in a directory, replaying its records.
+     *
+     * @param directory    the directory holding the journal file (created if needed)
+     * @param syncInterval the interval at which appends are forced to disk, in milliseconds
+     * @param onFailure    callback for failures on the background thread
+     * @throws IOException on failure to open or read the journal file
+     */
+    public Journal(final Path directory, final long syncInterval,
+                   final Consumer<IOException> onFailure) throws IOException {
+        Files.createDirectories(directory);
+        this.path = directory.resolve(FILE);
+        this.onFailure = onFailure;
+        this.entries = new LongLinkedMap<>();
+        this.crc = new CRC32();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = channel.size();
+        this.position = replay();
+        this.truncated = size - position;
+        channel.truncate(position);
+        channel.position(position);
+        this.out = newOutput(channel);
+        if (position == 0L) {
+            writeHeader(out);
+            position = HEADER;
+            dirty = true;
+        }
+        this.retired = null;
+        this.countCompacted = 0;
+        this.closed = false;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(Journal::newSyncThread);
+        syncer.scheduleWithFixedDelay(this::background, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the FlowFiles restored by replay (or journaled since), in order of addition
+     */
+    public synchronized List<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @return the directory holding the journal file
+     */
+    public Path getDirectory() {
+        return path.getParent();
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return position;
+    }
+
+    public long getTruncated() {
+        return truncated;
+    }
+
+    public synchronized int getCountCompacted() {
+        return countCompacted;
+    }
+
+    /**
+     * @param id a FlowFile id
+     * @return true, if the FlowFile is live in the journal
+     */
+    public synchronized boolean contains(final long id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * @param id      a FlowFile id
+     * @param content the content of the FlowFile, as held
+     * @return true, if the content is read from the journal file (it was restored from the journal, and not copied
+     * since), so that it may no longer be read once the journal is closed
+     */
+    public synchronized boolean isContentOf(final long id, final Content content) {
+        final Entry entry = entries.get(id);
+        return (entry != null) && (content != null) && (entry.content == content);
+    }
+
+    /**
+     * Record a FlowFile newly held.  Its content is copied to the journal.
+     *
+     * @param id         the FlowFile id
+     * @param entryDate  the FlowFile entry date
+     * @param attributes the FlowFile attributes (immutable)
+     * @param content    the FlowFile content (may be null)
+     * @throws IOException on failure to read the content, or to write the journal
+     */
+    public synchronized void add(final long id, final long entryDate, final Map<String, String> attributes,
+                                 final Content content) throws IOException {
+        final long size = (content == null) ? -1L : content.getSize();
+        final Body body = newBody(ADD, id);
+        body.writeLong(entryDate);
+        writeAttributes(body, attributes);
+        body.writeLong(size);
+        final long length = writeRecord(body);
+        final long offset = position;
+        if (content != null) {
+            content.writeTo(out);
+            position += size;
+        }
+        final JournalContent journalContent = (content == null) ? null : new JournalContent(channel, offset, size);
+        put(new Entry(id, entryDate, attributes, journalContent, length + Math.max(0L, size)));
+    }
+
+    /**
+     * Record a FlowFile newly held, whose content was written ahead with {@link #writeContent(long, Content)}.  If the
+     * journal was compacted (or is another journal) since, the content is copied again.
+     *
+     * @param id         the FlowFile id
+     * @param entryDate  the FlowFile entry date
+     * @param attributes the FlowFile attributes (immutable)
+     * @param content    the FlowFile content (may be null)
+     * @param written    the content as written ahead (null, if not written)
+     * @throws IOException on failure to read the content, or to write the journal
+     */
+    public synchronized void add(final long id, final long entryDate, final Map<String, String> attributes,
+                                 final Content content, final Content written) throws IOException {
+        final JournalContent journalContent = ((written instanceof JournalContent)
+                && ((JournalContent) written).isIn(channel)) ? (JournalContent) written : null;
+        if (journalContent == null) {
+            add(id, entryDate, attributes, content);
+        } else {
+            final Body body = newBody(ADD_WRITTEN, id);
+            body.writeLong(entryDate);
+            writeAttributes(body, attributes);
+            body.writeLong(journalContent.getOffset());
+            body.writeLong(journalContent.getSize());
+            final long length = writeRecord(body);
+            put(new Entry(id, entryDate, attributes, journalContent, length + journalContent.getSize()));
+        }
+    }
+
+    /**
+     * Write the content of a FlowFile about to be held, ahead of its record, so that callers need not hold their own
+     * locks while content is copied.  Content which is not then recorded is dead space, dropped by compaction.
+     *
+     * @param id      the FlowFile id
+     * @param content the FlowFile content
+     * @return the content, as written to the journal file (to pass to
+     * {@link #add(long, long, Map, Content, Content)})
+     * @throws IOException on failure to read the content, or to write the journal
+     */
+    public synchronized Content writeContent(final long id, final Content content) throws IOException {
+        final long size = content.getSize();
+        final Body body = newBody(CONTENT, id);
+        body.writeLong(size);
+        writeRecord(body);
+        final long offset = position;
+        content.writeTo(out);
+        position += size;
+        return new JournalContent(channel, offset, size);
+    }
+
+    /**
+     * Record a clone of a journaled FlowFile.  The clone shares the content (and attributes) of the original.
+     *
+     * @param id        the id of the clone
+     * @param sourceId  the id of the original
+     * @param entryDate the entry date of the clone
+     * @return false, if the original is not journaled (so that the clone should be added in full)
+     * @throws IOException on failure to write the journal
+     */
+    public synchronized boolean addClone(final long id, final long sourceId, final long entryDate) throws IOException {
+        final Entry source = entries.get(sourceId);
+        if (source != null) {
+            final Body body = newBody(CLONE, id);
+            body.writeLong(sourceId);
+            body.writeLong(entryDate);
+            final long length = writeRecord(body);
+            put(new Entry(id, entryDate, source.attributes, source.content, length));
+        }
+        return (source != null);
+    }
+
+    /**
+     * Record a journaled FlowFile marked to be routed.
+     *
+     * @param id           the FlowFile id
+     * @param relationship the name of the relationship
+     * @throws IOException on failure to write the journal
+     */
+    public synchronized void route(final long id, final String relationship) throws IOException {
+        final Entry entry = entries.get(id);
+        if (entry != null) {
+            final Body body = newBody(ROUTE, id);
+            writeString(body, relationship);
+            final long length = writeRecord(body);
+            entry.size += length;
+            liveSize += length;
+            entry.relationship = relationship;
+        }
+    }
+
+    /**
+     * Record a journaled FlowFile no longer held (dropped, evicted, or routed).
+     *
+     * @param id the FlowFile id
+     * @throws IOException on failure to write the journal
+     */
+    public synchronized void remove(final long id) throws IOException {
+        final Entry entry = entries.remove(id);
+        if (entry != null) {
+            liveSize -= entry.size;
+            writeRecord(newBody(REMOVE, id));
+        }
+    }
+
+    /**
+     * Force the records appended since the last sync to disk.  The file is forced outside of the lock, so that appends
+     * continue meanwhile (and are forced by the next sync).
+     *
+     * @throws IOException on failure to write the journal
+     */
+    public void sync() throws IOException {
+        final FileChannel target;
+        synchronized (this) {
+            target = (dirty && !closed) ? channel : null;
+            if (target != null) {
+                out.flush();
+                dirty = false;
+            }
+        }
+        if (target != null) {
+            target.force(false);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only its live records.
+     *
+     * @throws IOException on failure to write the new journal file (the journal file is then left as is)
+     */
+    public synchronized void compact() throws IOException {
+        out.flush();
+        final Path pathNext = path.resolveSibling(FILE + ".tmp");
+        final FileChannel next = FileChannel.open(pathNext, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final Map<JournalContent, Long> offsets = new IdentityHashMap<>();
+        final Map<JournalContent, Entry> owners = new IdentityHashMap<>();
+        final Map<Entry, Long> sizes = new HashMap<>();
+        long positionNext;
+        try {
+            final DataOutputStream outNext = newOutput(next);
+            writeHeader(outNext);
+            positionNext = HEADER;
+            for (final Entry entry : entries.values()) {
+                final Entry owner = (entry.content == null) ? null : owners.get(entry.content);
+                final Body body;
+                long size = 0L;
+                if ((owner != null) && owner.attributes.equals(entry.attributes)) {
+                    body = newBody(CLONE, entry.id);
+                    body.writeLong(owner.id);
+                    body.writeLong(entry.entryDate);
+                } else {
+                    size = (entry.content == null) ? -1L : entry.content.getSize();
+                    body = newBody(ADD, entry.id);
+                    body.writeLong(entry.entryDate);
+                    writeAttributes(body, entry.attributes);
+                    body.writeLong(size);
+                }
+                long length = writeRecord(outNext, body);
+                if (size > 0L) {
+                    outNext.flush();
+                    offsets.put(entry.content, positionNext + length);
+                    owners.put(entry.content, entry);
+                    copy(channel, entry.content.getOffset(), size, next);
+                }
+                if (entry.relationship != null) {
+                    final Body bodyRoute = newBody(ROUTE, entry.id);
+                    writeString(bodyRoute, entry.relationship);
+                    length += writeRecord(outNext, bodyRoute);
+                }
+                positionNext += length + Math.max(0L, size);
+                sizes.put(entry, length + Math.max(0L, size));
+            }
+            outNext.flush();
+            next.force(true);
+            Files.move(pathNext, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            next.position(positionNext);
+            out = outNext;
+        } catch (final IOException e) {
+            next.close();
+            Files.deleteIfExists(pathNext);
+            throw e;
+        }
+        // restored content now reads from the new file; the old file stays open for reads in progress
+        for (final Map.Entry<JournalContent, Long> offset : offsets.entrySet()) {
+            offset.getKey().move(next, offset.getValue());
+        }
+        for (final Map.Entry<Entry, Long> size : sizes.entrySet()) {
+            size.getKey().size = size.getValue();
+        }
+        if (retired != null) {
+            retired.close();
+        }
+        retired = channel;
+        channel = next;
+        position = positionNext;
+        liveSize = positionNext - HEADER;
+        dirty = false;
+        ++countCompacted;
+    }
+
+    /**
+     * Sync the journal, and close the journal file.  The file is kept, to be replayed when the journal is next opened.
+     *
+     * @throws IOException on failure to write the journal
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            try {
+                out.flush();
+                channel.force(true);
+            } finally {
+                channel.close();
+                if (retired != null) {
+                    retired.close();
+                }
+            }
+        }
+    }
+
+    private void background() {
+        try {
+            sync();
+            if (shouldCompact()) {
+                compact();
+            }
+        } catch (final IOException e) {
+            onFailure.accept(e);
+        }
+    }
+
+    private synchronized boolean shouldCompact() {
+        return !closed && (position > COMPACT_THRESHOLD) && (position > (2L * (HEADER + liveSize)));
+    }
+
+    private void put(final Entry entry) {
+        entries.put(entry.id, entry);
+        liveSize += entry.size;
+    }
+
+    private static Body newBody(final byte type, final long id) throws IOException {
+        final Body body = new Body();
+        body.writeByte(type);
+        body.writeLong(id);
+        return body;
+    }
+
+    /**
+     * Append a record to the journal.
+     *
+     * @return the length of the record, as framed
+     */
+    private long writeRecord(final Body body) throws IOException {
+        final long length = writeRecord(out, body);
+        position += length;
+        dirty = true;
+        return length;
+    }
+
+    private long writeRecord(final DataOutputStream target, final Body body) throws IOException {
+        final byte[] bytes = body.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        target.writeInt(bytes.length);
+        target.writeInt((int) crc.getValue());
+        target.write(bytes);
+        return FRAME + bytes.length;
+    }
+
+    /**
+     * Replay the records of the journal file, up to the first record which is incomplete or corrupt.
+     *
+     * @return the offset of the end of the last intact record (0, if the file has no intact header)
+     */
+    private long replay() throws IOException {
+        final long size = channel.size();
+        long offset = 0L;
+        final ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (readFully(header, 0L) && (header.getInt(0) == MAGIC) && (header.getInt(Integer.BYTES) == VERSION)) {
+            offset = HEADER;
+            long next = replay(offset, size);
+            while (next > offset) {
+                offset = next;
+                next = replay(offset, size);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Replay one record.
+     *
+     * @return the offset of the next record; or the offset of this record, if it is incomplete or corrupt
+     */
+    private long replay(final long offset, final long size) throws IOException {
+        long next = offset;
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME);
+        final int length = readFully(frame, offset) ? frame.getInt(0) : -1;
+        if ((length > 0) && (length <= MAX_RECORD) && ((offset + FRAME + length) <= size)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            readFully(buffer, offset + FRAME);
+            crc.reset();
+            crc.update(buffer.array(), 0, length);
+            if ((int) crc.getValue() == frame.getInt(Integer.BYTES)) {
+                final long offsetContent = offset + FRAME + length;
+                final long sizeContent = apply(new DataInputStream(new ByteArrayInputStream(buffer.array())),
+                        offsetContent, FRAME + length, size);
+                next = (sizeContent < 0L) ? offset : (offsetContent + sizeContent);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Apply a replayed record to the index of live FlowFiles.
+     *
+     * @return the size of the content following the record; or -1, if the content is incomplete
+     */
+    private long apply(final DataInputStream body, final long offsetContent, final long length,
+                       final long size) throws IOException {
+        final byte type = body.readByte();
+        final long id = body.readLong();
+        long sizeContent = 0L;
+        if (type == ADD) {
+            final long entryDate = body.readLong();
+            final Map<String, String> attributes = readAttributes(body);
+            final long sizeRecorded = body.readLong();
+            sizeContent = ((offsetContent + sizeRecorded) > size) ? -1L : Math.max(0L, sizeRecorded);
+            final JournalContent content = (sizeRecorded < 0L)
+                    ? null : new JournalContent(channel, offsetContent, sizeRecorded);
+            if (sizeContent >= 0L) {
+                put(new Entry(id, entryDate, attributes, content, length + sizeContent));
+            }
+        } else if (type == CONTENT) {
+            final long sizeRecorded = body.readLong();
+            sizeContent = ((sizeRecorded < 0L) || ((offsetContent + sizeRecorded) > size)) ? -1L : sizeRecorded;
+        } else if (type == ADD_WRITTEN) {
+            final long entryDate = body.readLong();
+            final Map<String, String> attributes = readAttributes(body);
+            final long offsetWritten = body.readLong();
+            final long sizeWritten = body.readLong();
+            put(new Entry(id, entryDate, attributes, new JournalContent(channel, offsetWritten, sizeWritten),
+                    length + sizeWritten));
+        } else if (type == CLONE) {
+            final Entry source = entries.get(body.readLong());
+            final long entryDate = body.readLong();
+            if (source != null) {
+                put(new Entry(id, entryDate, source.attributes, source.content, length));
+            }
+        } else if (type == ROUTE) {
+            final Entry entry = entries.get(id);
+            final String relationship = readString(body);
+            if (entry != null) {
+                entry.relationship = relationship;
+                entry.size += length;
+                liveSize += length;
+            }
+        } else if (type == REMOVE) {
+            final Entry entry = entries.remove(id);
+            liveSize -= (entry == null) ? 0L : entry.size;
+        } else {
+            sizeContent = -1L;
+        }
+        return sizeContent;
+    }
+
+    private boolean readFully(final ByteBuffer buffer, final long offset) throws IOException {
+        int count = 0;
+        while (buffer.hasRemaining() && (count >= 0)) {
+            count = channel.read(buffer, offset + buffer.position());
+        }
+        return !buffer.hasRemaining();
+    }
+
+    private static void copy(final FileChannel source, final long offset, final long size,
+                             final FileChannel target) throws IOException {
+        long count = 0L;
+        while (count < size) {
+            final long n = source.transferTo(offset + count, size - count, target);
+            if (n <= 0L) {
+                throw new EOFException(String.format("journal truncated at %d", offset + count));
+            }
+            count += n;
+        }
+    }
+
+    private static DataOutputStream newOutput(final FileChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    private static void writeHeader(final DataOutputStream target) throws IOException {
+        target.writeInt(MAGIC);
+        target.writeInt(VERSION);
+    }
+
+    private static void writeAttributes(final DataOutputStream body, final Map<String, String> attributes)
+            throws IOException {
+        body.writeInt(attributes.size());
+        for (final Map.Entry<String, String> attribute : attributes.entrySet()) {
+            writeString(body, attribute.getKey());
+            writeString(body, attribute.getValue());
+        }
+    }
+
+    private static Map<String, String> readAttributes(final DataInputStream body) throws IOException {
+        final int count = body.readInt();
+        final Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            attributes.put(readString(body), readString(body));
+        }
+        return CompactAttributes.copyOf(attributes);
+    }
+
+    private static void writeString(final DataOutputStream body, final String value) throws IOException {
+        final byte[] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+        body.writeInt((bytes == null) ? -1 : bytes.length);
+        if (bytes != null) {
+            body.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInputStream body) throws IOException {
+        final int length = body.readInt();
+        final byte[] bytes = (length < 0) ? null : new byte[length];
+        if (bytes != null) {
+            body.readFully(bytes);
+        }
+        return (bytes == null) ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Thread newSyncThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "probe-flow-journal");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The body of a record, as it is built.
+     */
+    private static final class Body extends DataOutputStream {
+        private Body() {
+            super(new ByteArrayOutputStream());
+        }
+
+        private byte[] toByteArray() throws IOException {
+            flush();
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+
+    /**
+     * A FlowFile live in the journal.
+     */
+    public static final class Entry {
+        private final long id;
+        private final long entryDate;
+        private final Map<String, String> attributes;
+        private final JournalContent content;
+        private String relationship;
+
+        /**
+         * The size of the records (and content) of the FlowFile in the journal file.
+         */
+        private long size;
+
+        private Entry(final long id, final long entryDate, final Map<String, String> attributes,
+                      final JournalContent content, final long size) {
+            this.id = id;
+            this.entryDate = entryDate;
+            this.attributes = attributes;
+            this.content = content;
+            this.relationship = null;
+            this.size = size;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getEntryDate() {
+            return entryDate;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * @return the content, read from the journal file on demand (null, if the FlowFile has no content)
+         */
+        public Content getContent() {
+            return content;
+        }
+
+        /**
+         * @return the relationship to which the FlowFile is marked to be routed (null, if not routed)
+         */
+        public String getRelationship() {
+            return relationship;
+        }
+    }
+
+    /**
+     * The default interval at which appends are forced to disk, in milliseconds.
+     */
+    public static final long SYNC_INTERVAL = 100L;
+
+    private static final String FILE = "journal.log";
+
+    private static final int MAGIC = 0x50464a31;  // "PFJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int FRAME = 2 * Integer.BYTES;
+
+    private static final byte ADD = 1;
+    private static final byte CLONE = 2;
+    private static final byte ROUTE = 3;
+    private static final byte REMOVE = 4;
+    private static final byte CONTENT = 5;
+    private static final byte ADD_WRITTEN = 6;
+
+    /**
+     * Records (apart from content) larger than this are taken to be corrupt.
+     */
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The journal is not compacted below this size.
+     */
+    private static final long COMPACT_THRESHOLD = 1024L * 1024L;
+}
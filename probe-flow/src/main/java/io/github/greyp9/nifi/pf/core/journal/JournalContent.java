@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.journal;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content restored from a region of the journal file, read on demand (positional reads; nothing is held on heap).
+ * <p>
+ * Compaction moves the region to a new journal file; the location is swapped in one step, so that a read sees either
+ * the old file or the new one.  The journal owns the files, so releasing the content has no effect.
+ */
+final class JournalContent implements Content {
+
+    /**
+     * The current location of the content.
+     */
+    private volatile Location location;
+
+    /**
+     * The size of the content.
+     */
+    private final long size;
+
+    JournalContent(final FileChannel channel, final long offset, final long size) {
+        this.location = new Location(channel, offset);
+        this.size = size;
+    }
+
+    long getOffset() {
+        return location.offset;
+    }
+
+    /**
+     * @return true, if the content is read from the journal file open on this channel
+     */
+    boolean isIn(final FileChannel channel) {
+        return (location.channel == channel);
+    }
+
+    void move(final FileChannel channel, final long offset) {
+        this.location = new Location(channel, offset);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        final Location at = location;
+        final int count;
+        if (position >= size) {
+            count = -1;
+        } else {
+            final ByteBuffer target = ByteBuffer.wrap(buffer, offset, (int) Math.min(length, size - position));
+            while (target.hasRemaining()) {
+                if (at.channel.read(target, at.offset + position + target.position() - offset) < 0) {
+                    throw new EOFException(String.format("journal truncated at %d", at.offset + position));
+                }
+            }
+            count = target.position() - offset;
+        }
+        return count;
+    }
+
+    @Override
+    public byte[] toBytes() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("content too large for array: %d", size));
+        }
+        final byte[] data = new byte[(int) size];
+        int position = 0;
+        while (position < data.length) {
+            position += read(position, data, position, data.length - position);
+        }
+        return data;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        final Location at = location;
+        final WritableByteChannel target = Channels.newChannel(outputStream);
+        long position = 0L;
+        while (position < size) {
+            final long n = at.channel.transferTo(at.offset + position, size - position, target);
+            if (n <= 0L) {
+                throw new EOFException(String.format("journal truncated at %d", at.offset + position));
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void release() {
+        // the region is released by the journal, once no live record refers to it
+    }
+
+    /**
+     * A journal file, and the offset of the content in the file.
+     */
+    private static final class Location {
+        private final FileChannel channel;
+        private final long offset;
+
+        private Location(final FileChannel channel, final long offset) {
+            this.channel = channel;
+            this.offset = offset;
+        }
+    }
+
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.memory;
+
+import io.github.greyp9.nifi.pf.core.collect.CompactAttributes;
+
+import java.util.Map;
+
+/**
+ * Estimates of the heap retained by the objects holding FlowFile state.
+ * <p>
+ * Estimates assume a 64-bit JVM with compressed references (the default for heaps below 32 GB): 12 byte object
+ * headers, 16 byte array headers, 4 byte references, and 8 byte alignment.  Strings are counted as compact (one byte
+ * per Latin-1 character) on Java 9 and later.  The figures are approximate, but account for the per-object overhead
+ * which dominates small FlowFiles with many attributes.
+ */
+public final class Footprint {
+
+    private Footprint() {
+    }
+
+    /**
+     * @param bytes a size, in bytes
+     * @return the size, rounded up to the object alignment
+     */
+    public static long align(final long bytes) {
+        return (bytes + ALIGNMENT - 1L) & ~(ALIGNMENT - 1L);
+    }
+
+    /**
+     * @param fieldBytes the total size of the fields of an object
+     * @return the size of the object
+     */
+    public static long ofObject(final long fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * @param length      the length of an array
+     * @param elementSize the size of each element (a reference is {@link #REFERENCE} bytes)
+     * @return the size of the array
+     */
+    public static long ofArray(final long length, final int elementSize) {
+        return align(ARRAY_HEADER + (length * elementSize));
+    }
+
+    /**
+     * @param string a string (may be null)
+     * @return the size of the string and its backing array
+     */
+    public static long ofString(final String string) {
+        long size = 0L;
+        if (string != null) {
+            final int length = string.length();
+            size = STRING + ofArray(length, (COMPACT_STRINGS && isLatin1(string)) ? 1 : 2);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the size of attributes.  The names held by {@link CompactAttributes} are shared, and are not counted.
+     *
+     * @param attributes FlowFile attributes
+     * @return the size of the map, its entries, and its strings
+     */
+    public static long ofAttributes(final Map<String, String> attributes) {
+        long size;
+        if (attributes instanceof CompactAttributes) {
+            size = COMPACT_ATTRIBUTES + ofArray(attributes.size(), REFERENCE);
+            for (final String value : attributes.values()) {
+                size += ofString(value);
+            }
+        } else {
+            size = HASH_MAP + ofArray(tableLength(attributes.size()), REFERENCE);
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                size += HASH_MAP_NODE + ofString(entry.getKey()) + ofString(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the length of the table of a {@link java.util.HashMap} holding the number of entries
+     */
+    private static long tableLength(final int entries) {
+        long length = HASH_MAP_MIN_TABLE;
+        while ((length * HASH_MAP_LOAD_FACTOR) < entries) {
+            length <<= 1;
+        }
+        return (entries == 0) ? 0L : length;
+    }
+
+    private static boolean isLatin1(final String string) {
+        boolean latin1 = true;
+        for (int i = 0; latin1 && (i < string.length()); ++i) {
+            latin1 = (string.charAt(i) <= LATIN1_MAX);
+        }
+        return latin1;
+    }
+
+    /**
+     * The size of a reference (compressed).
+     */
+    public static final int REFERENCE = 4;
+
+    private static final long ALIGNMENT = 8L;
+    private static final long OBJECT_HEADER = 12L;
+    private static final long ARRAY_HEADER = 16L;
+
+    /**
+     * String: header, value reference, hash, coder (Java 9+) / header, value reference, hash (Java 8).
+     */
+    private static final long STRING = 24L;
+
+    /**
+     * CompactAttributes: header, two array references.
+     */
+    private static final long COMPACT_ATTRIBUTES = 24L;
+
+    /**
+     * HashMap: header, three view references, table reference, size, modCount, threshold, loadFactor.
+     */
+    private static final long HASH_MAP = 48L;
+
+    /**
+     * HashMap.Node: header, hash, key, value and next references.
+     */
+    private static final long HASH_MAP_NODE = 32L;
+
+    private static final float HASH_MAP_LOAD_FACTOR = 0.75f;
+    private static final long HASH_MAP_MIN_TABLE = 16L;
+    private static final char LATIN1_MAX = 0xff;
+
+    /**
+     * Compact strings (one byte per Latin-1 character) are the default from Java 9.
+     */
+    private static final boolean COMPACT_STRINGS =
+            !System.getProperty("java.specification.version", "").startsWith("1.");
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running count of bytes held, bounded by a fixed limit.
+ * <p>
+ * Reservations are made with compare-and-set, so concurrent callers (NiFi framework threads, web server threads)
+ * cannot together exceed the limit.
+ */
+public final class MemoryBudget {
+
+    /**
+     * Maximum number of bytes that may be reserved at any one time.
+     */
+    private final long limit;
+
+    /**
+     * Number of bytes currently reserved.
+     */
+    private final AtomicLong used;
+
+    /**
+     * Constructor.
+     *
+     * @param limit maximum number of bytes that may be reserved at any one time
+     */
+    public MemoryBudget(final long limit) {
+        this.limit = limit;
+        this.used = new AtomicLong(0L);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public long getAvailable() {
+        return Math.max(0L, limit - used.get());
+    }
+
+    /**
+     * @param bytes the number of bytes to reserve
+     * @return true, if the reservation fits within the limit (and has been made); false otherwise
+     */
+    public boolean tryReserve(final long bytes) {
+        boolean reserved = false;
+        long current = used.get();
+        while ((bytes <= (limit - current)) && !reserved) {
+            reserved = used.compareAndSet(current, current + bytes);
+            current = reserved ? current : used.get();
+        }
+        return reserved;
+    }
+
+    /**
+     * Reserve bytes which are held regardless of the limit (the budget may be exceeded).
+     *
+     * @param bytes the number of bytes to reserve
+     */
+    public void reserve(final long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    /**
+     * @param bytes the number of bytes to return to the budget, previously obtained from {@link #tryReserve(long)} or
+     *              {@link #reserve(long)}
+     */
+    public void release(final long bytes) {
+        used.addAndGet(-bytes);
+    }
+}
@@ -0,0 +1,441 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.xml;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import io.github.greyp9.nifi.pf.core.io.FlowFileReader;
+import org.apache.nifi.xml.processing.ProcessingException;
+import org.apache.nifi.xml.processing.stream.StandardXMLStreamReaderProvider;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Read FlowFiles from a stream, in the state document format (<code>urn:probe:state</code>), one FlowFile at a time
+ * (see {@link StateWriter}).
+ * <p>
+ * The content of each FlowFile is either skipped (counting its decoded size, and checking its encoding), decoded
+ * from Base64 as it is read, or read as Base64 text to be decoded later (possibly on another thread).  Memory use
+ * does not depend on the number of the FlowFiles read, nor (unless content is read as text) on their size.
+ */
+public final class StateReader implements FlowFileReader {
+
+    /**
+     * The document, as it is read.
+     */
+    private final XMLStreamReader reader;
+
+    /**
+     * The content of the current FlowFile, not yet read in full (null, if there is none).
+     */
+    private TextInputStream content;
+
+    /**
+     * True, if positioned within a flowfile element (at or after its content).
+     */
+    private boolean inFlowFile;
+
+    /**
+     * True, once the end of the document has been read.
+     */
+    private boolean ended;
+
+    /**
+     * Start reading a state document.
+     *
+     * @param inputStream the source of the document (not closed by {@link #close()})
+     * @throws IOException on failure to read the source, or if it is not a state document
+     */
+    public StateReader(final InputStream inputStream) throws IOException {
+        try {
+            this.reader = new StandardXMLStreamReaderProvider().getStreamReader(new StreamSource(inputStream));
+            this.content = null;
+            this.inFlowFile = false;
+            this.ended = false;
+            reader.nextTag();
+        } catch (final ProcessingException | XMLStreamException e) {
+            throw new IOException(e);
+        }
+        if (!isElement(Probe.State.STATE)) {
+            throw new IOException(String.format("not a state document: %s", reader.getName()));
+        }
+    }
+
+    /**
+     * Advance to the next FlowFile in the document, reading its attributes.  Content of the previous FlowFile not yet
+     * read is skipped.
+     *
+     * @return the attributes of the next FlowFile; or null, at the end of the document
+     * @throws IOException on failure to read the source, or on malformed content
+     */
+    @Override
+    public Map<String, String> next() throws IOException {
+        Map<String, String> attributes = null;
+        try {
+            if (content != null) {
+                skipContent();
+            }
+            if (inFlowFile) {
+                skipToEndElement();
+                inFlowFile = false;
+            }
+            while (!ended && (attributes == null)) {
+                ended = (reader.nextTag() != XMLStreamConstants.START_ELEMENT);
+                if (ended) {
+                    reader.close();
+                } else if (isElement(Probe.State.FLOWFILE)) {
+                    attributes = readAttributes();
+                } else {
+                    skipElement();
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return attributes;
+    }
+
+    /**
+     * Read the attributes of a FlowFile, stopping at its content (if any).
+     */
+    private Map<String, String> readAttributes() throws XMLStreamException {
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        inFlowFile = true;
+        while ((content == null) && (reader.nextTag() == XMLStreamConstants.START_ELEMENT)) {
+            if (isElement(Probe.State.ATTRIBUTE)) {
+                final String name = ProbeUtils.onNull(reader.getAttributeValue(null, Probe.State.NAME), "");
+                attributes.put(name, reader.getElementText());
+            } else if (isElement(Probe.State.CONTENT)) {
+                content = new TextInputStream();
+            } else {
+                skipElement();
+            }
+        }
+        // without content, the flowfile element has been read in full
+        inFlowFile = (content != null);
+        return attributes;
+    }
+
+    /**
+     * Skip the content of the current FlowFile, checking that it is valid Base64.
+     *
+     * @return the size of the content, as decoded (zero, if there is no content, or it has already been read)
+     * @throws IOException on failure to read the source, or on malformed content
+     */
+    @Override
+    public long skipContent() throws IOException {
+        final TextInputStream contentIt = content;
+        content = null;
+        return (contentIt == null) ? 0L : contentIt.skipBase64();
+    }
+
+    /**
+     * @return the content of the current FlowFile, decoded from Base64 as it is read (valid until {@link #next()}; an
+     * empty stream, if there is no content, or it has already been skipped)
+     */
+    @Override
+    public InputStream getContent() {
+        final TextInputStream contentIt = (content == null) ? new TextInputStream(true) : content;
+        return new DecodingInputStream(contentIt);
+    }
+
+    /**
+     * Read the content of the current FlowFile as Base64 text; the returned task decodes it.
+     */
+    @Override
+    public Callable<Content> readContent(final long size) throws IOException {
+        final TextInputStream contentIt = (content == null) ? new TextInputStream(true) : content;
+        content = null;
+        final long sizeEncoded = (size < 0L) ? size : (((size + 2L) / 3L) * 4L);
+        final Content encoded = HeapContent.read(contentIt, sizeEncoded);
+        return () -> {
+            try (InputStream is = new DecodingInputStream(encoded.newInputStream())) {
+                return HeapContent.read(is, size);
+            }
+        };
+    }
+
+    private boolean isElement(final String localName) {
+        return Probe.Xml.URI_STATE.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    /**
+     * Skip to the end of the current element, from within it (skipping child elements).
+     */
+    private void skipToEndElement() throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            skipElement();
+        }
+    }
+
+    /**
+     * Skip an element (positioned at its start), along with anything it contains.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * Stop reading the document (the source is left open).
+     *
+     * @throws IOException on failure to release the reader
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The text of a content element, as ASCII bytes (whitespace is skipped), read from the document as it is consumed.
+     */
+    private final class TextInputStream extends InputStream {
+
+        /**
+         * The text of the current event of the reader (owned by the reader; valid until its next event).
+         */
+        private char[] text;
+
+        /**
+         * Position of the next character to be read from the text.
+         */
+        private int position;
+
+        /**
+         * Position past the last character of the current event in the text.
+         */
+        private int limit;
+
+        /**
+         * True, once the end of the content element has been read.
+         */
+        private boolean endOfText;
+
+        private TextInputStream() {
+            this(false);
+        }
+
+        private TextInputStream(final boolean endOfText) {
+            this.text = null;
+            this.position = 0;
+            this.limit = 0;
+            this.endOfText = endOfText;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = -1;
+            while ((b < 0) && fill()) {
+                final char c = text[position++];
+                if (!Character.isWhitespace(c)) {
+                    b = toAscii(c);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int count = 0;
+            while ((count < len) && fill()) {
+                final char c = text[position++];
+                if (!Character.isWhitespace(c)) {
+                    b[off + count] = (byte) toAscii(c);
+                    ++count;
+                }
+            }
+            return ((count == 0) && (len > 0)) ? -1 : count;
+        }
+
+        /**
+         * @return the character, if ASCII; otherwise, a character outside the Base64 alphabet (which fails decoding)
+         */
+        private int toAscii(final char c) {
+            return (c < ASCII_LIMIT) ? c : '!';
+        }
+
+        /**
+         * Read the rest of the text, without keeping it.
+         *
+         * @return the number of bytes the text (as read so far, and as skipped) decodes to
+         */
+        private long skipBase64() throws IOException {
+            long count = 0L;
+            long padding = 0L;
+            while (fill()) {
+                final char c = text[position++];
+                if (c == '=') {
+                    ++padding;
+                } else if ((padding > 0L) || !isBase64(c)) {
+                    checkWhitespace(c);
+                } else {
+                    ++count;
+                }
+            }
+            if ((count % 4L) == 1L) {
+                throw new IOException("truncated Base64 content");
+            }
+            return (count * 3L) / 4L;
+        }
+
+        private boolean isBase64(final char c) {
+            return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9'))
+                    || (c == '+') || (c == '/');
+        }
+
+        private void checkWhitespace(final char c) throws IOException {
+            if (!Character.isWhitespace(c)) {
+                throw new IOException(String.format("illegal Base64 character: 0x%x", (int) c));
+            }
+        }
+
+        /**
+         * @return true, if there is a character to read (reading the next text event of the element, if needed)
+         */
+        private boolean fill() throws IOException {
+            try {
+                while ((position == limit) && !endOfText) {
+                    final int event = reader.next();
+                    if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA)
+                            || (event == XMLStreamConstants.SPACE)) {
+                        text = reader.getTextCharacters();
+                        position = reader.getTextStart();
+                        limit = position + reader.getTextLength();
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        endOfText = true;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        throw new IOException(String.format("unexpected element in content: %s", reader.getName()));
+                    }
+                }
+            } catch (final XMLStreamException e) {
+                throw new IOException(e);
+            }
+            return (position < limit);
+        }
+    }
+
+    /**
+     * Base64 text (without whitespace), decoded a block at a time.  This is much quicker than decoding through
+     * {@link Base64.Decoder#wrap(InputStream)}, which reads its source a byte at a time.
+     */
+    private static final class DecodingInputStream extends InputStream {
+
+        /**
+         * The source of the Base64 text.
+         */
+        private final InputStream source;
+
+        /**
+         * Reusable block of Base64 text (a multiple of 4 characters, so that each full block decodes alone).
+         */
+        private final byte[] encoded;
+
+        /**
+         * The decoded block.
+         */
+        private final byte[] decoded;
+
+        /**
+         * Position of the next byte to be read from the decoded block.
+         */
+        private int position;
+
+        /**
+         * Position past the last byte of the decoded block.
+         */
+        private int limit;
+
+        /**
+         * True, once the end of the source has been read.
+         */
+        private boolean endOfSource;
+
+        private DecodingInputStream(final InputStream source) {
+            this.source = source;
+            this.encoded = new byte[DECODE_BLOCK_SIZE];
+            this.decoded = new byte[(DECODE_BLOCK_SIZE / 4) * 3];
+            this.position = 0;
+            this.limit = 0;
+            this.endOfSource = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? (decoded[position++] & BYTE_MASK) : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int count = -1;
+            if (len == 0) {
+                count = 0;
+            } else if (fill()) {
+                count = Math.min(len, limit - position);
+                System.arraycopy(decoded, position, b, off, count);
+                position += count;
+            }
+            return count;
+        }
+
+        /**
+         * @return true, if there is a byte to read (decoding the next block of text, if needed)
+         */
+        private boolean fill() throws IOException {
+            while ((position == limit) && !endOfSource) {
+                int count = 0;
+                int n = 0;
+                while ((n >= 0) && (count < encoded.length)) {
+                    n = source.read(encoded, count, encoded.length - count);
+                    count += Math.max(n, 0);
+                }
+                endOfSource = (count < encoded.length);
+                try {
+                    position = 0;
+                    limit = Base64.getDecoder().decode(endOfSource ? Arrays.copyOf(encoded, count) : encoded, decoded);
+                } catch (final IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return (position < limit);
+        }
+    }
+
+    private static final int ASCII_LIMIT = 0x80;
+
+    private static final int BYTE_MASK = 0xff;
+
+    private static final int DECODE_BLOCK_SIZE = 4 * 16 * 1024;
+}
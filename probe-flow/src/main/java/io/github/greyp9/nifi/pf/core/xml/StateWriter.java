@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.xml;
+
+import io.github.greyp9.nifi.pf.core.common.Probe;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.io.FlowFileWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Write held FlowFiles to a stream, in the state document format (<code>urn:probe:state</code>), one FlowFile at a
+ * time.
+ * <p>
+ * Content is read in blocks, and each block is Base64 encoded straight into the document (blocks are a multiple of 3
+ * bytes, so that their encodings join without padding).  Memory use does not depend on the number or size of the
+ * FlowFiles written.
+ */
+public final class StateWriter implements FlowFileWriter {
+
+    /**
+     * The document, as it is written.
+     */
+    private final XMLStreamWriter writer;
+
+    /**
+     * Reusable block of content, as it is read.
+     */
+    private final byte[] block;
+
+    /**
+     * Reusable Base64 encoding of a block of content.
+     */
+    private final byte[] encoded;
+
+    /**
+     * Reusable Base64 encoding of a block of content, as characters.
+     */
+    private final char[] encodedChars;
+
+    /**
+     * Start a state document.
+     *
+     * @param outputStream the target of the document (not closed by {@link #close()})
+     * @throws IOException on failure to write to the target
+     */
+    public StateWriter(final OutputStream outputStream) throws IOException {
+        try {
+            this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(
+                    outputStream, StandardCharsets.UTF_8.name());
+            this.block = new byte[BLOCK_SIZE];
+            this.encoded = new byte[(BLOCK_SIZE / 3) * 4];
+            this.encodedChars = new char[encoded.length];
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.writeCharacters(NEWLINE);
+            writer.setDefaultNamespace(Probe.Xml.URI_STATE);
+            writer.writeStartElement(Probe.Xml.URI_STATE, Probe.State.STATE);
+            writer.writeDefaultNamespace(Probe.Xml.URI_STATE);
+        } catch (final XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(final Map<String, String> attributes, final Content content) throws IOException {
+        try {
+            writer.writeCharacters(INDENT_1);
+            writer.writeStartElement(Probe.Xml.URI_STATE, Probe.State.FLOWFILE);
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                writer.writeCharacters(INDENT_2);
+                writer.writeStartElement(Probe.Xml.URI_STATE, Probe.State.ATTRIBUTE);
+                writer.writeAttribute(Probe.State.NAME, entry.getKey());
+                writer.writeCharacters(entry.getValue());
+                writer.writeEndElement();
+            }
+            writer.writeCharacters(INDENT_2);
+            writer.writeStartElement(Probe.Xml.URI_STATE, Probe.State.CONTENT);
+            if (content != null) {
+                writeContent(content);
+            }
+            writer.writeEndElement();
+            writer.writeCharacters(INDENT_1);
+            writer.writeEndElement();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeContent(final Content content) throws IOException, XMLStreamException {
+        final Base64.Encoder encoder = Base64.getEncoder();
+        // one sequential read (compressed content is inflated once, rather than from its start for each block)
+        try (InputStream is = content.newInputStream()) {
+            int length = fill(is);
+            while (length > 0) {
+                final int lengthEncoded = encoder.encode((length == block.length) ? block : copyOf(length), encoded);
+                for (int i = 0; i < lengthEncoded; ++i) {
+                    encodedChars[i] = (char) encoded[i];
+                }
+                writer.writeCharacters(encodedChars, 0, lengthEncoded);
+                length = fill(is);
+            }
+        }
+    }
+
+    /**
+     * Read the next block of content (short only at the end of the content).
+     */
+    private int fill(final InputStream is) throws IOException {
+        int length = 0;
+        int count = 0;
+        while ((length < block.length) && (count >= 0)) {
+            count = is.read(block, length, block.length - length);
+            length += Math.max(count, 0);
+        }
+        return length;
+    }
+
+    private byte[] copyOf(final int length) {
+        final byte[] bytes = new byte[length];
+        System.arraycopy(block, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * End the document, and flush it to the target (which is left open).
+     *
+     * @throws IOException on failure to write to the target
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.writeCharacters(NEWLINE);
+            writer.writeEndElement();
+            writer.writeCharacters(NEWLINE);
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The size of the blocks in which content is read and encoded (a multiple of 3).
+     */
+    private static final int BLOCK_SIZE = 3 * 16 * 1024;
+
+    private static final String NEWLINE = "\n";
+    private static final String INDENT_1 = "\n  ";
+    private static final String INDENT_2 = "\n    ";
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.collect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the memory cost of holding FlowFile attributes as a {@link HashMap} (copied twice on ingest, as before) with
+ * {@link CompactAttributes} (copied once).
+ * <p>
+ * Run with: <code>mvn -pl probe-flow test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="CompactAttributesBenchmark -prof gc"</code>
+ * <p>
+ * The figure of interest is <code>gc.alloc.rate.norm</code> (bytes allocated per operation).  The held form is
+ * immutable, so for {@link #compactCopy()} the allocation per operation is (nearly) the retained size per FlowFile.
+ * For {@link #hashMapCopies()}, the retained size is that of the second map, about half of the allocation per
+ * operation.  The {@link #hashMapGet()} and {@link #compactGet()} benchmarks compare attribute lookup.
+ * <p>
+ * Results (JDK 1.8.0_392, one CPU; bytes allocated per operation from the thread allocation counter, and bytes
+ * retained per FlowFile from the heap in use with 100,000 copies held; names and values are shared with the source
+ * attributes, so are not counted):
+ * <pre>
+ * count   allocated (B)     retained (B)      copy (ns)           get (ns)
+ *         HashMap  Compact  HashMap  Compact  HashMap   Compact   HashMap  Compact
+ *   6        720      184      352       80   170-280   160-270       3-4     9-12
+ *  16       1488      264      736      120   550-660   790-930         4    12-15
+ *  48       4304      760     2144      248  1440-1990 3330-3360        3    19-25
+ * </pre>
+ * Held attributes take 4 to 9 times less memory, and ingest allocates 4 to 6 times less.  The price is a slower copy
+ * (the names are sorted, and their shared array looked up) and a slower lookup (binary search), both small next to
+ * reading the content of a FlowFile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactAttributesBenchmark {
+
+    /**
+     * The number of attributes of each FlowFile (the NiFi core attributes, and custom attributes).
+     */
+    @Param({"6", "16", "48"})
+    private int count;
+
+    /**
+     * Attributes of the incoming (NiFi) FlowFile.
+     */
+    private Map<String, String> source;
+
+    private Map<String, String> held;
+
+    private CompactAttributes heldCompact;
+
+    @Setup
+    public void setup() {
+        source = new HashMap<>();
+        source.put("uuid", UUID.randomUUID().toString());
+        source.put("filename", "data-000123.json");
+        source.put("path", "./");
+        source.put("mime.type", "application/json");
+        source.put("entryDate", "1700000000000");
+        source.put("fileSize", "4096");
+        for (int i = source.size(); (i < count); ++i) {
+            source.put(String.format("attribute.%03d", i), String.format("value-%d", i));
+        }
+        held = hashMapCopies();
+        heldCompact = compactCopy();
+    }
+
+    @Benchmark
+    public Map<String, String> hashMapCopies() {
+        final Map<String, String> attributes = new HashMap<>(source);
+        attributes.put(FLOWFILE_ID_IN, ID);
+        return new HashMap<>(attributes);
+    }
+
+    @Benchmark
+    public CompactAttributes compactCopy() {
+        return CompactAttributes.copyOf(source, FLOWFILE_ID_IN, ID);
+    }
+
+    @Benchmark
+    public String hashMapGet() {
+        return held.get("mime.type");
+    }
+
+    @Benchmark
+    public String compactGet() {
+        return heldCompact.get("mime.type");
+    }
+
+    private static final String FLOWFILE_ID_IN = "flowfileIdIn";
+    private static final String ID = "123456";
+}
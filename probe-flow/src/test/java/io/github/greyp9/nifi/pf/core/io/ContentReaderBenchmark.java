@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the legacy byte-at-a-time content read loop with {@link ContentReader}.
+ * <p>
+ * Run with: <code>mvn -pl probe-flow test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ContentReaderBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentReaderBenchmark {
+
+    /**
+     * Size of the content to read (1 KiB, 64 KiB, 1 MiB, 16 MiB).
+     */
+    @Param({"1024", "65536", "1048576", "16777216"})
+    private int size;
+
+    /**
+     * Content to be read in each benchmark iteration.
+     */
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+    }
+
+    @Benchmark
+    public byte[] legacyByteLoop() throws IOException {
+        final BufferedInputStream is = new BufferedInputStream(new ByteArrayInputStream(content));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) >= 0) {
+            os.write(b);
+        }
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] contentReaderSized() throws IOException {
+        return ContentReader.read(new BufferedInputStream(new ByteArrayInputStream(content)), content.length);
+    }
+
+    @Benchmark
+    public byte[] contentReaderUnsized() throws IOException {
+        return ContentReader.read(new BufferedInputStream(new ByteArrayInputStream(content)), -1L);
+    }
+}
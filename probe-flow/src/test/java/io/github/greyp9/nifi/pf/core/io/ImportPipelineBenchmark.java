@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.ProbeUtils;
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the throughput of importing a batch of FlowFiles from a state document, as the work of decoding (Base64)
+ * and hashing (SHA-256, for deduplication) their content is spread over a number of threads (see
+ * {@link OrderedPipeline}).  The document is parsed on the benchmark thread; the results are collected in order.
+ * <p>
+ * Run with: <code>mvn -pl probe-flow test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=ImportPipelineBenchmark</code>
+ * <p>
+ * Each operation imports one batch, so the score is in batches per second.  Scaling is bounded by the processors
+ * available to the JVM, and by the parsing thread (which copies out the Base64 text of each FlowFile); compare the
+ * scores against <code>threads=1</code>, which runs each task on the parsing thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportPipelineBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int threads;
+
+    /**
+     * Size of the content of each FlowFile (16 KiB, 256 KiB).
+     */
+    @Param({"16384", "262144"})
+    private int size;
+
+    /**
+     * The batch, as a state document.
+     */
+    private byte[] document;
+
+    @Setup
+    public void setup() throws IOException {
+        final Random random = new Random(0L);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FlowFileWriter writer = StateFormat.XML.newWriter(os)) {
+            for (int i = 0; (i < COUNT); ++i) {
+                final byte[] content = new byte[size];
+                random.nextBytes(content);
+                writer.write(Collections.singletonMap("filename", String.format("data-%06d.bin", i)),
+                        new HeapContent(content));
+            }
+        }
+        document = os.toByteArray();
+    }
+
+    @Benchmark
+    public List<String> importBatch() throws IOException {
+        final List<String> keys = new ArrayList<>(COUNT);
+        try (InputStream is = new ByteArrayInputStream(document); FlowFileReader reader = StateFormat.XML.newReader(is);
+             OrderedPipeline<String> pipeline = new OrderedPipeline<>(threads, keys::add)) {
+            for (Map<String, String> attributes = reader.next(); attributes != null; attributes = reader.next()) {
+                final Callable<Content> decoder = reader.readContent(size);
+                pipeline.submit(() -> {
+                    try (InputStream content = decoder.call().newInputStream()) {
+                        return ProbeUtils.sha256(content);
+                    }
+                });
+            }
+            pipeline.finish();
+        }
+        return keys;
+    }
+
+    /**
+     * The number of FlowFiles in a batch.
+     */
+    private static final int COUNT = 64;
+}
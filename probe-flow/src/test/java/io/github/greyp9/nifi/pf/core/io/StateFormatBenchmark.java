@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership.  The ASF licenses this
+ * file to you under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package io.github.greyp9.nifi.pf.core.io;
+
+import io.github.greyp9.nifi.pf.core.content.Content;
+import io.github.greyp9.nifi.pf.core.content.HeapContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the export formats of held FlowFiles ({@link StateFormat}) on throughput, writing and reading a batch of
+ * FlowFiles, and on size.
+ * <p>
+ * Run with: <code>mvn -pl probe-flow test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=StateFormatBenchmark</code>
+ * <p>
+ * Each operation writes (or reads) one batch, so the score is in batches per second.  The size of a batch in each
+ * format is printed once per trial, as it is set up.  The content is text-like (a small alphabet), so that the gzip
+ * format has something to compress; for random content, expect the gzip format to be no smaller, and slower.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateFormatBenchmark {
+
+    @Param({"XML", "FLOWFILE_V3", "FLOWFILE_V3_GZIP"})
+    private StateFormat format;
+
+    /**
+     * Size of the content of each FlowFile (1 KiB, 256 KiB).
+     */
+    @Param({"1024", "262144"})
+    private int size;
+
+    /**
+     * The attributes of each FlowFile in the batch.
+     */
+    private final List<Map<String, String>> attributes = new ArrayList<>();
+
+    /**
+     * The content of each FlowFile in the batch.
+     */
+    private final List<Content> contents = new ArrayList<>();
+
+    /**
+     * The batch, as written in the format.
+     */
+    private byte[] encoded;
+
+    /**
+     * Scratch buffer receiving content, as it is read.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    @Setup
+    public void setup() throws IOException {
+        final Random random = new Random(0L);
+        for (int i = 0; (i < COUNT); ++i) {
+            final Map<String, String> attributesIt = new LinkedHashMap<>();
+            attributesIt.put("uuid", UUID.randomUUID().toString());
+            attributesIt.put("filename", String.format("data-%06d.json", i));
+            attributesIt.put("path", "./");
+            attributesIt.put("mime.type", "application/json");
+            attributes.add(attributesIt);
+            final byte[] content = new byte[size];
+            for (int j = 0; (j < content.length); ++j) {
+                content[j] = (byte) ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            contents.add(new HeapContent(content));
+        }
+        encoded = write().toByteArray();
+        System.out.printf("%n%s: %d FlowFiles of %d bytes, written as %d bytes (%.2f of content size)%n",
+                format, COUNT, size, encoded.length, ((double) encoded.length) / (COUNT * (long) size));
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream write() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream((encoded == null) ? BUFFER_SIZE : encoded.length);
+        try (FlowFileWriter writer = format.newWriter(os)) {
+            for (int i = 0; (i < COUNT); ++i) {
+                writer.write(attributes.get(i), contents.get(i));
+            }
+        }
+        return os;
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long total = 0L;
+        try (InputStream is = new ByteArrayInputStream(encoded); FlowFileReader reader = format.newReader(is)) {
+            for (Map<String, String> attributesIt = reader.next(); attributesIt != null; attributesIt = reader.next()) {
+                total += attributesIt.size();
+                final InputStream content = reader.getContent();
+                for (int count = content.read(buffer); count >= 0; count = content.read(buffer)) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The number of FlowFiles in a batch.
+     */
+    private static final int COUNT = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String ALPHABET = "{}[]\":, abcdefghijklmnopqrstuvwxyz0123456789\n";
+}